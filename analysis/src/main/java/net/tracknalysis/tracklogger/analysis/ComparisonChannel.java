@@ -0,0 +1,48 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+/**
+ * The channels compared by a {@link LapComparator}.
+ *
+ * @author David Valeri
+ */
+public enum ComparisonChannel {
+    /**
+     * Time elapsed since the start of the lap in milliseconds.
+     */
+    ELAPSED_TIME,
+    /**
+     * Speed in meters per second.
+     */
+    SPEED,
+    /**
+     * Lateral acceleration.
+     */
+    LATERAL_ACCEL,
+    /**
+     * Longitudinal acceleration.
+     */
+    LONGITUDINAL_ACCEL,
+    /**
+     * Throttle position.
+     */
+    THROTTLE_POSITION,
+    /**
+     * Engine speed.
+     */
+    RPM;
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.common.util.TimeUtil;
+import net.tracknalysis.tracklogger.model.AccelData;
+import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.LocationData;
+import net.tracknalysis.tracklogger.model.LogEntry;
+
+/**
+ * Compares two laps by resampling both onto a common grid of distance traveled from the start of each
+ * lap.  The laps are consumed in lockstep from their {@link LapEntrySource}s and only the two log entries
+ * bracketing the current grid point are retained for each lap, so memory use is independent of the
+ * length of the laps or the sessions they belong to.
+ * <p/>
+ * Distance is accumulated from the recorded positions using an equirectangular approximation, which is
+ * accurate for the short distances between consecutive fixes.
+ *
+ * @author David Valeri
+ */
+public class LapComparator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LapComparator.class);
+
+    /**
+     * The default spacing, in meters, between points on the distance grid.
+     */
+    public static final double DEFAULT_GRID_SPACING = 5d;
+
+    /**
+     * Mean radius of the Earth in meters.
+     */
+    private static final double EARTH_RADIUS = 6371008.8d;
+
+    private static final int CHANNEL_COUNT = ComparisonChannel.values().length;
+
+    private final double gridSpacing;
+
+    public LapComparator() {
+        this(DEFAULT_GRID_SPACING);
+    }
+
+    /**
+     * @param gridSpacing the spacing, in meters, between points on the distance grid
+     *
+     * @throws IllegalArgumentException if the spacing is not positive
+     */
+    public LapComparator(double gridSpacing) {
+        if (!(gridSpacing > 0)) {
+            throw new IllegalArgumentException("Grid spacing must be positive.");
+        }
+
+        this.gridSpacing = gridSpacing;
+    }
+
+    public double getGridSpacing() {
+        return gridSpacing;
+    }
+
+    /**
+     * Compares the candidate lap to the reference lap.  Samples are produced for each grid point up to the
+     * shorter of the two laps.  The sources are not closed by this method.
+     *
+     * @param reference the source of the lap to compare against
+     * @param candidate the source of the lap being compared
+     * @param listener the listener to receive the samples
+     *
+     * @return the number of samples produced
+     *
+     * @throws IOException if there is an error reading from either source
+     */
+    public int compare(LapEntrySource reference, LapEntrySource candidate,
+            LapComparisonListener listener) throws IOException {
+
+        LapCursor referenceCursor = new LapCursor(reference);
+        LapCursor candidateCursor = new LapCursor(candidate);
+        LapComparisonSample sample = new LapComparisonSample();
+        int count = 0;
+
+        if (referenceCursor.init() && candidateCursor.init()) {
+            while (true) {
+                double distance = count * gridSpacing;
+
+                if (!referenceCursor.seek(distance, sample.getReferenceValues())
+                        || !candidateCursor.seek(distance, sample.getCandidateValues())) {
+                    break;
+                }
+
+                sample.set(count, distance);
+                listener.onSample(sample);
+                count++;
+            }
+        }
+
+        LOG.debug("Produced {} samples at {}m spacing.", count, gridSpacing);
+
+        return count;
+    }
+
+    /**
+     * Tracks the position of a single lap along the distance grid, holding the entries immediately
+     * before and after the current grid point.
+     */
+    private static final class LapCursor {
+
+        private final LapEntrySource source;
+
+        private double previousDistance;
+        private final double[] previousValues = new double[CHANNEL_COUNT];
+        private double currentDistance;
+        private final double[] currentValues = new double[CHANNEL_COUNT];
+
+        private boolean hasPosition;
+        private double lastLatitude;
+        private double lastLongitude;
+        private long lastSynchTimestamp;
+        private double elapsedTime;
+
+        LapCursor(LapEntrySource source) {
+            this.source = source;
+        }
+
+        /**
+         * Reads the first entry in the lap.
+         *
+         * @return false if the lap contains no entries
+         */
+        boolean init() throws IOException {
+            LogEntry logEntry = source.next();
+
+            if (logEntry == null) {
+                return false;
+            }
+
+            lastSynchTimestamp = logEntry.getSynchTimestamp();
+            currentDistance = 0;
+            elapsedTime = 0;
+            update(logEntry);
+            System.arraycopy(currentValues, 0, previousValues, 0, CHANNEL_COUNT);
+            previousDistance = currentDistance;
+
+            return true;
+        }
+
+        /**
+         * Advances the cursor such that the grid point lies between the previous and current entries
+         * and interpolates the channel values at the grid point into {@code values}.
+         *
+         * @return false if the lap ends before the grid point
+         */
+        boolean seek(double distance, double[] values) throws IOException {
+            while (currentDistance < distance) {
+                System.arraycopy(currentValues, 0, previousValues, 0, CHANNEL_COUNT);
+                previousDistance = currentDistance;
+
+                LogEntry logEntry = source.next();
+
+                if (logEntry == null) {
+                    return false;
+                }
+
+                long synchTimestamp = logEntry.getSynchTimestamp();
+                long delta = synchTimestamp - lastSynchTimestamp;
+                if (delta < 0) {
+                    // Rolled over midnight
+                    delta += TimeUtil.MS_IN_DAY;
+                }
+                elapsedTime += delta;
+                lastSynchTimestamp = synchTimestamp;
+
+                update(logEntry);
+            }
+
+            double span = currentDistance - previousDistance;
+
+            if (span == 0) {
+                System.arraycopy(currentValues, 0, values, 0, CHANNEL_COUNT);
+            } else {
+                double fraction = (distance - previousDistance) / span;
+                for (int i = 0; i < CHANNEL_COUNT; i++) {
+                    values[i] = previousValues[i] + fraction * (currentValues[i] - previousValues[i]);
+                }
+            }
+
+            return true;
+        }
+
+        private void update(LogEntry logEntry) {
+            LocationData locationData = logEntry.getLocationData();
+            AccelData accelData = logEntry.getAccelData();
+            EcuData ecuData = logEntry.getEcuData();
+
+            if (locationData != null) {
+                double latitude = locationData.getLatitude();
+                double longitude = locationData.getLongitude();
+
+                if (hasPosition) {
+                    double dy = Math.toRadians(latitude - lastLatitude);
+                    double dx = Math.toRadians(longitude - lastLongitude)
+                            * Math.cos(Math.toRadians((latitude + lastLatitude) / 2));
+                    currentDistance += EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy);
+                }
+
+                hasPosition = true;
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+            }
+
+            currentValues[ComparisonChannel.ELAPSED_TIME.ordinal()] = elapsedTime;
+            currentValues[ComparisonChannel.SPEED.ordinal()] =
+                    locationData == null ? Double.NaN : locationData.getSpeed();
+            currentValues[ComparisonChannel.LATERAL_ACCEL.ordinal()] =
+                    accelData == null ? Double.NaN : accelData.getLateral();
+            currentValues[ComparisonChannel.LONGITUDINAL_ACCEL.ordinal()] =
+                    accelData == null ? Double.NaN : accelData.getLongitudinal();
+            currentValues[ComparisonChannel.THROTTLE_POSITION.ordinal()] =
+                    ecuData == null ? Double.NaN : ecuData.getThrottlePosition();
+            currentValues[ComparisonChannel.RPM.ordinal()] =
+                    ecuData == null ? Double.NaN : ecuData.getRpm();
+        }
+    }
+}
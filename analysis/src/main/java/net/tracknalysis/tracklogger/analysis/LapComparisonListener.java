@@ -0,0 +1,32 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+/**
+ * Receives the samples produced by a {@link LapComparator}.
+ *
+ * @author David Valeri
+ */
+public interface LapComparisonListener {
+
+    /**
+     * Invoked for each point on the distance grid that is covered by both laps, in order of increasing
+     * distance.  The sample instance is reused between invocations and must not be retained.
+     *
+     * @param sample the sample for the current grid point
+     */
+    void onSample(LapComparisonSample sample);
+}
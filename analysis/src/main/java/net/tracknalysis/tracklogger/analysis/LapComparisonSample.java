@@ -0,0 +1,77 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+/**
+ * The values of each {@link ComparisonChannel} for the reference and candidate laps at a single point
+ * on the distance grid.  Channel values that are not available in a lap, such as ECU channels when the
+ * ECU was not enabled, are {@link Double#NaN}.
+ *
+ * @author David Valeri
+ */
+public final class LapComparisonSample {
+
+    private static final int CHANNEL_COUNT = ComparisonChannel.values().length;
+
+    private int index;
+    private double distance;
+    private final double[] referenceValues = new double[CHANNEL_COUNT];
+    private final double[] candidateValues = new double[CHANNEL_COUNT];
+
+    /**
+     * Returns the zero based index of this sample on the distance grid.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the distance, in meters, from the start of the lap.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getReferenceValue(ComparisonChannel channel) {
+        return referenceValues[channel.ordinal()];
+    }
+
+    public double getCandidateValue(ComparisonChannel channel) {
+        return candidateValues[channel.ordinal()];
+    }
+
+    /**
+     * Returns the candidate value less the reference value.  For {@link ComparisonChannel#ELAPSED_TIME},
+     * a negative delta indicates that the candidate lap reached this distance sooner than the
+     * reference lap.
+     */
+    public double getDelta(ComparisonChannel channel) {
+        return candidateValues[channel.ordinal()] - referenceValues[channel.ordinal()];
+    }
+
+    void set(int index, double distance) {
+        this.index = index;
+        this.distance = distance;
+    }
+
+    double[] getReferenceValues() {
+        return referenceValues;
+    }
+
+    double[] getCandidateValues() {
+        return candidateValues;
+    }
+}
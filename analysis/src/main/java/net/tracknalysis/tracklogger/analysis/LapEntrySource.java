@@ -0,0 +1,38 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+
+/**
+ * A forward-only stream of the log entries recorded during a single lap, in the order in which they
+ * were recorded.  Implementations are expected to read from the underlying store incrementally such
+ * that only a bounded number of entries are held in memory at any time.
+ *
+ * @author David Valeri
+ */
+public interface LapEntrySource extends Closeable {
+
+    /**
+     * Returns the next log entry in the lap or {@code null} if there are no more entries in the lap.
+     *
+     * @throws IOException if there is an error reading from the underlying store
+     */
+    LogEntry next() throws IOException;
+}
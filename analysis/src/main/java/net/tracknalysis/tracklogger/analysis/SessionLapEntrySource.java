@@ -0,0 +1,230 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.tracknalysis.tracklogger.export.LogTimingMergeJoin;
+import net.tracknalysis.tracklogger.export.RecordSource;
+import net.tracknalysis.tracklogger.export.TimingRecordSource;
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingData;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.store.EntryReader;
+import net.tracknalysis.tracklogger.store.SessionStore;
+
+/**
+ * A {@link LapEntrySource} that selects the entries for a single lap from the streams of log and timing
+ * entries of a session.  The entries are tagged with their lap and split by a {@link LogTimingMergeJoin},
+ * so lap and split numbering matches that of the session exporters.
+ * <p/>
+ * The streams are consumed only as far as the end of the requested lap and are closed when this source is
+ * closed.
+ *
+ * @author David Valeri
+ */
+public class SessionLapEntrySource implements LapEntrySource {
+
+    private final LogEntryRecordSource logRecords;
+    private final LogTimingMergeJoin join;
+
+    /**
+     * @param logEntries the log entries for the session in the order in which they were recorded, closed
+     * with this source if the iterator implements {@link Closeable}
+     * @param timingEntries the timing entries for the session in the order in which they were recorded,
+     * closed with this source if the iterator implements {@link Closeable}
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     * @param lap the lap to select, numbered as in the session exports
+     */
+    public SessionLapEntrySource(Iterator<LogEntry> logEntries, Iterator<TimingEntry> timingEntries,
+            int splitMarkerCount, int lap) {
+        this(new IteratorEntryReader<LogEntry>(logEntries), new IteratorEntryReader<TimingEntry>(timingEntries),
+                splitMarkerCount, lap);
+    }
+
+    /**
+     * @param logEntries a reader for the log entries of the session, starting no later than the first
+     * entry of the lap
+     * @param timingEntries a reader for the timing entries of the session, starting no later than the
+     * timing entry that starts the lap
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     * @param lap the lap to select, numbered as in the session exports
+     */
+    public SessionLapEntrySource(EntryReader<LogEntry> logEntries, EntryReader<TimingEntry> timingEntries,
+            int splitMarkerCount, int lap) {
+        logRecords = new LogEntryRecordSource(logEntries);
+        join = new LogTimingMergeJoin(logRecords, new TimingEntryRecordSource(timingEntries),
+                splitMarkerCount, lap, lap);
+    }
+
+    /**
+     * Returns a source for a lap of a session in a {@link SessionStore}.  Only the entries of the lap are
+     * read from the store.
+     *
+     * @param store the store holding the session
+     * @param sessionId the ID of the session
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     * @param lap the lap to select, numbered as in the session exports
+     *
+     * @throws IllegalArgumentException if the session or lap does not exist in the store
+     * @throws IOException if there is an error opening the session
+     */
+    public static SessionLapEntrySource open(SessionStore store, int sessionId, int splitMarkerCount, int lap)
+            throws IOException {
+
+        EntryReader<LogEntry> logEntries = store.readLogEntries(sessionId, lap, lap);
+        boolean opened = false;
+
+        try {
+            SessionLapEntrySource source = new SessionLapEntrySource(logEntries,
+                    store.readTimingEntries(sessionId, lap, lap), splitMarkerCount, lap);
+            opened = true;
+            return source;
+        } finally {
+            if (!opened) {
+                logEntries.close();
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the session has no timing entries, no log entries, or no log entry
+     * whose synch timestamp matches that of the first timing entry
+     */
+    @Override
+    public LogEntry next() throws IOException {
+        return join.next() ? logRecords.getLogEntry() : null;
+    }
+
+    /**
+     * Returns the split index of the entry most recently returned from {@link #next()}.
+     */
+    public int getSplitIndex() {
+        return join.getSplitIndex();
+    }
+
+    @Override
+    public void close() throws IOException {
+        join.close();
+    }
+
+    /**
+     * Adapts a reader of log entries to the join.
+     */
+    private static final class LogEntryRecordSource implements RecordSource {
+
+        private final EntryReader<LogEntry> reader;
+        private LogEntry logEntry;
+
+        LogEntryRecordSource(EntryReader<LogEntry> reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean moveToNext() throws IOException {
+            logEntry = reader.next();
+            return logEntry != null;
+        }
+
+        @Override
+        public long getSynchTimestamp() {
+            return logEntry.getSynchTimestamp();
+        }
+
+        LogEntry getLogEntry() {
+            return logEntry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Adapts a reader of timing entries to the join.
+     */
+    private static final class TimingEntryRecordSource implements TimingRecordSource {
+
+        private final EntryReader<TimingEntry> reader;
+        private TimingEntry timingEntry;
+
+        TimingEntryRecordSource(EntryReader<TimingEntry> reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean moveToNext() throws IOException {
+            timingEntry = reader.next();
+            return timingEntry != null;
+        }
+
+        @Override
+        public long getSynchTimestamp() {
+            return timingEntry.getSynchTimestamp();
+        }
+
+        @Override
+        public int getLap() {
+            return getTimingData().getLap();
+        }
+
+        @Override
+        public int getSplitIndex() {
+            return getTimingData().getSplitIndex();
+        }
+
+        @Override
+        public long getCaptureTimestamp() {
+            return getTimingData().getTime();
+        }
+
+        private TimingData getTimingData() {
+            return timingEntry.getTimingData();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Adapts an iterator to an {@link EntryReader}, closing the iterator if it is {@link Closeable}.
+     */
+    private static final class IteratorEntryReader<T> implements EntryReader<T> {
+
+        private final Iterator<T> iterator;
+
+        IteratorEntryReader(Iterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public T next() {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (iterator instanceof Closeable) {
+                ((Closeable) iterator).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.AccelData.AccelDataBuilder;
+import net.tracknalysis.tracklogger.model.LocationData.LocationDataBuilder;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LapComparatorTest {
+
+    /**
+     * Degrees of latitude per meter along a meridian.
+     */
+    private static final double DEGREES_PER_METER = 1d / Math.toRadians(6371008.8d);
+
+    @Test
+    public void testCompare() throws Exception {
+        // Reference lap at 10m/s and candidate lap at 20m/s over the same 250m, sampled at 1Hz.
+        LapEntrySource reference = createLap(10f, 26, 0.5f);
+        LapEntrySource candidate = createLap(20f, 14, 1.0f);
+
+        final List<double[]> samples = new ArrayList<double[]>();
+
+        int count = new LapComparator(10d).compare(reference, candidate, new LapComparisonListener() {
+            @Override
+            public void onSample(LapComparisonSample sample) {
+                assertEquals(samples.size(), sample.getIndex());
+                samples.add(new double[] {
+                        sample.getDistance(),
+                        sample.getDelta(ComparisonChannel.ELAPSED_TIME),
+                        sample.getDelta(ComparisonChannel.SPEED),
+                        sample.getReferenceValue(ComparisonChannel.LATERAL_ACCEL),
+                        sample.getCandidateValue(ComparisonChannel.LATERAL_ACCEL),
+                        sample.getDelta(ComparisonChannel.RPM)});
+            }
+        });
+
+        assertEquals(samples.size(), count);
+        assertTrue(count >= 25);
+
+        double[] sample = samples.get(10);
+        assertEquals(100d, sample[0], 0d);
+        assertEquals(-5000d, sample[1], 1d);
+        assertEquals(10d, sample[2], 0.0001d);
+        assertEquals(0.5d, sample[3], 0.0001d);
+        assertEquals(1.0d, sample[4], 0.0001d);
+        assertTrue(Double.isNaN(sample[5]));
+
+        // Interpolated between entries of the candidate lap
+        sample = samples.get(11);
+        assertEquals(-5500d, sample[1], 1d);
+    }
+
+    @Test
+    public void testEmptyLap() throws Exception {
+        int count = new LapComparator().compare(createLap(10f, 10, 0f), createLap(10f, 0, 0f),
+                new LapComparisonListener() {
+                    @Override
+                    public void onSample(LapComparisonSample sample) {
+                        fail();
+                    }
+                });
+
+        assertEquals(0, count);
+    }
+
+    private LapEntrySource createLap(float speed, int entryCount, float lateral) {
+        final List<LogEntry> logEntries = new ArrayList<LogEntry>();
+
+        for (int i = 0; i < entryCount; i++) {
+            long time = 1000 * i;
+
+            LocationDataBuilder locationDataBuilder = new LocationDataBuilder();
+            locationDataBuilder.setTime(time);
+            locationDataBuilder.setLatitude(38d + speed * i * DEGREES_PER_METER);
+            locationDataBuilder.setLongitude(-77d);
+            locationDataBuilder.setSpeed(speed);
+
+            AccelDataBuilder accelDataBuilder = new AccelDataBuilder();
+            accelDataBuilder.setLateral(lateral);
+
+            logEntries.add(new LogEntry(time, 1, accelDataBuilder.build(),
+                    locationDataBuilder.build(), null));
+        }
+
+        return new LapEntrySource() {
+
+            private final Iterator<LogEntry> iterator = logEntries.iterator();
+
+            @Override
+            public LogEntry next() throws IOException {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+}
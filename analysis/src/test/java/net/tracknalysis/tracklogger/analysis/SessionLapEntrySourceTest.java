@@ -0,0 +1,160 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.analysis;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.TimingData.TimingDataBuilder;
+import net.tracknalysis.tracklogger.store.FileSessionStore;
+import net.tracknalysis.tracklogger.store.SessionAppender;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class SessionLapEntrySourceTest {
+
+    @Test
+    public void testLapSelection() throws Exception {
+        assertEntries(1, 1000, 9000);
+        assertEntries(2, 10000, 29000);
+        assertEntries(3, 30000, 35000);
+        assertEntries(4, 0, -1000);
+    }
+
+    @Test
+    public void testSplitIndex() throws Exception {
+        SessionLapEntrySource source = createSource(1);
+
+        assertEquals(1000, source.next().getSynchTimestamp());
+        assertEquals(0, source.getSplitIndex());
+
+        LogEntry logEntry;
+        while ((logEntry = source.next()).getSynchTimestamp() != 5000) {
+            assertEquals(0, source.getSplitIndex());
+        }
+
+        assertEquals(5000, logEntry.getSynchTimestamp());
+        assertEquals(1, source.getSplitIndex());
+    }
+
+    @Test
+    public void testSessionStoreLapSelection() throws Exception {
+        File directory = File.createTempFile("session-store", "");
+        assertTrue(directory.delete());
+        FileSessionStore store = new FileSessionStore(directory, 4);
+
+        try {
+            int sessionId = store.createSession(new Date(), 1);
+            SessionAppender appender = store.openSession(sessionId);
+            for (LogEntry logEntry : createLogEntries()) {
+                appender.appendLogEntries(Collections.singletonList(logEntry));
+                for (TimingEntry timingEntry : createTimingEntries()) {
+                    if (timingEntry.getSynchTimestamp() == logEntry.getSynchTimestamp()) {
+                        appender.appendTimingEntries(Collections.singletonList(timingEntry));
+                    }
+                }
+            }
+            appender.close();
+
+            assertEntries(SessionLapEntrySource.open(store, sessionId, 2, 1), 1000, 9000);
+            assertEntries(SessionLapEntrySource.open(store, sessionId, 2, 2), 10000, 29000);
+            assertEntries(SessionLapEntrySource.open(store, sessionId, 2, 3), 30000, 35000);
+
+            try {
+                SessionLapEntrySource.open(store, sessionId, 2, 4);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        } finally {
+            store.close();
+            delete(directory);
+        }
+    }
+
+    private void assertEntries(int lap, long firstTimestamp, long lastTimestamp) throws Exception {
+        assertEntries(createSource(lap), firstTimestamp, lastTimestamp);
+    }
+
+    private void assertEntries(SessionLapEntrySource source, long firstTimestamp, long lastTimestamp)
+            throws Exception {
+
+        long expected = firstTimestamp;
+        LogEntry logEntry;
+        while ((logEntry = source.next()) != null) {
+            assertEquals(expected, logEntry.getSynchTimestamp());
+            expected += 1000;
+        }
+
+        assertEquals(lastTimestamp + 1000, expected);
+        assertNull(source.next());
+        source.close();
+    }
+
+    private SessionLapEntrySource createSource(int lap) {
+        return new SessionLapEntrySource(createLogEntries().iterator(), createTimingEntries().iterator(), 2, lap);
+    }
+
+    private List<LogEntry> createLogEntries() {
+        List<LogEntry> logEntries = new ArrayList<LogEntry>();
+        for (long time = 0; time <= 35000; time += 1000) {
+            logEntries.add(new LogEntry(time, 1, null, null, null));
+        }
+        return logEntries;
+    }
+
+    private List<TimingEntry> createTimingEntries() {
+        return Arrays.asList(
+                createTimingEntry(1000, 0, 1, null),
+                createTimingEntry(5000, 1, 0, null),
+                createTimingEntry(10000, 1, 1, 9000L),
+                createTimingEntry(20000, 2, 0, null),
+                createTimingEntry(30000, 2, 1, 20000L));
+    }
+
+    private TimingEntry createTimingEntry(long time, int lap, int splitIndex, Long lapTime) {
+        TimingDataBuilder builder = new TimingDataBuilder();
+        builder.setTime(time);
+        builder.setLap(lap);
+        builder.setSplitIndex(splitIndex);
+        builder.setLapTime(lapTime);
+        builder.setBestSplitTimes(Arrays.asList(new Long[2]));
+
+        return new TimingEntry(time, 1, builder.build());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Verifies that databases created with the version 1 schema are upgraded to the current schema by the
+ * {@link TrackLoggerDatabaseMigrations migrations}.  The version 1 schema is recreated here as it
+ * shipped, independent of the current table contracts.
+ *
+ * @author David Valeri
+ */
+public class TrackLoggerDatabaseMigrationTest extends AndroidTestCase {
+    
+    private TrackLoggerDatabaseHelper helper;
+    private SQLiteDatabase db;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        helper = new TrackLoggerDatabaseHelper(getContext());
+        db = SQLiteDatabase.create(null);
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        db.close();
+        super.tearDown();
+    }
+    
+    public void testMigrationsCoverAllVersions() {
+        List<DatabaseMigration> migrations = TrackLoggerDatabaseMigrations.getMigrations(
+                TrackLoggerDatabaseMigrations.BASE_VERSION, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        assertEquals(TrackLoggerDataProvider.DATABASE_VERSION - TrackLoggerDatabaseMigrations.BASE_VERSION,
+                migrations.size());
+        assertEquals(TrackLoggerDataProvider.DATABASE_VERSION, TrackLoggerDatabaseMigrations.getLatestVersion());
+        
+        for (int i = 0; i < migrations.size(); i++) {
+            assertEquals(TrackLoggerDatabaseMigrations.BASE_VERSION + i + 1, migrations.get(i).getVersion());
+        }
+        
+        try {
+            TrackLoggerDatabaseMigrations.getMigrations(
+                    TrackLoggerDatabaseMigrations.BASE_VERSION, TrackLoggerDataProvider.DATABASE_VERSION + 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    public void testUpgradeFromVersion1() {
+        createVersion1Schema(db);
+        
+        final List<Integer> migratedVersions = new ArrayList<Integer>();
+        helper.setMigrationListener(new DatabaseMigrationListener() {
+            
+            @Override
+            public void migrationStarted(DatabaseMigration migration, int step, int stepCount) {
+                assertEquals(migratedVersions.size() + 1, step);
+                assertEquals(TrackLoggerDataProvider.DATABASE_VERSION - 1, stepCount);
+            }
+            
+            @Override
+            public void migrationCompleted(DatabaseMigration migration, int step, int stepCount,
+                    long elapsedTime) {
+                migratedVersions.add(migration.getVersion());
+            }
+            
+            @Override
+            public void afterCommitStarted(DatabaseMigration migration) {
+            }
+            
+            @Override
+            public void afterCommitCompleted(DatabaseMigration migration, long elapsedTime) {
+            }
+        });
+        
+        helper.onUpgrade(db, 1, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        assertEquals(TrackLoggerDataProvider.DATABASE_VERSION - 1, migratedVersions.size());
+        assertEquals(Integer.valueOf(2), migratedVersions.get(0));
+        assertEquals(Integer.valueOf(TrackLoggerDataProvider.DATABASE_VERSION),
+                migratedVersions.get(migratedVersions.size() - 1));
+        
+        // New databases are created through the same migrations so the schemas must match.
+        SQLiteDatabase createdDb = SQLiteDatabase.create(null);
+        try {
+            helper.setMigrationListener(new NoOpDatabaseMigrationListener());
+            helper.onCreate(createdDb);
+            
+            assertEquals(getSchema(createdDb), getSchema(db));
+        } finally {
+            createdDb.close();
+        }
+    }
+    
+    public void testUpgradeFromVersion1CreatesIndexes() {
+        createVersion1Schema(db);
+        insertVersion1Data(db);
+        
+        helper.setMigrationListener(new NoOpDatabaseMigrationListener());
+        helper.onUpgrade(db, 1, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        Set<String> indexes = getIndexNames(db);
+        assertTrue(indexes.contains("log_entry_session_synch"));
+        assertTrue(indexes.contains("timing_entry_session_synch"));
+        assertTrue(indexes.contains("lap_index_session_lap"));
+        assertTrue(indexes.contains("log_entry_chunk_session_position"));
+        assertFalse(indexes.contains("log_entry_chunk_session"));
+        
+        // The indexes cover the rows that existed before the upgrade.
+        assertTrue(getQueryPlan(db, "SELECT _id FROM log_entry WHERE session_id = 1 "
+                + "ORDER BY synch_timestamp").contains("log_entry_session_synch"));
+        assertEquals(3, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM log_entry INDEXED BY log_entry_session_synch "
+                        + "WHERE session_id = 1 AND synch_timestamp >= 0", null));
+        assertEquals(4, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM timing_entry INDEXED BY timing_entry_session_synch "
+                        + "WHERE session_id = 1 AND synch_timestamp >= 0", null));
+    }
+    
+    public void testUpgradeFromVersion1BackfillsSessions() {
+        createVersion1Schema(db);
+        insertVersion1Data(db);
+        
+        helper.setMigrationListener(new NoOpDatabaseMigrationListener());
+        helper.onUpgrade(db, 1, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        // Existing sessions keep their rows and are neither deleted nor chunked.
+        Cursor cursor = db.rawQuery("SELECT storage_format, deleted FROM session ORDER BY _id", null);
+        try {
+            assertEquals(2, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertEquals(TrackLoggerData.Session.STORAGE_FORMAT_ROWS, cursor.getInt(0));
+                assertEquals(0, cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        
+        cursor = db.rawQuery("SELECT session_id, sample_count, duration, distance, lap_count, best_lap_time "
+                + "FROM session_summary ORDER BY session_id", null);
+        try {
+            assertEquals(2, cursor.getCount());
+            
+            cursor.moveToNext();
+            assertEquals(1, cursor.getInt(0));
+            assertEquals(3, cursor.getInt(1));
+            assertEquals(3000, cursor.getLong(2));
+            assertTrue(cursor.isNull(3));
+            assertEquals(2, cursor.getInt(4));
+            assertEquals(85000, cursor.getLong(5));
+            
+            cursor.moveToNext();
+            assertEquals(2, cursor.getInt(0));
+            assertEquals(0, cursor.getInt(1));
+            assertEquals(0, cursor.getLong(2));
+            assertEquals(0, cursor.getInt(4));
+            assertTrue(cursor.isNull(5));
+        } finally {
+            cursor.close();
+        }
+        
+        // Existing split marker sets are stamped so that cached routes compiled from them are rebuilt.
+        assertEquals(0, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM split_marker_set WHERE modification_stamp <= 0", null));
+        
+        // Entries recorded before the upgrade gain null values in the new columns.
+        assertEquals(4, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM timing_entry WHERE best_lap_time IS NULL", null));
+    }
+    
+    public void testUpgradeEnablesIncrementalVacuum() {
+        createVersion1Schema(db);
+        insertVersion1Data(db);
+        
+        helper.setMigrationListener(new NoOpDatabaseMigrationListener());
+        helper.onUpgrade(db, 1, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        // The mode of a database holding tables only changes on the VACUUM run once the upgrade commits.
+        assertFalse(DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+                == TrackLoggerDatabaseHelper.AUTO_VACUUM_INCREMENTAL);
+        
+        helper.onOpen(db);
+        
+        assertEquals(TrackLoggerDatabaseHelper.AUTO_VACUUM_INCREMENTAL,
+                DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+        assertEquals(3, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM log_entry", null));
+    }
+    
+    public void testUpgradePositionsLogEntryChunks() {
+        createVersion1Schema(db);
+        
+        helper.setMigrationListener(new NoOpDatabaseMigrationListener());
+        helper.onUpgrade(db, 1, 10);
+        
+        // Chunks of two sessions, interleaved, including an empty chunk.
+        insertLogEntryChunk(db, 1, 5);
+        insertLogEntryChunk(db, 2, 4);
+        insertLogEntryChunk(db, 1, 0);
+        insertLogEntryChunk(db, 1, 3);
+        insertLogEntryChunk(db, 2, 2);
+        
+        helper.onUpgrade(db, 10, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        assertEquals("0,5,5", getLogEntryChunkPositions(db, 1));
+        assertEquals("0,4", getLogEntryChunkPositions(db, 2));
+        
+        // New chunks are positioned as they are inserted, regardless of the value provided.
+        insertLogEntryChunk(db, 1, 7);
+        insertLogEntryChunk(db, 3, 2);
+        db.execSQL("INSERT INTO log_entry_chunk (session_id, first_synch_timestamp, last_synch_timestamp, "
+                + "entry_count, data, first_entry_position) VALUES (2, 0, 0, 1, X'00', 100)");
+        
+        assertEquals("0,5,5,8", getLogEntryChunkPositions(db, 1));
+        assertEquals("0,4,6", getLogEntryChunkPositions(db, 2));
+        assertEquals("0", getLogEntryChunkPositions(db, 3));
+        
+        assertTrue(getQueryPlan(db, "SELECT _id FROM log_entry_chunk WHERE session_id = 1 "
+                + "AND first_entry_position >= 5 AND first_entry_position < 10")
+                .contains("log_entry_chunk_session_position"));
+    }
+    
+    private static void insertLogEntryChunk(SQLiteDatabase db, int sessionId, int entryCount) {
+        db.execSQL("INSERT INTO log_entry_chunk (session_id, first_synch_timestamp, last_synch_timestamp, "
+                + "entry_count, data) VALUES (?, 0, 0, ?, X'00')", new Object[] {sessionId, entryCount});
+    }
+    
+    private static String getLogEntryChunkPositions(SQLiteDatabase db, int sessionId) {
+        StringBuilder positions = new StringBuilder();
+        Cursor cursor = db.rawQuery("SELECT first_entry_position FROM log_entry_chunk WHERE session_id = ? "
+                + "ORDER BY _id", new String[] {String.valueOf(sessionId)});
+        try {
+            while (cursor.moveToNext()) {
+                if (positions.length() != 0) {
+                    positions.append(',');
+                }
+                positions.append(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return positions.toString();
+    }
+    
+    private static void createVersion1Schema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE session (_id INTEGER PRIMARY KEY,start_date DATE NOT NULL,"
+                + "last_modified_date DATE NOT NULL,split_marker_set_id INTEGER NOT NULL);");
+        
+        db.execSQL("CREATE TABLE log_entry (_id INTEGER PRIMARY KEY,session_id INTEGER NOT NULL,"
+                + "synch_timestamp BIGINT NOT NULL,accel_capture_timestamp BIGINT,longitudinal_accel FLOAT,"
+                + "lateral_accel FLOAT,vertical_accel FLOAT,location_capture_timestamp BIGINT,"
+                + "location_time_in_day BIGINT,latitude DOUBLE,longitude DOUBLE,altitude DOUBLE,speed FLOAT,"
+                + "bearing FLOAT,ecu_capture_timestamp BIGINT,rpm BIGINT,map DOUBLE,mgp DOUBLE,"
+                + "throttle_position DOUBLE,afr DOUBLE,mat DOUBLE,clt DOUBLE,ignition_advance DOUBLE,"
+                + "battery_voltage DOUBLE);");
+        
+        db.execSQL("CREATE TABLE timing_entry (_id INTEGER PRIMARY KEY,session_id INTEGER NOT NULL,"
+                + "synch_timestamp BIGINT NOT NULL,capture_timestamp BIGINT NOT NULL,"
+                + "time_in_day BIGINT NOT NULL,lap INTEGER NOT NULL,lap_time BIGINT,"
+                + "split_index INTEGER NOT NULL,split_time BIGINT);");
+        
+        db.execSQL("CREATE TABLE split_marker_set (_id INTEGER PRIMARY KEY,name VARCHAR(50) NOT NULL);");
+        
+        db.execSQL("CREATE TABLE split_marker (_id INTEGER PRIMARY KEY,split_marker_set_id INTEGER NOT NULL,"
+                + "name VARCHAR(50) NULL,order_index INTEGER NOT NULL,latitude DOUBLE NOT NULL,"
+                + "longitude DOUBLE NOT NULL);");
+    }
+    
+    private static void insertVersion1Data(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO split_marker_set (_id, name) VALUES (1, 'Track')");
+        db.execSQL("INSERT INTO split_marker (split_marker_set_id, name, order_index, latitude, longitude) "
+                + "VALUES (1, 'Start', 0, 38.0, -77.0)");
+        
+        db.execSQL("INSERT INTO session (_id, start_date, last_modified_date, split_marker_set_id) "
+                + "VALUES (1, '2012-06-01 10:00:00', '2012-06-01 10:30:00', 1)");
+        db.execSQL("INSERT INTO session (_id, start_date, last_modified_date, split_marker_set_id) "
+                + "VALUES (2, '2012-06-02 10:00:00', '2012-06-02 10:00:00', 1)");
+        
+        db.execSQL("INSERT INTO log_entry (session_id, synch_timestamp, speed) VALUES (1, 1000, 10.0)");
+        db.execSQL("INSERT INTO log_entry (session_id, synch_timestamp, speed) VALUES (1, 2000, 20.0)");
+        db.execSQL("INSERT INTO log_entry (session_id, synch_timestamp, speed) VALUES (1, 4000, 30.0)");
+        
+        // Start of the first lap, two completed laps, and a split that completes no lap.
+        insertVersion1TimingEntry(db, 1000, 0, null, 0);
+        insertVersion1TimingEntry(db, 2000, 1, 90000L, 0);
+        insertVersion1TimingEntry(db, 3000, 2, null, 1);
+        insertVersion1TimingEntry(db, 4000, 2, 85000L, 0);
+    }
+    
+    private static void insertVersion1TimingEntry(SQLiteDatabase db, long synchTimestamp, int lap,
+            Long lapTime, int splitIndex) {
+        db.execSQL("INSERT INTO timing_entry (session_id, synch_timestamp, capture_timestamp, time_in_day, "
+                + "lap, lap_time, split_index, split_time) VALUES (1, ?, ?, ?, ?, ?, ?, NULL)",
+                new Object[] {synchTimestamp, synchTimestamp, synchTimestamp, lap, lapTime, splitIndex});
+    }
+    
+    private static Set<String> getIndexNames(SQLiteDatabase db) {
+        Set<String> names = new HashSet<String>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index'", null);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+    
+    /**
+     * Returns a description of the tables, columns, indexes and triggers in the database that does not
+     * depend on the formatting of the SQL that created them.
+     */
+    private static Set<String> getSchema(SQLiteDatabase db) {
+        Set<String> schema = new HashSet<String>();
+        List<String> tables = new ArrayList<String>();
+        
+        Cursor cursor = db.rawQuery("SELECT type, name, tbl_name FROM sqlite_master "
+                + "WHERE name NOT LIKE 'sqlite_%' AND name <> 'android_metadata'", null);
+        try {
+            while (cursor.moveToNext()) {
+                schema.add(cursor.getString(0) + " " + cursor.getString(1) + " ON " + cursor.getString(2));
+                if ("table".equals(cursor.getString(0))) {
+                    tables.add(cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        
+        for (String table : tables) {
+            cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            try {
+                while (cursor.moveToNext()) {
+                    schema.add("column " + table + "." + cursor.getString(cursor.getColumnIndex("name"))
+                            + " " + cursor.getString(cursor.getColumnIndex("type"))
+                            + " notnull=" + cursor.getInt(cursor.getColumnIndex("notnull"))
+                            + " default=" + cursor.getString(cursor.getColumnIndex("dflt_value"))
+                            + " pk=" + cursor.getInt(cursor.getColumnIndex("pk")));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        
+        return schema;
+    }
+    
+    private static String getQueryPlan(SQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+    
+    private static final class NoOpDatabaseMigrationListener implements DatabaseMigrationListener {
+        
+        @Override
+        public void migrationStarted(DatabaseMigration migration, int step, int stepCount) {
+        }
+        
+        @Override
+        public void migrationCompleted(DatabaseMigration migration, int step, int stepCount,
+                long elapsedTime) {
+        }
+        
+        @Override
+        public void afterCommitStarted(DatabaseMigration migration) {
+        }
+        
+        @Override
+        public void afterCommitCompleted(DatabaseMigration migration, long elapsedTime) {
+        }
+    }
+}
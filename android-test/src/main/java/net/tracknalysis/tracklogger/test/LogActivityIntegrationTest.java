@@ -301,11 +301,8 @@ public class LogActivityIntegrationTest extends AbstractLogActivityTest {
         
         // Check that all of the log entries were written
         Cursor logEntryCursor = cr.query(
-                TrackLoggerData.LogEntry.CONTENT_URI,
-                null, 
-                TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + "= ?",
-                new String[] { Integer.toString(sessionId) },
-                TrackLoggerData.LogEntry.DEFAULT_SORT_ORDER);
+                TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                null, null, null, null);
         // Use a range because we can't be sure how many NMEA sentences get dropped due to
         // timing issues.
 		assertTrue("Got weird number of entries: " + logEntryCursor.getCount(),
@@ -73,6 +73,9 @@ public class TrackLogger extends Application implements ConfigurationChangeListe
      *   <li>{@link SessionExporterService#EXTRA_EXPORT_FORMAT} - (String) The optional identifier for the desired export format.</li>
      *   <li>{@link SessionExporterService#EXTRA_EXPORT_START_LAP} - (int) The optional value for the lap to start exporting from.</li>
      *   <li>{@link SessionExporterService#EXTRA_EXPORT_STOP_LAP} - (int) The optional value for the lap to stop exporting on.</li>
+     *   <li>{@link SessionExporterService#EXTRA_EXPORT_COMPRESSION} - (String) The optional compression for the export file.</li>
+     *   <li>{@link SessionExporterService#EXTRA_EXPORT_COMPRESSION_LEVEL} - (int) The optional compression level.</li>
+     *   <li>{@link SessionExporterService#EXTRA_EXPORT_INCREMENTAL} - (boolean) Optionally append only the entries logged since the last incremental export.</li>
      * </ul> 
      */
     public static final String ACTION_SESSION_EXPORT = TrackLogger.class
@@ -21,8 +21,12 @@ import java.util.Date;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.tracknalysis.common.util.TimeUtil;
 import net.tracknalysis.tracklogger.R;
 import net.tracknalysis.tracklogger.TrackLogger;
+import net.tracknalysis.tracklogger.config.Configuration;
+import net.tracknalysis.tracklogger.config.ConfigurationFactory;
+import net.tracknalysis.tracklogger.model.SpeedUnit;
 import net.tracknalysis.tracklogger.provider.TrackLoggerData;
 import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
 import android.app.Dialog;
@@ -48,6 +52,11 @@ public class SessionListActivity extends BaseListActivity {
     
     private static final Logger LOG = LoggerFactory.getLogger(SessionListActivity.class);
     
+    private static final double METERS_PER_MILE = 1609.344d;
+    private static final double METERS_PER_KILOMETER = 1000d;
+    
+    private final Configuration config = ConfigurationFactory.getInstance().getConfiguration();
+    
     private Dialog contextMenuItemConfirmDialog;
     private DateFormat dateFormat;
     private DateFormat timeFormat;
@@ -59,21 +68,30 @@ public class SessionListActivity extends BaseListActivity {
         dateFormat = android.text.format.DateFormat.getMediumDateFormat(this);
         timeFormat = android.text.format.DateFormat.getTimeFormat(this);
         
+        // The summaries are maintained as the session is logged so the list never scans log entries.
         String[] projection = new String[] {
                 TrackLoggerData.Session._ID,
                 TrackLoggerData.Session.COLUMN_NAME_START_DATE,
-                TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE};
+                TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_DISTANCE,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_TOP_SPEED,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_MIN_CORNER_SPEED};
         
-        Cursor cursor = managedQuery(TrackLoggerData.Session.CONTENT_URI,
+        Cursor cursor = managedQuery(TrackLoggerData.SessionSummary.CONTENT_URI,
                 projection, null, null, TrackLoggerData.Session.COLUMN_NAME_START_DATE + " ASC");
         
         String[] from = new String[] {
                 TrackLoggerData.Session._ID,
-                TrackLoggerData.Session.COLUMN_NAME_START_DATE};
+                TrackLoggerData.Session.COLUMN_NAME_START_DATE,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION};
         
         int[] to = new int[] {
                 R.id.sessionId,
-                R.id.createdDate};
+                R.id.createdDate,
+                R.id.sessionSummary};
         
         SimpleCursorAdapter adapter = new SimpleCursorAdapter(
                   this, R.layout.session_list_item, cursor, from, to);
@@ -82,6 +100,7 @@ public class SessionListActivity extends BaseListActivity {
             @Override
             public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
                 int startTimeColumnIndex = cursor.getColumnIndex(TrackLoggerData.Session.COLUMN_NAME_START_DATE);
+                int durationColumnIndex = cursor.getColumnIndex(TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION);
                 boolean bound = false;
                 
                 if (startTimeColumnIndex == columnIndex) {
@@ -93,6 +112,14 @@ public class SessionListActivity extends BaseListActivity {
                         throw new IllegalStateException("This binder can only bind the start time to a text view.");
                     }
                     
+                    bound = true;
+                } else if (durationColumnIndex == columnIndex) {
+                    if (view instanceof TextView) {
+                        ((TextView) view).setText(formatSummary(cursor));
+                    } else {
+                        throw new IllegalStateException("This binder can only bind the summary to a text view.");
+                    }
+                    
                     bound = true;
                 }
                 
@@ -185,6 +212,70 @@ public class SessionListActivity extends BaseListActivity {
         return dateFormat.format(startDate) + " " + timeFormat.format(startDate);
     }
     
+    private String formatSummary(Cursor cursor) {
+        int durationColumnIndex = cursor.getColumnIndex(TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION);
+        int distanceColumnIndex = cursor.getColumnIndex(TrackLoggerData.SessionSummary.COLUMN_NAME_DISTANCE);
+        int lapCountColumnIndex = cursor.getColumnIndex(TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT);
+        int bestLapTimeColumnIndex = cursor.getColumnIndex(TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME);
+        
+        if (cursor.isNull(durationColumnIndex)) {
+            return getString(R.string.session_list_summary_unavailable);
+        }
+        
+        String distance;
+        if (cursor.isNull(distanceColumnIndex)) {
+            distance = getString(R.string.session_list_summary_no_value);
+        } else if (config.getDisplaySpeedUnit() == SpeedUnit.MPH) {
+            distance = getString(R.string.session_list_summary_distance_mi,
+                    cursor.getDouble(distanceColumnIndex) / METERS_PER_MILE);
+        } else {
+            distance = getString(R.string.session_list_summary_distance_km,
+                    cursor.getDouble(distanceColumnIndex) / METERS_PER_KILOMETER);
+        }
+        
+        String bestLapTime;
+        if (cursor.isNull(bestLapTimeColumnIndex)) {
+            bestLapTime = getString(R.string.session_list_summary_no_value);
+        } else {
+            bestLapTime = TimeUtil.formatDuration(cursor.getLong(bestLapTimeColumnIndex), false, true);
+        }
+        
+        String summary = getString(R.string.session_list_summary,
+                TimeUtil.formatDuration(cursor.getLong(durationColumnIndex), false, true),
+                distance,
+                cursor.getInt(lapCountColumnIndex),
+                bestLapTime);
+        
+        int topSpeedColumnIndex = cursor.getColumnIndex(TrackLoggerData.SessionSummary.COLUMN_NAME_TOP_SPEED);
+        int minCornerSpeedColumnIndex = cursor.getColumnIndex(
+                TrackLoggerData.SessionSummary.COLUMN_NAME_MIN_CORNER_SPEED);
+        
+        // Only sessions with a completed lap have lap statistics.
+        if (!cursor.isNull(topSpeedColumnIndex)) {
+            summary = getString(R.string.session_list_summary_speeds,
+                    summary,
+                    formatSpeed(cursor, topSpeedColumnIndex),
+                    formatSpeed(cursor, minCornerSpeedColumnIndex));
+        }
+        
+        return summary;
+    }
+    
+    private String formatSpeed(Cursor cursor, int speedColumnIndex) {
+        if (cursor.isNull(speedColumnIndex)) {
+            return getString(R.string.session_list_summary_no_value);
+        }
+        
+        SpeedUnit speedUnit = config.getDisplaySpeedUnit();
+        float speed = speedUnit.fromMps(cursor.getFloat(speedColumnIndex));
+        
+        if (speedUnit == SpeedUnit.MPH) {
+            return getString(R.string.session_list_summary_speed_mph, speed);
+        } else {
+            return getString(R.string.session_list_summary_speed_kph, speed);
+        }
+    }
+    
     private void confirmDelete(final int sessionId, final String sessionStartDate) {
         if (contextMenuItemConfirmDialog != null) {
             contextMenuItemConfirmDialog.dismiss();
@@ -73,6 +73,32 @@ public interface Configuration {
         }
     }
     
+    /**
+     * The formats in which the log entries of a session may be stored.  The compact formats round values
+     * to the fixed precision of each {@link net.tracknalysis.tracklogger.model.encoding.CompactChannel}.
+     */
+    public static enum LogStorageFormat {
+        /**
+         * One row per entry with values stored at full precision.
+         */
+        ROWS,
+        
+        /**
+         * One row per entry with values stored as fixed-point integers.
+         */
+        COMPACT_ROWS,
+        
+        /**
+         * Encoded chunks of consecutive entries.
+         */
+        CHUNKED,
+        
+        /**
+         * One row per entry with values stored at full precision in a database file of the session's own.
+         */
+        SESSION_FILE;
+    }
+    
     /**
      * Returns the log level for the root logger in the application.
      */
@@ -133,6 +159,16 @@ public interface Configuration {
      */
     void setLogLayoutId(int id);
     
+    /**
+     * Returns the format in which the log entries of new sessions are stored.
+     */
+    LogStorageFormat getLogStorageFormat();
+    
+    /**
+     * @see #getLogStorageFormat()
+     */
+    void setLogStorageFormat(LogStorageFormat format);
+    
     /**
      * Returns the unit in which speed should be displayed to the user in the application.
      */
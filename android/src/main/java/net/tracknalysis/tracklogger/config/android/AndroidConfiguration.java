@@ -56,6 +56,7 @@ public class AndroidConfiguration implements Configuration, OnSharedPreferenceCh
     private static final String ECU_IO_LOG_ENABLED_KEY = "ecu.io.log.enable";
     private static final String LOCATION_BT_ADDRESS_KEY = "location.bt.address";
     private static final String LOG_LAYOUT_ID_KEY = "log.layout.id";
+    private static final String LOG_STORAGE_FORMAT_KEY = "log.storage.format";
     private static final String DISPLAY_UNITS_SPEED_KEY = "display.units.speed";
     private static final String DISPLAY_UNITS_TEMPERATURE_KEY = "display.units.temperature";
     private static final String DISPLAY_UNITS_PRESSURE_KEY = "display.units.pressure";
@@ -83,6 +84,7 @@ public class AndroidConfiguration implements Configuration, OnSharedPreferenceCh
     private static final boolean ECU_ENABLED_DEFAULT = false;
     private static final boolean ECU_IO_LOG_ENABLED_DEFAULT = false;
     private static final int LOG_LAYOUT_ID_DEFAULT = R.layout.log_default;
+    private static final LogStorageFormat LOG_STORAGE_FORMAT_DEFAULT = LogStorageFormat.ROWS;
     private static final SpeedUnit DISPLAY_UNITS_SPEED_DEFAULT = SpeedUnit.MPH;
     private static final TemperatureUnit DISPLAY_UNITS_TEMPERATURE_DEFAULT = TemperatureUnit.F;
     private static final PressureUnit DISPLAY_UNITS_PRESSURE_DEFAULT = PressureUnit.PSI;
@@ -188,6 +190,30 @@ public class AndroidConfiguration implements Configuration, OnSharedPreferenceCh
         editor.commit();   
     }
     
+    @Override
+    public LogStorageFormat getLogStorageFormat() {
+        String value = sharedPrefs.getString(LOG_STORAGE_FORMAT_KEY, LOG_STORAGE_FORMAT_DEFAULT.name());
+        
+        LogStorageFormat format;
+        try {
+            format = LogStorageFormat.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Unknown log storage format name [" + value + "].  Defaulting to "
+                    + LOG_STORAGE_FORMAT_DEFAULT + ".");
+            format = LOG_STORAGE_FORMAT_DEFAULT;
+            setLogStorageFormat(format);
+        }
+        
+        return format;
+    }
+    
+    @Override
+    public void setLogStorageFormat(LogStorageFormat format) {
+        Editor editor = sharedPrefs.edit();
+        editor.putString(LOG_STORAGE_FORMAT_KEY, format.name());
+        editor.commit();
+    }
+    
     @Override
     public SpeedUnit getDisplaySpeedUnit() {
         String value = sharedPrefs.getString(DISPLAY_UNITS_SPEED_KEY, DISPLAY_UNITS_SPEED_DEFAULT.name());
@@ -511,6 +537,10 @@ public class AndroidConfiguration implements Configuration, OnSharedPreferenceCh
             setLogLayoutId(LOG_LAYOUT_ID_DEFAULT);
         }
         
+        if (!sharedPrefs.contains(LOG_STORAGE_FORMAT_KEY)) {
+            setLogStorageFormat(LOG_STORAGE_FORMAT_DEFAULT);
+        }
+        
         if (!sharedPrefs.contains(DISPLAY_UNITS_SPEED_KEY)) {
             setDisplaySpeedUnit(DISPLAY_UNITS_SPEED_DEFAULT);
         }
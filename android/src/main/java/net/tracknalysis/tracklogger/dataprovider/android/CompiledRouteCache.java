@@ -0,0 +1,160 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider.android;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.tracklogger.dataprovider.timing.CompiledRoute;
+
+/**
+ * Persists {@link CompiledRoute}s to a cache directory as small binary files keyed by split marker set ID
+ * and a stamp identifying the revision of the split marker set content.  At most one entry is retained
+ * per split marker set.  Failures reading or writing the cache are logged and treated as a cache miss
+ * as the cache is strictly an optimization.
+ *
+ * @author David Valeri
+ */
+public class CompiledRouteCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledRouteCache.class);
+
+    private static final String FILE_PREFIX = "route-";
+    private static final String FILE_EXTENSION = ".bin";
+
+    private final File cacheDir;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param cacheDir the directory in which to store entries, created if it does not exist
+     */
+    public CompiledRouteCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns the cached compiled route for the split marker set or {@code null} if there is no entry
+     * for the given revision of the split marker set.
+     *
+     * @param splitMarkerSetId the ID of the split marker set
+     * @param stamp the revision stamp of the split marker set
+     */
+    public CompiledRoute get(int splitMarkerSetId, long stamp) {
+        File file = getFile(splitMarkerSetId, stamp);
+
+        if (!file.isFile()) {
+            LOG.debug("No compiled route cached for split marker set [{}] with stamp [{}].",
+                    splitMarkerSetId, stamp);
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            return CompiledRoute.readFrom(in);
+        } catch (IOException e) {
+            LOG.warn("Error reading cached compiled route from [" + file + "].  Discarding entry.", e);
+            if (!file.delete()) {
+                LOG.warn("Could not delete cached compiled route [{}].", file);
+            }
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the compiled route for the split marker set, replacing any entries for other revisions of
+     * the split marker set.
+     *
+     * @param splitMarkerSetId the ID of the split marker set
+     * @param stamp the revision stamp of the split marker set
+     * @param compiledRoute the compiled route to store
+     */
+    public void put(int splitMarkerSetId, long stamp, CompiledRoute compiledRoute) {
+
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            LOG.warn("Could not create compiled route cache directory [{}].", cacheDir);
+            return;
+        }
+
+        evict(splitMarkerSetId);
+
+        File file = getFile(splitMarkerSetId, stamp);
+        File tempFile = new File(cacheDir, file.getName() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            compiledRoute.writeTo(out);
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not rename [" + tempFile + "] to [" + file + "].");
+            }
+        } catch (IOException e) {
+            LOG.warn("Error writing compiled route to cache file [" + file + "].", e);
+            tempFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Removes all entries for the split marker set.
+     *
+     * @param splitMarkerSetId the ID of the split marker set
+     */
+    public void evict(int splitMarkerSetId) {
+        File[] files = cacheDir.listFiles();
+
+        if (files != null) {
+            String prefix = FILE_PREFIX + splitMarkerSetId + "-";
+            for (File file : files) {
+                if (file.getName().startsWith(prefix) && !file.delete()) {
+                    LOG.warn("Could not delete cached compiled route [{}].", file);
+                }
+            }
+        }
+    }
+
+    protected File getFile(int splitMarkerSetId, long stamp) {
+        return new File(cacheDir, FILE_PREFIX + splitMarkerSetId + "-"
+                + Long.toHexString(stamp) + FILE_EXTENSION);
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing compiled route cache file.", e);
+            }
+        }
+    }
+}
@@ -17,8 +17,9 @@ package net.tracknalysis.tracklogger.dataprovider.android;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -35,6 +36,7 @@ import net.tracknalysis.location.nmea.NmeaLocationManager;
 import net.tracknalysis.tracklogger.R;
 import net.tracknalysis.tracklogger.activity.LogActivity;
 import net.tracknalysis.tracklogger.config.Configuration;
+import net.tracknalysis.tracklogger.config.Configuration.LogStorageFormat;
 import net.tracknalysis.tracklogger.config.ConfigurationFactory;
 import net.tracknalysis.tracklogger.dataprovider.AccelDataProvider;
 import net.tracknalysis.tracklogger.dataprovider.EcuDataProvider;
@@ -43,9 +45,12 @@ import net.tracknalysis.tracklogger.dataprovider.TimingDataProvider;
 import net.tracknalysis.tracklogger.dataprovider.TrackLoggerDataProviderCoordinator;
 import net.tracknalysis.tracklogger.dataprovider.ecu.MegasquirtEcuDataProvider;
 import net.tracknalysis.tracklogger.dataprovider.location.LocationManagerLocationDataProvider;
+import net.tracknalysis.tracklogger.dataprovider.timing.CompiledRoute;
 import net.tracknalysis.tracklogger.dataprovider.timing.RouteManagerTimingDataProvider;
+import net.tracknalysis.tracklogger.model.LapSummary;
 import net.tracknalysis.tracklogger.model.LogEntry;
 import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
 import net.tracknalysis.tracklogger.provider.TrackLoggerData;
 import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
 import android.annotation.SuppressLint;
@@ -71,6 +76,14 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
     
     private static final Logger LOG = LoggerFactory.getLogger(ServiceBasedTrackLoggerDataProviderCoordinator.class);
     
+    private static final String COMPILED_ROUTE_CACHE_DIR = "compiled-routes";
+    
+    /**
+     * The number of log entries buffered before writing a chunk for sessions using the chunked storage
+     * format.  About five seconds of data at a typical GPS update rate.
+     */
+    private static final int LOG_ENTRY_CHUNK_SIZE = 50;
+    
     private final Context context;
     private final BluetoothAdapter btAdapter;
     @SuppressLint("SimpleDateFormat")
@@ -78,6 +91,9 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
     private final DataProviderCoordinatorManagerService dataProviderCoordinatorService;
     private Uri splitMarkerSetUri;
     private AtomicLong logEntryCounter = new AtomicLong();
+    private volatile int storageFormat = TrackLoggerData.Session.STORAGE_FORMAT_ROWS;
+    private final List<LogEntry> logEntryChunk = new ArrayList<LogEntry>(LOG_ENTRY_CHUNK_SIZE * 2);
+    private final LogEntryChunkCodec logEntryChunkCodec = new LogEntryChunkCodec();
     
     // Accel
     protected AccelDataProvider accelDataProvider;
@@ -193,43 +209,101 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
                 locationManager.getRouteManager(), getRoute(config));
     }
     
+    /**
+     * Returns the route to use for timing.  By default, the route is built from the compiled form of
+     * the split marker set provided to the coordinator.
+     *
+     * @param config the application configuration
+     *
+     * @see #getCompiledRoute(Configuration)
+     */
     protected Route getRoute(Configuration config) {
+        return getCompiledRoute(config).toRoute();
+    }
+    
+    /**
+     * Returns the compiled route for the split marker set provided to the coordinator.  The compiled
+     * route is served from the {@link CompiledRouteCache} when the modification stamp of the split marker
+     * set has not changed since it was last compiled, in which case the split markers are not queried.
+     * Otherwise, the route is compiled from the split markers and the cache updated.
+     *
+     * @param config the application configuration
+     */
+    protected CompiledRoute getCompiledRoute(Configuration config) {
         
         if (splitMarkerSetUri == null) {
             throw new IllegalStateException("No split marker set URI provided.");
         }
         
+        int splitMarkerSetId = Integer.valueOf(splitMarkerSetUri
+                .getPathSegments().get(
+                        TrackLoggerData.SplitMarkerSet.ID_PATH_POSITION));
+        long stamp = getSplitMarkerSetModificationStamp();
+        
+        CompiledRouteCache cache = new CompiledRouteCache(
+                new File(context.getCacheDir(), COMPILED_ROUTE_CACHE_DIR));
+        
+        CompiledRoute compiledRoute = cache.get(splitMarkerSetId, stamp);
+        
+        if (compiledRoute == null) {
+            LOG.debug("Compiling route for split marker set with URI [{}].", splitMarkerSetUri);
+            compiledRoute = CompiledRoute.compile(new Route("Split Markers", getWaypoints(splitMarkerSetId)));
+            cache.put(splitMarkerSetId, stamp, compiledRoute);
+        } else {
+            LOG.debug("Using cached compiled route for split marker set with URI [{}].", splitMarkerSetUri);
+        }
+        
+        return compiledRoute;
+    }
+    
+    private long getSplitMarkerSetModificationStamp() {
         Cursor cursor = null;
         
-        List<Waypoint> waypoints = new LinkedList<Waypoint>();
+        try {
+            cursor = context.getContentResolver().query(
+                    splitMarkerSetUri,
+                    new String[] {TrackLoggerData.SplitMarkerSet.COLUMN_NAME_MODIFICATION_STAMP},
+                    null, null, null);
+            
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            } else {
+                throw new IllegalStateException(
+                        "No split marker set found with URI [" + splitMarkerSetUri + "].");
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
+    private List<Waypoint> getWaypoints(int splitMarkerSetId) {
+        Cursor cursor = null;
+        
+        List<Waypoint> waypoints = new ArrayList<Waypoint>();
         int counter = 1;
+        
         try {
-            int splitMarkerSetId = Integer.valueOf(splitMarkerSetUri
-                    .getPathSegments().get(
-                            TrackLoggerData.SplitMarkerSet.ID_PATH_POSITION));
             cursor = context.getContentResolver().query(
                     TrackLoggerData.SplitMarker.CONTENT_URI,
-                    null,
+                    new String[] {
+                            TrackLoggerData.SplitMarker.COLUMN_NAME_LATITUDE,
+                            TrackLoggerData.SplitMarker.COLUMN_NAME_LONGITUDE},
                     TrackLoggerData.SplitMarker.COLUMN_NAME_SPLIT_MARKER_SET_ID + " = ?",
                     new String[] {String.valueOf(splitMarkerSetId)},
                     null);
             
             if (cursor.moveToFirst()) {
+                int latIndex = cursor.getColumnIndex(TrackLoggerData.SplitMarker.COLUMN_NAME_LATITUDE);
+                int lonIndex = cursor.getColumnIndex(TrackLoggerData.SplitMarker.COLUMN_NAME_LONGITUDE);
+                
                 while (!cursor.isAfterLast()) {
-                    
-                    double lat = cursor
-                            .getDouble(cursor
-                                    .getColumnIndex(TrackLoggerData.SplitMarker.COLUMN_NAME_LATITUDE));
-                    
-                    double lon = cursor
-                            .getDouble(cursor
-                                    .getColumnIndex(TrackLoggerData.SplitMarker.COLUMN_NAME_LONGITUDE));
-                    
                     waypoints.add(
                             new Waypoint(
                                     String.valueOf(counter++),
-                                    lat,
-                                    lon));
+                                    cursor.getDouble(latIndex),
+                                    cursor.getDouble(lonIndex)));
                     
                     cursor.moveToNext();
                 }
@@ -243,8 +317,8 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
             }
         }
         
-        return new Route("Split Markers", waypoints);
-    }   
+        return waypoints;
+    }
     
     @Override
     @SuppressWarnings("deprecation") // Fix not available until API 11
@@ -344,6 +418,10 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
                         .getPathSegments().get(
                                 TrackLoggerData.SplitMarkerSet.ID_PATH_POSITION)));
         
+        storageFormat = getStorageFormat(ConfigurationFactory.getInstance().getConfiguration()
+                .getLogStorageFormat());
+        cv.put(TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT, storageFormat);
+        
         Uri currentSessionUri = context.getContentResolver().insert(
                 TrackLoggerData.Session.CONTENT_URI, cv);
         return Integer.parseInt(currentSessionUri.getPathSegments().get(
@@ -372,6 +450,9 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
                         cursor.getInt(cursor
                                 .getColumnIndex(
                                         TrackLoggerData.Session.COLUMN_NAME_SPLIT_MARKER_SET_ID)));
+                // Resumed sessions keep the format they were created with.
+                storageFormat = cursor.getInt(cursor.getColumnIndex(
+                        TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT));
             }
             
         } finally {
@@ -389,21 +470,159 @@ public class ServiceBasedTrackLoggerDataProviderCoordinator extends
             throw new IllegalStateException();
         }
     }
+    
+    @Override
+    protected LapSummary getLastLapSummary(int sessionId) {
+        Cursor cursor = null;
+        
+        try {
+            cursor = context.getContentResolver().query(
+                    TrackLoggerData.LapSummary.CONTENT_URI,
+                    new String[] {
+                            TrackLoggerData.LapSummary.COLUMN_NAME_LAP,
+                            TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX,
+                            TrackLoggerData.LapSummary.COLUMN_NAME_END_SYNCH_TIMESTAMP},
+                    TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID + " = ?",
+                    new String[] {String.valueOf(sessionId)},
+                    TrackLoggerData.LapSummary._ID + " DESC");
+            
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            
+            LapSummary lapSummary = new LapSummary();
+            lapSummary.setSessionId(sessionId);
+            lapSummary.setLap(cursor.getInt(0));
+            lapSummary.setSplitIndex(cursor.isNull(1) ? null : cursor.getInt(1));
+            lapSummary.setEndSynchTimestamp(cursor.getLong(2));
+            
+            return lapSummary;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Updates the last modified date of the session, which also writes the final
+     * {@link TrackLoggerData.SessionSummary summary} of the session.
+     */
+    @Override
+    protected void closeSession(int sessionId) {
+        ContentValues cv = new ContentValues();
+        cv.put(TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE,
+                formatAsSqlDate(new Date()));
+        
+        context.getContentResolver().update(
+                ContentUris.withAppendedId(TrackLoggerData.Session.CONTENT_ID_URI_BASE, sessionId),
+                cv, null, null);
+    }
 
     @Override
     protected void storeLogEntry(LogEntry logEntry) {
+        if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED) {
+            storeLogEntries(Collections.singletonList(logEntry));
+            return;
+        }
+        
         LOG.debug("Writing log entry {} to session with ID {}.",
                 logEntryCounter.getAndIncrement(), logEntry.getSessionId());
         
         ContentResolver cr = context.getContentResolver();
-        ContentValues cv = TrackLoggerDataUtil.toContentValues(logEntry); 
-        cr.insert(TrackLoggerData.LogEntry.CONTENT_URI, cv);
+        ContentValues cv = toContentValues(logEntry); 
+        cr.insert(TrackLoggerData.Session.getLogEntriesUri(logEntry.getSessionId()), cv);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * For sessions using the chunked storage format, entries are buffered and written as a single
+     * chunk once {@link #LOG_ENTRY_CHUNK_SIZE} entries are buffered, a timing entry is stored, or logging
+     * stops.
+     */
+    @Override
+    protected void storeLogEntries(List<LogEntry> logEntries) {
+        if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED) {
+            logEntryChunk.addAll(logEntries);
+            
+            if (logEntryChunk.size() >= LOG_ENTRY_CHUNK_SIZE) {
+                flushLogEntries();
+            }
+            
+            return;
+        }
+        
+        LOG.debug("Writing {} log entries to session with ID {}.",
+                logEntries.size(), logEntries.get(0).getSessionId());
+        
+        ContentValues[] cvs = new ContentValues[logEntries.size()];
+        for (int i = 0; i < cvs.length; i++) {
+            cvs[i] = toContentValues(logEntries.get(i));
+        }
+        
+        logEntryCounter.addAndGet(cvs.length);
+        context.getContentResolver().bulkInsert(
+                TrackLoggerData.Session.getLogEntriesUri(logEntries.get(0).getSessionId()), cvs);
+    }
+
+    private ContentValues toContentValues(LogEntry logEntry) {
+        if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_COMPACT_ROWS) {
+            return TrackLoggerDataUtil.toCompactContentValues(logEntry);
+        } else {
+            return TrackLoggerDataUtil.toContentValues(logEntry);
+        }
+    }
+    
+    private int getStorageFormat(LogStorageFormat logStorageFormat) {
+        switch (logStorageFormat) {
+            case COMPACT_ROWS:
+                return TrackLoggerData.Session.STORAGE_FORMAT_COMPACT_ROWS;
+            case CHUNKED:
+                return TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED;
+            case SESSION_FILE:
+                return TrackLoggerData.Session.STORAGE_FORMAT_SESSION_FILE;
+            default:
+                return TrackLoggerData.Session.STORAGE_FORMAT_ROWS;
+        }
+    }
+    
+    @Override
+    protected void flushLogEntries() {
+        if (!logEntryChunk.isEmpty()) {
+            LOG.debug("Writing chunk of {} log entries to session with ID {}.",
+                    logEntryChunk.size(), logEntryChunk.get(0).getSessionId());
+            
+            ContentValues cv = TrackLoggerDataUtil.toContentValues(logEntryChunk, logEntryChunkCodec);
+            logEntryCounter.addAndGet(logEntryChunk.size());
+            logEntryChunk.clear();
+            context.getContentResolver().insert(TrackLoggerData.LogEntryChunk.CONTENT_URI, cv);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * For sessions using the chunked storage format, buffered log entries are written first so that the
+     * log entries preceding the timing entry are stored before it.
+     */
     @Override
     protected void storeTimingEntry(TimingEntry timingEntry) {
+        if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED) {
+            flushLogEntries();
+        }
+        
         ContentResolver cr = context.getContentResolver();
         ContentValues cv = TrackLoggerDataUtil.toContentValues(timingEntry);
         cr.insert(TrackLoggerData.TimingEntry.CONTENT_URI, cv);
     }
+    
+    @Override
+    protected void storeLapSummary(LapSummary lapSummary) {
+        ContentResolver cr = context.getContentResolver();
+        ContentValues cv = TrackLoggerDataUtil.toContentValues(lapSummary);
+        cr.insert(TrackLoggerData.LapSummary.CONTENT_URI, cv);
+    }
 }
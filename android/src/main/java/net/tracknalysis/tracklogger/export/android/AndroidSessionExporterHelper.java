@@ -15,6 +15,9 @@
  */
 package net.tracknalysis.tracklogger.export.android;
 
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.database.Cursor;
 
 /**
@@ -27,19 +30,79 @@ class AndroidSessionExporterHelper {
     private AndroidSessionExporterHelper() {
     }
     
-    static Double getDoubleOrNull(int columnIndex, Cursor cursor) {
-        return cursor.isNull(columnIndex) ? null : cursor.getDouble(columnIndex);
+    static Long getLongOrNull(int columnIndex, Cursor cursor) {
+        return cursor.isNull(columnIndex) ? null : cursor.getLong(columnIndex);
     }
     
-    static Float getFloatOrNull(int columnIndex, Cursor cursor) {
-        return cursor.isNull(columnIndex) ? null : cursor.getFloat(columnIndex);
+    /**
+     * Returns the number of log entries in the session as recorded in its summary, or 0 if the session
+     * has no summary.  Used to report progress without counting the entries up front.
+     */
+    static int getLogEntryCount(ContentResolver cr, int sessionId) {
+        Cursor summaryCursor = cr.query(
+                ContentUris.withAppendedId(TrackLoggerData.SessionSummary.CONTENT_ID_URI_BASE, sessionId),
+                new String[] { TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT },
+                null, null, null);
+        
+        try {
+            if (summaryCursor.moveToFirst() && !summaryCursor.isNull(0)) {
+                return summaryCursor.getInt(0);
+            } else {
+                return 0;
+            }
+        } finally {
+            summaryCursor.close();
+        }
     }
     
-    static Integer getIntegerOrNull(int columnIndex, Cursor cursor) {
-        return cursor.isNull(columnIndex) ? null : cursor.getInt(columnIndex);
+    /**
+     * Returns the ID of the last log entry in the session, or {@code null} if the session has no log
+     * entries.  Used to bound the entries of the open-ended last lap of a session, whose lap index entry
+     * has no end log entry ID.
+     */
+    static Long getLastLogEntryId(ContentResolver cr, int sessionId) {
+        Cursor logEntryCursor = cr.query(
+                TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                new String[] { TrackLoggerData.LogEntry._ID },
+                null, null,
+                TrackLoggerData.LogEntry._ID + " DESC");
+        
+        try {
+            if (logEntryCursor.moveToFirst()) {
+                return logEntryCursor.getLong(0);
+            } else {
+                return null;
+            }
+        } finally {
+            logEntryCursor.close();
+        }
     }
     
-    static Long getLongOrNull(int columnIndex, Cursor cursor) {
-        return cursor.isNull(columnIndex) ? null : cursor.getLong(columnIndex);
+    /**
+     * Returns a string that changes whenever the content of the session changes, or {@code null} if the
+     * session has no summary.  The last modified date of a session only changes when it is opened or
+     * closed, so the version includes the entry and lap counts from the summary, which is written every
+     * few entries while the session is logged.  The version of a session being logged may therefore lag
+     * its content by a few entries.
+     */
+    static String getSessionVersion(ContentResolver cr, int sessionId) {
+        Cursor summaryCursor = cr.query(
+                ContentUris.withAppendedId(TrackLoggerData.SessionSummary.CONTENT_ID_URI_BASE, sessionId),
+                new String[] {
+                        TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE,
+                        TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT,
+                        TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT },
+                null, null, null);
+        
+        try {
+            if (summaryCursor.moveToFirst() && !summaryCursor.isNull(1)) {
+                return summaryCursor.getString(0) + "|" + summaryCursor.getLong(1) + "|"
+                        + summaryCursor.getLong(2);
+            } else {
+                return null;
+            }
+        } finally {
+            summaryCursor.close();
+        }
     }
 }
@@ -0,0 +1,332 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export.android;
+
+import static net.tracknalysis.tracklogger.export.android.AndroidSessionExporterHelper.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.tracklogger.export.ExportCheckpoint;
+import net.tracknalysis.tracklogger.export.LogEntryRow;
+import net.tracknalysis.tracklogger.export.LogTimingMergeJoin;
+import net.tracknalysis.tracklogger.provider.PagedRecordIterator;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+/**
+ * Reads the log entries of a session in a range of laps as {@link LogEntryRow}s tagged with their lap and
+ * split through a {@link LogTimingMergeJoin}.  When the session has been indexed, the queries are restricted
+ * to the entries in the requested laps.  Shared by the exporters that write one row per log entry.
+ * <p/>
+ * A reader may also resume after the last entry read by an earlier reader, as recorded in an
+ * {@link ExportCheckpoint}, to read only the entries logged since.
+ *
+ * @author David Valeri
+ */
+final class AndroidSessionRowReader implements Closeable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(AndroidSessionRowReader.class);
+    
+    private final ContentResolver cr;
+    private final int sessionId;
+    private Long startLogEntryId;
+    private Long endLogEntryId;
+    private PagedRecordIterator logEntries;
+    private Cursor timingEntryCursor;
+    private CursorTimingRecordSource timingRecords;
+    private LogTimingMergeJoin join;
+    private LogEntryRowCursorAdapter logEntryRowAdapter;
+    private int logEntryIdColumnIndex;
+    private long lastLogEntryId = -1;
+    private long lastTimingEntryId = -1;
+    
+    /**
+     * @param cr the resolver to query
+     * @param sessionId the ID of the session to read
+     * @param startLap the first lap to read, or {@code null} to start with the first lap
+     * @param endLap the last lap to read, or {@code null} to read to the end of the session
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     */
+    AndroidSessionRowReader(ContentResolver cr, int sessionId, Integer startLap, Integer endLap,
+            int splitMarkerCount) {
+        
+        this.cr = cr;
+        this.sessionId = sessionId;
+        
+        boolean initialized = false;
+        
+        try {
+            List<String> logEntrySelectionArgs = new ArrayList<String>();
+            List<String> timingEntrySelectionArgs = new ArrayList<String>();
+            // The session log entries URI restricts the log entries to the session.
+            StringBuilder logEntrySelection = new StringBuilder();
+            StringBuilder timingEntrySelection = new StringBuilder(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + "= ?");
+            timingEntrySelectionArgs.add(Integer.toString(sessionId));
+            
+            // Restrict the queries to the requested laps when the session has been indexed.  Sessions
+            // stored in chunks have no log entry IDs in the index and are always read in full.  The timing
+            // entry starting the first requested lap lines up with the first log entry in the range, so
+            // the lap and split numbering below works the same as for a full export.
+            Long startTimingEntryId = null;
+            Long startLogEntryId = null;
+            Long endLogEntryId = null;
+            
+            if (startLap != null) {
+                Cursor lapIndexCursor = queryLapIndex(cr, sessionId, startLap);
+                try {
+                    if (lapIndexCursor.moveToFirst()) {
+                        startTimingEntryId = getLongOrNull(lapIndexCursor.getColumnIndexOrThrow(
+                                TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID), lapIndexCursor);
+                        startLogEntryId = getLongOrNull(lapIndexCursor.getColumnIndexOrThrow(
+                                TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID), lapIndexCursor);
+                    }
+                } finally {
+                    lapIndexCursor.close();
+                }
+            }
+            
+            if (endLap != null) {
+                Cursor lapIndexCursor = queryLapIndex(cr, sessionId, endLap);
+                try {
+                    if (lapIndexCursor.moveToFirst()) {
+                        endLogEntryId = getLongOrNull(lapIndexCursor.getColumnIndexOrThrow(
+                                TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID), lapIndexCursor);
+                    }
+                } finally {
+                    lapIndexCursor.close();
+                }
+            }
+            
+            if (startTimingEntryId != null && startLogEntryId != null) {
+                LOG.debug("Using lap index for session with ID {}.  Starting at log entry {} and timing entry {}.",
+                        new Object[] {sessionId, startLogEntryId, startTimingEntryId});
+            
+                logEntrySelection.append(TrackLoggerData.LogEntry._ID).append(" >= ?");
+                logEntrySelectionArgs.add(startLogEntryId.toString());
+                timingEntrySelection.append(" AND ").append(TrackLoggerData.TimingEntry._ID).append(" >= ?");
+                timingEntrySelectionArgs.add(startTimingEntryId.toString());
+            }
+            
+            if (endLogEntryId != null) {
+                if (logEntrySelection.length() != 0) {
+                    logEntrySelection.append(" AND ");
+                }
+                logEntrySelection.append(TrackLoggerData.LogEntry._ID).append(" <= ?");
+                logEntrySelectionArgs.add(endLogEntryId.toString());
+            }
+            
+            // The log entries are read a page at a time so that long sessions are not read through a
+            // single cursor window.
+            if (logEntrySelection.length() == 0) {
+                logEntries = new PagedRecordIterator(cr, TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                        null, null, null);
+            } else {
+                logEntries = new PagedRecordIterator(cr, TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                        null, logEntrySelection.toString(),
+                        logEntrySelectionArgs.toArray(new String[logEntrySelectionArgs.size()]));
+            }
+            
+            timingEntryCursor = cr.query(
+                    TrackLoggerData.TimingEntry.CONTENT_URI, null,
+                    timingEntrySelection.toString(),
+                    timingEntrySelectionArgs.toArray(new String[timingEntrySelectionArgs.size()]),
+                    TrackLoggerData.TimingEntry.DEFAULT_SORT_ORDER);
+            
+            this.startLogEntryId = startLogEntryId;
+            this.endLogEntryId = endLogEntryId;
+            
+            logEntryRowAdapter = new LogEntryRowCursorAdapter(logEntries);
+            logEntryIdColumnIndex = logEntries.getColumnIndexOrThrow(TrackLoggerData.LogEntry._ID);
+            timingRecords = new CursorTimingRecordSource(timingEntryCursor);
+            join = new LogTimingMergeJoin(
+                    new PagedLogRecordSource(logEntries),
+                    timingRecords,
+                    splitMarkerCount, startLap, endLap);
+            
+            initialized = true;
+        } finally {
+            if (!initialized) {
+                close();
+            }
+        }
+    }
+    
+    /**
+     * Creates a reader that resumes after the last entry read by the reader whose state was saved in the
+     * checkpoint.
+     *
+     * @param cr the resolver to query
+     * @param checkpoint the checkpoint holding the saved state
+     * @param endLap the last lap to read, or {@code null} to read to the end of the session
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     *
+     * @see #saveState(ExportCheckpoint)
+     */
+    AndroidSessionRowReader(ContentResolver cr, ExportCheckpoint checkpoint, Integer endLap,
+            int splitMarkerCount) {
+        
+        this.cr = cr;
+        this.sessionId = checkpoint.getSessionId();
+        
+        boolean initialized = false;
+        
+        try {
+            Long endLogEntryId = null;
+            
+            if (endLap != null) {
+                Cursor lapIndexCursor = queryLapIndex(cr, sessionId, endLap);
+                try {
+                    if (lapIndexCursor.moveToFirst()) {
+                        endLogEntryId = getLongOrNull(lapIndexCursor.getColumnIndexOrThrow(
+                                TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID), lapIndexCursor);
+                    }
+                } finally {
+                    lapIndexCursor.close();
+                }
+            }
+            
+            LOG.debug("Resuming session with ID {} after log entry {} and timing entry {}.",
+                    new Object[] {sessionId, checkpoint.getLastLogEntryId(), checkpoint.getLastTimingEntryId()});
+            
+            // The log entries are paged from the last entry read, which also works for sessions stored in
+            // chunks as the ID of an entry in a chunk is its position in the session.
+            if (endLogEntryId == null) {
+                logEntries = new PagedRecordIterator(cr, TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                        null, null, null, PagedRecordIterator.DEFAULT_PAGE_SIZE, checkpoint.getLastLogEntryId());
+            } else {
+                logEntries = new PagedRecordIterator(cr, TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                        null, TrackLoggerData.LogEntry._ID + " <= ?", new String[] {endLogEntryId.toString()},
+                        PagedRecordIterator.DEFAULT_PAGE_SIZE, checkpoint.getLastLogEntryId());
+            }
+            
+            timingEntryCursor = cr.query(
+                    TrackLoggerData.TimingEntry.CONTENT_URI, null,
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + "= ? AND "
+                            + TrackLoggerData.TimingEntry._ID + " > ?",
+                    new String[] {Integer.toString(sessionId), Long.toString(checkpoint.getLastTimingEntryId())},
+                    TrackLoggerData.TimingEntry.DEFAULT_SORT_ORDER);
+            
+            this.startLogEntryId = checkpoint.getLastLogEntryId() + 1;
+            this.endLogEntryId = endLogEntryId;
+            lastLogEntryId = checkpoint.getLastLogEntryId();
+            lastTimingEntryId = checkpoint.getLastTimingEntryId();
+            
+            logEntryRowAdapter = new LogEntryRowCursorAdapter(logEntries);
+            logEntryIdColumnIndex = logEntries.getColumnIndexOrThrow(TrackLoggerData.LogEntry._ID);
+            timingRecords = new CursorTimingRecordSource(timingEntryCursor);
+            join = LogTimingMergeJoin.resume(
+                    new PagedLogRecordSource(logEntries),
+                    timingRecords,
+                    splitMarkerCount, endLap, checkpoint.getJoinState());
+            
+            initialized = true;
+        } finally {
+            if (!initialized) {
+                close();
+            }
+        }
+    }
+    
+    /**
+     * Fills the row with the next log entry in the requested laps.
+     *
+     * @return {@code true} if the row was filled, {@code false} if there are no more entries in the
+     * requested laps
+     *
+     * @throws IllegalStateException if the log and timing entries of the session cannot be synchronized
+     */
+    boolean next(LogEntryRow row) throws IOException {
+        if (!join.next()) {
+            return false;
+        }
+        
+        Cursor cursor = logEntries.getCursor();
+        logEntryRowAdapter.fill(cursor, row);
+        row.setTimingCaptureTimestamp(join.getTimingCaptureTimestamp());
+        row.setLap(join.getLap());
+        row.setSplitIndex(join.getSplitIndex());
+        
+        lastLogEntryId = cursor.getLong(logEntryIdColumnIndex);
+        if (timingRecords.getLastId() != -1) {
+            lastTimingEntryId = timingRecords.getLastId();
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Saves the position of the reader after the entry most recently read to the checkpoint.
+     *
+     * @return {@code false} if no entry has been read, in which case the checkpoint is unchanged
+     */
+    boolean saveState(ExportCheckpoint checkpoint) {
+        if (lastLogEntryId == -1) {
+            return false;
+        }
+        
+        checkpoint.setLastLogEntryId(lastLogEntryId);
+        checkpoint.setLastTimingEntryId(lastTimingEntryId);
+        checkpoint.setJoinState(join.getState());
+        
+        return true;
+    }
+    
+    /**
+     * Returns the number of log entries read so far, including those skipped before the requested laps.
+     */
+    int getLogEntriesRead() {
+        return logEntries.getPosition() + 1;
+    }
+    
+    /**
+     * Returns the estimated number of log entries to read, or 0 if unknown.
+     */
+    int getLogEntryCount() {
+        if (startLogEntryId != null && endLogEntryId != null) {
+            // The entries of a session are inserted contiguously, so the IDs bound the count.
+            return (int) (endLogEntryId - startLogEntryId + 1);
+        } else {
+            return AndroidSessionExporterHelper.getLogEntryCount(cr, sessionId);
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (timingEntryCursor != null) {
+            timingEntryCursor.close();
+        }
+        
+        if (logEntries != null) {
+            logEntries.close();
+        }
+    }
+    
+    private static Cursor queryLapIndex(ContentResolver cr, int sessionId, int lap) {
+        return cr.query(TrackLoggerData.LapIndex.CONTENT_URI, null,
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ? AND "
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_LAP + " = ?",
+                new String[] { Integer.toString(sessionId), Integer.toString(lap) },
+                null);
+    }
+}
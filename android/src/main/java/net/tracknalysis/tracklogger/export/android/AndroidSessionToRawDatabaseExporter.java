@@ -0,0 +1,158 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export.android;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.ParcelFileDescriptor;
+
+import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.tracklogger.config.ConfigurationFactory;
+import net.tracknalysis.tracklogger.export.AbstractSessionToFileExporter;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
+
+/**
+ * Exporter for copying the database file of a session stored in the
+ * {@link TrackLoggerData.Session#STORAGE_FORMAT_SESSION_FILE session file} storage format.  The file is
+ * copied as is using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so
+ * the log entries are neither read nor formatted.  The export contains only the log entries of the
+ * session; the session, timing entries and lap data remain in the main database.  Lap ranges are not
+ * supported.
+ *
+ * @author David Valeri
+ */
+public class AndroidSessionToRawDatabaseExporter extends AbstractSessionToFileExporter {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(AndroidSessionToRawDatabaseExporter.class);
+    
+    /**
+     * The size of the region copied between progress notifications.
+     */
+    private static final long TRANSFER_SIZE = 256 * 1024;
+    
+    private final Context context;
+    private Date sessionStartDate;
+    
+    public AndroidSessionToRawDatabaseExporter(
+            Context context,
+            NotificationListener<SessionExporterNotificationType> notificationStrategy) {
+        super(
+                new File(ConfigurationFactory.getInstance().getConfiguration().getDataDirectory()),
+                notificationStrategy);
+        this.context = context;
+    }
+
+    @Override
+    public String getMimeType() {
+        return TrackLoggerData.Session.DATABASE_TYPE;
+    }
+    
+    @Override
+    protected void init(int sessionId) {
+        
+        Cursor sessionCursor = null;
+        
+        try {
+            sessionCursor = context.getContentResolver().query(TrackLoggerData.Session.CONTENT_URI,
+                    null, 
+                    TrackLoggerData.Session._ID + "= ?",
+                    new String[] {Integer.toString(sessionId)},
+                    null);
+        
+            if (!sessionCursor.moveToFirst()) {
+                LOG.error("No session found for session ID {}.", sessionId);
+                throw new IllegalStateException("No session found for ID " + sessionId);
+            }
+            
+            if (sessionCursor.getInt(sessionCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT))
+                            != TrackLoggerData.Session.STORAGE_FORMAT_SESSION_FILE) {
+                throw new IllegalStateException("Session " + sessionId
+                        + " is not stored in a database file of its own.");
+            }
+            
+            String startDateString = sessionCursor.getString(sessionCursor
+                    .getColumnIndex(TrackLoggerData.Session.COLUMN_NAME_START_DATE)); 
+            
+            sessionStartDate = TrackLoggerDataUtil.parseSqlDate(startDateString);
+        } finally {
+            if (sessionCursor != null) {
+                sessionCursor.close();
+            }
+        }
+    }
+
+    @Override
+    protected void export(OutputStream out, int sessionId, Integer startLap,
+            Integer endLap) throws IOException {
+        
+        if (startLap != null || endLap != null) {
+            throw new IllegalArgumentException("Lap ranges are not supported by the raw database export.");
+        }
+        
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(
+                TrackLoggerData.Session.getDatabaseUri(sessionId), "r");
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        
+        try {
+            FileChannel source = in.getChannel();
+            FileChannel target = getExportFileChannel();
+            long size = source.size();
+            long position = 0;
+            // Progress is reported in units of the transfer size to stay within the range of an int.
+            int totalTransfers = (int) ((size + TRANSFER_SIZE - 1) / TRANSFER_SIZE);
+            
+            LOG.debug("Copying {} bytes of session database for session {}.", size, sessionId);
+            
+            while (position < size) {
+                long transferred = source.transferTo(position, Math.min(TRANSFER_SIZE, size - position),
+                        target);
+                
+                if (transferred <= 0) {
+                    throw new IOException("Session database for session " + sessionId
+                            + " was truncated during export.");
+                }
+                
+                position += transferred;
+                sendExportProgressNotification(
+                        (int) ((position + TRANSFER_SIZE - 1) / TRANSFER_SIZE), totalTransfers);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    protected Date getSessionStartTime() {
+        return sessionStartDate;
+    }
+
+    @Override
+    protected String getFileExtension() {
+        return "db";
+    }
+}
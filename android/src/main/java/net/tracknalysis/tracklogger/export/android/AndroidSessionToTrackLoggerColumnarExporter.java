@@ -0,0 +1,125 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.tracklogger.config.ConfigurationFactory;
+import net.tracknalysis.tracklogger.export.AbstractSessionToTrackLoggerColumnarExporter;
+import net.tracknalysis.tracklogger.export.ColumnarSessionWriter;
+import net.tracknalysis.tracklogger.export.LogEntryRow;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * Exports to the TrackLogger columnar binary format.
+ *
+ * @author David Valeri
+ */
+public class AndroidSessionToTrackLoggerColumnarExporter extends AbstractSessionToTrackLoggerColumnarExporter {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(AndroidSessionToTrackLoggerColumnarExporter.class);
+    
+    private final Context context;
+    private Date sessionStartDate;
+    private int splitMarkerCount;
+    
+    public AndroidSessionToTrackLoggerColumnarExporter(Context context,
+            NotificationListener<SessionExporterNotificationType> notificationStrategy) {
+        super(
+                new File(ConfigurationFactory.getInstance().getConfiguration().getDataDirectory()),
+                notificationStrategy);
+        this.context = context;
+    }
+    
+    @Override
+    protected void init(int sessionId) {
+        
+        Cursor sessionCursor = null;
+        Cursor splitMarkerCursor = null;
+        
+        try {
+            sessionCursor = context.getContentResolver().query(TrackLoggerData.Session.CONTENT_URI,
+                    null, 
+                    TrackLoggerData.Session._ID + "= ?",
+                    new String[] {Integer.toString(sessionId)},
+                    null);
+        
+            if (!sessionCursor.moveToFirst()) {
+                LOG.error("No session found for session ID {}.", sessionId);
+                throw new IllegalStateException("No session found for ID " + sessionId);
+            }
+            
+            sessionStartDate = TrackLoggerDataUtil.parseSqlDate(sessionCursor.getString(sessionCursor
+                    .getColumnIndex(TrackLoggerData.Session.COLUMN_NAME_START_DATE)));
+            int splitMarkerSetId = sessionCursor.getInt(sessionCursor
+                    .getColumnIndex(TrackLoggerData.Session.COLUMN_NAME_SPLIT_MARKER_SET_ID));
+            
+            splitMarkerCursor = context.getContentResolver().query(
+                    TrackLoggerData.SplitMarker.CONTENT_URI,
+                    null,
+                    TrackLoggerData.SplitMarker.COLUMN_NAME_SPLIT_MARKER_SET_ID
+                            + " = ?",
+                    new String[] { String.valueOf(splitMarkerSetId) },
+                    null);
+            
+            splitMarkerCount = splitMarkerCursor.getCount();
+        } finally {
+            if (sessionCursor != null) {
+                sessionCursor.close();
+            }
+            
+            if (splitMarkerCursor != null) {
+                splitMarkerCursor.close();
+            }
+        }
+    }
+    
+    @Override
+    protected void exportEntries(ColumnarSessionWriter writer, int sessionId,
+            Integer startLap, Integer endLap) throws IOException {
+        
+        AndroidSessionRowReader reader = new AndroidSessionRowReader(context.getContentResolver(), sessionId,
+                startLap, endLap, splitMarkerCount);
+        
+        try {
+            int recordCount = reader.getLogEntryCount();
+            LogEntryRow row = new LogEntryRow();
+            
+            while (reader.next(row)) {
+                writer.writeRow(row);
+                
+                sendExportProgressNotification(reader.getLogEntriesRead(),
+                        Math.max(recordCount, reader.getLogEntriesRead()));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Override
+    protected Date getSessionStartTime() {
+        return sessionStartDate;
+    }
+}
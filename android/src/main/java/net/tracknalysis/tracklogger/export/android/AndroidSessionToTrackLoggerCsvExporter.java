@@ -19,19 +19,27 @@ import static net.tracknalysis.tracklogger.export.android.AndroidSessionExporter
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.common.util.TimeUtil;
 import net.tracknalysis.tracklogger.config.ConfigurationFactory;
 import net.tracknalysis.tracklogger.export.AbstractSessionToTrackLoggerCsvExporter;
-import net.tracknalysis.tracklogger.export.SessionExporter;
+import net.tracknalysis.tracklogger.export.ExportCheckpoint;
+import net.tracknalysis.tracklogger.export.ExportPartition;
+import net.tracknalysis.tracklogger.export.IncrementalSessionExporter;
+import net.tracknalysis.tracklogger.export.LogEntryRow;
+import net.tracknalysis.tracklogger.export.PartitionedSessionExporter;
+import net.tracknalysis.tracklogger.export.TrackLoggerCsvEntryWriter;
 import net.tracknalysis.tracklogger.provider.TrackLoggerData;
 import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
-import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.database.Cursor;
@@ -41,14 +49,23 @@ import android.database.Cursor;
  *
  * @author David Valeri
  */
-public class AndroidSessionToTrackLoggerCsvExporter extends AbstractSessionToTrackLoggerCsvExporter {
+public class AndroidSessionToTrackLoggerCsvExporter extends AbstractSessionToTrackLoggerCsvExporter
+        implements PartitionedSessionExporter, IncrementalSessionExporter {
     
     private static final Logger LOG = LoggerFactory.getLogger(AndroidSessionToTrackLoggerCsvExporter.class);
     
+    /**
+     * The number of partitions created per available processor when exporting in parallel, allowing for
+     * laps of uneven length.
+     */
+    private static final int PARTITIONS_PER_PROCESSOR = 2;
+    
     private final Context context;
     private Date sessionStartDate;
     private String splitMarkerSetName;
     private int splitMarkerCount;
+    private ExportPartition lastPartition;
+    private volatile ExportCheckpoint checkpoint;
 
     public AndroidSessionToTrackLoggerCsvExporter(Context context,
             NotificationListener<SessionExporterNotificationType> notificationStrategy) {
@@ -61,6 +78,9 @@ public class AndroidSessionToTrackLoggerCsvExporter extends AbstractSessionToTra
     @Override
     protected void init(int sessionId) {
         
+        lastPartition = null;
+        checkpoint = null;
+        
         Cursor sessionCursor = null;
         Cursor splitMarkerSetCursor = null;
         Cursor splitMarkerCursor = null;
@@ -127,229 +147,198 @@ public class AndroidSessionToTrackLoggerCsvExporter extends AbstractSessionToTra
         }
     }
     
+    /**
+     * Partitions the requested laps into runs of consecutive laps when every lap in the range is indexed
+     * with the IDs of its first timing and log entries, so that each partition reads only its own entries.
+     * The running time at the start of each partition is the sum of the elapsed times between the starts
+     * of the preceding laps in the export.
+     */
     @Override
-    protected void exportEntries(Writer writer, int sessionId,
-            Integer startLap, Integer endLap) throws IOException {
+    public List<ExportPartition> getPartitions(int sessionId, Integer startLap, Integer endLap) {
+        
+        List<ExportPartition> partitions = new ArrayList<ExportPartition>();
+        List<Integer> laps = new ArrayList<Integer>();
+        List<Long> startSynchTimestamps = new ArrayList<Long>();
+        List<Long> startLogEntryIds = new ArrayList<Long>();
+        List<Long> endLogEntryIds = new ArrayList<Long>();
         
-        ContentResolver cr = context.getContentResolver();
-        Cursor logEntryCursor = null;
-        Cursor timingEntryCursor = null;
+        Cursor lapIndexCursor = context.getContentResolver().query(TrackLoggerData.LapIndex.CONTENT_URI, null,
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ?",
+                new String[] { Integer.toString(sessionId) },
+                TrackLoggerData.LapIndex.DEFAULT_SORT_ORDER);
         
         try {
-            logEntryCursor = cr.query(TrackLoggerData.LogEntry.CONTENT_URI,
-                    null, TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID
-                            + "= ?",
-                    new String[] { Integer.toString(sessionId) },
-                    TrackLoggerData.LogEntry.DEFAULT_SORT_ORDER);
+            int lapColumnIndex = lapIndexCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LapIndex.COLUMN_NAME_LAP);
+            int startTimingEntryIdColumnIndex = lapIndexCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID);
+            int startLogEntryIdColumnIndex = lapIndexCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID);
+            int endLogEntryIdColumnIndex = lapIndexCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID);
+            int startSynchTimestampColumnIndex = lapIndexCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LapIndex.COLUMN_NAME_START_SYNCH_TIMESTAMP);
             
-            timingEntryCursor = cr.query(
-                    TrackLoggerData.TimingEntry.CONTENT_URI, null,
-                    TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + "= ?",
-                    new String[] { Integer.toString(sessionId) },
-                    TrackLoggerData.TimingEntry.DEFAULT_SORT_ORDER);
-            
-            // There is nothing in the cursor so we give up
-            if (!timingEntryCursor.moveToFirst()) {
-                LOG.error("No timing entries found for session with ID {}.",
-                        new Object[] { sessionId, startLap, endLap });
-
-                throw new IllegalStateException(
-                        "No timing entries found for session.");
+            while (lapIndexCursor.moveToNext()) {
+                int lap = lapIndexCursor.getInt(lapColumnIndex);
+                
+                if ((startLap != null && lap < startLap) || (endLap != null && lap > endLap)) {
+                    continue;
+                }
+                
+                Long startLogEntryId = getLongOrNull(startLogEntryIdColumnIndex, lapIndexCursor);
+                
+                if (lapIndexCursor.isNull(startTimingEntryIdColumnIndex) || startLogEntryId == null
+                        || (!laps.isEmpty() && lap != laps.get(laps.size() - 1) + 1)) {
+                    LOG.debug("Lap {} of session with ID {} is not fully indexed.  Exporting serially.",
+                            lap, sessionId);
+                    return partitions;
+                }
+                
+                laps.add(lap);
+                startSynchTimestamps.add(lapIndexCursor.getLong(startSynchTimestampColumnIndex));
+                startLogEntryIds.add(startLogEntryId);
+                endLogEntryIds.add(getLongOrNull(endLogEntryIdColumnIndex, lapIndexCursor));
             }
+        } finally {
+            lapIndexCursor.close();
+        }
+        
+        // The running time is measured from the start of the first exported lap, so the index must start
+        // with the first lap in the export.
+        if (laps.isEmpty() || laps.get(0) != (startLap == null ? 1 : startLap)) {
+            return partitions;
+        }
+        
+        int lapCount = laps.size();
+        int partitionCount = Math.min(lapCount,
+                Runtime.getRuntime().availableProcessors() * PARTITIONS_PER_PROCESSOR);
+        
+        if (partitionCount < 2) {
+            return partitions;
+        }
+        
+        long runningTime = 0;
+        int previousFirst = 0;
+        for (int i = 0; i < partitionCount; i++) {
+            int first = lapCount * i / partitionCount;
+            int last = lapCount * (i + 1) / partitionCount - 1;
             
-            // There is nothing in the cursor so we give up
-            if (logEntryCursor.getCount() == 0) {
-                LOG.error("No log entries found for session with ID {}.",
-                        new Object[] { sessionId, startLap, endLap });
-
-                throw new IllegalStateException(
-                        "No log entries found for session.");
+            long elapsed = startSynchTimestamps.get(first) - startSynchTimestamps.get(previousFirst);
+            if (elapsed < 0) {
+                // We rolled over days so we need to account for that in the maths.
+                elapsed += TimeUtil.MS_IN_DAY;
             }
+            runningTime += elapsed;
+            previousFirst = first;
             
-            final int logEntrySynchColumnIndex = logEntryCursor
-                    .getColumnIndexOrThrow(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
-            final int timingEntrySynchColumnIndex = timingEntryCursor
-                    .getColumnIndexOrThrow(TrackLoggerData.TimingEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
-            
-            final int accelCaptureTimestampColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP);
-            final int longitudinalAccelColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL);
-            final int lateralAccelColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL);
-            final int verticalAccelColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL);
-            final int locationCaptureTimestampColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP);
-            final int latitudeColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE);
-            final int longitudeColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE);
-            final int altitudeColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE);
-            final int speedColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_SPEED);
-            final int bearingColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BEARING);
-            final int ecuCaptureTimestampColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP);
-            final int rpmColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_RPM);
-            final int mapColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAP);
-            final int mgpColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MGP);
-            final int tpColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION);
-            final int afrColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_AFR);
-            final int matColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAT);
-            final int cltColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_CLT);
-            final int ignitionAdvanceColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE);
-            final int batteryVoltageColumnIndex = logEntryCursor
-                    .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE);
-            final int timingCaptureTimestampColumnIndex = timingEntryCursor
-                    .getColumnIndex(TrackLoggerData.TimingEntry.COLUMN_NAME_CAPTURE_TIMESTAMP);
-            
-            // For notifications of progress
-            int recordCount = logEntryCursor.getCount();
-            
-            // For synching the two data sets
-            long timingSynchTimestamp = timingEntryCursor
-                    .getLong(timingEntrySynchColumnIndex);
-            long logSynchTimestamp = Long.MAX_VALUE;
-            
-            LOG.debug("Looking for timing to log entry synch...");
-            while (!logEntryCursor.isAfterLast()
-                    && timingSynchTimestamp != logSynchTimestamp) {
-                logEntryCursor.move(1);
-                logSynchTimestamp = logEntryCursor
-                        .getLong(logEntrySynchColumnIndex);
-                
-                getNotificationStrategy().onNotification(
-                        SessionExporter.SessionExporterNotificationType.EXPORT_PROGRESS,
-                        new ExportProgress(logEntryCursor.getPosition(), recordCount));
+            Long endLogEntryId = endLogEntryIds.get(last);
+            if (endLogEntryId == null && i == partitionCount - 1) {
+                // The last lap of the session is still open, so it ends with the last entry of the session.
+                endLogEntryId = getLastLogEntryId(context.getContentResolver(), sessionId);
             }
             
-            // We never found a synch between the two data sets
-            if (logEntryCursor.isAfterLast()) {
-                LOG.error(
-                        "No synchronization between log and timing entries found for session with "
-                                + "ID {} and laps {} to {}.", new Object[] {
-                                sessionId, startLap, endLap });
-
-                throw new IllegalStateException(
-                        "No synchronization between log and timing entries found for session.");
-            } else {
-                LOG.debug(
-                        "Found synchronization between log and timing entries.  Log entry at position {} "
-                                + "matched with timing entry at position {}.",
-                        logEntryCursor.getPosition() - 1,
-                        timingEntryCursor.getPosition());
+            int recordCount = 0;
+            if (endLogEntryId != null) {
+                recordCount = (int) (endLogEntryId - startLogEntryIds.get(first) + 1);
             }
             
-            int lap = timingEntryCursor
-                    .getInt(timingEntryCursor
-                            .getColumnIndex(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP));
-            int splitIndex = timingEntryCursor
-                    .getInt(timingEntryCursor
-                            .getColumnIndex(TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_INDEX));
-            long timingCaptureTimestamp = timingEntryCursor
-                    .getLong(timingCaptureTimestampColumnIndex);
+            partitions.add(new ExportPartition(
+                    i == 0 ? startLap : laps.get(first),
+                    i == partitionCount - 1 ? endLap : laps.get(last),
+                    runningTime,
+                    recordCount));
+        }
+        
+        lastPartition = partitions.get(partitions.size() - 1);
+        
+        return partitions;
+    }
+    
+    @Override
+    protected void exportEntries(Writer writer, int sessionId,
+            Integer startLap, Integer endLap) throws IOException {
+        exportEntries(getEntryWriter(writer),
+                new AndroidSessionRowReader(context.getContentResolver(), sessionId, startLap, endLap,
+                        splitMarkerCount),
+                false, true);
+    }
+    
+    @Override
+    public void exportHeader(OutputStream out, int sessionId) throws IOException {
+        writeHeader(out, sessionId);
+    }
+    
+    @Override
+    public void exportPartition(OutputStream out, int sessionId, ExportPartition partition)
+            throws IOException {
+        TrackLoggerCsvEntryWriter entryWriter = createEntryWriter(out, partition);
+        exportEntries(entryWriter,
+                new AndroidSessionRowReader(context.getContentResolver(), sessionId, partition.getStartLap(),
+                        partition.getEndLap(), splitMarkerCount),
+                true, partition == lastPartition);
+        entryWriter.getWriter().flush();
+    }
+    
+    @Override
+    public void exportFooter(OutputStream out, int sessionId) {
+    }
+    
+    @Override
+    public void exportIncrement(OutputStream out, int sessionId, ExportCheckpoint checkpoint)
+            throws IOException {
+        TrackLoggerCsvEntryWriter entryWriter = createEntryWriter(out, checkpoint);
+        exportEntries(entryWriter,
+                new AndroidSessionRowReader(context.getContentResolver(), checkpoint, checkpoint.getEndLap(),
+                        splitMarkerCount),
+                false, true);
+        entryWriter.getWriter().flush();
+    }
+    
+    @Override
+    public ExportCheckpoint getExportCheckpoint() {
+        return checkpoint;
+    }
+    
+    /**
+     * Writes the entries from the reader and closes the reader.
+     *
+     * @param partitioned if the entries are a partition of a partitioned export
+     * @param last if the entries are the last in the export, from which the checkpoint for the next
+     * incremental export is taken
+     */
+    private void exportEntries(TrackLoggerCsvEntryWriter entryWriter, AndroidSessionRowReader reader,
+            boolean partitioned, boolean last) throws IOException {
+        
+        try {
+            // For notifications of progress.  Progress of a partition is reported against the estimates
+            // for the partitions as a whole.
+            int recordCount = partitioned ? 0 : reader.getLogEntryCount();
+            LogEntryRow row = new LogEntryRow();
             
-            // Until we run out of log data
-            while (!logEntryCursor.isAfterLast()) {
-
-                logSynchTimestamp = logEntryCursor
-                        .getLong(logEntrySynchColumnIndex);
+            while (reader.next(row)) {
+                LOG.trace("Writing entry for lap {} and split index {}.", row.getLap(), row.getSplitIndex());
                 
-                // The events in the DB are logged on the completion of a lap/split; however, they also
-                // represent the instant at which the next lap/split is beginning.  In the export, we want
-                // the alignment to be in tune with the later arrangement rather than the former.
-                // For instance, the first timing entry should be for lap 1 and not the last time in lap 0.
-                if (logSynchTimestamp == timingSynchTimestamp) {
-                    splitIndex++;
-                    if (splitIndex == splitMarkerCount) {
-                        splitIndex = 0;
-                        lap++;
-                    }
-                }
-
-                if ((startLap == null || startLap >= lap) && (endLap == null || lap <= endLap)) {
-                    LOG.trace("Writing entry for lap {} and split index {}.",
-                            lap, splitIndex);
-                    
-                    writeEntry(
-                            writer, logSynchTimestamp,
-                            
-                            getLongOrNull(accelCaptureTimestampColumnIndex, logEntryCursor),
-                            getFloatOrNull(longitudinalAccelColumnIndex, logEntryCursor),
-                            getFloatOrNull(lateralAccelColumnIndex, logEntryCursor),
-                            getFloatOrNull(verticalAccelColumnIndex, logEntryCursor),
-                            
-                            getLongOrNull(locationCaptureTimestampColumnIndex, logEntryCursor),
-                            getDoubleOrNull(latitudeColumnIndex, logEntryCursor),
-                            getDoubleOrNull(longitudeColumnIndex, logEntryCursor),
-                            getDoubleOrNull(altitudeColumnIndex, logEntryCursor),
-                            getFloatOrNull(speedColumnIndex, logEntryCursor),
-                            getFloatOrNull(bearingColumnIndex, logEntryCursor),
-                            
-                            getLongOrNull(ecuCaptureTimestampColumnIndex, logEntryCursor),
-                            getIntegerOrNull(rpmColumnIndex, logEntryCursor),
-                            getDoubleOrNull(mapColumnIndex, logEntryCursor),
-                            getDoubleOrNull(mgpColumnIndex, logEntryCursor),
-                            getDoubleOrNull(tpColumnIndex, logEntryCursor),
-                            getDoubleOrNull(afrColumnIndex, logEntryCursor),
-                            getDoubleOrNull(matColumnIndex, logEntryCursor),
-                            getDoubleOrNull(cltColumnIndex, logEntryCursor),
-                            getDoubleOrNull(ignitionAdvanceColumnIndex, logEntryCursor),
-                            getDoubleOrNull(batteryVoltageColumnIndex, logEntryCursor),
-                            
-                            timingCaptureTimestamp,
-                            lap,
-                            splitIndex);
+                entryWriter.writeEntry(row);
+                
+                if (partitioned) {
+                    sendPartitionProgressNotification();
                 } else {
-                    LOG.trace("Skipping entry for lap {} and split index {}.",
-                            lap, splitIndex);
+                    sendExportProgressNotification(reader.getLogEntriesRead(),
+                            Math.max(recordCount, reader.getLogEntriesRead()));
                 }
-
-                // This entry represents a split/segment or lap event so we are now waiting for the next event
-                if (logSynchTimestamp == timingSynchTimestamp) {
-                    timingEntryCursor.move(1);
-                    if (!timingEntryCursor.isAfterLast()) {
-                        timingSynchTimestamp = timingEntryCursor
-                                .getLong(timingEntrySynchColumnIndex);
-                        
-                        lap = timingEntryCursor
-                                .getInt(timingEntryCursor
-                                        .getColumnIndex(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP));
-                        splitIndex = timingEntryCursor
-                                .getInt(timingEntryCursor
-                                        .getColumnIndex(TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_INDEX));
-                        timingCaptureTimestamp = timingEntryCursor
-                                .getLong(timingCaptureTimestampColumnIndex);
-                    } else {
-                        // We are already sitting on the right values for the remainder of the log data
-                        // so just move the timing synch out of the way so we will never match it again.
-                        timingSynchTimestamp = Long.MAX_VALUE;
-                    }
-                }
-                
-                logEntryCursor.move(1);
-
-                sendExportProgressNotification(logEntryCursor.getPosition(), recordCount);
-            }
-        } finally {
-            if (timingEntryCursor != null) {
-                timingEntryCursor.close();
             }
             
-            if (logEntryCursor != null) {
-                logEntryCursor.close();
+            if (last && isIncremental()) {
+                ExportCheckpoint newCheckpoint = new ExportCheckpoint();
+                if (reader.saveState(newCheckpoint)) {
+                    newCheckpoint.setRunningTime(entryWriter.getRunningTime());
+                    newCheckpoint.setLastSynchTimestamp(entryWriter.getLastSynchTimestamp());
+                    checkpoint = newCheckpoint;
+                }
             }
+        } finally {
+            reader.close();
         }
     }
 
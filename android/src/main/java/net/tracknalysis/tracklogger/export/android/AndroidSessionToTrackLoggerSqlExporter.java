@@ -18,7 +18,6 @@ package net.tracknalysis.tracklogger.export.android;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Date;
 import java.util.Locale;
@@ -33,6 +32,8 @@ import android.database.Cursor;
 import net.tracknalysis.common.notification.NotificationListener;
 import net.tracknalysis.tracklogger.config.ConfigurationFactory;
 import net.tracknalysis.tracklogger.export.AbstractSessionToFileExporter;
+import net.tracknalysis.tracklogger.export.Utf8Writer;
+import net.tracknalysis.tracklogger.provider.PagedRecordIterator;
 import net.tracknalysis.tracklogger.provider.TrackLoggerData;
 import net.tracknalysis.tracklogger.provider.TrackLoggerData.Session;
 import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
@@ -99,10 +100,10 @@ public class AndroidSessionToTrackLoggerSqlExporter extends
     protected void export(OutputStream out, int sessionId, Integer startLap,
             Integer endLap) throws IOException {
         
-        Writer writer = new OutputStreamWriter(out);
+        Writer writer = new Utf8Writer(out);
         
         ContentResolver cr = context.getContentResolver();
-        Cursor logEntryCursor = null;
+        PagedRecordIterator logEntries = null;
         Cursor timingEntryCursor = null;
         Cursor sessionCursor = null;
         
@@ -119,13 +120,13 @@ public class AndroidSessionToTrackLoggerSqlExporter extends
                     new String[] { Integer.toString(sessionId) },
                     TrackLoggerData.TimingEntry.DEFAULT_SORT_ORDER);
             
-            logEntryCursor = cr.query(TrackLoggerData.LogEntry.CONTENT_URI,
-                    null, TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID
-                            + "= ?",
-                    new String[] { Integer.toString(sessionId) },
-                    TrackLoggerData.LogEntry.DEFAULT_SORT_ORDER);
+            // The log entries are read a page at a time so that long sessions are not read through a
+            // single cursor window.
+            logEntries = new PagedRecordIterator(cr, TrackLoggerData.Session.getLogEntriesUri(sessionId),
+                    null, null, null);
             
-            int totalRecords = sessionCursor.getCount() + timingEntryCursor.getCount() + logEntryCursor.getCount();
+            int totalRecords = sessionCursor.getCount() + timingEntryCursor.getCount()
+                    + AndroidSessionExporterHelper.getLogEntryCount(cr, sessionId);
             int currentRecord = 1;
             
             if (!sessionCursor.moveToFirst()) {
@@ -190,53 +191,54 @@ public class AndroidSessionToTrackLoggerSqlExporter extends
             
             timingEntryCursor.close();
             
-            if (logEntryCursor.moveToFirst()) {
-                final int logEntrySynchColumnIndex = logEntryCursor
+            if (logEntries.moveToNext()) {
+                final int logEntrySynchColumnIndex = logEntries
                         .getColumnIndexOrThrow(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
-                final int accelCaptureTimestampColumnIndex = logEntryCursor
+                final int accelCaptureTimestampColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP);
-                final int longitudinalAccelColumnIndex = logEntryCursor
+                final int longitudinalAccelColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL);
-                final int lateralAccelColumnIndex = logEntryCursor
+                final int lateralAccelColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL);
-                final int verticalAccelColumnIndex = logEntryCursor
+                final int verticalAccelColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL);
-                final int locationCaptureTimestampColumnIndex = logEntryCursor
+                final int locationCaptureTimestampColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP);
-                final int locationTimeColumnIndex = logEntryCursor
+                final int locationTimeColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY);
-                final int latitudeColumnIndex = logEntryCursor
+                final int latitudeColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE);
-                final int longitudeColumnIndex = logEntryCursor
+                final int longitudeColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE);
-                final int altitudeColumnIndex = logEntryCursor
+                final int altitudeColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE);
-                final int speedColumnIndex = logEntryCursor
+                final int speedColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_SPEED);
-                final int bearingColumnIndex = logEntryCursor
+                final int bearingColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BEARING);
-                final int ecuCaptureTimestampColumnIndex = logEntryCursor
+                final int ecuCaptureTimestampColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP);
-                final int rpmColumnIndex = logEntryCursor
+                final int rpmColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_RPM);
-                final int mapColumnIndex = logEntryCursor
+                final int mapColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAP);
-                final int mgpColumnIndex = logEntryCursor
+                final int mgpColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MGP);
-                final int tpColumnIndex = logEntryCursor
+                final int tpColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION);
-                final int afrColumnIndex = logEntryCursor
+                final int afrColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_AFR);
-                final int matColumnIndex = logEntryCursor
+                final int matColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAT);
-                final int cltColumnIndex = logEntryCursor
+                final int cltColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_CLT);
-                final int ignitionAdvanceColumnIndex = logEntryCursor
+                final int ignitionAdvanceColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE);
-                final int batteryVoltageColumnIndex = logEntryCursor
+                final int batteryVoltageColumnIndex = logEntries
                         .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE);
                 
-                while (!logEntryCursor.isAfterLast()) {
+                do {
+                    Cursor logEntryCursor = logEntries.getCursor();
                 
                     writer.write("INSERT INTO log_entry(session_id, synch_timestamp, accel_capture_timestamp, longitudinal_accel, lateral_accel, vertical_accel, location_capture_timestamp, location_time_in_day, latitude, longitude, altitude, speed, bearing, ecu_capture_timestamp, rpm, map, mgp, throttle_position, afr, mat, clt, ignition_advance, battery_voltage)\r\n");
                     writer.write("VALUES(");
@@ -268,12 +270,12 @@ public class AndroidSessionToTrackLoggerSqlExporter extends
                     writer.write("\r\n");
                     writer.write("\r\n");
                     
-                    logEntryCursor.move(1);
-                    sendExportProgressNotification(currentRecord++, totalRecords);
-                }
+                    sendExportProgressNotification(currentRecord, Math.max(currentRecord, totalRecords));
+                    currentRecord++;
+                } while (logEntries.moveToNext());
             }
             
-            logEntryCursor.close();
+            logEntries.close();
         } finally {
             writer.flush();
             
@@ -285,8 +287,8 @@ public class AndroidSessionToTrackLoggerSqlExporter extends
                 timingEntryCursor.close();
             }
             
-            if (logEntryCursor != null) {
-                logEntryCursor.close();
+            if (logEntries != null) {
+                logEntries.close();
             }
         }
     }
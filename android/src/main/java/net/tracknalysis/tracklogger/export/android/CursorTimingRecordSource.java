@@ -0,0 +1,98 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export.android;
+
+import net.tracknalysis.tracklogger.export.TimingRecordSource;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import android.database.Cursor;
+
+/**
+ * Adapts a cursor over timing entries to a {@link TimingRecordSource}.  Column indexes are resolved once
+ * when the adapter is created.
+ *
+ * @author David Valeri
+ */
+final class CursorTimingRecordSource implements TimingRecordSource {
+    
+    private final Cursor timingEntries;
+    private final int idColumnIndex;
+    private final int synchTimestampColumnIndex;
+    private final int lapColumnIndex;
+    private final int splitIndexColumnIndex;
+    private final int captureTimestampColumnIndex;
+    private long lastId = -1;
+    
+    /**
+     * @param timingEntries the timing entries, positioned before the first entry
+     *
+     * @throws IllegalArgumentException if the cursor is missing any of the required columns
+     */
+    CursorTimingRecordSource(Cursor timingEntries) {
+        this.timingEntries = timingEntries;
+        idColumnIndex = timingEntries.getColumnIndexOrThrow(TrackLoggerData.TimingEntry._ID);
+        synchTimestampColumnIndex = timingEntries.getColumnIndexOrThrow(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+        lapColumnIndex = timingEntries.getColumnIndexOrThrow(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_LAP);
+        splitIndexColumnIndex = timingEntries.getColumnIndexOrThrow(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_INDEX);
+        captureTimestampColumnIndex = timingEntries.getColumnIndexOrThrow(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_CAPTURE_TIMESTAMP);
+    }
+    
+    @Override
+    public boolean moveToNext() {
+        if (timingEntries.moveToNext()) {
+            lastId = timingEntries.getLong(idColumnIndex);
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the ID of the last timing entry moved to, which remains available once the entries are
+     * exhausted, or -1 if no entry has been moved to.
+     */
+    long getLastId() {
+        return lastId;
+    }
+    
+    @Override
+    public long getSynchTimestamp() {
+        return timingEntries.getLong(synchTimestampColumnIndex);
+    }
+    
+    @Override
+    public int getLap() {
+        return timingEntries.getInt(lapColumnIndex);
+    }
+    
+    @Override
+    public int getSplitIndex() {
+        return timingEntries.getInt(splitIndexColumnIndex);
+    }
+    
+    @Override
+    public long getCaptureTimestamp() {
+        return timingEntries.getLong(captureTimestampColumnIndex);
+    }
+    
+    @Override
+    public void close() {
+        timingEntries.close();
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export.android;
+
+import net.tracknalysis.tracklogger.export.LogEntryRow;
+import net.tracknalysis.tracklogger.provider.PagedRecordIterator;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import android.database.Cursor;
+
+/**
+ * Fills a {@link LogEntryRow} from the current record of a log entry cursor without boxing.  Column
+ * indexes are resolved once when the adapter is created.  Columns that are missing from the cursor are
+ * treated as null.
+ *
+ * @author David Valeri
+ */
+final class LogEntryRowCursorAdapter {
+    
+    private final int synchTimestampColumnIndex;
+    private final int accelCaptureTimestampColumnIndex;
+    private final int longitudinalAccelColumnIndex;
+    private final int lateralAccelColumnIndex;
+    private final int verticalAccelColumnIndex;
+    private final int locationCaptureTimestampColumnIndex;
+    private final int locationTimeInDayColumnIndex;
+    private final int latitudeColumnIndex;
+    private final int longitudeColumnIndex;
+    private final int altitudeColumnIndex;
+    private final int speedColumnIndex;
+    private final int bearingColumnIndex;
+    private final int ecuCaptureTimestampColumnIndex;
+    private final int rpmColumnIndex;
+    private final int mapColumnIndex;
+    private final int mgpColumnIndex;
+    private final int tpColumnIndex;
+    private final int afrColumnIndex;
+    private final int matColumnIndex;
+    private final int cltColumnIndex;
+    private final int ignitionAdvanceColumnIndex;
+    private final int batteryVoltageColumnIndex;
+    
+    /**
+     * @param logEntries the records to resolve the column indexes from
+     *
+     * @throws IllegalArgumentException if the records do not include the synch timestamp column
+     */
+    LogEntryRowCursorAdapter(PagedRecordIterator logEntries) {
+        synchTimestampColumnIndex = logEntries
+                .getColumnIndexOrThrow(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+        accelCaptureTimestampColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP);
+        longitudinalAccelColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL);
+        lateralAccelColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL);
+        verticalAccelColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL);
+        locationCaptureTimestampColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP);
+        locationTimeInDayColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY);
+        latitudeColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE);
+        longitudeColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE);
+        altitudeColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE);
+        speedColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_SPEED);
+        bearingColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BEARING);
+        ecuCaptureTimestampColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP);
+        rpmColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_RPM);
+        mapColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAP);
+        mgpColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MGP);
+        tpColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION);
+        afrColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_AFR);
+        matColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAT);
+        cltColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_CLT);
+        ignitionAdvanceColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE);
+        batteryVoltageColumnIndex = logEntries
+                .getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE);
+    }
+    
+    /**
+     * Returns the synch timestamp of the current record.
+     */
+    long getSynchTimestamp(Cursor cursor) {
+        return cursor.getLong(synchTimestampColumnIndex);
+    }
+    
+    /**
+     * Clears the row and fills it with the log entry data in the current record.  The timing fields of
+     * the row are left for the caller to set.
+     */
+    void fill(Cursor cursor, LogEntryRow row) {
+        row.clear();
+        row.setSynchTimestamp(cursor.getLong(synchTimestampColumnIndex));
+        
+        if (isPresent(cursor, accelCaptureTimestampColumnIndex)) {
+            row.setAccelCaptureTimestamp(cursor.getLong(accelCaptureTimestampColumnIndex));
+        }
+        if (isPresent(cursor, longitudinalAccelColumnIndex)) {
+            row.setLongitudinalAccel(cursor.getFloat(longitudinalAccelColumnIndex));
+        }
+        if (isPresent(cursor, lateralAccelColumnIndex)) {
+            row.setLateralAccel(cursor.getFloat(lateralAccelColumnIndex));
+        }
+        if (isPresent(cursor, verticalAccelColumnIndex)) {
+            row.setVerticalAccel(cursor.getFloat(verticalAccelColumnIndex));
+        }
+        
+        if (isPresent(cursor, locationCaptureTimestampColumnIndex)) {
+            row.setLocationCaptureTimestamp(cursor.getLong(locationCaptureTimestampColumnIndex));
+        }
+        if (isPresent(cursor, locationTimeInDayColumnIndex)) {
+            row.setLocationTimeInDay(cursor.getLong(locationTimeInDayColumnIndex));
+        }
+        if (isPresent(cursor, latitudeColumnIndex)) {
+            row.setLatitude(cursor.getDouble(latitudeColumnIndex));
+        }
+        if (isPresent(cursor, longitudeColumnIndex)) {
+            row.setLongitude(cursor.getDouble(longitudeColumnIndex));
+        }
+        if (isPresent(cursor, altitudeColumnIndex)) {
+            row.setAltitude(cursor.getDouble(altitudeColumnIndex));
+        }
+        if (isPresent(cursor, speedColumnIndex)) {
+            row.setSpeed(cursor.getFloat(speedColumnIndex));
+        }
+        if (isPresent(cursor, bearingColumnIndex)) {
+            row.setBearing(cursor.getFloat(bearingColumnIndex));
+        }
+        
+        if (isPresent(cursor, ecuCaptureTimestampColumnIndex)) {
+            row.setEcuCaptureTimestamp(cursor.getLong(ecuCaptureTimestampColumnIndex));
+        }
+        if (isPresent(cursor, rpmColumnIndex)) {
+            row.setRpm(cursor.getInt(rpmColumnIndex));
+        }
+        if (isPresent(cursor, mapColumnIndex)) {
+            row.setMap(cursor.getDouble(mapColumnIndex));
+        }
+        if (isPresent(cursor, mgpColumnIndex)) {
+            row.setMgp(cursor.getDouble(mgpColumnIndex));
+        }
+        if (isPresent(cursor, tpColumnIndex)) {
+            row.setThrottlePosition(cursor.getDouble(tpColumnIndex));
+        }
+        if (isPresent(cursor, afrColumnIndex)) {
+            row.setAfr(cursor.getDouble(afrColumnIndex));
+        }
+        if (isPresent(cursor, matColumnIndex)) {
+            row.setMat(cursor.getDouble(matColumnIndex));
+        }
+        if (isPresent(cursor, cltColumnIndex)) {
+            row.setClt(cursor.getDouble(cltColumnIndex));
+        }
+        if (isPresent(cursor, ignitionAdvanceColumnIndex)) {
+            row.setIgnitionAdvance(cursor.getDouble(ignitionAdvanceColumnIndex));
+        }
+        if (isPresent(cursor, batteryVoltageColumnIndex)) {
+            row.setBatteryVoltage(cursor.getDouble(batteryVoltageColumnIndex));
+        }
+    }
+    
+    private static boolean isPresent(Cursor cursor, int columnIndex) {
+        return columnIndex != -1 && !cursor.isNull(columnIndex);
+    }
+}
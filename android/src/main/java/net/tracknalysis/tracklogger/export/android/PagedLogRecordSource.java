@@ -0,0 +1,57 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export.android;
+
+import net.tracknalysis.tracklogger.export.RecordSource;
+import net.tracknalysis.tracklogger.provider.PagedRecordIterator;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+
+/**
+ * Adapts the log entries read through a {@link PagedRecordIterator} to a {@link RecordSource}.  The
+ * iterator remains positioned on the current record so that callers may read the other columns of the
+ * record from {@link PagedRecordIterator#getCursor()}.
+ *
+ * @author David Valeri
+ */
+final class PagedLogRecordSource implements RecordSource {
+    
+    private final PagedRecordIterator logEntries;
+    private final int synchTimestampColumnIndex;
+    
+    /**
+     * @throws IllegalArgumentException if the records do not include the synch timestamp column
+     */
+    PagedLogRecordSource(PagedRecordIterator logEntries) {
+        this.logEntries = logEntries;
+        this.synchTimestampColumnIndex = logEntries.getColumnIndexOrThrow(
+                TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+    }
+    
+    @Override
+    public boolean moveToNext() {
+        return logEntries.moveToNext();
+    }
+    
+    @Override
+    public long getSynchTimestamp() {
+        return logEntries.getCursor().getLong(synchTimestampColumnIndex);
+    }
+    
+    @Override
+    public void close() {
+        logEntries.close();
+    }
+}
@@ -16,14 +16,21 @@
 package net.tracknalysis.tracklogger.export.android;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.tracknalysis.common.android.notification.AndroidNotificationListener;
 import net.tracknalysis.tracklogger.R;
 import net.tracknalysis.tracklogger.TrackLogger;
+import net.tracknalysis.tracklogger.config.ConfigurationFactory;
+import net.tracknalysis.tracklogger.export.AbstractSessionToFileExporter;
+import net.tracknalysis.tracklogger.export.ExportCache;
 import net.tracknalysis.tracklogger.export.SessionExporter;
 import net.tracknalysis.tracklogger.export.SessionExporter.ExportProgress;
 import net.tracknalysis.tracklogger.export.SessionExporter.SessionExporterNotificationType;
 import net.tracknalysis.tracklogger.export.SessionToFileExporter;
+import net.tracknalysis.tracklogger.export.SessionToZipBundleExporter;
 import net.tracknalysis.tracklogger.provider.TrackLoggerData;
 import net.tracknalysis.tracklogger.service.AbstractObservableIntentService;
 
@@ -48,13 +55,67 @@ public class SessionExporterService extends
     private static final Logger LOG = LoggerFactory.getLogger(SessionExporterService.class);
     private static final String NAME = "SessionExporterService";
     
+    /**
+     * Shared across service instances so that exports are cached for the life of the process.
+     */
+    private static ExportCache exportCache;
+    
     public static final String EXTRA_EXPORT_FORMAT = "exportFormat";
     public static final String EXTRA_EXPORT_START_LAP = "startLap";
     public static final String EXTRA_EXPORT_STOP_LAP = "stopLap";
     
+    /**
+     * The optional compression applied to the export file, {@link #COMPRESSION_GZIP}.  Not applied to
+     * {@link #EXPORT_FORMAT_RAW_1} or {@link #EXPORT_FORMAT_ZIP_1}.
+     */
+    public static final String EXTRA_EXPORT_COMPRESSION = "compression";
+    
+    /**
+     * The optional compression level, from 0 to 9, used for {@link #EXTRA_EXPORT_COMPRESSION} and
+     * {@link #EXPORT_FORMAT_ZIP_1}.
+     */
+    public static final String EXTRA_EXPORT_COMPRESSION_LEVEL = "compressionLevel";
+    
+    public static final String COMPRESSION_GZIP = "gzip";
+    
+    /**
+     * The optional flag requesting that only the entries logged since the last incremental export of the
+     * session and lap range be appended to the existing export file.  Supported by
+     * {@link #EXPORT_FORMAT_CSV_1}; other formats are exported in full.
+     */
+    public static final String EXTRA_EXPORT_INCREMENTAL = "incremental";
+    
+    /**
+     * The name of the directory, within the data directory, holding the cache of completed exports.
+     */
+    public static final String EXPORT_CACHE_DIR_NAME = "export-cache";
+    
+    /**
+     * The maximum total size in bytes of the cached exports.
+     */
+    public static final long EXPORT_CACHE_MAX_SIZE = 64L * 1024 * 1024;
+    
     public static final String EXPORT_FORMAT_CSV_1 = "csv1";
     public static final String EXPORT_FORMAT_SQL_1 = "sql1";
     
+    /**
+     * Copies the database file of a session stored in its own file.  See
+     * {@link AndroidSessionToRawDatabaseExporter}.
+     */
+    public static final String EXPORT_FORMAT_RAW_1 = "raw1";
+    
+    /**
+     * Bundles the {@link #EXPORT_FORMAT_CSV_1} and {@link #EXPORT_FORMAT_SQL_1} exports in a single zip
+     * file.  See {@link SessionToZipBundleExporter}.
+     */
+    public static final String EXPORT_FORMAT_ZIP_1 = "zip1";
+    
+    /**
+     * Writes the log entries in the columnar binary format.  See
+     * {@link net.tracknalysis.tracklogger.export.ColumnarSessionReader} for reading the export.
+     */
+    public static final String EXPORT_FORMAT_COLUMNAR_1 = "tlc1";
+    
     public SessionExporterService() {
         super(NAME);
     }
@@ -130,15 +191,42 @@ public class SessionExporterService extends
         }
         
         SessionExporter exporter;
+        ExecutorService executorService = null;
         
         if (EXPORT_FORMAT_CSV_1.equals(exportFormat)) {
-            exporter = new AndroidSessionToTrackLoggerCsvExporter(
+            AndroidSessionToTrackLoggerCsvExporter csvExporter = new AndroidSessionToTrackLoggerCsvExporter(
                     getApplicationContext(),
                     new AndroidNotificationListener<SessionExporterNotificationType>(requestState.getHandler()));
+            
+            // Format the laps of the session in parallel across the available cores.
+            int processors = Runtime.getRuntime().availableProcessors();
+            if (processors > 1) {
+                executorService = Executors.newFixedThreadPool(processors);
+                csvExporter.setExecutorService(executorService);
+            }
+            
+            exporter = csvExporter;
         } else if (EXPORT_FORMAT_SQL_1.equals(exportFormat)) {
             exporter = new AndroidSessionToTrackLoggerSqlExporter(
                     getApplicationContext(),
                     new AndroidNotificationListener<SessionExporterNotificationType>(requestState.getHandler()));
+        } else if (EXPORT_FORMAT_RAW_1.equals(exportFormat)) {
+            exporter = new AndroidSessionToRawDatabaseExporter(
+                    getApplicationContext(),
+                    new AndroidNotificationListener<SessionExporterNotificationType>(requestState.getHandler()));
+        } else if (EXPORT_FORMAT_COLUMNAR_1.equals(exportFormat)) {
+            exporter = new AndroidSessionToTrackLoggerColumnarExporter(
+                    getApplicationContext(),
+                    new AndroidNotificationListener<SessionExporterNotificationType>(requestState.getHandler()));
+        } else if (EXPORT_FORMAT_ZIP_1.equals(exportFormat)) {
+            AndroidNotificationListener<SessionExporterNotificationType> notificationListener =
+                    new AndroidNotificationListener<SessionExporterNotificationType>(requestState.getHandler());
+            exporter = new SessionToZipBundleExporter(
+                    new File(ConfigurationFactory.getInstance().getConfiguration().getDataDirectory()),
+                    notificationListener,
+                    Arrays.asList(
+                            new AndroidSessionToTrackLoggerCsvExporter(getApplicationContext(), notificationListener),
+                            new AndroidSessionToTrackLoggerSqlExporter(getApplicationContext(), notificationListener)));
         } else {
             LOG.error(
                     "Export format identifier [{}] is not supported in request with request state [{}].",
@@ -148,11 +236,82 @@ public class SessionExporterService extends
             return;
         }
         
+        configureCompression(requestState, exportFormat, exporter);
+        
+        if (exporter instanceof AbstractSessionToFileExporter
+                && requestState.getIntent().getBooleanExtra(EXTRA_EXPORT_INCREMENTAL, false)) {
+            ((AbstractSessionToFileExporter) exporter).setIncremental(true);
+        } else if (exporter instanceof AbstractSessionToFileExporter) {
+            configureExportCache(requestState, exportFormat, (AbstractSessionToFileExporter) exporter);
+        }
+        
         ((SessionExportServiceHandler) requestState.getHandler()).init(requestState, exporter);
         
-        exporter.export(requestState.getRequest().getSessionId(),
-                requestState.getRequest().getStartLap(),
-                requestState.getRequest().getStopLap());
+        try {
+            exporter.export(requestState.getRequest().getSessionId(),
+                    requestState.getRequest().getStartLap(),
+                    requestState.getRequest().getStopLap());
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+    }
+    
+    /**
+     * Serves repeated exports of an unchanged session from the export cache.  Incremental exports append
+     * to their previous export file and are not cached.
+     */
+    private void configureExportCache(RequestState<SessionExportRequest> requestState, String exportFormat,
+            AbstractSessionToFileExporter exporter) {
+        
+        String sessionVersion = AndroidSessionExporterHelper.getSessionVersion(
+                getContentResolver(), requestState.getRequest().getSessionId());
+        
+        if (sessionVersion == null) {
+            LOG.debug("Not caching export of session [{}] without a summary.",
+                    requestState.getRequest().getSessionId());
+            return;
+        }
+        
+        synchronized (SessionExporterService.class) {
+            if (exportCache == null) {
+                exportCache = new ExportCache(
+                        new File(ConfigurationFactory.getInstance().getConfiguration().getDataDirectory(),
+                                EXPORT_CACHE_DIR_NAME),
+                        EXPORT_CACHE_MAX_SIZE);
+            }
+        }
+        
+        exporter.setExportCache(exportCache, exportFormat + "|" + sessionVersion);
+    }
+    
+    private void configureCompression(RequestState<SessionExportRequest> requestState, String exportFormat,
+            SessionExporter exporter) {
+        
+        if (!(exporter instanceof AbstractSessionToFileExporter)) {
+            return;
+        }
+        
+        AbstractSessionToFileExporter fileExporter = (AbstractSessionToFileExporter) exporter;
+        Intent intent = requestState.getIntent();
+        
+        if (intent.hasExtra(EXTRA_EXPORT_COMPRESSION_LEVEL)) {
+            fileExporter.setCompressionLevel(intent.getIntExtra(EXTRA_EXPORT_COMPRESSION_LEVEL, -1));
+        }
+        
+        String compression = intent.getStringExtra(EXTRA_EXPORT_COMPRESSION);
+        
+        if (COMPRESSION_GZIP.equals(compression)) {
+            if (EXPORT_FORMAT_RAW_1.equals(exportFormat) || EXPORT_FORMAT_ZIP_1.equals(exportFormat)) {
+                LOG.warn("Ignoring compression [{}] for export format [{}].", compression, exportFormat);
+            } else {
+                fileExporter.setCompression(AbstractSessionToFileExporter.Compression.GZIP);
+            }
+        } else if (compression != null) {
+            LOG.warn("Ignoring unknown compression [{}] in request with request state [{}].",
+                    compression, requestState);
+        }
     }
     
     @Override
@@ -289,6 +448,12 @@ public class SessionExporterService extends
             
             String mimeType = exporter.getMimeType();
             
+            if (exporter instanceof AbstractSessionToFileExporter
+                    && ((AbstractSessionToFileExporter) exporter).getCompression()
+                            == AbstractSessionToFileExporter.Compression.GZIP) {
+                mimeType = "application/x-gzip";
+            }
+            
             Uri resultUri = null;
             if (exporter instanceof SessionToFileExporter) {
                 resultUri = Uri.fromFile(new File(
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+
+/**
+ * Coalesces change notifications for tables that are written at a high rate.  Changes recorded within
+ * a notification window are delivered together when the window closes, once per changed table URI
+ * and once per changed session on the {@link TrackLoggerData.Session#getAppendedUri(long) session
+ * appended URI}.
+ *
+ * @author David Valeri
+ */
+final class CoalescingChangeNotifier {
+    
+    /**
+     * The default length of the notification window in milliseconds.
+     */
+    static final long DEFAULT_WINDOW = 1000;
+    
+    private final ContentResolver contentResolver;
+    private final Handler handler;
+    private final long window;
+    
+    private final Set<Uri> pendingUris = new LinkedHashSet<Uri>();
+    private final Set<Integer> pendingSessionIds = new LinkedHashSet<Integer>();
+    private boolean scheduled;
+    
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    
+    /**
+     * @param contentResolver the resolver to deliver notifications through
+     * @param handler the handler on whose thread notifications are delivered
+     * @param window the length of the notification window in milliseconds
+     */
+    CoalescingChangeNotifier(ContentResolver contentResolver, Handler handler, long window) {
+        this.contentResolver = contentResolver;
+        this.handler = handler;
+        this.window = window;
+    }
+    
+    /**
+     * Records a change to the table at {@code uri} that appended data to a session.  The first change
+     * recorded after a window closes opens a new window.
+     *
+     * @param uri the table URI to notify
+     * @param sessionId the ID of the session that the data belongs to or {@code null} if unknown
+     */
+    synchronized void changed(Uri uri, Integer sessionId) {
+        pendingUris.add(uri);
+        
+        if (sessionId != null) {
+            pendingSessionIds.add(sessionId);
+        }
+        
+        if (!scheduled) {
+            scheduled = true;
+            handler.postDelayed(flushRunnable, window);
+        }
+    }
+    
+    /**
+     * Delivers any pending notifications immediately.
+     */
+    void flush() {
+        List<Uri> uris;
+        
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            scheduled = false;
+            
+            uris = new ArrayList<Uri>(pendingUris.size() + pendingSessionIds.size());
+            uris.addAll(pendingUris);
+            for (Integer sessionId : pendingSessionIds) {
+                uris.add(TrackLoggerData.Session.getAppendedUri(sessionId));
+            }
+            
+            pendingUris.clear();
+            pendingSessionIds.clear();
+        }
+        
+        // Notify outside of the lock so that slow observers do not hold up writers.
+        for (int i = 0; i < uris.size(); i++) {
+            contentResolver.notifyChange(uris.get(i), null);
+        }
+    }
+}
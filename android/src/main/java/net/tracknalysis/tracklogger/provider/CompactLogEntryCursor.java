@@ -0,0 +1,145 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.tracknalysis.tracklogger.model.encoding.CompactChannel;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Wraps a cursor over the {@link TrackLoggerData.LogEntry} rows of a session stored in
+ * {@link TrackLoggerData.Session#STORAGE_FORMAT_COMPACT_ROWS compact rows}, converting the fixed-point
+ * position and channel values back to floating point values as they are read.  Columns that are not
+ * stored in fixed-point are passed through unchanged.
+ *
+ * @author David Valeri
+ */
+final class CompactLogEntryCursor extends CursorWrapper {
+    
+    private static final Map<String, CompactChannel> COLUMN_CHANNELS = new HashMap<String, CompactChannel>();
+    
+    static {
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL,
+                CompactChannel.LONGITUDINAL_ACCEL);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL,
+                CompactChannel.LATERAL_ACCEL);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL,
+                CompactChannel.VERTICAL_ACCEL);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE,
+                CompactChannel.LATITUDE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE,
+                CompactChannel.LONGITUDE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE,
+                CompactChannel.ALTITUDE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_SPEED,
+                CompactChannel.SPEED);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_BEARING,
+                CompactChannel.BEARING);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_MAP,
+                CompactChannel.MANIFOLD_ABSOLUTE_PRESSURE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_MGP,
+                CompactChannel.MANIFOLD_GAUGE_PRESSURE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION,
+                CompactChannel.THROTTLE_POSITION);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_AFR,
+                CompactChannel.AIR_FUEL_RATIO);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_MAT,
+                CompactChannel.MANIFOLD_AIR_TEMPERATURE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_CLT,
+                CompactChannel.COOLANT_TEMPERATURE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE,
+                CompactChannel.IGNITION_ADVANCE);
+        COLUMN_CHANNELS.put(TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE,
+                CompactChannel.BATTERY_VOLTAGE);
+    }
+    
+    /**
+     * The channel of each column in the wrapped cursor, or {@code null} for columns that are passed
+     * through.
+     */
+    private final CompactChannel[] channels;
+    
+    CompactLogEntryCursor(Cursor cursor) {
+        super(cursor);
+        
+        String[] columnNames = cursor.getColumnNames();
+        channels = new CompactChannel[columnNames.length];
+        
+        for (int i = 0; i < columnNames.length; i++) {
+            channels[i] = COLUMN_CHANNELS.get(columnNames[i]);
+        }
+    }
+    
+    @Override
+    public double getDouble(int columnIndex) {
+        CompactChannel channel = channels[columnIndex];
+        
+        if (channel == null) {
+            return super.getDouble(columnIndex);
+        } else {
+            // Values are stored in columns with REAL affinity and come back as doubles.
+            return channel.decode(Math.round(super.getDouble(columnIndex)));
+        }
+    }
+    
+    @Override
+    public float getFloat(int columnIndex) {
+        if (channels[columnIndex] == null) {
+            return super.getFloat(columnIndex);
+        } else {
+            return (float) getDouble(columnIndex);
+        }
+    }
+    
+    @Override
+    public long getLong(int columnIndex) {
+        if (channels[columnIndex] == null) {
+            return super.getLong(columnIndex);
+        } else {
+            return (long) getDouble(columnIndex);
+        }
+    }
+    
+    @Override
+    public int getInt(int columnIndex) {
+        if (channels[columnIndex] == null) {
+            return super.getInt(columnIndex);
+        } else {
+            return (int) getDouble(columnIndex);
+        }
+    }
+    
+    @Override
+    public short getShort(int columnIndex) {
+        if (channels[columnIndex] == null) {
+            return super.getShort(columnIndex);
+        } else {
+            return (short) getDouble(columnIndex);
+        }
+    }
+    
+    @Override
+    public String getString(int columnIndex) {
+        if (channels[columnIndex] == null || isNull(columnIndex)) {
+            return super.getString(columnIndex);
+        } else {
+            return String.valueOf(getDouble(columnIndex));
+        }
+    }
+}
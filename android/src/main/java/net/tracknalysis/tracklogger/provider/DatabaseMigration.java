@@ -0,0 +1,70 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A single step in the evolution of the database schema.  Each migration upgrades the schema from the
+ * immediately preceding version to {@link #getVersion()}.
+ *
+ * @author David Valeri
+ */
+abstract class DatabaseMigration {
+    
+    private final int version;
+    private final String description;
+    
+    /**
+     * @param version the schema version that results from applying the migration
+     * @param description a short description of the changes made by the migration
+     */
+    protected DatabaseMigration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+    
+    public final int getVersion() {
+        return version;
+    }
+    
+    public final String getDescription() {
+        return description;
+    }
+    
+    /**
+     * Applies the migration.  Migrations run within the transaction opened by the database helper and
+     * must not manage transactions themselves.
+     *
+     * @param db the database to migrate
+     */
+    public abstract void migrate(SQLiteDatabase db);
+    
+    /**
+     * Applies any part of the migration that cannot run within a transaction, such as a VACUUM.  Called
+     * when the database is opened after the transaction in which the migrations were applied has
+     * committed.  By default, this method does nothing.
+     *
+     * @param db the database to migrate
+     */
+    public void migrateAfterCommit(SQLiteDatabase db) {
+    }
+    
+    @Override
+    public String toString() {
+        return "DatabaseMigration [version=" + version + ", description=" + description + "]";
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+/**
+ * Receives progress updates as database migrations are applied.
+ *
+ * @author David Valeri
+ */
+interface DatabaseMigrationListener {
+    
+    /**
+     * Invoked before a migration is applied.
+     *
+     * @param migration the migration being applied
+     * @param step the 1-relative position of the migration among those being applied
+     * @param stepCount the number of migrations being applied
+     */
+    void migrationStarted(DatabaseMigration migration, int step, int stepCount);
+    
+    /**
+     * Invoked after a migration has been applied.
+     *
+     * @param migration the migration that was applied
+     * @param step the 1-relative position of the migration among those being applied
+     * @param stepCount the number of migrations being applied
+     * @param elapsedTime the time taken to apply the migration in milliseconds
+     */
+    void migrationCompleted(DatabaseMigration migration, int step, int stepCount, long elapsedTime);
+    
+    /**
+     * Invoked before the part of a migration that runs after the migration transaction has committed is
+     * applied.
+     *
+     * @param migration the migration being applied
+     */
+    void afterCommitStarted(DatabaseMigration migration);
+    
+    /**
+     * Invoked after the part of a migration that runs after the migration transaction has committed has
+     * been applied.
+     *
+     * @param migration the migration that was applied
+     * @param elapsedTime the time taken to apply the part of the migration in milliseconds
+     */
+    void afterCommitCompleted(DatabaseMigration migration, long elapsedTime);
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Maintains the {@link TrackLoggerData.LapIndex} table as log and timing entries are inserted.
+ * <p/>
+ * A lap starts with the timing entry that marks the start of the first lap or the end of the previous
+ * lap and with the log entry sharing that timing entry's synch timestamp.  The two entries may be
+ * inserted in either order, so the most recent log entries and any lap start still waiting for its log
+ * entry are tracked per session.  This avoids querying the log entries to resolve the lap boundaries,
+ * keeping the cost of each insert constant.
+ * <p/>
+ * The tracked state is not persisted.  If the provider is restarted between the insertion of a lap
+ * start timing entry and its log entry, the lap is indexed without its starting log entry ID and the
+ * previous lap is not closed.  Readers must treat such laps as unindexed.
+ *
+ * @author David Valeri
+ */
+final class LapIndexMaintainer {
+    
+    private static final long NONE = -1;
+    
+    private final Map<Integer, SessionState> sessionStates = new HashMap<Integer, SessionState>();
+    
+    /**
+     * Records the insertion of a log entry, completing any lap start that was waiting on it.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     * @param values the values inserted
+     * @param rowId the ID of the inserted row
+     */
+    synchronized void logEntryInserted(SQLiteDatabase db, ContentValues values, long rowId) {
+        Integer sessionId = values.getAsInteger(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID);
+        Long synchTimestamp = values.getAsLong(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+        
+        if (sessionId == null || synchTimestamp == null) {
+            return;
+        }
+        
+        SessionState state = getSessionState(sessionId);
+        
+        if (state.pendingLap != NONE && state.pendingSynchTimestamp == synchTimestamp) {
+            startLap(db, sessionId, (int) state.pendingLap, rowId,
+                    state.lastLogEntryId, state.lastSynchTimestamp);
+            state.pendingLap = NONE;
+        }
+        
+        state.previousLogEntryId = state.lastLogEntryId;
+        state.previousSynchTimestamp = state.lastSynchTimestamp;
+        state.lastLogEntryId = rowId;
+        state.lastSynchTimestamp = synchTimestamp;
+    }
+    
+    /**
+     * Records the insertion of a timing entry, indexing a new lap if the entry starts one.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     * @param values the values inserted
+     * @param rowId the ID of the inserted row
+     */
+    synchronized void timingEntryInserted(SQLiteDatabase db, ContentValues values, long rowId) {
+        Integer sessionId = values.getAsInteger(TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID);
+        Long synchTimestamp = values.getAsLong(TrackLoggerData.TimingEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+        Integer lap = values.getAsInteger(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP);
+        Long lapTime = values.getAsLong(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP_TIME);
+        
+        if (sessionId == null || synchTimestamp == null || lap == null) {
+            return;
+        }
+        
+        if (lap != 0 && lapTime == null) {
+            // A split within the current lap
+            return;
+        }
+        
+        // The entry ends lap "lap" and starts the next one.  The first entry, lap 0, starts lap 1.
+        int newLap = lap + 1;
+        
+        ContentValues lapValues = new ContentValues();
+        lapValues.put(TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID, sessionId);
+        lapValues.put(TrackLoggerData.LapIndex.COLUMN_NAME_LAP, newLap);
+        lapValues.put(TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID, rowId);
+        lapValues.put(TrackLoggerData.LapIndex.COLUMN_NAME_START_SYNCH_TIMESTAMP, synchTimestamp);
+        
+        // Lap numbering restarts if logging resumes in an existing session; the latest laps win.
+        db.delete(TrackLoggerData.LapIndex.TABLE_NAME,
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ? AND "
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_LAP + " = ?",
+                new String[] {String.valueOf(sessionId), String.valueOf(newLap)});
+        db.insert(TrackLoggerData.LapIndex.TABLE_NAME, null, lapValues);
+        
+        SessionState state = getSessionState(sessionId);
+        
+        if (state.lastLogEntryId != NONE && state.lastSynchTimestamp == synchTimestamp) {
+            // The log entry was inserted first
+            startLap(db, sessionId, newLap, state.lastLogEntryId,
+                    state.previousLogEntryId, state.previousSynchTimestamp);
+        } else {
+            state.pendingLap = newLap;
+            state.pendingSynchTimestamp = synchTimestamp;
+        }
+    }
+    
+    /**
+     * Discards the tracked state for a session.
+     */
+    synchronized void sessionDeleted(int sessionId) {
+        sessionStates.remove(sessionId);
+    }
+    
+    private SessionState getSessionState(int sessionId) {
+        SessionState state = sessionStates.get(sessionId);
+        
+        if (state == null) {
+            state = new SessionState();
+            sessionStates.put(sessionId, state);
+        }
+        
+        return state;
+    }
+    
+    /**
+     * Records the first log entry of {@code lap} and closes the previous lap with the log entry
+     * preceding it.
+     */
+    private void startLap(SQLiteDatabase db, int sessionId, int lap, long logEntryId,
+            long previousLogEntryId, long previousSynchTimestamp) {
+        
+        ContentValues values = new ContentValues();
+        values.put(TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID, logEntryId);
+        
+        db.update(TrackLoggerData.LapIndex.TABLE_NAME, values,
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ? AND "
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_LAP + " = ?",
+                new String[] {String.valueOf(sessionId), String.valueOf(lap)});
+        
+        if (previousLogEntryId != NONE) {
+            values.clear();
+            values.put(TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID, previousLogEntryId);
+            values.put(TrackLoggerData.LapIndex.COLUMN_NAME_END_SYNCH_TIMESTAMP, previousSynchTimestamp);
+            
+            db.update(TrackLoggerData.LapIndex.TABLE_NAME, values,
+                    TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ? AND "
+                            + TrackLoggerData.LapIndex.COLUMN_NAME_LAP + " = ?",
+                    new String[] {String.valueOf(sessionId), String.valueOf(lap - 1)});
+        }
+    }
+    
+    private static final class SessionState {
+        private long lastLogEntryId = NONE;
+        private long lastSynchTimestamp;
+        private long previousLogEntryId = NONE;
+        private long previousSynchTimestamp;
+        private long pendingLap = NONE;
+        private long pendingSynchTimestamp;
+    }
+}
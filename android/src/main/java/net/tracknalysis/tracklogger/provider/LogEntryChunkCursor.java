@@ -0,0 +1,448 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.AccelData;
+import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.LocationData;
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A cursor over the log entries of a session stored in the
+ * {@link TrackLoggerData.Session#STORAGE_FORMAT_CHUNKED chunked storage format}, presenting the columns
+ * of {@link TrackLoggerData.LogEntry}.  The cursor is built from the positions and entry counts of the
+ * chunks only.  The data of each chunk is read and decoded when the cursor first moves onto one of its
+ * entries, so only the entries of the current chunk are held in memory.  The
+ * {@link TrackLoggerData.LogEntry#_ID} of each entry is its 1-relative position in the session.  The
+ * cursor may be restricted to a contiguous range of the session's entries so that the entries can be
+ * read a page at a time, in which case only the chunks overlapping the range need be provided.
+ *
+ * @author David Valeri
+ */
+final class LogEntryChunkCursor extends AbstractCursor {
+    
+    private static final int ID = 0;
+    private static final int SESSION_ID = 1;
+    private static final int SYNCH_TIMESTAMP = 2;
+    private static final int ACCEL_CAPTURE_TIMESTAMP = 3;
+    private static final int LONGITUDINAL_ACCEL = 4;
+    private static final int LATERAL_ACCEL = 5;
+    private static final int VERTICAL_ACCEL = 6;
+    private static final int LOCATION_CAPTURE_TIMESTAMP = 7;
+    private static final int LOCATION_TIME_IN_DAY = 8;
+    private static final int LATITUDE = 9;
+    private static final int LONGITUDE = 10;
+    private static final int ALTITUDE = 11;
+    private static final int SPEED = 12;
+    private static final int BEARING = 13;
+    private static final int ECU_CAPTURE_TIMESTAMP = 14;
+    private static final int RPM = 15;
+    private static final int MAP = 16;
+    private static final int MGP = 17;
+    private static final int THROTTLE_POSITION = 18;
+    private static final int AFR = 19;
+    private static final int MAT = 20;
+    private static final int CLT = 21;
+    private static final int IGNITION_ADVANCE = 22;
+    private static final int BATTERY_VOLTAGE = 23;
+    
+    /**
+     * The columns of a log entry, indexed by the constants above.
+     */
+    static final String[] COLUMNS = new String[] {
+            TrackLoggerData.LogEntry._ID,
+            TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID,
+            TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP,
+            TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP,
+            TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL,
+            TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL,
+            TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL,
+            TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP,
+            TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY,
+            TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE,
+            TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE,
+            TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE,
+            TrackLoggerData.LogEntry.COLUMN_NAME_SPEED,
+            TrackLoggerData.LogEntry.COLUMN_NAME_BEARING,
+            TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP,
+            TrackLoggerData.LogEntry.COLUMN_NAME_RPM,
+            TrackLoggerData.LogEntry.COLUMN_NAME_MAP,
+            TrackLoggerData.LogEntry.COLUMN_NAME_MGP,
+            TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION,
+            TrackLoggerData.LogEntry.COLUMN_NAME_AFR,
+            TrackLoggerData.LogEntry.COLUMN_NAME_MAT,
+            TrackLoggerData.LogEntry.COLUMN_NAME_CLT,
+            TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE,
+            TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE };
+    
+    private final SQLiteDatabase db;
+    private final int sessionId;
+    private final String[] columnNames;
+    private final int[] columns;
+    private final long[] chunkIds;
+    private final int[] chunkStarts;
+    private final int[] chunkEntryCounts;
+    private final int offset;
+    private final int count;
+    
+    private final LogEntryChunkCodec codec = new LogEntryChunkCodec();
+    private final List<LogEntry> chunkEntries = new ArrayList<LogEntry>();
+    private int chunkIndex = -1;
+    private LogEntry logEntry;
+    
+    /**
+     * @param db the database from which to read the data of the chunks
+     * @param chunkPositionCursor a cursor over the chunks of the session in position order, including at
+     *            least the {@link TrackLoggerData.LogEntryChunk#_ID},
+     *            {@link TrackLoggerData.LogEntryChunk#COLUMN_NAME_FIRST_ENTRY_POSITION} and
+     *            {@link TrackLoggerData.LogEntryChunk#COLUMN_NAME_ENTRY_COUNT} columns.  The cursor is
+     *            read and closed by this constructor.
+     * @param sessionId the ID of the session
+     * @param projection the log entry columns to include, or {@code null} for all columns
+     *
+     * @throws IllegalArgumentException if the projection contains a column that is not a log entry column
+     */
+    LogEntryChunkCursor(SQLiteDatabase db, Cursor chunkPositionCursor, int sessionId, String[] projection) {
+        this(db, chunkPositionCursor, sessionId, projection, 0, -1);
+    }
+    
+    /**
+     * @param db the database from which to read the data of the chunks
+     * @param chunkPositionCursor a cursor over the chunks of the session in position order, including at
+     *            least the {@link TrackLoggerData.LogEntryChunk#_ID},
+     *            {@link TrackLoggerData.LogEntryChunk#COLUMN_NAME_FIRST_ENTRY_POSITION} and
+     *            {@link TrackLoggerData.LogEntryChunk#COLUMN_NAME_ENTRY_COUNT} columns.  The cursor must
+     *            include every chunk that overlaps the range of entries selected by {@code offset} and
+     *            {@code limit} and is read and closed by this constructor.
+     * @param sessionId the ID of the session
+     * @param projection the log entry columns to include, or {@code null} for all columns
+     * @param offset the number of entries at the start of the session to skip
+     * @param limit the maximum number of entries to include, or a negative value for no limit
+     *
+     * @throws IllegalArgumentException if the projection contains a column that is not a log entry column,
+     *             if the offset is negative, or if the chunks do not cover the start of the range
+     */
+    LogEntryChunkCursor(SQLiteDatabase db, Cursor chunkPositionCursor, int sessionId, String[] projection,
+            int offset, int limit) {
+        
+        try {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset must not be negative.");
+            }
+            
+            this.db = db;
+            this.sessionId = sessionId;
+            this.offset = offset;
+            
+            if (projection == null) {
+                columnNames = COLUMNS;
+                columns = new int[COLUMNS.length];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = i;
+                }
+            } else {
+                columnNames = projection;
+                columns = new int[projection.length];
+                for (int i = 0; i < projection.length; i++) {
+                    columns[i] = indexOf(projection[i]);
+                }
+            }
+            
+            int idColumnIndex = chunkPositionCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LogEntryChunk._ID);
+            int firstEntryPositionColumnIndex = chunkPositionCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_ENTRY_POSITION);
+            int entryCountColumnIndex = chunkPositionCursor.getColumnIndexOrThrow(
+                    TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT);
+            
+            chunkIds = new long[chunkPositionCursor.getCount()];
+            chunkStarts = new int[chunkIds.length];
+            chunkEntryCounts = new int[chunkIds.length];
+            int end = 0;
+            
+            for (int i = 0; chunkPositionCursor.moveToNext(); i++) {
+                chunkIds[i] = chunkPositionCursor.getLong(idColumnIndex);
+                chunkStarts[i] = chunkPositionCursor.getInt(firstEntryPositionColumnIndex);
+                chunkEntryCounts[i] = chunkPositionCursor.getInt(entryCountColumnIndex);
+                end = chunkStarts[i] + chunkEntryCounts[i];
+            }
+            
+            int available = Math.max(end - offset, 0);
+            count = limit < 0 ? available : Math.min(limit, available);
+            
+            if (count > 0 && chunkStarts[0] > offset) {
+                throw new IllegalArgumentException("The first chunk for session [" + sessionId
+                        + "] starts at position [" + chunkStarts[0] + "], after offset [" + offset + "].");
+            }
+        } finally {
+            chunkPositionCursor.close();
+        }
+    }
+    
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+    
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int entryPosition = newPosition + offset;
+        int newChunkIndex = getChunkIndex(entryPosition);
+        
+        if (newChunkIndex != chunkIndex) {
+            chunkEntries.clear();
+            int decoded = codec.decode(readChunkData(newChunkIndex), sessionId, chunkEntries);
+            
+            if (decoded != chunkEntryCounts[newChunkIndex]) {
+                throw new IllegalStateException("Chunk [" + chunkIds[newChunkIndex] + "] for session ["
+                        + sessionId + "] contains [" + decoded + "] entries but is recorded as containing ["
+                        + chunkEntryCounts[newChunkIndex] + "].");
+            }
+            
+            chunkIndex = newChunkIndex;
+        }
+        
+        logEntry = chunkEntries.get(entryPosition - chunkStarts[chunkIndex]);
+        return true;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        switch (columns[column]) {
+            case ACCEL_CAPTURE_TIMESTAMP:
+            case LONGITUDINAL_ACCEL:
+            case LATERAL_ACCEL:
+            case VERTICAL_ACCEL:
+                return logEntry.getAccelData() == null;
+            case LOCATION_CAPTURE_TIMESTAMP:
+            case LOCATION_TIME_IN_DAY:
+            case LATITUDE:
+            case LONGITUDE:
+            case ALTITUDE:
+            case SPEED:
+            case BEARING:
+                return logEntry.getLocationData() == null;
+            case ECU_CAPTURE_TIMESTAMP:
+            case RPM:
+            case MAP:
+            case MGP:
+            case THROTTLE_POSITION:
+            case AFR:
+            case MAT:
+            case CLT:
+            case IGNITION_ADVANCE:
+            case BATTERY_VOLTAGE:
+                return logEntry.getEcuData() == null;
+            default:
+                return false;
+        }
+    }
+    
+    @Override
+    public int getType(int column) {
+        if (isNull(column)) {
+            return Cursor.FIELD_TYPE_NULL;
+        } else if (isIntegerColumn(columns[column])) {
+            return Cursor.FIELD_TYPE_INTEGER;
+        } else {
+            return Cursor.FIELD_TYPE_FLOAT;
+        }
+    }
+
+    @Override
+    public String getString(int column) {
+        if (isNull(column)) {
+            return null;
+        } else if (isIntegerColumn(columns[column])) {
+            return String.valueOf(getLong(column));
+        } else {
+            return String.valueOf(getDouble(column));
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (isNull(column)) {
+            return 0;
+        }
+        
+        switch (columns[column]) {
+            case ID:
+                return offset + getPosition() + 1;
+            case SESSION_ID:
+                return sessionId;
+            case SYNCH_TIMESTAMP:
+                return logEntry.getSynchTimestamp();
+            case ACCEL_CAPTURE_TIMESTAMP:
+                return logEntry.getAccelData().getDataRecivedTime();
+            case LOCATION_CAPTURE_TIMESTAMP:
+                return logEntry.getLocationData().getDataRecivedTime();
+            case LOCATION_TIME_IN_DAY:
+                return logEntry.getLocationData().getTime();
+            case ECU_CAPTURE_TIMESTAMP:
+                return logEntry.getEcuData().getDataRecivedTime();
+            case RPM:
+                return logEntry.getEcuData().getRpm();
+            default:
+                return (long) getDouble(column);
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        if (isNull(column)) {
+            return 0;
+        }
+        
+        AccelData accelData = logEntry.getAccelData();
+        LocationData locationData = logEntry.getLocationData();
+        EcuData ecuData = logEntry.getEcuData();
+        
+        switch (columns[column]) {
+            case LONGITUDINAL_ACCEL:
+                return accelData.getLongitudinal();
+            case LATERAL_ACCEL:
+                return accelData.getLateral();
+            case VERTICAL_ACCEL:
+                return accelData.getVertical();
+            case LATITUDE:
+                return locationData.getLatitude();
+            case LONGITUDE:
+                return locationData.getLongitude();
+            case ALTITUDE:
+                return locationData.getAltitude();
+            case SPEED:
+                return locationData.getSpeed();
+            case BEARING:
+                return locationData.getBearing();
+            case MAP:
+                return ecuData.getManifoldAbsolutePressure();
+            case MGP:
+                return ecuData.getManifoldGaugePressure();
+            case THROTTLE_POSITION:
+                return ecuData.getThrottlePosition();
+            case AFR:
+                return ecuData.getAirFuelRatio();
+            case MAT:
+                return ecuData.getManifoldAirTemperature();
+            case CLT:
+                return ecuData.getCoolantTemperature();
+            case IGNITION_ADVANCE:
+                return ecuData.getIgnitionAdvance();
+            case BATTERY_VOLTAGE:
+                return ecuData.getBatteryVoltage();
+            default:
+                return getLong(column);
+        }
+    }
+    
+    /**
+     * Reads the encoded data of the chunk at {@code index}.
+     */
+    private byte[] readChunkData(int index) {
+        Cursor dataCursor = db.query(TrackLoggerData.LogEntryChunk.TABLE_NAME,
+                new String[] {TrackLoggerData.LogEntryChunk.COLUMN_NAME_DATA},
+                TrackLoggerData.LogEntryChunk._ID + " = ?",
+                new String[] {String.valueOf(chunkIds[index])},
+                null,
+                null,
+                null);
+        
+        try {
+            if (!dataCursor.moveToFirst()) {
+                throw new IllegalStateException("Chunk [" + chunkIds[index] + "] for session [" + sessionId
+                        + "] no longer exists.");
+            }
+            
+            return dataCursor.getBlob(0);
+        } finally {
+            dataCursor.close();
+        }
+    }
+    
+    /**
+     * Returns the index of the last chunk starting at or before {@code position}, skipping any empty
+     * chunks.
+     */
+    private int getChunkIndex(int position) {
+        int low = 0;
+        int high = chunkStarts.length - 1;
+        
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (chunkStarts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        
+        return low;
+    }
+    
+    private static boolean isIntegerColumn(int column) {
+        switch (column) {
+            case ID:
+            case SESSION_ID:
+            case SYNCH_TIMESTAMP:
+            case ACCEL_CAPTURE_TIMESTAMP:
+            case LOCATION_CAPTURE_TIMESTAMP:
+            case LOCATION_TIME_IN_DAY:
+            case ECU_CAPTURE_TIMESTAMP:
+            case RPM:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private static int indexOf(String columnName) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(columnName)) {
+                return i;
+            }
+        }
+        
+        throw new IllegalArgumentException("Unknown log entry column [" + columnName + "].");
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.io.Closeable;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Streams the records behind a content URI a page at a time using the
+ * {@link TrackLoggerData#QUERY_PARAMETER_AFTER_ID keyset paging} query parameters.  Each page is fetched
+ * by the ID of the last record seen rather than by offset, so reading a session of any length costs one
+ * indexed query per page and at most one page is held in memory.
+ * <p/>
+ * Usage mirrors a forward-only cursor:
+ * <pre>
+ * PagedRecordIterator records = new PagedRecordIterator(cr, TrackLoggerData.Session.getLogEntriesUri(id),
+ *         null, null, null);
+ * try {
+ *     int column = records.getColumnIndexOrThrow(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+ *     while (records.moveToNext()) {
+ *         long synchTimestamp = records.getCursor().getLong(column);
+ *     }
+ * } finally {
+ *     records.close();
+ * }
+ * </pre>
+ * Column indexes are the same on every page.  If the projection does not include {@link BaseColumns#_ID},
+ * it is appended to the projection.
+ *
+ * @author David Valeri
+ */
+public final class PagedRecordIterator implements Closeable {
+    
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final String[] projection;
+    private final String selection;
+    private final String[] selectionArgs;
+    private final int pageSize;
+    
+    private Cursor page;
+    private int idColumnIndex;
+    private long lastId;
+    private int position = -1;
+    private boolean lastPage;
+    private boolean closed;
+    
+    public PagedRecordIterator(ContentResolver contentResolver, Uri uri, String[] projection,
+            String selection, String[] selectionArgs) {
+        this(contentResolver, uri, projection, selection, selectionArgs, DEFAULT_PAGE_SIZE);
+    }
+    
+    /**
+     * @param contentResolver the resolver to query
+     * @param uri the URI to query, without paging query parameters
+     * @param projection the columns to return, or {@code null} for all columns
+     * @param selection the selection, or {@code null} for all records
+     * @param selectionArgs the arguments for the selection
+     * @param pageSize the number of records to fetch per query
+     *
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public PagedRecordIterator(ContentResolver contentResolver, Uri uri, String[] projection,
+            String selection, String[] selectionArgs, int pageSize) {
+        this(contentResolver, uri, projection, selection, selectionArgs, pageSize, 0);
+    }
+    
+    /**
+     * @param contentResolver the resolver to query
+     * @param uri the URI to query, without paging query parameters
+     * @param projection the columns to return, or {@code null} for all columns
+     * @param selection the selection, or {@code null} for all records
+     * @param selectionArgs the arguments for the selection
+     * @param pageSize the number of records to fetch per query
+     * @param afterId the ID of the record to start after, or 0 to start with the first record
+     *
+     * @throws IllegalArgumentException if the page size is not positive or the ID is negative
+     */
+    public PagedRecordIterator(ContentResolver contentResolver, Uri uri, String[] projection,
+            String selection, String[] selectionArgs, int pageSize, long afterId) {
+        
+        if (afterId < 0) {
+            throw new IllegalArgumentException("After ID must not be negative.");
+        }
+        
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.projection = withId(projection);
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        this.pageSize = pageSize;
+        this.lastId = afterId;
+    }
+    
+    /**
+     * Advances to the next record, fetching the next page if the current page is exhausted.
+     *
+     * @return false if there are no more records
+     */
+    public boolean moveToNext() {
+        
+        if (closed) {
+            throw new IllegalStateException("The iterator is closed.");
+        }
+        
+        if (page == null) {
+            fetchPage();
+        }
+        
+        if (!page.moveToNext()) {
+            if (lastPage) {
+                return false;
+            }
+            
+            fetchPage();
+            
+            if (!page.moveToNext()) {
+                return false;
+            }
+        }
+        
+        lastId = page.getLong(idColumnIndex);
+        position++;
+        return true;
+    }
+    
+    /**
+     * Returns the current page, positioned on the current record.  The cursor is owned by this iterator
+     * and is only valid until the next call to {@link #moveToNext()}.
+     */
+    public Cursor getCursor() {
+        if (page == null) {
+            throw new IllegalStateException("No record has been read.");
+        }
+        
+        return page;
+    }
+    
+    /**
+     * Returns the zero-based position of the current record across all pages, or -1 if no record has
+     * been read.
+     */
+    public int getPosition() {
+        return position;
+    }
+    
+    /**
+     * Returns the index of the column, fetching the first page if necessary.
+     */
+    public int getColumnIndex(String columnName) {
+        ensurePage();
+        return page.getColumnIndex(columnName);
+    }
+    
+    /**
+     * Returns the index of the column, fetching the first page if necessary.
+     *
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    public int getColumnIndexOrThrow(String columnName) {
+        ensurePage();
+        return page.getColumnIndexOrThrow(columnName);
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        
+        if (page != null) {
+            page.close();
+            page = null;
+        }
+    }
+    
+    private void ensurePage() {
+        if (closed) {
+            throw new IllegalStateException("The iterator is closed.");
+        }
+        
+        if (page == null) {
+            fetchPage();
+        }
+    }
+    
+    private void fetchPage() {
+        if (page != null) {
+            page.close();
+            page = null;
+        }
+        
+        Uri pageUri = uri.buildUpon()
+                .appendQueryParameter(TrackLoggerData.QUERY_PARAMETER_AFTER_ID, Long.toString(lastId))
+                .appendQueryParameter(TrackLoggerData.QUERY_PARAMETER_LIMIT, Integer.toString(pageSize))
+                .build();
+        
+        page = contentResolver.query(pageUri, projection, selection, selectionArgs, null);
+        
+        if (page == null) {
+            throw new IllegalStateException("Query for " + pageUri + " returned no cursor.");
+        }
+        
+        idColumnIndex = page.getColumnIndexOrThrow(BaseColumns._ID);
+        lastPage = page.getCount() < pageSize;
+    }
+    
+    private static String[] withId(String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        
+        for (String column : projection) {
+            if (BaseColumns._ID.equals(column)) {
+                return projection;
+            }
+        }
+        
+        String[] result = new String[projection.length + 1];
+        System.arraycopy(projection, 0, result, 0, projection.length);
+        result[projection.length] = BaseColumns._ID;
+        return result;
+    }
+}
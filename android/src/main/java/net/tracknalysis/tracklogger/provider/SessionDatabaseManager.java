@@ -0,0 +1,205 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Manages the database files holding the log entries of sessions stored in the
+ * {@link TrackLoggerData.Session#STORAGE_FORMAT_SESSION_FILE session file} storage format.  Each session
+ * has a database of its own containing a single {@link TrackLoggerData.LogEntry#TABLE_NAME} table with
+ * the same schema as the table in the main database.  Databases are opened on demand and a small number
+ * of them are kept open, most recently used first, so that logging to a session and reading it back do
+ * not reopen the file for every operation.
+ * <p/>
+ * Databases are reference counted.  Callers {@link #acquireDatabase(int) acquire} a database and
+ * release it with {@link SQLiteDatabase#releaseReference()} when done, or wrap cursors obtained from it
+ * with {@link #releaseOnClose(Cursor, SQLiteDatabase)}.  A database evicted from the set of open databases
+ * is closed once the last such reference is released.
+ *
+ * @author David Valeri
+ */
+final class SessionDatabaseManager {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(SessionDatabaseManager.class);
+    
+    /**
+     * The default maximum number of session databases kept open.
+     */
+    static final int DEFAULT_MAX_OPEN_DATABASES = 4;
+    
+    /**
+     * The version of the schema of the session databases, stored as the database user version.
+     */
+    private static final int SESSION_DATABASE_VERSION = 1;
+    
+    private static final String FILE_NAME_PREFIX = "session-";
+    private static final String FILE_NAME_SUFFIX = ".db";
+    private static final String JOURNAL_SUFFIX = "-journal";
+    
+    private final File directory;
+    private final LinkedHashMap<Integer, SQLiteDatabase> openDatabases;
+    
+    /**
+     * @param directory the directory in which the session databases are stored, created when the first
+     *            database is opened
+     * @param maxOpenDatabases the maximum number of session databases kept open
+     */
+    SessionDatabaseManager(File directory, final int maxOpenDatabases) {
+        this.directory = directory;
+        this.openDatabases = new LinkedHashMap<Integer, SQLiteDatabase>(maxOpenDatabases + 1, 0.75f, true) {
+            
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SQLiteDatabase> eldest) {
+                if (size() > maxOpenDatabases) {
+                    LOG.debug("Closing session database for session {}.", eldest.getKey());
+                    eldest.getValue().releaseReference();
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        };
+    }
+    
+    /**
+     * Returns the database file of the session.  The file need not exist.
+     */
+    File getDatabaseFile(int sessionId) {
+        return new File(directory, FILE_NAME_PREFIX + sessionId + FILE_NAME_SUFFIX);
+    }
+    
+    /**
+     * Returns the database of the session, opening and creating it if needed.  The caller holds a
+     * reference to the returned database and must release it.
+     */
+    synchronized SQLiteDatabase acquireDatabase(int sessionId) {
+        SQLiteDatabase db = openDatabases.get(sessionId);
+        
+        if (db == null) {
+            db = openDatabase(sessionId);
+            openDatabases.put(sessionId, db);
+        }
+        
+        db.acquireReference();
+        return db;
+    }
+    
+    /**
+     * Deletes the database file of the session.  Cursors still open on the database remain readable
+     * until closed, after which the storage is reclaimed.
+     *
+     * @return true if the file existed and was deleted
+     */
+    synchronized boolean delete(int sessionId) {
+        SQLiteDatabase db = openDatabases.remove(sessionId);
+        
+        if (db != null) {
+            db.releaseReference();
+        }
+        
+        File file = getDatabaseFile(sessionId);
+        boolean deleted = file.delete();
+        new File(file.getPath() + JOURNAL_SUFFIX).delete();
+        
+        if (deleted) {
+            LOG.debug("Deleted session database {}.", file);
+        }
+        
+        return deleted;
+    }
+    
+    /**
+     * Releases the references held on all open session databases.
+     */
+    synchronized void close() {
+        for (SQLiteDatabase db : new ArrayList<SQLiteDatabase>(openDatabases.values())) {
+            db.releaseReference();
+        }
+        
+        openDatabases.clear();
+    }
+    
+    /**
+     * Wraps a cursor obtained from a database acquired from this manager such that the reference to the
+     * database is released when the cursor is closed.
+     */
+    static Cursor releaseOnClose(Cursor cursor, final SQLiteDatabase db) {
+        return new CursorWrapper(cursor) {
+            
+            private boolean released;
+            
+            @Override
+            public void close() {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        db.releaseReference();
+                    }
+                }
+            }
+        };
+    }
+    
+    private SQLiteDatabase openDatabase(int sessionId) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Could not create session database directory " + directory + ".");
+        }
+        
+        File file = getDatabaseFile(sessionId);
+        LOG.debug("Opening session database {}.", file);
+        
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY);
+        
+        try {
+            int version = db.getVersion();
+            
+            if (version == 0) {
+                db.beginTransaction();
+                try {
+                    TrackLoggerDatabaseHelper.createLogEntryTable(db);
+                    db.setVersion(SESSION_DATABASE_VERSION);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } else if (version != SESSION_DATABASE_VERSION) {
+                throw new IllegalStateException("Session database " + file + " has unsupported version "
+                        + version + ".");
+            }
+        } catch (RuntimeException e) {
+            db.close();
+            throw e;
+        }
+        
+        return db;
+    }
+}
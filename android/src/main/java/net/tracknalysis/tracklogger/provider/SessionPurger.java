@@ -0,0 +1,222 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * Purges the data of sessions {@link TrackLoggerData.Session#COLUMN_NAME_DELETED marked as deleted} on
+ * a background thread.  Log entries and log entry chunks are deleted in batches of bounded size, each in
+ * a transaction of its own, so that logging and queries are never blocked for longer than it takes to
+ * delete a single batch.  The session row is deleted last, so a purge interrupted by the process being
+ * killed resumes the next time the purger is {@link #schedule() scheduled}.
+ * <p/>
+ * Once all marked sessions are purged, the freed pages are returned to the file system in small steps
+ * using {@code PRAGMA incremental_vacuum} if the database uses incremental auto vacuum.
+ *
+ * @author David Valeri
+ */
+final class SessionPurger {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(SessionPurger.class);
+    
+    /**
+     * The default maximum number of rows deleted in a single transaction.
+     */
+    static final int DEFAULT_BATCH_SIZE = 500;
+    
+    /**
+     * The default maximum number of pages freed in a single incremental vacuum step.
+     */
+    static final int DEFAULT_VACUUM_PAGES = 128;
+    
+    private final SQLiteOpenHelper databaseHelper;
+    private final SessionDatabaseManager sessionDatabaseManager;
+    private final int batchSize;
+    private final int vacuumPages;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private Handler handler;
+    
+    private final Runnable purgeTask = new Runnable() {
+        @Override
+        public void run() {
+            // Cleared before purging so that sessions marked during the purge trigger another pass.
+            scheduled.set(false);
+            
+            try {
+                purge();
+            } catch (RuntimeException e) {
+                LOG.error("Error purging deleted sessions.", e);
+            }
+        }
+    };
+    
+    /**
+     * @param databaseHelper the helper for the main database
+     * @param sessionDatabaseManager the manager of the databases of sessions stored in their own file
+     * @param batchSize the maximum number of rows deleted in a single transaction
+     * @param vacuumPages the maximum number of pages freed in a single incremental vacuum step
+     */
+    SessionPurger(SQLiteOpenHelper databaseHelper, SessionDatabaseManager sessionDatabaseManager,
+            int batchSize, int vacuumPages) {
+        
+        if (batchSize <= 0 || vacuumPages <= 0) {
+            throw new IllegalArgumentException("Batch size and vacuum pages must be positive.");
+        }
+        
+        this.databaseHelper = databaseHelper;
+        this.sessionDatabaseManager = sessionDatabaseManager;
+        this.batchSize = batchSize;
+        this.vacuumPages = vacuumPages;
+    }
+    
+    /**
+     * Schedules a purge of all sessions marked as deleted.  Calls made while a purge is pending are
+     * coalesced into it.
+     */
+    void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            getHandler().post(purgeTask);
+        }
+    }
+    
+    /**
+     * Purges all sessions marked as deleted on the calling thread.
+     */
+    void purge() {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        List<Integer> sessionIds = new ArrayList<Integer>();
+        
+        Cursor cursor = db.query(TrackLoggerData.Session.TABLE_NAME,
+                new String[] {TrackLoggerData.Session._ID},
+                TrackLoggerData.Session.COLUMN_NAME_DELETED + " = 1",
+                null, null, null, null);
+        
+        try {
+            while (cursor.moveToNext()) {
+                sessionIds.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        
+        for (Integer sessionId : sessionIds) {
+            long startTime = System.currentTimeMillis();
+            purgeSession(db, sessionId);
+            LOG.info("Purged session {} in {}ms.", sessionId, System.currentTimeMillis() - startTime);
+        }
+        
+        if (!sessionIds.isEmpty()) {
+            reclaimFreePages(db);
+        }
+    }
+    
+    private void purgeSession(SQLiteDatabase db, int sessionId) {
+        String[] whereArgs = new String[] {String.valueOf(sessionId)};
+        
+        deleteInBatches(db, TrackLoggerData.LogEntry.TABLE_NAME, TrackLoggerData.LogEntry._ID,
+                TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID, whereArgs);
+        deleteInBatches(db, TrackLoggerData.LogEntryChunk.TABLE_NAME, TrackLoggerData.LogEntryChunk._ID,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID, whereArgs);
+        
+        // Files are unlinked regardless of the storage format as it is cheap for those that do not exist.
+        sessionDatabaseManager.delete(sessionId);
+        
+        // The remaining data is small, roughly one row per split, so it goes in a single transaction.
+        db.beginTransaction();
+        
+        try {
+            db.delete(TrackLoggerData.TimingEntry.TABLE_NAME,
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + " = ?", whereArgs);
+            db.delete(TrackLoggerData.LapSummary.TABLE_NAME,
+                    TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID + " = ?", whereArgs);
+            db.delete(TrackLoggerData.LapIndex.TABLE_NAME,
+                    TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ?", whereArgs);
+            db.delete(TrackLoggerData.SessionSummary.TABLE_NAME,
+                    TrackLoggerData.SessionSummary.COLUMN_NAME_SESSION_ID + " = ?", whereArgs);
+            db.delete(TrackLoggerData.Session.TABLE_NAME,
+                    TrackLoggerData.Session._ID + " = ?", whereArgs);
+            
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    private void deleteInBatches(SQLiteDatabase db, String tableName, String idColumnName,
+            String sessionIdColumnName, String[] whereArgs) {
+        
+        String where = idColumnName + " IN (SELECT " + idColumnName + " FROM " + tableName
+                + " WHERE " + sessionIdColumnName + " = ? LIMIT " + batchSize + ")";
+        int count;
+        
+        do {
+            count = db.delete(tableName, where, whereArgs);
+        } while (count == batchSize);
+    }
+    
+    private void reclaimFreePages(SQLiteDatabase db) {
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+                != TrackLoggerDatabaseHelper.AUTO_VACUUM_INCREMENTAL) {
+            return;
+        }
+        
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        
+        while (freePages > 0) {
+            // Stepped through a cursor as the pragma frees one page per step of the statement.
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + vacuumPages + ")", null);
+            
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+            
+            long remainingPages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            
+            if (remainingPages >= freePages) {
+                LOG.warn("Incremental vacuum made no progress with {} free pages remaining.", remainingPages);
+                break;
+            }
+            
+            freePages = remainingPages;
+        }
+    }
+    
+    private synchronized Handler getHandler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("SessionPurger", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        
+        return handler;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.tracknalysis.common.util.TimeUtil;
+import net.tracknalysis.tracklogger.model.LocationData;
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.encoding.CompactChannel;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Maintains the {@link TrackLoggerData.SessionSummary} table as log and timing entries are inserted.
+ * <p/>
+ * The statistics of each session being logged are accumulated in memory, starting from the stored
+ * summary, and written back every {@link #DEFAULT_FLUSH_INTERVAL} log entries, whenever a lap is
+ * completed, and at the end of each bulk insert or when the session is closed.  Distance is accumulated
+ * from the recorded positions using an equirectangular approximation, which is accurate for the short
+ * distances between consecutive fixes.
+ * <p/>
+ * As with the {@link LapIndexMaintainer}, the tracked state is not persisted.  If the provider is
+ * restarted while a session is being logged, entries inserted since the last write are not counted and
+ * the interval between the last entry before and the first entry after the restart is not included in
+ * the duration or distance.
+ *
+ * @author David Valeri
+ */
+final class SessionSummaryMaintainer {
+    
+    /**
+     * The default number of log entries accumulated before the summary is written.
+     */
+    static final int DEFAULT_FLUSH_INTERVAL = 50;
+    
+    /**
+     * Mean radius of the Earth in meters.
+     */
+    private static final double EARTH_RADIUS = 6371008.8d;
+    
+    private final int flushInterval;
+    private final Map<Integer, SessionState> sessionStates = new HashMap<Integer, SessionState>();
+    private final LogEntryChunkCodec codec = new LogEntryChunkCodec();
+    private final List<LogEntry> chunkEntries = new ArrayList<LogEntry>();
+    
+    /**
+     * @param flushInterval the number of log entries accumulated before the summary is written
+     */
+    SessionSummaryMaintainer(int flushInterval) {
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive.");
+        }
+        
+        this.flushInterval = flushInterval;
+    }
+    
+    /**
+     * Records the insertion of a log entry.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     * @param values the values inserted
+     * @param storageFormat the storage format of the session
+     *
+     * @return the ID of the session if its summary was written, otherwise {@code null}
+     */
+    synchronized Integer logEntryInserted(SQLiteDatabase db, ContentValues values, int storageFormat) {
+        Integer sessionId = values.getAsInteger(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID);
+        Long synchTimestamp = values.getAsLong(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+        
+        if (sessionId == null || synchTimestamp == null) {
+            return null;
+        }
+        
+        SessionState state = getSessionState(db, sessionId);
+        Double latitude = values.getAsDouble(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE);
+        Double longitude = values.getAsDouble(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE);
+        
+        if (latitude != null && longitude != null) {
+            if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_COMPACT_ROWS) {
+                latitude = CompactChannel.LATITUDE.decode(latitude.longValue());
+                longitude = CompactChannel.LONGITUDE.decode(longitude.longValue());
+            }
+            
+            state.add(synchTimestamp, true, latitude, longitude);
+        } else {
+            state.add(synchTimestamp, false, 0, 0);
+        }
+        
+        if (state.unwrittenCount >= flushInterval) {
+            write(db, sessionId, state);
+            return sessionId;
+        } else {
+            return null;
+        }
+    }
+    
+    /**
+     * Records the insertion of a log entry chunk, writing the summary.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     * @param values the values inserted
+     */
+    synchronized void logEntryChunkInserted(SQLiteDatabase db, ContentValues values) {
+        Integer sessionId = values.getAsInteger(TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID);
+        byte[] data = values.getAsByteArray(TrackLoggerData.LogEntryChunk.COLUMN_NAME_DATA);
+        
+        if (sessionId == null || data == null) {
+            return;
+        }
+        
+        SessionState state = getSessionState(db, sessionId);
+        
+        try {
+            codec.decode(data, sessionId, chunkEntries);
+            
+            for (int i = 0; i < chunkEntries.size(); i++) {
+                LogEntry logEntry = chunkEntries.get(i);
+                LocationData locationData = logEntry.getLocationData();
+                
+                if (locationData != null) {
+                    state.add(logEntry.getSynchTimestamp(), true, locationData.getLatitude(),
+                            locationData.getLongitude());
+                } else {
+                    state.add(logEntry.getSynchTimestamp(), false, 0, 0);
+                }
+            }
+        } finally {
+            chunkEntries.clear();
+        }
+        
+        write(db, sessionId, state);
+    }
+    
+    /**
+     * Records the insertion of a timing entry, writing the summary if the entry completes a lap.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     * @param values the values inserted
+     *
+     * @return the ID of the session if its summary was written, otherwise {@code null}
+     */
+    synchronized Integer timingEntryInserted(SQLiteDatabase db, ContentValues values) {
+        Integer sessionId = values.getAsInteger(TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID);
+        Integer lap = values.getAsInteger(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP);
+        Long lapTime = values.getAsLong(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP_TIME);
+        
+        if (sessionId == null || lap == null || lap == 0 || lapTime == null) {
+            // Not the end of a lap
+            return null;
+        }
+        
+        SessionState state = getSessionState(db, sessionId);
+        state.lapCount++;
+        
+        if (state.bestLapTime == null || lapTime < state.bestLapTime) {
+            state.bestLapTime = lapTime;
+        }
+        
+        write(db, sessionId, state);
+        return sessionId;
+    }
+    
+    /**
+     * Writes the summary of the session if it has changed since it was last written.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     *
+     * @return true if the summary was written
+     */
+    synchronized boolean flush(SQLiteDatabase db, int sessionId) {
+        SessionState state = sessionStates.get(sessionId);
+        
+        if (state != null && state.unwrittenCount > 0) {
+            write(db, sessionId, state);
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Writes the summary of the session if needed and discards the tracked state.
+     *
+     * @param db the database to update, within the caller's transaction if any
+     *
+     * @return true if the summary was written
+     */
+    synchronized boolean sessionClosed(SQLiteDatabase db, int sessionId) {
+        boolean written = flush(db, sessionId);
+        sessionStates.remove(sessionId);
+        return written;
+    }
+    
+    /**
+     * Discards the tracked state for a session.
+     */
+    synchronized void sessionDeleted(int sessionId) {
+        sessionStates.remove(sessionId);
+    }
+    
+    private SessionState getSessionState(SQLiteDatabase db, int sessionId) {
+        SessionState state = sessionStates.get(sessionId);
+        
+        if (state == null) {
+            state = new SessionState();
+            
+            // Resume from the stored summary if logging resumes in an existing session.
+            Cursor cursor = db.query(TrackLoggerData.SessionSummary.TABLE_NAME,
+                    new String[] {
+                            TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT,
+                            TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION,
+                            TrackLoggerData.SessionSummary.COLUMN_NAME_DISTANCE,
+                            TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT,
+                            TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME},
+                    TrackLoggerData.SessionSummary.COLUMN_NAME_SESSION_ID + " = ?",
+                    new String[] {String.valueOf(sessionId)},
+                    null, null, null);
+            
+            try {
+                if (cursor.moveToFirst()) {
+                    state.sampleCount = cursor.getLong(0);
+                    state.duration = cursor.getLong(1);
+                    // Distance is unknown for summaries created from existing sessions.
+                    state.distance = cursor.isNull(2) ? null : cursor.getDouble(2);
+                    state.lapCount = cursor.getInt(3);
+                    state.bestLapTime = cursor.isNull(4) ? null : cursor.getLong(4);
+                } else {
+                    state.distance = 0d;
+                }
+            } finally {
+                cursor.close();
+            }
+            
+            sessionStates.put(sessionId, state);
+        }
+        
+        return state;
+    }
+    
+    private void write(SQLiteDatabase db, int sessionId, SessionState state) {
+        ContentValues values = new ContentValues();
+        values.put(TrackLoggerData.SessionSummary.COLUMN_NAME_SESSION_ID, sessionId);
+        values.put(TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT, state.sampleCount);
+        values.put(TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION, state.duration);
+        values.put(TrackLoggerData.SessionSummary.COLUMN_NAME_DISTANCE, state.distance);
+        values.put(TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT, state.lapCount);
+        values.put(TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME, state.bestLapTime);
+        
+        db.replace(TrackLoggerData.SessionSummary.TABLE_NAME, null, values);
+        state.unwrittenCount = 0;
+    }
+    
+    private static final class SessionState {
+        private long sampleCount;
+        private long duration;
+        private Double distance;
+        private int lapCount;
+        private Long bestLapTime;
+        
+        private boolean hasSynchTimestamp;
+        private long lastSynchTimestamp;
+        private boolean hasPosition;
+        private double lastLatitude;
+        private double lastLongitude;
+        private int unwrittenCount;
+        
+        void add(long synchTimestamp, boolean positioned, double latitude, double longitude) {
+            sampleCount++;
+            unwrittenCount++;
+            
+            if (hasSynchTimestamp) {
+                long delta = synchTimestamp - lastSynchTimestamp;
+                if (delta < 0) {
+                    // Rolled over midnight
+                    delta += TimeUtil.MS_IN_DAY;
+                }
+                duration += delta;
+            }
+            
+            hasSynchTimestamp = true;
+            lastSynchTimestamp = synchTimestamp;
+            
+            if (positioned) {
+                if (hasPosition && distance != null) {
+                    double dy = Math.toRadians(latitude - lastLatitude);
+                    double dx = Math.toRadians(longitude - lastLongitude)
+                            * Math.cos(Math.toRadians((latitude + lastLatitude) / 2));
+                    distance += EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy);
+                }
+                
+                hasPosition = true;
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package net.tracknalysis.tracklogger.provider;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -25,6 +26,24 @@ import android.provider.BaseColumns;
  */
 public final class TrackLoggerData {
     public static final String AUTHORITY = "net.tracknalysis.trackLogger";
+    
+    /**
+     * The query parameter restricting a paged query to the rows whose {@code _id} is greater than the
+     * parameter value.  Supported by the log entry, timing entry and session log entries URIs.  Paged
+     * queries are always ordered by {@code _id} ascending and do not accept a sort order.  For sessions
+     * in the {@link Session#STORAGE_FORMAT_CHUNKED chunked storage format}, the ID of an entry is its
+     * position in the session.
+     *
+     * @see PagedRecordIterator
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "afterId";
+    
+    /**
+     * The query parameter limiting the number of rows returned by a paged query.
+     *
+     * @see #QUERY_PARAMETER_AFTER_ID
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
 
     /**
      * Hidden in non-instantiable class.
@@ -59,6 +78,11 @@ public final class TrackLoggerData {
          */
         public static final String SESSION_ITEM_TYPE = 
                 "vnd.android.cursor.item/net.tracknalysis.tracklogger.session";
+        
+        /**
+         * The MIME type of the {@link #getDatabaseUri(long) database file} of a session.
+         */
+        public static final String DATABASE_TYPE = "application/x-sqlite3";
 
         // URI ////////////
 
@@ -100,11 +124,96 @@ public final class TrackLoggerData {
          */
         public static final Uri CONTENT_ID_URI_PATTERN
             = Uri.parse(SCHEME + AUTHORITY + PATH_SESSION_ID + "/#");
+        
+        /**
+         * Path segment appended to a Session ID URI to form the session appended URI.
+         */
+        private static final String PATH_APPENDED = "appended";
+        
+        /**
+         * Path segment appended to a Session ID URI to form the session log entries URI.
+         */
+        private static final String PATH_LOG_ENTRIES = "logentry";
+        
+        /**
+         * Path segment appended to a Session ID URI to form the session database URI.
+         */
+        private static final String PATH_DATABASE = "database";
+        
+        /**
+         * Value of {@link #COLUMN_NAME_STORAGE_FORMAT} for sessions whose log entries are stored as
+         * one row per entry in {@link LogEntry#TABLE_NAME}.
+         */
+        public static final int STORAGE_FORMAT_ROWS = 0;
+        
+        /**
+         * Value of {@link #COLUMN_NAME_STORAGE_FORMAT} for sessions whose log entries are stored as
+         * encoded chunks of entries in {@link LogEntryChunk#TABLE_NAME}.
+         */
+        public static final int STORAGE_FORMAT_CHUNKED = 1;
+        
+        /**
+         * Value of {@link #COLUMN_NAME_STORAGE_FORMAT} for sessions whose log entries are stored as
+         * one row per entry in {@link LogEntry#TABLE_NAME} with position and channel values stored as
+         * fixed-point integers as described by
+         * {@link net.tracknalysis.tracklogger.model.encoding.CompactChannel}.  SQLite stores such values
+         * in as few as two bytes rather than the eight of a floating point value.
+         */
+        public static final int STORAGE_FORMAT_COMPACT_ROWS = 2;
+        
+        /**
+         * Value of {@link #COLUMN_NAME_STORAGE_FORMAT} for sessions whose log entries are stored as
+         * one row per entry in a {@link LogEntry#TABLE_NAME} table in a database file of their own.
+         * Deleting such a session removes the file rather than deleting rows, and the file may be
+         * read in its entirety through {@link #getDatabaseUri(long)}.
+         */
+        public static final int STORAGE_FORMAT_SESSION_FILE = 3;
 
         /**
          * The default sort order for this table.
          */
         public static final String DEFAULT_SORT_ORDER = "start_date DESC";
+        
+        /**
+         * Returns the URI on which changes are notified as log and timing entries are appended to
+         * a session.  Notifications for appended entries are coalesced and delivered at most once per
+         * notification window, so observers interested in a session being logged should register for this
+         * URI rather than the log or timing entry URIs.  The URI is for notification only and may
+         * not be queried.
+         *
+         * @param sessionId the ID of the session
+         */
+        public static Uri getAppendedUri(long sessionId) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_ID_URI_BASE, sessionId),
+                    PATH_APPENDED);
+        }
+        
+        /**
+         * Returns the URI of the log entries in a session.  Queries on this URI return the columns of
+         * {@link LogEntry} in the order in which the entries were logged, regardless of the storage format
+         * of the session.  Fixed-point values of sessions stored in {@link #STORAGE_FORMAT_COMPACT_ROWS
+         * compact rows} are converted back to floating point values.  Entries of a session stored in {@link #STORAGE_FORMAT_CHUNKED chunks} are decoded
+         * as the cursor is read; such cursors support neither a selection nor a sort order and
+         * their {@link LogEntry#_ID} values are the 1-relative position of the entry in the session.
+         *
+         * @param sessionId the ID of the session
+         */
+        public static Uri getLogEntriesUri(long sessionId) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_ID_URI_BASE, sessionId),
+                    PATH_LOG_ENTRIES);
+        }
+        
+        /**
+         * Returns the URI of the database file holding the log entries of a session stored in the
+         * {@link #STORAGE_FORMAT_SESSION_FILE session file} storage format.  The URI may only be opened
+         * for reading using {@link android.content.ContentResolver#openFileDescriptor(Uri, String)}.
+         *
+         * @param sessionId the ID of the session
+         */
+        public static Uri getDatabaseUri(long sessionId) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_ID_URI_BASE, sessionId),
+                    PATH_DATABASE);
+        }
 
         // Columns ////////////
 
@@ -125,10 +234,30 @@ public final class TrackLoggerData {
          * <P>Type: INTEGER</P>
          */
         public static final String COLUMN_NAME_SPLIT_MARKER_SET_ID = "split_marker_set_id";
+        
+        /**
+         * Column name for the format in which the log entries of the session are stored.  One of
+         * {@link #STORAGE_FORMAT_ROWS}, {@link #STORAGE_FORMAT_COMPACT_ROWS},
+         * {@link #STORAGE_FORMAT_CHUNKED} or {@link #STORAGE_FORMAT_SESSION_FILE}.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_STORAGE_FORMAT = "storage_format";
+        
+        /**
+         * Column name for the flag marking a session as deleted.  Deleting a session only sets the flag,
+         * excluding the session from queries of sessions, and its data is purged in the background.
+         * Not included in query results.
+         * <P>Type: INTEGER (0 or 1)</P>
+         */
+        public static final String COLUMN_NAME_DELETED = "deleted";
     }
     
     /**
-     * Log entry table contract.
+     * Log entry table contract.  The values in rows belonging to sessions stored in
+     * {@link Session#STORAGE_FORMAT_COMPACT_ROWS compact rows} are fixed-point integers and the entries
+     * of sessions stored in {@link Session#STORAGE_FORMAT_SESSION_FILE session files} are not in this
+     * table at all, so read entries through {@link Session#getLogEntriesUri(long)} unless the storage
+     * format is known.
      */
     public static final class LogEntry implements BaseColumns {
 
@@ -475,6 +604,585 @@ public final class TrackLoggerData {
          * <P>Type: BIGINT</P>
          */
         public static final String COLUMN_NAME_SPLIT_TIME = "split_time";
+        
+        /**
+         * Column name for the fastest lap time in the session at the time of this entry.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_BEST_LAP_TIME = "best_lap_time";
+        
+        /**
+         * Column name for the sum of the fastest split times in the session at the time of this entry.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_THEORETICAL_BEST_LAP_TIME = "theoretical_best_lap_time";
+        
+        /**
+         * Column name for the fastest lap time among the most recent laps at the time of this entry.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_ROLLING_BEST_LAP_TIME = "rolling_best_lap_time";
+    }
+    
+    /**
+     * Lap Summary table contract.  Each row summarizes either a complete lap or a single split
+     * within a lap.
+     */
+    public static final class LapSummary implements BaseColumns {
+
+        // This class cannot be instantiated
+        private LapSummary() {}
+
+        /**
+         * The table name.
+         */
+        public static final String TABLE_NAME = "lap_summary";
+        
+        // MIME ////////////
+        
+        /**
+         * The MIME type of {@link #CONTENT_URI} providing a directory of instances.
+         */
+        public static final String TYPE = 
+                "vnd.android.cursor.dir/net.tracknalysis.tracklogger.lapsummary";
+
+        /**
+         * The MIME type of a {@link #CONTENT_URI} sub-directory of a single
+         * instance.
+         */
+        public static final String ITEM_TYPE = 
+                "vnd.android.cursor.item/net.tracknalysis.tracklogger.lapsummary";
+        
+        // URI ////////////
+
+        /**
+         * The scheme part for this provider's URI.
+         */
+        private static final String SCHEME = "content://";
+
+        /**
+         * Path part for the Lap Summary URI.
+         */
+        private static final String PATH = "/lapsummary";
+
+        /**
+         * Path part for the Lap Summary ID URI.
+         */
+        private static final String PATH_ID = "/lapsummary/";
+
+        /**
+         * 0-relative position of the ID segment in the path part of an ID URI.
+         */
+        public static final int ID_PATH_POSITION = 1;
+
+
+        /**
+         * The content:// style URL for this table.
+         */
+        public static final Uri CONTENT_URI =  Uri.parse(SCHEME + AUTHORITY + PATH);
+
+        /**
+         * The content URI base for a single instance. Callers must
+         * append a numeric ID to this URI to retrieve an instance.
+         */
+        public static final Uri CONTENT_ID_URI_BASE
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID);
+
+        /**
+         * The content URI match pattern for a single instance, specified by its ID. Use this
+         * to match incoming URIs or to construct an Intent.
+         */
+        public static final Uri CONTENT_ID_URI_PATTERN
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID + "/#");
+
+        /**
+         * The default sort order for this table.  Whole lap summaries sort ahead of the
+         * split summaries for the same lap.
+         */
+        public static final String DEFAULT_SORT_ORDER = "lap ASC, split_index ASC";
+
+        // Columns ////////////
+        
+        /**
+         * Column name for the session ID that the summary belongs to.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SESSION_ID = "session_id";
+        
+        /**
+         * Column name for the lap number.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_LAP = "lap";
+        
+        /**
+         * Column name for the split index or {@code null} for a whole lap summary.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SPLIT_INDEX = "split_index";
+        
+        /**
+         * Column name for the synch timestamp at the start of the lap or split.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_START_SYNCH_TIMESTAMP = "start_synch_timestamp";
+        
+        /**
+         * Column name for the synch timestamp at the end of the lap or split.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_END_SYNCH_TIMESTAMP = "end_synch_timestamp";
+        
+        /**
+         * Column name for the lap or split elapsed time.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_ELAPSED_TIME = "elapsed_time";
+        
+        /**
+         * Column name for the number of log entries aggregated into the summary.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_LOG_ENTRY_COUNT = "log_entry_count";
+        
+        /**
+         * Column name for the maximum speed.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_MAX_SPEED = "max_speed";
+        
+        /**
+         * Column name for the minimum speed.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_MIN_SPEED = "min_speed";
+        
+        /**
+         * Column name for the lowest speed while cornering, the apex speed of the slowest corner.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_MIN_CORNER_SPEED = "min_corner_speed";
+        
+        /**
+         * Column name for the peak lateral acceleration magnitude.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_MAX_LATERAL_ACCEL = "max_lat_accel";
+        
+        /**
+         * Column name for the peak longitudinal acceleration magnitude.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_MAX_LONGITUDINAL_ACCEL = "max_lon_accel";
+        
+        /**
+         * Column name for the maximum RPM.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_MAX_RPM = "max_rpm";
+        
+        /**
+         * Column name for the average throttle position.
+         * <P>Type: DOUBLE</P>
+         */
+        public static final String COLUMN_NAME_AVERAGE_THROTTLE_POSITION = "avg_tp";
+        
+        /**
+         * Column name for the minimum air fuel ratio.
+         * <P>Type: DOUBLE</P>
+         */
+        public static final String COLUMN_NAME_MIN_AFR = "min_afr";
+        
+        /**
+         * Column name for the maximum air fuel ratio.
+         * <P>Type: DOUBLE</P>
+         */
+        public static final String COLUMN_NAME_MAX_AFR = "max_afr";
+    }
+    
+    /**
+     * Lap Index table contract.  Each row records the range of log and timing entries that make up
+     * a lap of a session, numbered as in the session exports, so that the entries for a range of laps
+     * may be queried directly.  Rows are maintained by the provider as timing entries are inserted.
+     */
+    public static final class LapIndex implements BaseColumns {
+
+        // This class cannot be instantiated
+        private LapIndex() {}
+
+        /**
+         * The table name.
+         */
+        public static final String TABLE_NAME = "lap_index";
+        
+        // MIME ////////////
+        
+        /**
+         * The MIME type of {@link #CONTENT_URI} providing a directory of instances.
+         */
+        public static final String TYPE = 
+                "vnd.android.cursor.dir/net.tracknalysis.tracklogger.lapindex";
+
+        /**
+         * The MIME type of a {@link #CONTENT_URI} sub-directory of a single
+         * instance.
+         */
+        public static final String ITEM_TYPE = 
+                "vnd.android.cursor.item/net.tracknalysis.tracklogger.lapindex";
+        
+        // URI ////////////
+
+        /**
+         * The scheme part for this provider's URI.
+         */
+        private static final String SCHEME = "content://";
+
+        /**
+         * Path part for the Lap Index URI.
+         */
+        private static final String PATH = "/lapindex";
+
+        /**
+         * Path part for the Lap Index ID URI.
+         */
+        private static final String PATH_ID = "/lapindex/";
+
+        /**
+         * 0-relative position of the ID segment in the path part of an ID URI.
+         */
+        public static final int ID_PATH_POSITION = 1;
+
+
+        /**
+         * The content:// style URL for this table.
+         */
+        public static final Uri CONTENT_URI =  Uri.parse(SCHEME + AUTHORITY + PATH);
+
+        /**
+         * The content URI base for a single instance. Callers must
+         * append a numeric ID to this URI to retrieve an instance.
+         */
+        public static final Uri CONTENT_ID_URI_BASE
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID);
+
+        /**
+         * The content URI match pattern for a single instance, specified by its ID. Use this
+         * to match incoming URIs or to construct an Intent.
+         */
+        public static final Uri CONTENT_ID_URI_PATTERN
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID + "/#");
+
+        /**
+         * The default sort order for this table.
+         */
+        public static final String DEFAULT_SORT_ORDER = "lap ASC";
+
+        // Columns ////////////
+        
+        /**
+         * Column name for the session ID that the lap belongs to.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SESSION_ID = "session_id";
+        
+        /**
+         * Column name for the lap number.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_LAP = "lap";
+        
+        /**
+         * Column name for the ID of the timing entry that starts the lap.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_START_TIMING_ENTRY_ID = "start_timing_entry_id";
+        
+        /**
+         * Column name for the ID of the first log entry in the lap or {@code null} if the log
+         * entry has not yet been recorded.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_START_LOG_ENTRY_ID = "start_log_entry_id";
+        
+        /**
+         * Column name for the ID of the last log entry in the lap or {@code null} if the lap
+         * has not yet ended.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_END_LOG_ENTRY_ID = "end_log_entry_id";
+        
+        /**
+         * Column name for the synch timestamp at the start of the lap.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_START_SYNCH_TIMESTAMP = "start_synch_timestamp";
+        
+        /**
+         * Column name for the synch timestamp of the last log entry in the lap or {@code null}
+         * if the lap has not yet ended.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_END_SYNCH_TIMESTAMP = "end_synch_timestamp";
+    }
+    
+    /**
+     * Log entry chunk table contract.  Each row holds a run of consecutive log entries from a session
+     * that uses the {@link Session#STORAGE_FORMAT_CHUNKED chunked storage format}, encoded with
+     * {@link net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec}.  Chunks are ordered by
+     * ID within a session.  Read the decoded entries through {@link Session#getLogEntriesUri(long)}.
+     */
+    public static final class LogEntryChunk implements BaseColumns {
+
+        // This class cannot be instantiated
+        private LogEntryChunk() {}
+
+        /**
+         * The table name.
+         */
+        public static final String TABLE_NAME = "log_entry_chunk";
+        
+        // MIME ////////////
+        
+        /**
+         * The MIME type of {@link #CONTENT_URI} providing a directory of instances.
+         */
+        public static final String TYPE = 
+                "vnd.android.cursor.dir/net.tracknalysis.tracklogger.logentrychunk";
+
+        /**
+         * The MIME type of a {@link #CONTENT_URI} sub-directory of a single
+         * instance.
+         */
+        public static final String ITEM_TYPE = 
+                "vnd.android.cursor.item/net.tracknalysis.tracklogger.logentrychunk";
+        
+        // URI ////////////
+
+        /**
+         * The scheme part for this provider's URI.
+         */
+        private static final String SCHEME = "content://";
+
+        /**
+         * Path part for the Log Entry Chunk URI.
+         */
+        private static final String PATH = "/logentrychunk";
+
+        /**
+         * Path part for the Log Entry Chunk ID URI.
+         */
+        private static final String PATH_ID = "/logentrychunk/";
+
+        /**
+         * 0-relative position of the ID segment in the path part of an ID URI.
+         */
+        public static final int ID_PATH_POSITION = 1;
+
+
+        /**
+         * The content:// style URL for this table.
+         */
+        public static final Uri CONTENT_URI =  Uri.parse(SCHEME + AUTHORITY + PATH);
+
+        /**
+         * The content URI base for a single instance. Callers must
+         * append a numeric ID to this URI to retrieve an instance.
+         */
+        public static final Uri CONTENT_ID_URI_BASE
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID);
+
+        /**
+         * The content URI match pattern for a single instance, specified by its ID. Use this
+         * to match incoming URIs or to construct an Intent.
+         */
+        public static final Uri CONTENT_ID_URI_PATTERN
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID + "/#");
+
+        /**
+         * The default sort order for this table.
+         */
+        public static final String DEFAULT_SORT_ORDER = "_id ASC";
+
+        // Columns ////////////
+        
+        /**
+         * Column name for the session ID that the chunk belongs to.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SESSION_ID = "session_id";
+        
+        /**
+         * Column name for the synch timestamp of the first entry in the chunk.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_FIRST_SYNCH_TIMESTAMP = "first_synch_timestamp";
+        
+        /**
+         * Column name for the synch timestamp of the last entry in the chunk.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_LAST_SYNCH_TIMESTAMP = "last_synch_timestamp";
+        
+        /**
+         * Column name for the number of entries in the chunk.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_ENTRY_COUNT = "entry_count";
+        
+        /**
+         * Column name for the 0-relative position within the session of the first entry in the chunk,
+         * the total number of entries in the chunks of the session that precede it.  Maintained by the
+         * database as chunks are inserted; any value provided on insert is replaced.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_FIRST_ENTRY_POSITION = "first_entry_position";
+        
+        /**
+         * Column name for the encoded entries.
+         * <P>Type: BLOB</P>
+         */
+        public static final String COLUMN_NAME_DATA = "data";
+    }
+    
+    /**
+     * Session summary contract.  Summaries are maintained by the provider as log and timing entries are
+     * inserted, so the statistics of a session are available without reading its entries.  Queries
+     * return one row per session, including sessions without a summary, with the {@link Session}
+     * columns {@link Session#_ID}, {@link Session#COLUMN_NAME_START_DATE},
+     * {@link Session#COLUMN_NAME_LAST_MODIFIED_DATE} and {@link Session#COLUMN_NAME_STORAGE_FORMAT}
+     * alongside the summary columns.  The summary columns are {@code NULL} for sessions without a
+     * summary, such as sessions stored in their own file before summaries were introduced.
+     * <p/>
+     * Summaries are read only.  Summaries of sessions being logged are written every few entries and
+     * when the session is closed.
+     */
+    public static final class SessionSummary implements BaseColumns {
+
+        // This class cannot be instantiated
+        private SessionSummary() {}
+
+        /**
+         * The table name.
+         */
+        public static final String TABLE_NAME = "session_summary";
+        
+        // MIME ////////////
+        
+        /**
+         * The MIME type of {@link #CONTENT_URI} providing a directory of instances.
+         */
+        public static final String TYPE = 
+                "vnd.android.cursor.dir/net.tracknalysis.tracklogger.sessionsummary";
+
+        /**
+         * The MIME type of a {@link #CONTENT_URI} sub-directory of a single
+         * instance.
+         */
+        public static final String ITEM_TYPE = 
+                "vnd.android.cursor.item/net.tracknalysis.tracklogger.sessionsummary";
+        
+        // URI ////////////
+
+        /**
+         * The scheme part for this provider's URI.
+         */
+        private static final String SCHEME = "content://";
+
+        /**
+         * Path part for the Session Summary URI.
+         */
+        private static final String PATH = "/sessionsummary";
+
+        /**
+         * Path part for the Session Summary ID URI.
+         */
+        private static final String PATH_ID = "/sessionsummary/";
+
+        /**
+         * 0-relative position of the ID segment in the path part of an ID URI.
+         */
+        public static final int ID_PATH_POSITION = 1;
+
+
+        /**
+         * The content:// style URL for this table.
+         */
+        public static final Uri CONTENT_URI =  Uri.parse(SCHEME + AUTHORITY + PATH);
+
+        /**
+         * The content URI base for the summary of a single session. Callers must
+         * append the numeric ID of the session to this URI to retrieve an instance.
+         */
+        public static final Uri CONTENT_ID_URI_BASE
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID);
+
+        /**
+         * The content URI match pattern for a single instance, specified by its session ID. Use this
+         * to match incoming URIs or to construct an Intent.
+         */
+        public static final Uri CONTENT_ID_URI_PATTERN
+            = Uri.parse(SCHEME + AUTHORITY + PATH_ID + "/#");
+
+        /**
+         * The default sort order for this table.
+         */
+        public static final String DEFAULT_SORT_ORDER = Session.DEFAULT_SORT_ORDER;
+
+        // Columns ////////////
+        
+        /**
+         * Column name for the ID of the session summarized.  Not included in query results, use
+         * {@link #_ID}.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SESSION_ID = "session_id";
+        
+        /**
+         * Column name for the number of log entries in the session.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SAMPLE_COUNT = "sample_count";
+        
+        /**
+         * Column name for the time in milliseconds spanned by the log entries of the session.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_DURATION = "duration";
+        
+        /**
+         * Column name for the distance in meters travelled during the session.  {@code NULL} if the
+         * distance was not tracked when the summary was created.
+         * <P>Type: DOUBLE</P>
+         */
+        public static final String COLUMN_NAME_DISTANCE = "distance";
+        
+        /**
+         * Column name for the number of laps completed in the session.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_LAP_COUNT = "lap_count";
+        
+        /**
+         * Column name for the best lap time in milliseconds.  {@code NULL} if no lap was completed.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_BEST_LAP_TIME = "best_lap_time";
+        
+        /**
+         * Column name for the top speed in meters per second over the completed laps of the session,
+         * derived from the {@link LapSummary lap summaries}.  {@code NULL} if no lap was completed.
+         * Read only.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_TOP_SPEED = "top_speed";
+        
+        /**
+         * Column name for the lowest cornering speed in meters per second over the completed laps of
+         * the session, derived from the {@link LapSummary lap summaries}.  {@code NULL} if no cornering
+         * was recorded in a completed lap.  Read only.
+         * <P>Type: FLOAT</P>
+         */
+        public static final String COLUMN_NAME_MIN_CORNER_SPEED = "min_corner_speed";
     }
     
     /**
@@ -559,6 +1267,15 @@ public final class TrackLoggerData {
          * <P>Type: VARCHAR(50)</P>
          */
         public static final String COLUMN_NAME_NAME = "name";
+        
+        /**
+         * Column name for the stamp identifying the revision of the split markers in the set.  Maintained
+         * by the database, which sets it to a value greater than the previous value and no less than the
+         * current time in milliseconds since the epoch whenever the set is created or one of its split
+         * markers is inserted, updated or deleted.  Read only.
+         * <P>Type: BIGINT</P>
+         */
+        public static final String COLUMN_NAME_MODIFICATION_STAMP = "modification_stamp";
     }
     
     /**
@@ -26,11 +26,21 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.BaseColumns;
 import android.text.TextUtils;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,13 +56,26 @@ public class TrackLoggerDataProvider extends ContentProvider {
             .getLogger(TrackLoggerDataProvider.class);
 
     static final String DATABASE_NAME = "TrackLog.db";
-    static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 12;
+    
+    /**
+     * The name of the directory, alongside the main database, holding the databases of sessions stored
+     * in the {@link TrackLoggerData.Session#STORAGE_FORMAT_SESSION_FILE session file} storage format.
+     */
+    static final String SESSION_DATABASE_DIRECTORY_NAME = "sessions";
 
     private static final HashMap<String, String> SESSION_PROJECTION_MAP;
     private static final HashMap<String, String> LOG_ENTRY_PROJECTION_MAP;
     private static final HashMap<String, String> TIMING_ENTRY_PROJECTION_MAP;
     private static final HashMap<String, String> SPLIT_MARKER_SET_PROJECTION_MAP;
     private static final HashMap<String, String> SPLIT_MARKER_PROJECTION_MAP;
+    private static final HashMap<String, String> LAP_SUMMARY_PROJECTION_MAP;
+    private static final HashMap<String, String> LAP_INDEX_PROJECTION_MAP;
+    private static final HashMap<String, String> LOG_ENTRY_CHUNK_PROJECTION_MAP;
+    private static final HashMap<String, String> SESSION_SUMMARY_PROJECTION_MAP;
+    
+    private static final String[] LOG_ENTRY_INSERT_COLUMNS;
+    private static final String[] TIMING_ENTRY_INSERT_COLUMNS;
 
     private static final int SESSION = 1;
     private static final int SESSION_ID = 2;
@@ -64,6 +87,25 @@ public class TrackLoggerDataProvider extends ContentProvider {
     private static final int SPLIT_MARKER_SET_ID = 8;
     private static final int SPLIT_MARKER = 9;
     private static final int SPLIT_MARKER_ID = 10;
+    private static final int LAP_SUMMARY = 11;
+    private static final int LAP_SUMMARY_ID = 12;
+    private static final int LAP_INDEX = 13;
+    private static final int LAP_INDEX_ID = 14;
+    private static final int LOG_ENTRY_CHUNK = 15;
+    private static final int LOG_ENTRY_CHUNK_ID = 16;
+    private static final int SESSION_LOG_ENTRIES = 17;
+    private static final int SESSION_DATABASE = 18;
+    private static final int SESSION_SUMMARY = 19;
+    private static final int SESSION_SUMMARY_ID = 20;
+    
+    /**
+     * The tables queried for session summaries.  Every session has a row, with or without a summary.
+     */
+    private static final String SESSION_SUMMARY_TABLES = TrackLoggerData.Session.TABLE_NAME
+            + " LEFT OUTER JOIN " + TrackLoggerData.SessionSummary.TABLE_NAME + " ON ("
+            + TrackLoggerData.Session.TABLE_NAME + "." + TrackLoggerData.Session._ID + " = "
+            + TrackLoggerData.SessionSummary.TABLE_NAME + "."
+            + TrackLoggerData.SessionSummary.COLUMN_NAME_SESSION_ID + ")";
 
     private static final UriMatcher URI_MATCHER;
 
@@ -73,6 +115,8 @@ public class TrackLoggerDataProvider extends ContentProvider {
         
         URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "session", SESSION);
         URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "session/#", SESSION_ID);
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "session/#/logentry", SESSION_LOG_ENTRIES);
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "session/#/database", SESSION_DATABASE);
 
         URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "logentry/", LOG_ENTRY);
         URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "logentry/#", LOG_ENTRY_ID);
@@ -86,6 +130,18 @@ public class TrackLoggerDataProvider extends ContentProvider {
         URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "splitmarker/", SPLIT_MARKER);
         URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "splitmarker/#", SPLIT_MARKER_ID);
         
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "lapsummary/", LAP_SUMMARY);
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "lapsummary/#", LAP_SUMMARY_ID);
+        
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "lapindex/", LAP_INDEX);
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "lapindex/#", LAP_INDEX_ID);
+        
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "logentrychunk/", LOG_ENTRY_CHUNK);
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "logentrychunk/#", LOG_ENTRY_CHUNK_ID);
+        
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "sessionsummary/", SESSION_SUMMARY);
+        URI_MATCHER.addURI(TrackLoggerData.AUTHORITY, "sessionsummary/#", SESSION_SUMMARY_ID);
+        
         SESSION_PROJECTION_MAP = new HashMap<String, String>();
         SESSION_PROJECTION_MAP.put(TrackLoggerData.Session._ID,
                 TrackLoggerData.Session._ID);
@@ -96,6 +152,8 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE);
         SESSION_PROJECTION_MAP.put(TrackLoggerData.Session.COLUMN_NAME_SPLIT_MARKER_SET_ID,
                 TrackLoggerData.Session.COLUMN_NAME_SPLIT_MARKER_SET_ID);
+        SESSION_PROJECTION_MAP.put(TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT,
+                TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT);
 
         LOG_ENTRY_PROJECTION_MAP = new HashMap<String, String>();
         LOG_ENTRY_PROJECTION_MAP.put(TrackLoggerData.LogEntry._ID,
@@ -198,6 +256,15 @@ public class TrackLoggerDataProvider extends ContentProvider {
         TIMING_ENTRY_PROJECTION_MAP.put(
                 TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_TIME,
                 TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_TIME);
+        TIMING_ENTRY_PROJECTION_MAP.put(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_BEST_LAP_TIME,
+                TrackLoggerData.TimingEntry.COLUMN_NAME_BEST_LAP_TIME);
+        TIMING_ENTRY_PROJECTION_MAP.put(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_THEORETICAL_BEST_LAP_TIME,
+                TrackLoggerData.TimingEntry.COLUMN_NAME_THEORETICAL_BEST_LAP_TIME);
+        TIMING_ENTRY_PROJECTION_MAP.put(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_ROLLING_BEST_LAP_TIME,
+                TrackLoggerData.TimingEntry.COLUMN_NAME_ROLLING_BEST_LAP_TIME);
         
         SPLIT_MARKER_SET_PROJECTION_MAP = new HashMap<String, String>();
         SPLIT_MARKER_SET_PROJECTION_MAP.put(
@@ -206,6 +273,9 @@ public class TrackLoggerDataProvider extends ContentProvider {
         SPLIT_MARKER_SET_PROJECTION_MAP.put(
                 TrackLoggerData.SplitMarkerSet.COLUMN_NAME_NAME,
                 TrackLoggerData.SplitMarkerSet.COLUMN_NAME_NAME);
+        SPLIT_MARKER_SET_PROJECTION_MAP.put(
+                TrackLoggerData.SplitMarkerSet.COLUMN_NAME_MODIFICATION_STAMP,
+                TrackLoggerData.SplitMarkerSet.COLUMN_NAME_MODIFICATION_STAMP);
         
         SPLIT_MARKER_PROJECTION_MAP = new HashMap<String, String>();
         SPLIT_MARKER_PROJECTION_MAP.put(
@@ -226,13 +296,167 @@ public class TrackLoggerDataProvider extends ContentProvider {
         SPLIT_MARKER_PROJECTION_MAP.put(
                 TrackLoggerData.SplitMarker.COLUMN_NAME_LONGITUDE,
                 TrackLoggerData.SplitMarker.COLUMN_NAME_LONGITUDE);
+        
+        LAP_SUMMARY_PROJECTION_MAP = new HashMap<String, String>();
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary._ID,
+                TrackLoggerData.LapSummary._ID);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID,
+                TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_LAP,
+                TrackLoggerData.LapSummary.COLUMN_NAME_LAP);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX,
+                TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_START_SYNCH_TIMESTAMP,
+                TrackLoggerData.LapSummary.COLUMN_NAME_START_SYNCH_TIMESTAMP);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_END_SYNCH_TIMESTAMP,
+                TrackLoggerData.LapSummary.COLUMN_NAME_END_SYNCH_TIMESTAMP);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_ELAPSED_TIME,
+                TrackLoggerData.LapSummary.COLUMN_NAME_ELAPSED_TIME);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_LOG_ENTRY_COUNT,
+                TrackLoggerData.LapSummary.COLUMN_NAME_LOG_ENTRY_COUNT);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_SPEED,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_SPEED);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MIN_SPEED,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MIN_SPEED);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MIN_CORNER_SPEED,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MIN_CORNER_SPEED);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LATERAL_ACCEL,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LATERAL_ACCEL);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LONGITUDINAL_ACCEL,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LONGITUDINAL_ACCEL);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_RPM,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_RPM);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_AVERAGE_THROTTLE_POSITION,
+                TrackLoggerData.LapSummary.COLUMN_NAME_AVERAGE_THROTTLE_POSITION);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MIN_AFR,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MIN_AFR);
+        LAP_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_AFR,
+                TrackLoggerData.LapSummary.COLUMN_NAME_MAX_AFR);
+        
+        LAP_INDEX_PROJECTION_MAP = new HashMap<String, String>();
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex._ID,
+                TrackLoggerData.LapIndex._ID);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID,
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_LAP,
+                TrackLoggerData.LapIndex.COLUMN_NAME_LAP);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID,
+                TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID,
+                TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID,
+                TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_START_SYNCH_TIMESTAMP,
+                TrackLoggerData.LapIndex.COLUMN_NAME_START_SYNCH_TIMESTAMP);
+        LAP_INDEX_PROJECTION_MAP.put(
+                TrackLoggerData.LapIndex.COLUMN_NAME_END_SYNCH_TIMESTAMP,
+                TrackLoggerData.LapIndex.COLUMN_NAME_END_SYNCH_TIMESTAMP);
+        
+        LOG_ENTRY_CHUNK_PROJECTION_MAP = new HashMap<String, String>();
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk._ID,
+                TrackLoggerData.LogEntryChunk._ID);
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID);
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_SYNCH_TIMESTAMP,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_SYNCH_TIMESTAMP);
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_LAST_SYNCH_TIMESTAMP,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_LAST_SYNCH_TIMESTAMP);
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT);
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_ENTRY_POSITION,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_ENTRY_POSITION);
+        LOG_ENTRY_CHUNK_PROJECTION_MAP.put(
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_DATA,
+                TrackLoggerData.LogEntryChunk.COLUMN_NAME_DATA);
+        
+        SESSION_SUMMARY_PROJECTION_MAP = new HashMap<String, String>();
+        for (String column : new String[] {
+                TrackLoggerData.Session._ID,
+                TrackLoggerData.Session.COLUMN_NAME_START_DATE,
+                TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE,
+                TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT}) {
+            SESSION_SUMMARY_PROJECTION_MAP.put(column,
+                    TrackLoggerData.Session.TABLE_NAME + "." + column + " AS " + column);
+        }
+        for (String column : new String[] {
+                TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_DISTANCE,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT,
+                TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME}) {
+            SESSION_SUMMARY_PROJECTION_MAP.put(column, column);
+        }
+        // Derived from the whole lap summaries of the session, which are few and indexed by session.
+        SESSION_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.SessionSummary.COLUMN_NAME_TOP_SPEED,
+                createLapStatisticColumn("MAX", TrackLoggerData.LapSummary.COLUMN_NAME_MAX_SPEED,
+                        TrackLoggerData.SessionSummary.COLUMN_NAME_TOP_SPEED));
+        SESSION_SUMMARY_PROJECTION_MAP.put(
+                TrackLoggerData.SessionSummary.COLUMN_NAME_MIN_CORNER_SPEED,
+                createLapStatisticColumn("MIN", TrackLoggerData.LapSummary.COLUMN_NAME_MIN_CORNER_SPEED,
+                        TrackLoggerData.SessionSummary.COLUMN_NAME_MIN_CORNER_SPEED));
+        
+        LOG_ENTRY_INSERT_COLUMNS = getInsertColumns(LOG_ENTRY_PROJECTION_MAP, TrackLoggerData.LogEntry._ID);
+        TIMING_ENTRY_INSERT_COLUMNS = getInsertColumns(TIMING_ENTRY_PROJECTION_MAP, TrackLoggerData.TimingEntry._ID);
     }
 
     private TrackLoggerDatabaseHelper databaseHelper;
+    private final LapIndexMaintainer lapIndexMaintainer = new LapIndexMaintainer();
+    private final SessionSummaryMaintainer sessionSummaryMaintainer =
+            new SessionSummaryMaintainer(SessionSummaryMaintainer.DEFAULT_FLUSH_INTERVAL);
+    private CoalescingChangeNotifier changeNotifier;
+    private SessionDatabaseManager sessionDatabaseManager;
+    private SessionPurger sessionPurger;
+    
+    /**
+     * Cache of session storage formats, which are fixed when the session is created, to avoid a
+     * session lookup for each log entry inserted through a session log entries URI.
+     */
+    private final Map<Integer, Integer> storageFormats = new HashMap<Integer, Integer>();
 
     @Override
     public boolean onCreate() {
         databaseHelper = new TrackLoggerDatabaseHelper(getContext());
+        sessionDatabaseManager = new SessionDatabaseManager(
+                new File(getContext().getDatabasePath(DATABASE_NAME).getParentFile(),
+                        SESSION_DATABASE_DIRECTORY_NAME),
+                SessionDatabaseManager.DEFAULT_MAX_OPEN_DATABASES);
+        sessionPurger = new SessionPurger(databaseHelper, sessionDatabaseManager,
+                SessionPurger.DEFAULT_BATCH_SIZE, SessionPurger.DEFAULT_VACUUM_PAGES);
+        // Resume purging any sessions deleted before the process last exited.
+        sessionPurger.schedule();
+        changeNotifier = new CoalescingChangeNotifier(getContext().getContentResolver(),
+                new Handler(Looper.getMainLooper()), CoalescingChangeNotifier.DEFAULT_WINDOW);
         return true;
     }
     
@@ -263,16 +487,22 @@ public class TrackLoggerDataProvider extends ContentProvider {
     public Cursor query(Uri uri, String[] projection, String selection,
             String[] selectionArgs, String sortOrder) {
 
-        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
         int uriType = URI_MATCHER.match(uri); 
+        
+        if (uriType == SESSION_LOG_ENTRIES) {
+            return querySessionLogEntries(uri, projection, selection, selectionArgs, sortOrder);
+        }
+        
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
         switch (uriType) {
             case SESSION_ID:
                 qb.appendWhere(TrackLoggerData.Session._ID + "="
                         + uri.getPathSegments().get(
-                                TrackLoggerData.Session.ID_PATH_POSITION));
+                                TrackLoggerData.Session.ID_PATH_POSITION) + " AND ");
             case SESSION:
                 qb.setTables(TrackLoggerData.Session.TABLE_NAME);
                 qb.setProjectionMap(SESSION_PROJECTION_MAP);
+                qb.appendWhere(TrackLoggerData.Session.COLUMN_NAME_DELETED + "=0");
                 break;
             case LOG_ENTRY_ID:
                 qb.appendWhere(TrackLoggerData.LogEntry._ID + "="
@@ -306,11 +536,51 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 qb.setTables(TrackLoggerData.SplitMarker.TABLE_NAME);
                 qb.setProjectionMap(SPLIT_MARKER_PROJECTION_MAP);
                 break;
+            case LAP_SUMMARY_ID:
+                qb.appendWhere(TrackLoggerData.LapSummary._ID + "="
+                        + uri.getPathSegments().get(
+                                TrackLoggerData.LapSummary.ID_PATH_POSITION));
+            case LAP_SUMMARY:
+                qb.setTables(TrackLoggerData.LapSummary.TABLE_NAME);
+                qb.setProjectionMap(LAP_SUMMARY_PROJECTION_MAP);
+                break;
+            case LAP_INDEX_ID:
+                qb.appendWhere(TrackLoggerData.LapIndex._ID + "="
+                        + uri.getPathSegments().get(
+                                TrackLoggerData.LapIndex.ID_PATH_POSITION));
+            case LAP_INDEX:
+                qb.setTables(TrackLoggerData.LapIndex.TABLE_NAME);
+                qb.setProjectionMap(LAP_INDEX_PROJECTION_MAP);
+                break;
+            case LOG_ENTRY_CHUNK_ID:
+                qb.appendWhere(TrackLoggerData.LogEntryChunk._ID + "="
+                        + uri.getPathSegments().get(
+                                TrackLoggerData.LogEntryChunk.ID_PATH_POSITION));
+            case LOG_ENTRY_CHUNK:
+                qb.setTables(TrackLoggerData.LogEntryChunk.TABLE_NAME);
+                qb.setProjectionMap(LOG_ENTRY_CHUNK_PROJECTION_MAP);
+                break;
+            case SESSION_SUMMARY_ID:
+                qb.appendWhere(TrackLoggerData.Session.TABLE_NAME + "." + TrackLoggerData.Session._ID + "="
+                        + uri.getPathSegments().get(
+                                TrackLoggerData.SessionSummary.ID_PATH_POSITION) + " AND ");
+            case SESSION_SUMMARY:
+                qb.setTables(SESSION_SUMMARY_TABLES);
+                qb.setProjectionMap(SESSION_SUMMARY_PROJECTION_MAP);
+                qb.appendWhere(TrackLoggerData.Session.TABLE_NAME + "."
+                        + TrackLoggerData.Session.COLUMN_NAME_DELETED + "=0");
+                break;
            
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
+        String limit = null;
+        if ((uriType == LOG_ENTRY || uriType == TIMING_ENTRY) && isPagedQuery(uri, sortOrder)) {
+            qb.appendWhere(BaseColumns._ID + ">" + getAfterId(uri));
+            limit = getLimitClause(uri);
+        }
+
         String orderBy = sortOrder;
         if (TextUtils.isEmpty(orderBy)) {
             orderBy = getDefaultSortOrder(uriType);
@@ -322,7 +592,8 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 selectionArgs,
                 null,
                 null,
-                orderBy);
+                orderBy,
+                limit);
 
         c.setNotificationUri(getContext().getContentResolver(), uri);
         return c;
@@ -357,6 +628,26 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 return TrackLoggerData.SplitMarker.TYPE;
             case SPLIT_MARKER_ID:
                 return TrackLoggerData.SplitMarker.ITEM_TYPE;
+            case LAP_SUMMARY:
+                return TrackLoggerData.LapSummary.TYPE;
+            case LAP_SUMMARY_ID:
+                return TrackLoggerData.LapSummary.ITEM_TYPE;
+            case LAP_INDEX:
+                return TrackLoggerData.LapIndex.TYPE;
+            case LAP_INDEX_ID:
+                return TrackLoggerData.LapIndex.ITEM_TYPE;
+            case LOG_ENTRY_CHUNK:
+                return TrackLoggerData.LogEntryChunk.TYPE;
+            case LOG_ENTRY_CHUNK_ID:
+                return TrackLoggerData.LogEntryChunk.ITEM_TYPE;
+            case SESSION_LOG_ENTRIES:
+                return TrackLoggerData.LogEntry.LOG_ENTRY_TYPE;
+            case SESSION_DATABASE:
+                return TrackLoggerData.Session.DATABASE_TYPE;
+            case SESSION_SUMMARY:
+                return TrackLoggerData.SessionSummary.TYPE;
+            case SESSION_SUMMARY_ID:
+                return TrackLoggerData.SessionSummary.ITEM_TYPE;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -364,9 +655,20 @@ public class TrackLoggerDataProvider extends ContentProvider {
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Change notifications for log entries, log entry chunks and timing entries are coalesced and delivered on the table URI and the
+     * {@link TrackLoggerData.Session#getAppendedUri(long) session appended URI} at most once per
+     * notification window rather than on the URI of each new row.
+     * <p/>
+     * Log entries inserted through a {@link TrackLoggerData.Session#getLogEntriesUri(long) session log
+     * entries URI} are stored according to the storage format of the session.  The returned URI of an
+     * entry of a session stored in the {@link TrackLoggerData.Session#STORAGE_FORMAT_SESSION_FILE session
+     * file} storage format is the session log entries URI with the ID of the entry, which is unique only
+     * within the session, appended.
      *
      * @throws SQLException If the insertion fails
-     * @throws IllegalArgumentException if {@code uri} is invalid
+     * @throws IllegalArgumentException if {@code uri} is invalid or is the log entries URI of a session
+     *             stored in the chunked storage format
      */
     @Override
     public Uri insert(Uri uri, ContentValues initialValues) {
@@ -381,19 +683,64 @@ public class TrackLoggerDataProvider extends ContentProvider {
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
         long rowId;
         Uri baseUri = null;
+        Uri coalescedUri = null;
+        Integer summarizedSessionId = null;
         
         switch (URI_MATCHER.match(uri)) {
             case SESSION:
                 rowId = db.insert(TrackLoggerData.Session.TABLE_NAME, null, values);
                 baseUri = TrackLoggerData.Session.CONTENT_ID_URI_BASE;
+                if (rowId > 0) {
+                    // New sessions are listed with an empty summary.
+                    getContext().getContentResolver().notifyChange(
+                            TrackLoggerData.SessionSummary.CONTENT_URI, null);
+                }
                 break;
             case LOG_ENTRY:
                 rowId = db.insert(TrackLoggerData.LogEntry.TABLE_NAME, null, values);
                 baseUri = TrackLoggerData.LogEntry.CONTENT_ID_URI_BASE;
+                coalescedUri = TrackLoggerData.LogEntry.CONTENT_URI;
+                if (rowId > 0) {
+                    lapIndexMaintainer.logEntryInserted(db, values, rowId);
+                    summarizedSessionId = sessionSummaryMaintainer.logEntryInserted(
+                            db, values, getStorageFormat(db, values));
+                }
+                break;
+            case SESSION_LOG_ENTRIES:
+                int sessionId = Integer.parseInt(uri.getPathSegments().get(
+                        TrackLoggerData.Session.ID_PATH_POSITION));
+                values.put(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID, sessionId);
+                coalescedUri = TrackLoggerData.LogEntry.CONTENT_URI;
+                
+                int storageFormat = getRowStorageFormat(db, sessionId);
+                
+                if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_SESSION_FILE) {
+                    SQLiteDatabase sessionDb = sessionDatabaseManager.acquireDatabase(sessionId);
+                    try {
+                        rowId = sessionDb.insert(TrackLoggerData.LogEntry.TABLE_NAME, null, values);
+                    } finally {
+                        sessionDb.releaseReference();
+                    }
+                    baseUri = TrackLoggerData.Session.getLogEntriesUri(sessionId);
+                } else {
+                    rowId = db.insert(TrackLoggerData.LogEntry.TABLE_NAME, null, values);
+                    baseUri = TrackLoggerData.LogEntry.CONTENT_ID_URI_BASE;
+                }
+                
+                if (rowId > 0) {
+                    lapIndexMaintainer.logEntryInserted(db, values, rowId);
+                    summarizedSessionId = sessionSummaryMaintainer.logEntryInserted(
+                            db, values, storageFormat);
+                }
                 break;
             case TIMING_ENTRY:
                 rowId = db.insert(TrackLoggerData.TimingEntry.TABLE_NAME, null, values);
                 baseUri = TrackLoggerData.TimingEntry.CONTENT_ID_URI_BASE;
+                coalescedUri = TrackLoggerData.TimingEntry.CONTENT_URI;
+                if (rowId > 0) {
+                    lapIndexMaintainer.timingEntryInserted(db, values, rowId);
+                    summarizedSessionId = sessionSummaryMaintainer.timingEntryInserted(db, values);
+                }
                 break;
             case SPLIT_MARKER_SET:
                 rowId = db.insert(TrackLoggerData.SplitMarkerSet.TABLE_NAME, null, values);
@@ -403,6 +750,29 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 rowId = db.insert(TrackLoggerData.SplitMarker.TABLE_NAME, null, values);
                 baseUri = TrackLoggerData.SplitMarker.CONTENT_ID_URI_BASE;
                 break;
+            case LAP_SUMMARY:
+                rowId = db.insert(TrackLoggerData.LapSummary.TABLE_NAME, null, values);
+                baseUri = TrackLoggerData.LapSummary.CONTENT_ID_URI_BASE;
+                if (rowId > 0) {
+                    // The session summaries derive lap statistics from the lap summaries.
+                    summarizedSessionId = values.getAsInteger(
+                            TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID);
+                }
+                break;
+            case LAP_INDEX:
+                rowId = db.insert(TrackLoggerData.LapIndex.TABLE_NAME, null, values);
+                baseUri = TrackLoggerData.LapIndex.CONTENT_ID_URI_BASE;
+                break;
+            case LOG_ENTRY_CHUNK:
+                rowId = db.insert(TrackLoggerData.LogEntryChunk.TABLE_NAME, null, values);
+                baseUri = TrackLoggerData.LogEntryChunk.CONTENT_ID_URI_BASE;
+                coalescedUri = TrackLoggerData.LogEntryChunk.CONTENT_URI;
+                if (rowId > 0) {
+                    sessionSummaryMaintainer.logEntryChunkInserted(db, values);
+                    summarizedSessionId = values.getAsInteger(
+                            TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID);
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -410,7 +780,19 @@ public class TrackLoggerDataProvider extends ContentProvider {
         if (rowId > 0) {
             Uri newUri = ContentUris.withAppendedId(
                     baseUri, rowId);
-            getContext().getContentResolver().notifyChange(newUri, null);
+            
+            if (coalescedUri != null) {
+                // Session IDs are always present as the column is not nullable.
+                changeNotifier.changed(coalescedUri, values.getAsInteger(
+                        TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID));
+            } else {
+                getContext().getContentResolver().notifyChange(newUri, null);
+            }
+            
+            if (summarizedSessionId != null) {
+                changeNotifier.changed(TrackLoggerData.SessionSummary.CONTENT_URI, summarizedSessionId);
+            }
+            
             return newUri;
         } else {
             throw new SQLException("Failed to insert row into " + uri);
@@ -419,6 +801,158 @@ public class TrackLoggerDataProvider extends ContentProvider {
     
     /**
      * {@inheritDoc}
+     * <p/>
+     * Log and timing entries are inserted in a single transaction using a statement compiled once for
+     * the batch.  Log entries inserted through a {@link TrackLoggerData.Session#getLogEntriesUri(long)
+     * session log entries URI} are stored according to the storage format of the session as for
+     * {@link #insert(Uri, ContentValues)}.  Change notifications are coalesced as for {@link #insert(Uri, ContentValues)}.  Values for columns that are not
+     * part of the table are ignored.  Other URIs are handled by the default implementation, which inserts
+     * each row individually.
+     *
+     * @throws SQLException If an insertion fails, in which case no rows are inserted
+     * @throws IllegalArgumentException if {@code uri} is invalid or is the log entries URI of a session
+     *             stored in the chunked storage format
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        
+        String tableName;
+        String[] columns;
+        boolean logEntry;
+        Uri coalescedUri;
+        Integer sessionId = null;
+        
+        switch (URI_MATCHER.match(uri)) {
+            case SESSION_LOG_ENTRIES:
+                sessionId = Integer.valueOf(uri.getPathSegments().get(
+                        TrackLoggerData.Session.ID_PATH_POSITION));
+            case LOG_ENTRY:
+                coalescedUri = TrackLoggerData.LogEntry.CONTENT_URI;
+                tableName = TrackLoggerData.LogEntry.TABLE_NAME;
+                columns = LOG_ENTRY_INSERT_COLUMNS;
+                logEntry = true;
+                break;
+            case TIMING_ENTRY:
+                coalescedUri = TrackLoggerData.TimingEntry.CONTENT_URI;
+                tableName = TrackLoggerData.TimingEntry.TABLE_NAME;
+                columns = TIMING_ENTRY_INSERT_COLUMNS;
+                logEntry = false;
+                break;
+            default:
+                return super.bulkInsert(uri, values);
+        }
+        
+        if (values.length == 0) {
+            return 0;
+        }
+        
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        // The database holding the rows, which differs from the main database only for sessions stored
+        // in their own database file.  The lap index is always maintained in the main database.
+        SQLiteDatabase targetDb = db;
+        
+        if (sessionId != null && getRowStorageFormat(db, sessionId)
+                == TrackLoggerData.Session.STORAGE_FORMAT_SESSION_FILE) {
+            targetDb = sessionDatabaseManager.acquireDatabase(sessionId);
+        }
+        
+        // The sessions whose summaries change.  Batches almost always belong to a single session.
+        HashSet<Integer> summarizedSessionIds = new HashSet<Integer>(2);
+        
+        try {
+            SQLiteStatement statement = targetDb.compileStatement(getInsertSql(tableName, columns));
+            
+            db.beginTransaction();
+            if (targetDb != db) {
+                targetDb.beginTransaction();
+            }
+            
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    ContentValues rowValues = values[i];
+                    
+                    if (sessionId != null && !sessionId.equals(rowValues.getAsInteger(
+                            TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID))) {
+                        rowValues = new ContentValues(rowValues);
+                        rowValues.put(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID, sessionId);
+                    }
+                    
+                    statement.clearBindings();
+                    for (int j = 0; j < columns.length; j++) {
+                        bind(statement, j + 1, rowValues.get(columns[j]));
+                    }
+                    
+                    long rowId = statement.executeInsert();
+                    
+                    if (rowId <= 0) {
+                        throw new SQLException("Failed to insert row into " + uri);
+                    }
+                    
+                    Integer summarizedSessionId;
+                    
+                    if (logEntry) {
+                        lapIndexMaintainer.logEntryInserted(db, rowValues, rowId);
+                        summarizedSessionId = sessionSummaryMaintainer.logEntryInserted(db, rowValues,
+                                getStorageFormat(db, rowValues));
+                    } else {
+                        lapIndexMaintainer.timingEntryInserted(db, rowValues, rowId);
+                        summarizedSessionId = sessionSummaryMaintainer.timingEntryInserted(db, rowValues);
+                    }
+                    
+                    if (summarizedSessionId != null) {
+                        summarizedSessionIds.add(summarizedSessionId);
+                    }
+                }
+                
+                // Summaries are written once per batch rather than every few entries.
+                for (Integer summarizedSessionId : summarizedSessionIds) {
+                    sessionSummaryMaintainer.flush(db, summarizedSessionId);
+                }
+                
+                if (targetDb != db) {
+                    targetDb.setTransactionSuccessful();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                if (targetDb != db) {
+                    targetDb.endTransaction();
+                }
+                db.endTransaction();
+                statement.close();
+            }
+        } finally {
+            if (targetDb != db) {
+                targetDb.releaseReference();
+            }
+        }
+        
+        if (sessionId != null) {
+            changeNotifier.changed(coalescedUri, sessionId);
+        } else {
+            // Batches almost always belong to a single session, so only notify on changes of session.
+            Integer lastSessionId = null;
+            for (int i = 0; i < values.length; i++) {
+                Integer rowSessionId = values[i].getAsInteger(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID);
+                
+                if (i == 0 || (rowSessionId != null && !rowSessionId.equals(lastSessionId))) {
+                    changeNotifier.changed(coalescedUri, rowSessionId);
+                    lastSessionId = rowSessionId;
+                }
+            }
+        }
+        
+        for (Integer summarizedSessionId : summarizedSessionIds) {
+            changeNotifier.changed(TrackLoggerData.SessionSummary.CONTENT_URI, summarizedSessionId);
+        }
+        
+        return values.length;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Deleting sessions only {@link TrackLoggerData.Session#COLUMN_NAME_DELETED marks} them as deleted,
+     * which removes them from queries of sessions immediately.  Their data is purged in the background.
      *
      * @throws IllegalArgumentException if {@code uri} is invalid
      */
@@ -431,23 +965,14 @@ public class TrackLoggerDataProvider extends ContentProvider {
         switch (URI_MATCHER.match(uri)) {
 
             case SESSION:
-                count = cascadeDeletesForTable(
-                        TrackLoggerData.Session.TABLE_NAME,
-                        TrackLoggerData.Session._ID,
-                        db,
-                        where, whereArgs,
-                        new SessionDeleteCascadeStrategy());
+                count = deleteSessions(db, where, whereArgs);
                 break;
             case SESSION_ID:
                 String sessionId = uri.getPathSegments().get(TrackLoggerData.Session.ID_PATH_POSITION);
                 
-                count = cascadeDeletesForTable(
-                        TrackLoggerData.Session.TABLE_NAME,
-                        TrackLoggerData.Session._ID,
-                        db,
+                count = deleteSessions(db,
                         getWhereForSingleDelete(TrackLoggerData.Session._ID, sessionId, where),
-                        whereArgs,
-                        new SessionDeleteCascadeStrategy());
+                        whereArgs);
                 break;
             case LOG_ENTRY:
                 count = db.delete(TrackLoggerData.LogEntry.TABLE_NAME,
@@ -496,6 +1021,36 @@ public class TrackLoggerDataProvider extends ContentProvider {
                         uri.getPathSegments().get(TrackLoggerData.SplitMarker.ID_PATH_POSITION),
                         TrackLoggerData.SplitMarker.TABLE_NAME, where, whereArgs);
                 break;
+            case LAP_SUMMARY:
+                count = db.delete(TrackLoggerData.LapSummary.TABLE_NAME,
+                        where,
+                        whereArgs);
+                break;
+            case LAP_SUMMARY_ID:
+                count = doSingleDelete(db, TrackLoggerData.LapSummary._ID,
+                        uri.getPathSegments().get(TrackLoggerData.LapSummary.ID_PATH_POSITION),
+                        TrackLoggerData.LapSummary.TABLE_NAME, where, whereArgs);
+                break;
+            case LAP_INDEX:
+                count = db.delete(TrackLoggerData.LapIndex.TABLE_NAME,
+                        where,
+                        whereArgs);
+                break;
+            case LAP_INDEX_ID:
+                count = doSingleDelete(db, TrackLoggerData.LapIndex._ID,
+                        uri.getPathSegments().get(TrackLoggerData.LapIndex.ID_PATH_POSITION),
+                        TrackLoggerData.LapIndex.TABLE_NAME, where, whereArgs);
+                break;
+            case LOG_ENTRY_CHUNK:
+                count = db.delete(TrackLoggerData.LogEntryChunk.TABLE_NAME,
+                        where,
+                        whereArgs);
+                break;
+            case LOG_ENTRY_CHUNK_ID:
+                count = doSingleDelete(db, TrackLoggerData.LogEntryChunk._ID,
+                        uri.getPathSegments().get(TrackLoggerData.LogEntryChunk.ID_PATH_POSITION),
+                        TrackLoggerData.LogEntryChunk.TABLE_NAME, where, whereArgs);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -517,15 +1072,21 @@ public class TrackLoggerDataProvider extends ContentProvider {
         int count;
         String tableName;
         String finalWhere;
+        Integer closedSessionId = null;
 
         
         switch (URI_MATCHER.match(uri)) {
             case SESSION:  
                 tableName = TrackLoggerData.Session.TABLE_NAME;
                 finalWhere = where;
+                storageFormatsChanged(values);
                 break;
             case SESSION_ID:
                 tableName = TrackLoggerData.Session.TABLE_NAME;
+                storageFormatsChanged(values);
+                // The coordinator updates the session when it is closed.
+                closedSessionId = Integer.valueOf(uri.getPathSegments().get(
+                        TrackLoggerData.Session.ID_PATH_POSITION));
                 
                 finalWhere = TrackLoggerData.Session._ID + " = " + uri.getPathSegments().get(
                         TrackLoggerData.Session.ID_PATH_POSITION);;
@@ -585,6 +1146,48 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 finalWhere = TrackLoggerData.SplitMarker._ID + " = " + uri.getPathSegments().get(
                         TrackLoggerData.SplitMarker.ID_PATH_POSITION);
                 
+                if (where != null) {
+                    finalWhere = finalWhere + " AND (" + where + ")";
+                }
+                break;
+            case LAP_SUMMARY:
+                tableName = TrackLoggerData.LapSummary.TABLE_NAME;
+                finalWhere = where;
+                break;
+            case LAP_SUMMARY_ID:
+                tableName = TrackLoggerData.LapSummary.TABLE_NAME;
+    
+                finalWhere = TrackLoggerData.LapSummary._ID + " = " + uri.getPathSegments().get(
+                        TrackLoggerData.LapSummary.ID_PATH_POSITION);
+                
+                if (where != null) {
+                    finalWhere = finalWhere + " AND (" + where + ")";
+                }
+                break;
+            case LAP_INDEX:
+                tableName = TrackLoggerData.LapIndex.TABLE_NAME;
+                finalWhere = where;
+                break;
+            case LAP_INDEX_ID:
+                tableName = TrackLoggerData.LapIndex.TABLE_NAME;
+    
+                finalWhere = TrackLoggerData.LapIndex._ID + " = " + uri.getPathSegments().get(
+                        TrackLoggerData.LapIndex.ID_PATH_POSITION);
+                
+                if (where != null) {
+                    finalWhere = finalWhere + " AND (" + where + ")";
+                }
+                break;
+            case LOG_ENTRY_CHUNK:
+                tableName = TrackLoggerData.LogEntryChunk.TABLE_NAME;
+                finalWhere = where;
+                break;
+            case LOG_ENTRY_CHUNK_ID:
+                tableName = TrackLoggerData.LogEntryChunk.TABLE_NAME;
+    
+                finalWhere = TrackLoggerData.LogEntryChunk._ID + " = " + uri.getPathSegments().get(
+                        TrackLoggerData.LogEntryChunk.ID_PATH_POSITION);
+                
                 if (where != null) {
                     finalWhere = finalWhere + " AND (" + where + ")";
                 }
@@ -599,10 +1202,429 @@ public class TrackLoggerDataProvider extends ContentProvider {
                 whereArgs);
 
         getContext().getContentResolver().notifyChange(uri, null);
+        
+        if (TrackLoggerData.Session.TABLE_NAME.equals(tableName)) {
+            if (closedSessionId != null) {
+                sessionSummaryMaintainer.sessionClosed(db, closedSessionId);
+            }
+            
+            getContext().getContentResolver().notifyChange(TrackLoggerData.SessionSummary.CONTENT_URI, null);
+        }
 
         return count;
     }
     
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Opens the {@link TrackLoggerData.Session#getDatabaseUri(long) database file} of a session stored in
+     * the {@link TrackLoggerData.Session#STORAGE_FORMAT_SESSION_FILE session file} storage format for
+     * reading.  The file is a complete SQLite database, so it may be copied as is.  Entries inserted
+     * while the file is being read may be partially visible, so only sessions that are no longer being
+     * logged should be read this way.
+     *
+     * @throws FileNotFoundException if {@code uri} is not a session database URI, the mode is not
+     *             {@code "r"}, or the session has no database file
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        
+        if (URI_MATCHER.match(uri) != SESSION_DATABASE) {
+            throw new FileNotFoundException("No file for URI " + uri + ".");
+        }
+        
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Session databases may only be opened for reading.");
+        }
+        
+        int sessionId = Integer.parseInt(uri.getPathSegments().get(TrackLoggerData.Session.ID_PATH_POSITION));
+        File file = sessionDatabaseManager.getDatabaseFile(sessionId);
+        
+        if (!file.isFile()) {
+            throw new FileNotFoundException("No database file for session " + sessionId + ".");
+        }
+        
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+    
+    /**
+     * Queries the log entries of a session, decoding the entries of sessions stored in the chunked
+     * or compact row storage formats and reading those of sessions stored in their own database file
+     * from that file.  The cursor is notified on the {@link TrackLoggerData.Session#getAppendedUri(long)
+     * session appended URI}.
+     *
+     * @throws IllegalArgumentException if a selection or sort order is provided for a session stored in
+     *             the chunked storage format
+     */
+    private Cursor querySessionLogEntries(Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        
+        String sessionId = uri.getPathSegments().get(TrackLoggerData.Session.ID_PATH_POSITION);
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+        Cursor c;
+        
+        int storageFormat = getStorageFormat(db, Integer.parseInt(sessionId));
+        boolean paged = isPagedQuery(uri, sortOrder);
+        
+        if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED) {
+            if (selection != null || !TextUtils.isEmpty(sortOrder)) {
+                throw new IllegalArgumentException("Selection and sort order are not supported for the log "
+                        + "entries of chunked session " + sessionId + ".");
+            }
+            
+            if (paged) {
+                long afterId = getAfterId(uri);
+                if (afterId > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Invalid value [" + afterId + "] for query parameter ["
+                            + TrackLoggerData.QUERY_PARAMETER_AFTER_ID + "] in URI " + uri + ".");
+                }
+                
+                int limit = getLimit(uri);
+                
+                c = new LogEntryChunkCursor(db,
+                        queryLogEntryChunkPositions(db, sessionId, (int) afterId, limit),
+                        Integer.parseInt(sessionId), projection, (int) afterId, limit);
+            } else {
+                c = new LogEntryChunkCursor(db,
+                        queryLogEntryChunkPositions(db, sessionId, 0, -1),
+                        Integer.parseInt(sessionId), projection);
+            }
+        } else if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_SESSION_FILE) {
+            SQLiteDatabase sessionDb = sessionDatabaseManager.acquireDatabase(Integer.parseInt(sessionId));
+            
+            try {
+                c = SessionDatabaseManager.releaseOnClose(
+                        queryLogEntryRows(sessionDb, sessionId, projection, selection, selectionArgs, sortOrder,
+                                paged ? uri : null),
+                        sessionDb);
+            } catch (RuntimeException e) {
+                sessionDb.releaseReference();
+                throw e;
+            }
+        } else {
+            c = queryLogEntryRows(db, sessionId, projection, selection, selectionArgs, sortOrder,
+                    paged ? uri : null);
+            
+            if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_COMPACT_ROWS) {
+                c = new CompactLogEntryCursor(c);
+            }
+        }
+        
+        c.setNotificationUri(getContext().getContentResolver(),
+                TrackLoggerData.Session.getAppendedUri(Long.parseLong(sessionId)));
+        return c;
+    }
+    
+    /**
+     * Queries the IDs, positions and entry counts, but not the data, of the chunks of a session that
+     * overlap the range of entries starting at the 0-relative position {@code offset} and containing up to
+     * {@code limit} entries, in position order.  The chunks are located through the session and position
+     * index, so the cost of the query depends on the size of the range and not its position in the session.
+     *
+     * @param limit the maximum number of entries in the range, or a negative value for no limit
+     */
+    private static Cursor queryLogEntryChunkPositions(SQLiteDatabase db, String sessionId, int offset,
+            int limit) {
+        
+        String position = TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_ENTRY_POSITION;
+        String sessionIdColumn = TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID;
+        
+        // The range starts in the last chunk starting at or before the offset, or in the empty chunks
+        // sharing its position.
+        String selection = sessionIdColumn + " = ? AND " + position + " >= IFNULL((SELECT MAX(" + position
+                + ") FROM " + TrackLoggerData.LogEntryChunk.TABLE_NAME + " WHERE " + sessionIdColumn
+                + " = ? AND " + position + " <= " + offset + "), 0)";
+        
+        if (limit >= 0) {
+            selection += " AND " + position + " < " + ((long) offset + limit);
+        }
+        
+        return db.query(TrackLoggerData.LogEntryChunk.TABLE_NAME,
+                new String[] {
+                        TrackLoggerData.LogEntryChunk._ID,
+                        TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_ENTRY_POSITION,
+                        TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT },
+                selection,
+                new String[] {sessionId, sessionId},
+                null,
+                null,
+                position + " ASC, " + TrackLoggerData.LogEntryChunk._ID + " ASC");
+    }
+    
+    private Cursor queryLogEntryRows(SQLiteDatabase db, String sessionId, String[] projection,
+            String selection, String[] selectionArgs, String sortOrder, Uri pagedUri) {
+        
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+        qb.setTables(TrackLoggerData.LogEntry.TABLE_NAME);
+        qb.setProjectionMap(LOG_ENTRY_PROJECTION_MAP);
+        qb.appendWhere(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + "=" + sessionId);
+        
+        String limit = null;
+        if (pagedUri != null) {
+            qb.appendWhere(" AND " + TrackLoggerData.LogEntry._ID + ">" + getAfterId(pagedUri));
+            limit = getLimitClause(pagedUri);
+        }
+        
+        return qb.query(db,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                TextUtils.isEmpty(sortOrder) ? TrackLoggerData.LogEntry.DEFAULT_SORT_ORDER : sortOrder,
+                limit);
+    }
+    
+    /**
+     * Returns true if the URI carries the {@link TrackLoggerData#QUERY_PARAMETER_AFTER_ID paging} query
+     * parameters.  Paged queries walk the {@code _id} index rather than skipping over rows with an offset,
+     * so the cost of each page does not grow with its position in the table.
+     *
+     * @throws IllegalArgumentException if the query is paged and a sort order is provided
+     */
+    private static boolean isPagedQuery(Uri uri, String sortOrder) {
+        boolean paged = uri.getQueryParameter(TrackLoggerData.QUERY_PARAMETER_AFTER_ID) != null
+                || uri.getQueryParameter(TrackLoggerData.QUERY_PARAMETER_LIMIT) != null;
+        
+        if (paged && !TextUtils.isEmpty(sortOrder)) {
+            throw new IllegalArgumentException("Paged queries do not support a sort order.  URI: " + uri + ".");
+        }
+        
+        return paged;
+    }
+    
+    private static long getAfterId(Uri uri) {
+        return getPagingParameter(uri, TrackLoggerData.QUERY_PARAMETER_AFTER_ID, 0);
+    }
+    
+    /**
+     * Returns the limit for a paged query, or -1 if the query is not limited.
+     */
+    private static int getLimit(Uri uri) {
+        long limit = getPagingParameter(uri, TrackLoggerData.QUERY_PARAMETER_LIMIT, -1);
+        
+        if (limit > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value [" + limit + "] for query parameter ["
+                    + TrackLoggerData.QUERY_PARAMETER_LIMIT + "] in URI " + uri + ".");
+        }
+        
+        return (int) limit;
+    }
+    
+    private static String getLimitClause(Uri uri) {
+        int limit = getLimit(uri);
+        return limit < 0 ? null : Integer.toString(limit);
+    }
+    
+    private static long getPagingParameter(Uri uri, String name, long defaultValue) {
+        String value = uri.getQueryParameter(name);
+        
+        if (value == null) {
+            return defaultValue;
+        }
+        
+        long parsedValue;
+        try {
+            parsedValue = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value [" + value + "] for query parameter [" + name
+                    + "] in URI " + uri + ".", e);
+        }
+        
+        if (parsedValue < 0) {
+            throw new IllegalArgumentException("Invalid value [" + value + "] for query parameter [" + name
+                    + "] in URI " + uri + ".");
+        }
+        
+        return parsedValue;
+    }
+    
+    /**
+     * Returns the storage format of the session, defaulting to rows for sessions that do not exist.
+     * Formats of existing sessions are cached.
+     */
+    private int getStorageFormat(SQLiteDatabase db, int sessionId) {
+        synchronized (storageFormats) {
+            Integer storageFormat = storageFormats.get(sessionId);
+            
+            if (storageFormat != null) {
+                return storageFormat;
+            }
+        }
+        
+        Cursor cursor = db.query(TrackLoggerData.Session.TABLE_NAME,
+                new String[] {TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT},
+                TrackLoggerData.Session._ID + " = ?",
+                new String[] {String.valueOf(sessionId)},
+                null, null, null);
+        
+        try {
+            if (cursor.moveToFirst()) {
+                int storageFormat = cursor.getInt(0);
+                
+                synchronized (storageFormats) {
+                    storageFormats.put(sessionId, storageFormat);
+                }
+                
+                return storageFormat;
+            } else {
+                return TrackLoggerData.Session.STORAGE_FORMAT_ROWS;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Returns the storage format of the session that the log entry values belong to.
+     */
+    private int getStorageFormat(SQLiteDatabase db, ContentValues logEntryValues) {
+        Integer sessionId = logEntryValues.getAsInteger(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID);
+        return sessionId == null ? TrackLoggerData.Session.STORAGE_FORMAT_ROWS : getStorageFormat(db, sessionId);
+    }
+    
+    /**
+     * Returns the storage format of a session whose log entries are being inserted as rows.
+     *
+     * @throws IllegalArgumentException if the session is stored in the chunked storage format
+     */
+    private int getRowStorageFormat(SQLiteDatabase db, int sessionId) {
+        int storageFormat = getStorageFormat(db, sessionId);
+        
+        if (storageFormat == TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED) {
+            throw new IllegalArgumentException("Log entries of chunked session " + sessionId
+                    + " must be inserted as chunks.");
+        }
+        
+        return storageFormat;
+    }
+    
+    /**
+     * Invalidates the cached storage formats if an update to sessions changes them.
+     */
+    private void storageFormatsChanged(ContentValues values) {
+        if (values.containsKey(TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT)) {
+            synchronized (storageFormats) {
+                storageFormats.clear();
+            }
+        }
+    }
+    
+    /**
+     * Marks the matching sessions as deleted and schedules the purge of their data.
+     *
+     * @return the number of sessions marked
+     */
+    private int deleteSessions(SQLiteDatabase db, String where, String[] whereArgs) {
+        String finalWhere = TrackLoggerData.Session.COLUMN_NAME_DELETED + " = 0";
+        
+        if (where != null) {
+            finalWhere = finalWhere + " AND (" + where + ")";
+        }
+        
+        List<Integer> sessionIds = new ArrayList<Integer>();
+        ContentValues values = new ContentValues();
+        values.put(TrackLoggerData.Session.COLUMN_NAME_DELETED, 1);
+        
+        db.beginTransaction();
+        
+        try {
+            Cursor cursor = db.query(TrackLoggerData.Session.TABLE_NAME,
+                    new String[] {TrackLoggerData.Session._ID},
+                    finalWhere, whereArgs, null, null, null);
+            
+            try {
+                while (cursor.moveToNext()) {
+                    sessionIds.add(cursor.getInt(0));
+                }
+            } finally {
+                cursor.close();
+            }
+            
+            for (Integer sessionId : sessionIds) {
+                db.update(TrackLoggerData.Session.TABLE_NAME, values,
+                        TrackLoggerData.Session._ID + " = ?",
+                        new String[] {String.valueOf(sessionId)});
+            }
+            
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        
+        for (Integer sessionId : sessionIds) {
+            synchronized (storageFormats) {
+                storageFormats.remove(sessionId);
+            }
+            
+            lapIndexMaintainer.sessionDeleted(sessionId);
+            sessionSummaryMaintainer.sessionDeleted(sessionId);
+        }
+        
+        if (!sessionIds.isEmpty()) {
+            getContext().getContentResolver().notifyChange(TrackLoggerData.SessionSummary.CONTENT_URI, null);
+            sessionPurger.schedule();
+        }
+        
+        return sessionIds.size();
+    }
+    
+    /**
+     * Returns a session summary projection that applies {@code function} to {@code lapSummaryColumn} over
+     * the whole lap summaries of the session.
+     */
+    private static String createLapStatisticColumn(String function, String lapSummaryColumn, String alias) {
+        return "(SELECT " + function + "(" + lapSummaryColumn + ") FROM "
+                + TrackLoggerData.LapSummary.TABLE_NAME + " WHERE "
+                + TrackLoggerData.LapSummary.TABLE_NAME + "." + TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID
+                + " = " + TrackLoggerData.Session.TABLE_NAME + "." + TrackLoggerData.Session._ID + " AND "
+                + TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX + " IS NULL) AS " + alias;
+    }
+    
+    private static String[] getInsertColumns(HashMap<String, String> projectionMap, String idColumnName) {
+        ArrayList<String> columns = new ArrayList<String>(projectionMap.keySet());
+        columns.remove(idColumnName);
+        return columns.toArray(new String[columns.size()]);
+    }
+    
+    private static String getInsertSql(String tableName, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(',');
+            }
+            sql.append(columns[i]);
+        }
+        
+        sql.append(") VALUES (");
+        
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(',');
+            }
+            sql.append('?');
+        }
+        
+        return sql.append(')').toString();
+    }
+    
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Float || value instanceof Double) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+    
     private int doSingleDelete(SQLiteDatabase db, String idColumnName, String id, String tableName,
             String where, String[] whereArgs) {
         
@@ -641,6 +1663,18 @@ public class TrackLoggerDataProvider extends ContentProvider {
             case SPLIT_MARKER:
             case SPLIT_MARKER_ID:
                 return TrackLoggerData.SplitMarker.DEFAULT_SORT_ORDER;
+            case LAP_SUMMARY:
+            case LAP_SUMMARY_ID:
+                return TrackLoggerData.LapSummary.DEFAULT_SORT_ORDER;
+            case LAP_INDEX:
+            case LAP_INDEX_ID:
+                return TrackLoggerData.LapIndex.DEFAULT_SORT_ORDER;
+            case LOG_ENTRY_CHUNK:
+            case LOG_ENTRY_CHUNK_ID:
+                return TrackLoggerData.LogEntryChunk.DEFAULT_SORT_ORDER;
+            case SESSION_SUMMARY:
+            case SESSION_SUMMARY_ID:
+                return TrackLoggerData.SessionSummary.DEFAULT_SORT_ORDER;
             default:
                 throw new IllegalArgumentException("Unknown URI type: " + uriType);
         }
@@ -710,21 +1744,6 @@ public class TrackLoggerDataProvider extends ContentProvider {
         void cascade(SQLiteDatabase db, int parentId);
     }
     
-    private static final class SessionDeleteCascadeStrategy implements CascadeStrategy {
-
-        @Override
-        public void cascade(SQLiteDatabase db, int parentId) {
-            db.delete(TrackLoggerData.LogEntry.TABLE_NAME,
-                    TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + " = ?",
-                    new String[] {String.valueOf(parentId)});
-            
-            db.delete(TrackLoggerData.TimingEntry.TABLE_NAME,
-                    TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + " = ?",
-                    new String[] {String.valueOf(parentId)});
-        }
-        
-    }
-    
     private static final class SplitMarkerSetDeleteCascadeStrategy implements CascadeStrategy {
 
         @Override
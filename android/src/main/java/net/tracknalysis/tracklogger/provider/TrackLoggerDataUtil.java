@@ -19,16 +19,20 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.tracknalysis.tracklogger.model.AccelData;
 import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.LapSummary;
 import net.tracknalysis.tracklogger.model.LocationData;
 import net.tracknalysis.tracklogger.model.LogEntry;
 import net.tracknalysis.tracklogger.model.TimingData;
 import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.encoding.CompactChannel;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
 import android.annotation.SuppressLint;
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -181,6 +185,111 @@ public final class TrackLoggerDataUtil {
         return cv;
     }
     
+    /**
+     * Converts the fields in a {@link LogEntry} into content values for insertion into the TrackLogger
+     * database under {@link TrackLoggerData.LogEntry} for a session stored in
+     * {@link TrackLoggerData.Session#STORAGE_FORMAT_COMPACT_ROWS compact rows}.  Positions and channel
+     * values are converted to fixed-point integers using {@link CompactChannel}.
+     *
+     * @param logEntry the entry to convert
+     *
+     * @return the mapped content values
+     */
+    public static ContentValues toCompactContentValues(LogEntry logEntry) {
+        ContentValues cv  = new ContentValues();
+        
+        LocationData locationData = logEntry.getLocationData();
+        AccelData accelData = logEntry.getAccelData();
+        EcuData ecuData = logEntry.getEcuData();
+        
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID,
+                logEntry.getSessionId());
+        
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP,
+                logEntry.getSynchTimestamp());
+        
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP,
+                accelData.getDataRecivedTime());
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL,
+                CompactChannel.LONGITUDINAL_ACCEL.encode(accelData.getLongitudinal()));
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL,
+                CompactChannel.LATERAL_ACCEL.encode(accelData.getLateral()));
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL,
+                CompactChannel.VERTICAL_ACCEL.encode(accelData.getVertical()));
+        
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP,
+                locationData.getDataRecivedTime());
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY,
+                locationData.getTime());
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE,
+                CompactChannel.LATITUDE.encode(locationData.getLatitude()));
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE,
+                CompactChannel.LONGITUDE.encode(locationData.getLongitude()));
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE,
+                CompactChannel.ALTITUDE.encode(locationData.getAltitude()));
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_SPEED,
+                CompactChannel.SPEED.encode(locationData.getSpeed()));
+        cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_BEARING,
+                CompactChannel.BEARING.encode(locationData.getBearing()));
+        
+        if (ecuData != null) {
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP,
+                    ecuData.getDataRecivedTime());
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_RPM,
+                    ecuData.getRpm());
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_MAP,
+                    CompactChannel.MANIFOLD_ABSOLUTE_PRESSURE.encode(ecuData.getManifoldAbsolutePressure()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_MGP,
+                    CompactChannel.MANIFOLD_GAUGE_PRESSURE.encode(ecuData.getManifoldGaugePressure()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION,
+                    CompactChannel.THROTTLE_POSITION.encode(ecuData.getThrottlePosition()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_AFR,
+                    CompactChannel.AIR_FUEL_RATIO.encode(ecuData.getAirFuelRatio()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_MAT,
+                    CompactChannel.MANIFOLD_AIR_TEMPERATURE.encode(ecuData.getManifoldAirTemperature()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_CLT,
+                    CompactChannel.COOLANT_TEMPERATURE.encode(ecuData.getCoolantTemperature()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE,
+                    CompactChannel.IGNITION_ADVANCE.encode(ecuData.getIgnitionAdvance()));
+            cv.put(TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE,
+                    CompactChannel.BATTERY_VOLTAGE.encode(ecuData.getBatteryVoltage()));
+        }
+        
+        return cv;
+    }
+    
+    /**
+     * Encodes a run of consecutive log entries from a single session into content values for insertion
+     * into the TrackLogger database under {@link TrackLoggerData.LogEntryChunk}.
+     *
+     * @param logEntries the entries to encode, in the order in which they were logged
+     * @param codec the codec to encode the entries with
+     *
+     * @return the mapped content values
+     *
+     * @throws IllegalArgumentException if {@code logEntries} is empty
+     */
+    public static ContentValues toContentValues(List<LogEntry> logEntries, LogEntryChunkCodec codec) {
+        if (logEntries.isEmpty()) {
+            throw new IllegalArgumentException("A chunk must contain at least one log entry.");
+        }
+        
+        ContentValues cv = new ContentValues();
+        
+        cv.put(TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID,
+                logEntries.get(0).getSessionId());
+        cv.put(TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_SYNCH_TIMESTAMP,
+                logEntries.get(0).getSynchTimestamp());
+        cv.put(TrackLoggerData.LogEntryChunk.COLUMN_NAME_LAST_SYNCH_TIMESTAMP,
+                logEntries.get(logEntries.size() - 1).getSynchTimestamp());
+        cv.put(TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT,
+                logEntries.size());
+        cv.put(TrackLoggerData.LogEntryChunk.COLUMN_NAME_DATA,
+                codec.encode(logEntries));
+        
+        return cv;
+    }
+    
     public static ContentValues toContentValues(TimingEntry timingEntry) {
         ContentValues cv = new ContentValues();
         
@@ -202,6 +311,51 @@ public final class TrackLoggerDataUtil {
                 timingData.getSplitIndex());
         cv.put(TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_TIME,
                 timingData.getSplitTime());
+        cv.put(TrackLoggerData.TimingEntry.COLUMN_NAME_BEST_LAP_TIME,
+                timingData.getBestLapTime());
+        cv.put(TrackLoggerData.TimingEntry.COLUMN_NAME_THEORETICAL_BEST_LAP_TIME,
+                timingData.getTheoreticalBestLapTime());
+        cv.put(TrackLoggerData.TimingEntry.COLUMN_NAME_ROLLING_BEST_LAP_TIME,
+                timingData.getRollingBestLapTime());
+        
+        return cv;
+    }
+
+    public static ContentValues toContentValues(LapSummary lapSummary) {
+        ContentValues cv = new ContentValues();
+        
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID,
+                lapSummary.getSessionId());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_LAP,
+                lapSummary.getLap());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX,
+                lapSummary.getSplitIndex());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_START_SYNCH_TIMESTAMP,
+                lapSummary.getStartSynchTimestamp());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_END_SYNCH_TIMESTAMP,
+                lapSummary.getEndSynchTimestamp());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_ELAPSED_TIME,
+                lapSummary.getElapsedTime());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_LOG_ENTRY_COUNT,
+                lapSummary.getLogEntryCount());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MAX_SPEED,
+                lapSummary.getMaxSpeed());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MIN_SPEED,
+                lapSummary.getMinSpeed());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MIN_CORNER_SPEED,
+                lapSummary.getMinCornerSpeed());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LATERAL_ACCEL,
+                lapSummary.getMaxLateralAccel());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LONGITUDINAL_ACCEL,
+                lapSummary.getMaxLongitudinalAccel());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MAX_RPM,
+                lapSummary.getMaxRpm());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_AVERAGE_THROTTLE_POSITION,
+                lapSummary.getAverageThrottlePosition());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MIN_AFR,
+                lapSummary.getMinAirFuelRatio());
+        cv.put(TrackLoggerData.LapSummary.COLUMN_NAME_MAX_AFR,
+                lapSummary.getMaxAirFuelRatio());
         
         return cv;
     }
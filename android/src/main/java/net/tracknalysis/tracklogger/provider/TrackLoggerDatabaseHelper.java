@@ -15,19 +15,48 @@
  */
 package net.tracknalysis.tracklogger.provider;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 /**
- * Utility class providing for the create of SQLite DB schema and migration of data on updates.
+ * Utility class providing for the create of SQLite DB schema and migration of data on updates.  New
+ * databases are created with the version 1 schema and then brought up to date by applying the same
+ * {@link TrackLoggerDatabaseMigrations migrations} used to upgrade existing databases.
  *
  * @author David Valeri
  */
 public final class TrackLoggerDatabaseHelper extends SQLiteOpenHelper {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(TrackLoggerDatabaseHelper.class);
+    
+    /**
+     * The value of the {@code auto_vacuum} pragma for incremental auto vacuum.
+     */
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private DatabaseMigrationListener migrationListener = new LoggingDatabaseMigrationListener();
+    
+    /**
+     * The migrations applied since the database was last opened, completed once their transaction has
+     * committed.
+     */
+    private final List<DatabaseMigration> uncommittedMigrations = new ArrayList<DatabaseMigration>();
 
     public TrackLoggerDatabaseHelper(Context context) {
         super(context, TrackLoggerDataProvider.DATABASE_NAME, null, TrackLoggerDataProvider.DATABASE_VERSION);
+        
+        if (TrackLoggerDatabaseMigrations.getLatestVersion() != TrackLoggerDataProvider.DATABASE_VERSION) {
+            throw new IllegalStateException("Database version " + TrackLoggerDataProvider.DATABASE_VERSION
+                    + " does not match the latest migration version "
+                    + TrackLoggerDatabaseMigrations.getLatestVersion() + ".");
+        }
     }
 
     @Override
@@ -39,32 +68,7 @@ public final class TrackLoggerDatabaseHelper extends SQLiteOpenHelper {
                 + TrackLoggerData.Session.COLUMN_NAME_SPLIT_MARKER_SET_ID + " INTEGER NOT NULL"
                 + ");");
 
-        db.execSQL("CREATE TABLE " + TrackLoggerData.LogEntry.TABLE_NAME + " ("
-                + TrackLoggerData.LogEntry._ID + " INTEGER PRIMARY KEY,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + " INTEGER NOT NULL,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP + " BIGINT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL + " FLOAT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL + " FLOAT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL + " FLOAT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP + " BIGINT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY + " BIGINT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_SPEED + " FLOAT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_BEARING + " FLOAT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP + " BIGINT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_RPM + " BIGINT,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_MAP + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_MGP + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_AFR + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_MAT + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_CLT + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE + " DOUBLE,"
-                + TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE + " DOUBLE"
-                + ");");
+        createLogEntryTable(db);
         
         db.execSQL("CREATE TABLE " + TrackLoggerData.TimingEntry.TABLE_NAME + " ("
                 + TrackLoggerData.TimingEntry._ID + " INTEGER PRIMARY KEY,"
@@ -91,16 +95,127 @@ public final class TrackLoggerDatabaseHelper extends SQLiteOpenHelper {
                 + TrackLoggerData.SplitMarker.COLUMN_NAME_LATITUDE + " DOUBLE NOT NULL,"
                 + TrackLoggerData.SplitMarker.COLUMN_NAME_LONGITUDE + " DOUBLE NOT NULL"
                 + ");");
-                
+        
+        migrate(db, TrackLoggerDatabaseMigrations.BASE_VERSION, TrackLoggerDataProvider.DATABASE_VERSION);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        TrackLoggerDataProvider.LOG.info(
-                "Upgrading database from version {} to version {}.  Ladies and gentlemen, "
-                        + "hold on to your hats.", oldVersion, newVersion);
+        LOG.info("Upgrading database from version {} to version {}.  Ladies and gentlemen, "
+                + "hold on to your hats.", oldVersion, newVersion);
 
-        throw new UnsupportedOperationException(
-                "This should never happen at this time.");
+        migrate(db, oldVersion, newVersion);
+    }
+    
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        
+        if (!db.isReadOnly()) {
+            migrateAfterCommit(db);
+        }
+    }
+    
+    /**
+     * Creates the log entry table.  Shared with the {@link SessionDatabaseManager per-session databases}
+     * so that the log entries of all sessions have the same schema regardless of where they are stored.
+     */
+    static void createLogEntryTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TrackLoggerData.LogEntry.TABLE_NAME + " ("
+                + TrackLoggerData.LogEntry._ID + " INTEGER PRIMARY KEY,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + " INTEGER NOT NULL,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP + " BIGINT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL + " FLOAT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL + " FLOAT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL + " FLOAT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP + " BIGINT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY + " BIGINT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_SPEED + " FLOAT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_BEARING + " FLOAT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP + " BIGINT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_RPM + " BIGINT,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_MAP + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_MGP + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_AFR + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_MAT + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_CLT + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE + " DOUBLE,"
+                + TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE + " DOUBLE"
+                + ");");
+    }
+    
+    /**
+     * Sets the listener notified of the progress of any migrations applied when the database is
+     * created or upgraded.  Must be set before the database is first opened.
+     */
+    void setMigrationListener(DatabaseMigrationListener migrationListener) {
+        this.migrationListener = migrationListener;
+    }
+    
+    private void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        List<DatabaseMigration> migrations =
+                TrackLoggerDatabaseMigrations.getMigrations(fromVersion, toVersion);
+        
+        for (int i = 0; i < migrations.size(); i++) {
+            DatabaseMigration migration = migrations.get(i);
+            long startTime = System.currentTimeMillis();
+            
+            migrationListener.migrationStarted(migration, i + 1, migrations.size());
+            migration.migrate(db);
+            migrationListener.migrationCompleted(migration, i + 1, migrations.size(),
+                    System.currentTimeMillis() - startTime);
+            uncommittedMigrations.add(migration);
+        }
+    }
+    
+    /**
+     * Applies the parts of the migrations that cannot run within the transaction in which the database
+     * was created or upgraded.  Called when the database is opened, after that transaction has committed.
+     */
+    private void migrateAfterCommit(SQLiteDatabase db) {
+        for (DatabaseMigration migration : uncommittedMigrations) {
+            long startTime = System.currentTimeMillis();
+            
+            migrationListener.afterCommitStarted(migration);
+            migration.migrateAfterCommit(db);
+            migrationListener.afterCommitCompleted(migration, System.currentTimeMillis() - startTime);
+        }
+        
+        uncommittedMigrations.clear();
+    }
+    
+    /**
+     * Default listener that logs the progress of the migrations.
+     */
+    private static final class LoggingDatabaseMigrationListener implements DatabaseMigrationListener {
+        
+        @Override
+        public void migrationStarted(DatabaseMigration migration, int step, int stepCount) {
+            LOG.info("Applying database migration {} of {}: {}.",
+                    new Object[] {step, stepCount, migration});
+        }
+        
+        @Override
+        public void migrationCompleted(DatabaseMigration migration, int step, int stepCount,
+                long elapsedTime) {
+            LOG.info("Applied database migration {} of {} in {}ms.",
+                    new Object[] {step, stepCount, elapsedTime});
+        }
+        
+        @Override
+        public void afterCommitStarted(DatabaseMigration migration) {
+            LOG.info("Completing database migration: {}.", migration);
+        }
+        
+        @Override
+        public void afterCommitCompleted(DatabaseMigration migration, long elapsedTime) {
+            LOG.info("Completed database migration to version {} in {}ms.", migration.getVersion(),
+                    elapsedTime);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * The ordered list of migrations applied to the version 1 schema to produce the current schema.  New
+ * migrations are appended to the end of the list and {@link TrackLoggerDataProvider#DATABASE_VERSION}
+ * is set to the version of the last migration.  Existing migrations must never be changed once released.
+ *
+ * @author David Valeri
+ */
+final class TrackLoggerDatabaseMigrations {
+    
+    /**
+     * The version of the schema created before any migrations are applied.
+     */
+    static final int BASE_VERSION = 1;
+    
+    /**
+     * SQL expression for the current time in milliseconds since the epoch.
+     */
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    
+    private static final List<DatabaseMigration> MIGRATIONS;
+    
+    static {
+        List<DatabaseMigration> migrations = new ArrayList<DatabaseMigration>();
+        
+        migrations.add(new DatabaseMigration(2, "Create lap summary table") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE " + TrackLoggerData.LapSummary.TABLE_NAME + " ("
+                        + TrackLoggerData.LapSummary._ID + " INTEGER PRIMARY KEY,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_LAP + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX + " INTEGER,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_START_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_END_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_ELAPSED_TIME + " BIGINT,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_LOG_ENTRY_COUNT + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MAX_SPEED + " FLOAT,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MIN_SPEED + " FLOAT,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LATERAL_ACCEL + " FLOAT,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MAX_LONGITUDINAL_ACCEL + " FLOAT,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MAX_RPM + " INTEGER,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_AVERAGE_THROTTLE_POSITION + " DOUBLE,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MIN_AFR + " DOUBLE,"
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MAX_AFR + " DOUBLE"
+                        + ");");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(3, "Add best lap time columns to timing entry table") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                // Existing entries are left with null values.
+                db.execSQL("ALTER TABLE " + TrackLoggerData.TimingEntry.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.TimingEntry.COLUMN_NAME_BEST_LAP_TIME + " BIGINT");
+                db.execSQL("ALTER TABLE " + TrackLoggerData.TimingEntry.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.TimingEntry.COLUMN_NAME_THEORETICAL_BEST_LAP_TIME + " BIGINT");
+                db.execSQL("ALTER TABLE " + TrackLoggerData.TimingEntry.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.TimingEntry.COLUMN_NAME_ROLLING_BEST_LAP_TIME + " BIGINT");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(4, "Create lap index table") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                // Sessions recorded before the upgrade are not indexed.
+                db.execSQL("CREATE TABLE " + TrackLoggerData.LapIndex.TABLE_NAME + " ("
+                        + TrackLoggerData.LapIndex._ID + " INTEGER PRIMARY KEY,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_LAP + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID + " INTEGER,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID + " INTEGER,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_START_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_END_SYNCH_TIMESTAMP + " BIGINT"
+                        + ");");
+                
+                db.execSQL("CREATE UNIQUE INDEX " + TrackLoggerData.LapIndex.TABLE_NAME + "_session_lap ON "
+                        + TrackLoggerData.LapIndex.TABLE_NAME + " ("
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + ", "
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_LAP
+                        + ");");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(5, "Index log and timing entries by session and synch timestamp") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                // Building the indexes scans the existing entries, so this step is the slow one on
+                // databases holding many sessions.
+                db.execSQL("CREATE INDEX " + TrackLoggerData.LogEntry.TABLE_NAME + "_session_synch ON "
+                        + TrackLoggerData.LogEntry.TABLE_NAME + " ("
+                        + TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + ", "
+                        + TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP
+                        + ");");
+                
+                db.execSQL("CREATE INDEX " + TrackLoggerData.TimingEntry.TABLE_NAME + "_session_synch ON "
+                        + TrackLoggerData.TimingEntry.TABLE_NAME + " ("
+                        + TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + ", "
+                        + TrackLoggerData.TimingEntry.COLUMN_NAME_SYNCH_TIMESTAMP
+                        + ");");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(6, "Create log entry chunk table and session storage format") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                // Existing sessions keep their log entries in rows.
+                db.execSQL("ALTER TABLE " + TrackLoggerData.Session.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT + " INTEGER NOT NULL DEFAULT "
+                        + TrackLoggerData.Session.STORAGE_FORMAT_ROWS);
+                
+                db.execSQL("CREATE TABLE " + TrackLoggerData.LogEntryChunk.TABLE_NAME + " ("
+                        + TrackLoggerData.LogEntryChunk._ID + " INTEGER PRIMARY KEY,"
+                        + TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
+                        + TrackLoggerData.LogEntryChunk.COLUMN_NAME_LAST_SYNCH_TIMESTAMP + " BIGINT NOT NULL,"
+                        + TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT + " INTEGER NOT NULL,"
+                        + TrackLoggerData.LogEntryChunk.COLUMN_NAME_DATA + " BLOB NOT NULL"
+                        + ");");
+                
+                db.execSQL("CREATE INDEX " + TrackLoggerData.LogEntryChunk.TABLE_NAME + "_session ON "
+                        + TrackLoggerData.LogEntryChunk.TABLE_NAME + " ("
+                        + TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID
+                        + ");");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(7, "Add session deleted flag") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + TrackLoggerData.Session.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.Session.COLUMN_NAME_DELETED + " INTEGER NOT NULL DEFAULT 0");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(8, "Create and populate session summary table") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE " + TrackLoggerData.SessionSummary.TABLE_NAME + " ("
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_SESSION_ID + " INTEGER PRIMARY KEY,"
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT + " INTEGER NOT NULL,"
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION + " BIGINT NOT NULL,"
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_DISTANCE + " DOUBLE,"
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT + " INTEGER NOT NULL,"
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME + " BIGINT"
+                        + ");");
+                
+                String sessionId = TrackLoggerData.Session.TABLE_NAME + "." + TrackLoggerData.Session._ID;
+                String lapCompleted = TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + " = " + sessionId
+                        + " AND " + TrackLoggerData.TimingEntry.COLUMN_NAME_LAP + " <> 0"
+                        + " AND " + TrackLoggerData.TimingEntry.COLUMN_NAME_LAP_TIME + " IS NOT NULL";
+                
+                // Existing sessions are summarized from their entries using the session indexes.  The
+                // distance cannot be computed in SQL, durations do not account for sessions spanning
+                // midnight, and sessions stored in their own file are left unsummarized as their entries
+                // are not in this database.
+                db.execSQL("INSERT INTO " + TrackLoggerData.SessionSummary.TABLE_NAME + " ("
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_SESSION_ID + ", "
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_SAMPLE_COUNT + ", "
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_DURATION + ", "
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_LAP_COUNT + ", "
+                        + TrackLoggerData.SessionSummary.COLUMN_NAME_BEST_LAP_TIME + ") "
+                        + "SELECT " + sessionId + ", "
+                        + "(SELECT COUNT(*) FROM " + TrackLoggerData.LogEntry.TABLE_NAME
+                        + " WHERE " + TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + " = " + sessionId + ")"
+                        + " + (SELECT IFNULL(SUM(" + TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT + "), 0)"
+                        + " FROM " + TrackLoggerData.LogEntryChunk.TABLE_NAME
+                        + " WHERE " + TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID + " = " + sessionId + "), "
+                        + "IFNULL((SELECT MAX(" + TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP + ")"
+                        + " - MIN(" + TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP + ")"
+                        + " FROM " + TrackLoggerData.LogEntry.TABLE_NAME
+                        + " WHERE " + TrackLoggerData.LogEntry.COLUMN_NAME_SESSION_ID + " = " + sessionId + "), 0)"
+                        + " + IFNULL((SELECT MAX(" + TrackLoggerData.LogEntryChunk.COLUMN_NAME_LAST_SYNCH_TIMESTAMP + ")"
+                        + " - MIN(" + TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_SYNCH_TIMESTAMP + ")"
+                        + " FROM " + TrackLoggerData.LogEntryChunk.TABLE_NAME
+                        + " WHERE " + TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID + " = " + sessionId + "), 0), "
+                        + "(SELECT COUNT(*) FROM " + TrackLoggerData.TimingEntry.TABLE_NAME
+                        + " WHERE " + lapCompleted + "), "
+                        + "(SELECT MIN(" + TrackLoggerData.TimingEntry.COLUMN_NAME_LAP_TIME + ")"
+                        + " FROM " + TrackLoggerData.TimingEntry.TABLE_NAME
+                        + " WHERE " + lapCompleted + ") "
+                        + "FROM " + TrackLoggerData.Session.TABLE_NAME
+                        + " WHERE " + TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT + " <> "
+                        + TrackLoggerData.Session.STORAGE_FORMAT_SESSION_FILE);
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(9, "Add split marker set modification stamp") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE " + TrackLoggerData.SplitMarkerSet.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.SplitMarkerSet.COLUMN_NAME_MODIFICATION_STAMP
+                        + " BIGINT NOT NULL DEFAULT 0");
+                
+                db.execSQL("UPDATE " + TrackLoggerData.SplitMarkerSet.TABLE_NAME + " SET "
+                        + TrackLoggerData.SplitMarkerSet.COLUMN_NAME_MODIFICATION_STAMP + " = " + NOW_MILLIS);
+                
+                // The stamp only ever increases, even if the clock is set back, and is time based so that
+                // a set created with the ID of a deleted set does not reuse a stamp of the deleted set.
+                String setId = TrackLoggerData.SplitMarkerSet._ID;
+                String splitMarkerSetId = TrackLoggerData.SplitMarker.COLUMN_NAME_SPLIT_MARKER_SET_ID;
+                
+                createStampTrigger(db, "split_marker_set_insert_stamp",
+                        "AFTER INSERT ON " + TrackLoggerData.SplitMarkerSet.TABLE_NAME, "NEW." + setId);
+                createStampTrigger(db, "split_marker_insert_stamp",
+                        "AFTER INSERT ON " + TrackLoggerData.SplitMarker.TABLE_NAME, "NEW." + splitMarkerSetId);
+                createStampTrigger(db, "split_marker_delete_stamp",
+                        "AFTER DELETE ON " + TrackLoggerData.SplitMarker.TABLE_NAME, "OLD." + splitMarkerSetId);
+                createStampTrigger(db, "split_marker_update_stamp",
+                        "AFTER UPDATE ON " + TrackLoggerData.SplitMarker.TABLE_NAME,
+                        "OLD." + splitMarkerSetId + " OR " + setId + " = NEW." + splitMarkerSetId);
+            }
+            
+            private void createStampTrigger(SQLiteDatabase db, String name, String event, String setIdExpression) {
+                String stamp = TrackLoggerData.SplitMarkerSet.COLUMN_NAME_MODIFICATION_STAMP;
+                
+                db.execSQL("CREATE TRIGGER " + name + " " + event + " BEGIN "
+                        + "UPDATE " + TrackLoggerData.SplitMarkerSet.TABLE_NAME
+                        + " SET " + stamp + " = MAX(" + stamp + " + 1, " + NOW_MILLIS + ")"
+                        + " WHERE " + TrackLoggerData.SplitMarkerSet._ID + " = " + setIdExpression + "; "
+                        + "END;");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(10, "Add lap summary corner speed and session index") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                // Existing summaries are left with null values.
+                db.execSQL("ALTER TABLE " + TrackLoggerData.LapSummary.TABLE_NAME + " ADD COLUMN "
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_MIN_CORNER_SPEED + " FLOAT");
+                
+                // Supports the per-session lap statistics in the session summaries.
+                db.execSQL("CREATE INDEX IF NOT EXISTS lap_summary_session ON "
+                        + TrackLoggerData.LapSummary.TABLE_NAME + " ("
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_SESSION_ID + ", "
+                        + TrackLoggerData.LapSummary.COLUMN_NAME_SPLIT_INDEX + ")");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(11, "Index log entry chunks by entry position") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                String table = TrackLoggerData.LogEntryChunk.TABLE_NAME;
+                String id = TrackLoggerData.LogEntryChunk._ID;
+                String sessionId = TrackLoggerData.LogEntryChunk.COLUMN_NAME_SESSION_ID;
+                String entryCount = TrackLoggerData.LogEntryChunk.COLUMN_NAME_ENTRY_COUNT;
+                String position = TrackLoggerData.LogEntryChunk.COLUMN_NAME_FIRST_ENTRY_POSITION;
+                
+                db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + position + " INTEGER NOT NULL DEFAULT 0");
+                
+                // Existing chunks are positioned by the entries in the chunks preceding them in ID order.
+                db.execSQL("UPDATE " + table + " SET " + position + " = (SELECT IFNULL(SUM(c." + entryCount
+                        + "), 0) FROM " + table + " c WHERE c." + sessionId + " = " + table + "." + sessionId
+                        + " AND c." + id + " < " + table + "." + id + ")");
+                
+                // Replaces the session index, which is a prefix of the new index.
+                db.execSQL("DROP INDEX IF EXISTS " + table + "_session");
+                db.execSQL("CREATE INDEX " + table + "_session_position ON " + table + " ("
+                        + sessionId + ", " + position + ");");
+                
+                // New chunks follow the last chunk of the session, found at the end of the index.
+                db.execSQL("CREATE TRIGGER " + table + "_position AFTER INSERT ON " + table + " BEGIN "
+                        + "UPDATE " + table + " SET " + position + " = IFNULL((SELECT c." + position
+                        + " + c." + entryCount + " FROM " + table + " c WHERE c." + sessionId + " = NEW."
+                        + sessionId + " AND c." + id + " < NEW." + id + " ORDER BY c." + position
+                        + " DESC, c." + id + " DESC LIMIT 1), 0) WHERE " + id + " = NEW." + id + "; "
+                        + "END;");
+            }
+        });
+        
+        migrations.add(new DatabaseMigration(12, "Enable incremental auto vacuum") {
+            @Override
+            public void migrate(SQLiteDatabase db) {
+                // Takes effect on the VACUUM below, which cannot run within the migration transaction.
+                db.execSQL("PRAGMA auto_vacuum = " + TrackLoggerDatabaseHelper.AUTO_VACUUM_INCREMENTAL);
+            }
+            
+            @Override
+            public void migrateAfterCommit(SQLiteDatabase db) {
+                // Rebuilds the whole database once so that the SessionPurger can return the pages freed by
+                // purged sessions to the file system a few at a time.
+                if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+                        != TrackLoggerDatabaseHelper.AUTO_VACUUM_INCREMENTAL) {
+                    db.execSQL("VACUUM");
+                }
+            }
+        });
+        
+        MIGRATIONS = Collections.unmodifiableList(migrations);
+    }
+    
+    private TrackLoggerDatabaseMigrations() {
+    }
+    
+    /**
+     * Returns the migrations that upgrade the schema from {@code fromVersion} to {@code toVersion},
+     * in the order in which they must be applied.
+     *
+     * @throws IllegalArgumentException if the migrations do not cover the range of versions exactly
+     */
+    static List<DatabaseMigration> getMigrations(int fromVersion, int toVersion) {
+        
+        List<DatabaseMigration> migrations = new ArrayList<DatabaseMigration>();
+        int expectedVersion = fromVersion + 1;
+        
+        for (DatabaseMigration migration : MIGRATIONS) {
+            if (migration.getVersion() > fromVersion && migration.getVersion() <= toVersion) {
+                if (migration.getVersion() != expectedVersion) {
+                    throw new IllegalArgumentException("Expected a migration to version "
+                            + expectedVersion + " but found " + migration + ".");
+                }
+                
+                migrations.add(migration);
+                expectedVersion++;
+            }
+        }
+        
+        if (expectedVersion != toVersion + 1) {
+            throw new IllegalArgumentException("No migration path from version " + fromVersion
+                    + " to version " + toVersion + ".");
+        }
+        
+        return migrations;
+    }
+    
+    /**
+     * Returns the version produced by the last migration.
+     */
+    static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+    }
+}
@@ -0,0 +1,577 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store.android;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.tracklogger.model.AccelData.AccelDataBuilder;
+import net.tracknalysis.tracklogger.model.EcuData.EcuDataBuilder;
+import net.tracknalysis.tracklogger.model.LocationData.LocationDataBuilder;
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingData.TimingDataBuilder;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
+import net.tracknalysis.tracklogger.provider.PagedRecordIterator;
+import net.tracknalysis.tracklogger.provider.TrackLoggerData;
+import net.tracknalysis.tracklogger.provider.TrackLoggerDataUtil;
+import net.tracknalysis.tracklogger.store.EntryReader;
+import net.tracknalysis.tracklogger.store.SessionAppender;
+import net.tracknalysis.tracklogger.store.SessionStore;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * A {@link SessionStore} backed by the {@link TrackLoggerData TrackLogger content provider}.  Entries are
+ * written in the storage format of the session, as the data provider coordinator writes them, and are
+ * read a page at a time through {@link PagedRecordIterator}.  Lap ranges are resolved through the
+ * {@link TrackLoggerData.LapIndex lap index} maintained by the provider.
+ *
+ * @author David Valeri
+ */
+public class ContentProviderSessionStore implements SessionStore {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ContentProviderSessionStore.class);
+    
+    /**
+     * The number of log entries buffered before writing a chunk for sessions in the
+     * {@link TrackLoggerData.Session#STORAGE_FORMAT_CHUNKED chunked} storage format.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 50;
+    
+    private final ContentResolver contentResolver;
+    private final int storageFormat;
+    private final Set<Integer> openSessionIds = new HashSet<Integer>();
+    
+    /**
+     * Creates a store that creates new sessions in the
+     * {@link TrackLoggerData.Session#STORAGE_FORMAT_ROWS rows} storage format.
+     */
+    public ContentProviderSessionStore(ContentResolver contentResolver) {
+        this(contentResolver, TrackLoggerData.Session.STORAGE_FORMAT_ROWS);
+    }
+    
+    /**
+     * @param contentResolver the resolver to access the provider through
+     * @param storageFormat the {@link TrackLoggerData.Session#COLUMN_NAME_STORAGE_FORMAT storage format}
+     * of new sessions
+     */
+    public ContentProviderSessionStore(ContentResolver contentResolver, int storageFormat) {
+        this.contentResolver = contentResolver;
+        this.storageFormat = storageFormat;
+    }
+    
+    @Override
+    public int createSession(Date startDate, int splitMarkerSetId) {
+        ContentValues cv = new ContentValues();
+        cv.put(TrackLoggerData.Session.COLUMN_NAME_START_DATE,
+                TrackLoggerDataUtil.writeSqlDate(startDate));
+        cv.put(TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE,
+                TrackLoggerDataUtil.writeSqlDate(new Date()));
+        cv.put(TrackLoggerData.Session.COLUMN_NAME_SPLIT_MARKER_SET_ID, splitMarkerSetId);
+        cv.put(TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT, storageFormat);
+        
+        Uri sessionUri = contentResolver.insert(TrackLoggerData.Session.CONTENT_URI, cv);
+        return Integer.parseInt(sessionUri.getPathSegments().get(
+                TrackLoggerData.Session.ID_PATH_POSITION));
+    }
+    
+    @Override
+    public SessionAppender openSession(int sessionId) {
+        int sessionStorageFormat = getStorageFormat(sessionId);
+        
+        synchronized (openSessionIds) {
+            if (!openSessionIds.add(sessionId)) {
+                throw new IllegalStateException("Session " + sessionId + " is already open.");
+            }
+        }
+        
+        return new ContentProviderSessionAppender(sessionId, sessionStorageFormat);
+    }
+    
+    @Override
+    public EntryReader<LogEntry> readLogEntries(int sessionId, Integer startLap, Integer endLap) {
+        getStorageFormat(sessionId);
+        
+        // The session log entries URI restricts the log entries to the session.
+        StringBuilder selection = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<String>();
+        
+        Long startLogEntryId = startLap == null ? null
+                : getLapIndexId(sessionId, startLap, TrackLoggerData.LapIndex.COLUMN_NAME_START_LOG_ENTRY_ID);
+        Long endLogEntryId = endLap == null ? null
+                : getLapIndexId(sessionId, endLap, TrackLoggerData.LapIndex.COLUMN_NAME_END_LOG_ENTRY_ID);
+        
+        if (startLogEntryId != null) {
+            selection.append(TrackLoggerData.LogEntry._ID).append(" >= ?");
+            selectionArgs.add(startLogEntryId.toString());
+        }
+        
+        if (endLogEntryId != null) {
+            if (selection.length() != 0) {
+                selection.append(" AND ");
+            }
+            selection.append(TrackLoggerData.LogEntry._ID).append(" <= ?");
+            selectionArgs.add(endLogEntryId.toString());
+        }
+        
+        return new LogEntryReader(sessionId, new PagedRecordIterator(contentResolver,
+                TrackLoggerData.Session.getLogEntriesUri(sessionId), null,
+                selection.length() == 0 ? null : selection.toString(),
+                selectionArgs.isEmpty() ? null : selectionArgs.toArray(new String[selectionArgs.size()])));
+    }
+    
+    @Override
+    public EntryReader<TimingEntry> readTimingEntries(int sessionId, Integer startLap, Integer endLap) {
+        getStorageFormat(sessionId);
+        
+        StringBuilder selection = new StringBuilder(
+                TrackLoggerData.TimingEntry.COLUMN_NAME_SESSION_ID + " = ?");
+        List<String> selectionArgs = new ArrayList<String>();
+        selectionArgs.add(Integer.toString(sessionId));
+        
+        Long startTimingEntryId = startLap == null ? null
+                : getLapIndexId(sessionId, startLap, TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID);
+        // The range ends before the timing entry that starts the next lap.
+        Long nextTimingEntryId = endLap == null ? null
+                : getLapIndexId(sessionId, endLap + 1,
+                        TrackLoggerData.LapIndex.COLUMN_NAME_START_TIMING_ENTRY_ID);
+        
+        if (startTimingEntryId != null) {
+            selection.append(" AND ").append(TrackLoggerData.TimingEntry._ID).append(" >= ?");
+            selectionArgs.add(startTimingEntryId.toString());
+        }
+        
+        if (nextTimingEntryId != null) {
+            selection.append(" AND ").append(TrackLoggerData.TimingEntry._ID).append(" < ?");
+            selectionArgs.add(nextTimingEntryId.toString());
+        }
+        
+        return new TimingEntryReader(sessionId, new PagedRecordIterator(contentResolver,
+                TrackLoggerData.TimingEntry.CONTENT_URI, null, selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()])));
+    }
+    
+    @Override
+    public boolean deleteSession(int sessionId) {
+        synchronized (openSessionIds) {
+            if (openSessionIds.contains(sessionId)) {
+                throw new IllegalStateException("Session " + sessionId + " is open.");
+            }
+        }
+        
+        return contentResolver.delete(
+                ContentUris.withAppendedId(TrackLoggerData.Session.CONTENT_ID_URI_BASE, sessionId),
+                null, null) != 0;
+    }
+    
+    /**
+     * Does nothing.  Appenders must be closed by their owners as the provider outlives this store.
+     */
+    @Override
+    public void close() {
+    }
+    
+    /**
+     * Returns the storage format of the session.
+     *
+     * @throws IllegalArgumentException if the session does not exist or has been deleted
+     */
+    private int getStorageFormat(int sessionId) {
+        Cursor cursor = contentResolver.query(
+                ContentUris.withAppendedId(TrackLoggerData.Session.CONTENT_ID_URI_BASE, sessionId),
+                new String[] {
+                        TrackLoggerData.Session.COLUMN_NAME_STORAGE_FORMAT,
+                        TrackLoggerData.Session.COLUMN_NAME_DELETED },
+                null, null, null);
+        
+        try {
+            if (!cursor.moveToFirst() || cursor.getInt(1) != 0) {
+                throw new IllegalArgumentException("No session found for ID " + sessionId + ".");
+            }
+            
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Returns the value of an ID column in the lap index for a lap, or {@code null} if the lap is not
+     * indexed or the column is not populated for the session's storage format.
+     */
+    private Long getLapIndexId(int sessionId, int lap, String columnName) {
+        Cursor cursor = contentResolver.query(TrackLoggerData.LapIndex.CONTENT_URI,
+                new String[] { columnName },
+                TrackLoggerData.LapIndex.COLUMN_NAME_SESSION_ID + " = ? AND "
+                        + TrackLoggerData.LapIndex.COLUMN_NAME_LAP + " = ?",
+                new String[] { Integer.toString(sessionId), Integer.toString(lap) },
+                null);
+        
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                LOG.debug("Lap {} of session with ID {} is not indexed for {}.",
+                        new Object[] {lap, sessionId, columnName});
+                return null;
+            }
+            
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    private static Long getLongOrNull(Cursor cursor, int columnIndex) {
+        return columnIndex == -1 || cursor.isNull(columnIndex) ? null : cursor.getLong(columnIndex);
+    }
+    
+    private final class ContentProviderSessionAppender implements SessionAppender {
+        
+        private final int sessionId;
+        private final int sessionStorageFormat;
+        private final List<LogEntry> logEntryChunk;
+        private final LogEntryChunkCodec logEntryChunkCodec;
+        private boolean closed;
+        
+        ContentProviderSessionAppender(int sessionId, int sessionStorageFormat) {
+            this.sessionId = sessionId;
+            this.sessionStorageFormat = sessionStorageFormat;
+            
+            if (sessionStorageFormat == TrackLoggerData.Session.STORAGE_FORMAT_CHUNKED) {
+                logEntryChunk = new ArrayList<LogEntry>(DEFAULT_CHUNK_SIZE * 2);
+                logEntryChunkCodec = new LogEntryChunkCodec();
+            } else {
+                logEntryChunk = null;
+                logEntryChunkCodec = null;
+            }
+        }
+        
+        @Override
+        public int getSessionId() {
+            return sessionId;
+        }
+        
+        @Override
+        public void appendLogEntries(List<LogEntry> logEntries) {
+            checkOpen();
+            
+            if (logEntries.isEmpty()) {
+                return;
+            }
+            
+            if (logEntryChunk != null) {
+                logEntryChunk.addAll(logEntries);
+                
+                if (logEntryChunk.size() >= DEFAULT_CHUNK_SIZE) {
+                    flush();
+                }
+                
+                return;
+            }
+            
+            ContentValues[] cvs = new ContentValues[logEntries.size()];
+            for (int i = 0; i < cvs.length; i++) {
+                if (sessionStorageFormat == TrackLoggerData.Session.STORAGE_FORMAT_COMPACT_ROWS) {
+                    cvs[i] = TrackLoggerDataUtil.toCompactContentValues(logEntries.get(i));
+                } else {
+                    cvs[i] = TrackLoggerDataUtil.toContentValues(logEntries.get(i));
+                }
+            }
+            
+            contentResolver.bulkInsert(TrackLoggerData.Session.getLogEntriesUri(sessionId), cvs);
+        }
+        
+        @Override
+        public void appendTimingEntries(List<TimingEntry> timingEntries) {
+            checkOpen();
+            
+            if (timingEntries.isEmpty()) {
+                return;
+            }
+            
+            ContentValues[] cvs = new ContentValues[timingEntries.size()];
+            for (int i = 0; i < cvs.length; i++) {
+                cvs[i] = TrackLoggerDataUtil.toContentValues(timingEntries.get(i));
+            }
+            
+            contentResolver.bulkInsert(TrackLoggerData.TimingEntry.CONTENT_URI, cvs);
+        }
+        
+        /**
+         * Writes any buffered chunk.  Entries in the other storage formats are written as they are
+         * appended.
+         */
+        @Override
+        public void flush() {
+            checkOpen();
+            
+            if (logEntryChunk != null && !logEntryChunk.isEmpty()) {
+                LOG.debug("Writing chunk of {} log entries to session with ID {}.",
+                        logEntryChunk.size(), sessionId);
+                
+                ContentValues cv = TrackLoggerDataUtil.toContentValues(logEntryChunk, logEntryChunkCodec);
+                logEntryChunk.clear();
+                contentResolver.insert(TrackLoggerData.LogEntryChunk.CONTENT_URI, cv);
+            }
+        }
+        
+        /**
+         * Flushes the appender and updates the last modified date of the session, which also writes the
+         * final {@link TrackLoggerData.SessionSummary summary} of the session.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            
+            try {
+                flush();
+                
+                ContentValues cv = new ContentValues();
+                cv.put(TrackLoggerData.Session.COLUMN_NAME_LAST_MODIFIED_DATE,
+                        TrackLoggerDataUtil.writeSqlDate(new Date()));
+                contentResolver.update(
+                        ContentUris.withAppendedId(TrackLoggerData.Session.CONTENT_ID_URI_BASE, sessionId),
+                        cv, null, null);
+            } finally {
+                closed = true;
+                synchronized (openSessionIds) {
+                    openSessionIds.remove(sessionId);
+                }
+            }
+        }
+        
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("The appender is closed.");
+            }
+        }
+    }
+    
+    private static final class LogEntryReader implements EntryReader<LogEntry> {
+        
+        private final int sessionId;
+        private final PagedRecordIterator records;
+        
+        private final int synchTimestampColumnIndex;
+        private final int accelCaptureTimestampColumnIndex;
+        private final int longitudinalAccelColumnIndex;
+        private final int lateralAccelColumnIndex;
+        private final int verticalAccelColumnIndex;
+        private final int locationCaptureTimestampColumnIndex;
+        private final int locationTimeInDayColumnIndex;
+        private final int latitudeColumnIndex;
+        private final int longitudeColumnIndex;
+        private final int altitudeColumnIndex;
+        private final int speedColumnIndex;
+        private final int bearingColumnIndex;
+        private final int ecuCaptureTimestampColumnIndex;
+        private final int rpmColumnIndex;
+        private final int mapColumnIndex;
+        private final int mgpColumnIndex;
+        private final int tpColumnIndex;
+        private final int afrColumnIndex;
+        private final int matColumnIndex;
+        private final int cltColumnIndex;
+        private final int ignitionAdvanceColumnIndex;
+        private final int batteryVoltageColumnIndex;
+        
+        LogEntryReader(int sessionId, PagedRecordIterator records) {
+            this.sessionId = sessionId;
+            this.records = records;
+            
+            synchTimestampColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+            accelCaptureTimestampColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_ACCEL_CAPTURE_TIMESTAMP);
+            longitudinalAccelColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDINAL_ACCEL);
+            lateralAccelColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_LATERAL_ACCEL);
+            verticalAccelColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_VERTICAL_ACCEL);
+            locationCaptureTimestampColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_CAPTURE_TIMESTAMP);
+            locationTimeInDayColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_LOCATION_TIME_IN_DAY);
+            latitudeColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LATITUDE);
+            longitudeColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_LONGITUDE);
+            altitudeColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_ALTITUDE);
+            speedColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_SPEED);
+            bearingColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_BEARING);
+            ecuCaptureTimestampColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_ECU_CAPTURE_TIMESTAMP);
+            rpmColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_RPM);
+            mapColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAP);
+            mgpColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MGP);
+            tpColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_THROTTLE_POSITION);
+            afrColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_AFR);
+            matColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_MAT);
+            cltColumnIndex = records.getColumnIndex(TrackLoggerData.LogEntry.COLUMN_NAME_CLT);
+            ignitionAdvanceColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_IGNITION_ADVANCE);
+            batteryVoltageColumnIndex = records.getColumnIndex(
+                    TrackLoggerData.LogEntry.COLUMN_NAME_BATTERY_VOLTAGE);
+        }
+        
+        @Override
+        public LogEntry next() throws IOException {
+            if (!records.moveToNext()) {
+                return null;
+            }
+            
+            Cursor cursor = records.getCursor();
+            
+            AccelDataBuilder accelDataBuilder = null;
+            Long accelCaptureTimestamp = getLongOrNull(cursor, accelCaptureTimestampColumnIndex);
+            if (accelCaptureTimestamp != null) {
+                accelDataBuilder = new AccelDataBuilder();
+                accelDataBuilder.setDataRecivedTime(accelCaptureTimestamp);
+                accelDataBuilder.setLongitudinal(cursor.getFloat(longitudinalAccelColumnIndex));
+                accelDataBuilder.setLateral(cursor.getFloat(lateralAccelColumnIndex));
+                accelDataBuilder.setVertical(cursor.getFloat(verticalAccelColumnIndex));
+            }
+            
+            LocationDataBuilder locationDataBuilder = null;
+            Long locationCaptureTimestamp = getLongOrNull(cursor, locationCaptureTimestampColumnIndex);
+            if (locationCaptureTimestamp != null) {
+                locationDataBuilder = new LocationDataBuilder();
+                locationDataBuilder.setDataRecivedTime(locationCaptureTimestamp);
+                if (locationTimeInDayColumnIndex != -1) {
+                    locationDataBuilder.setTime(cursor.getLong(locationTimeInDayColumnIndex));
+                }
+                locationDataBuilder.setLatitude(cursor.getDouble(latitudeColumnIndex));
+                locationDataBuilder.setLongitude(cursor.getDouble(longitudeColumnIndex));
+                locationDataBuilder.setAltitude(cursor.getDouble(altitudeColumnIndex));
+                locationDataBuilder.setSpeed(cursor.getFloat(speedColumnIndex));
+                locationDataBuilder.setBearing(cursor.getFloat(bearingColumnIndex));
+            }
+            
+            EcuDataBuilder ecuDataBuilder = null;
+            Long ecuCaptureTimestamp = getLongOrNull(cursor, ecuCaptureTimestampColumnIndex);
+            if (ecuCaptureTimestamp != null) {
+                ecuDataBuilder = new EcuDataBuilder();
+                ecuDataBuilder.setDataRecivedTime(ecuCaptureTimestamp);
+                ecuDataBuilder.setRpm(cursor.getInt(rpmColumnIndex));
+                ecuDataBuilder.setManifoldAbsolutePressure(cursor.getDouble(mapColumnIndex));
+                ecuDataBuilder.setManifoldGaugePressure(cursor.getDouble(mgpColumnIndex));
+                ecuDataBuilder.setThrottlePosition(cursor.getDouble(tpColumnIndex));
+                ecuDataBuilder.setAirFuelRatio(cursor.getDouble(afrColumnIndex));
+                ecuDataBuilder.setManifoldAirTemperature(cursor.getDouble(matColumnIndex));
+                ecuDataBuilder.setCoolantTemperature(cursor.getDouble(cltColumnIndex));
+                ecuDataBuilder.setIgnitionAdvance(cursor.getDouble(ignitionAdvanceColumnIndex));
+                ecuDataBuilder.setBatteryVoltage(cursor.getDouble(batteryVoltageColumnIndex));
+            }
+            
+            return new LogEntry(cursor.getLong(synchTimestampColumnIndex), sessionId,
+                    accelDataBuilder == null ? null : accelDataBuilder.build(),
+                    locationDataBuilder == null ? null : locationDataBuilder.build(),
+                    ecuDataBuilder == null ? null : ecuDataBuilder.build());
+        }
+        
+        @Override
+        public void close() {
+            records.close();
+        }
+    }
+    
+    private static final class TimingEntryReader implements EntryReader<TimingEntry> {
+        
+        private final int sessionId;
+        private final PagedRecordIterator records;
+        
+        private final int synchTimestampColumnIndex;
+        private final int captureTimestampColumnIndex;
+        private final int timeInDayColumnIndex;
+        private final int lapColumnIndex;
+        private final int lapTimeColumnIndex;
+        private final int splitIndexColumnIndex;
+        private final int splitTimeColumnIndex;
+        private final int bestLapTimeColumnIndex;
+        private final int theoreticalBestLapTimeColumnIndex;
+        private final int rollingBestLapTimeColumnIndex;
+        
+        TimingEntryReader(int sessionId, PagedRecordIterator records) {
+            this.sessionId = sessionId;
+            this.records = records;
+            
+            synchTimestampColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_SYNCH_TIMESTAMP);
+            captureTimestampColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_CAPTURE_TIMESTAMP);
+            timeInDayColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_TIME_IN_DAY);
+            lapColumnIndex = records.getColumnIndexOrThrow(TrackLoggerData.TimingEntry.COLUMN_NAME_LAP);
+            lapTimeColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_LAP_TIME);
+            splitIndexColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_INDEX);
+            splitTimeColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_SPLIT_TIME);
+            bestLapTimeColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_BEST_LAP_TIME);
+            theoreticalBestLapTimeColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_THEORETICAL_BEST_LAP_TIME);
+            rollingBestLapTimeColumnIndex = records.getColumnIndexOrThrow(
+                    TrackLoggerData.TimingEntry.COLUMN_NAME_ROLLING_BEST_LAP_TIME);
+        }
+        
+        /**
+         * {@inheritDoc}
+         * <p/>
+         * Best split times are not stored in the database and are read back as an empty list.
+         */
+        @Override
+        public TimingEntry next() throws IOException {
+            if (!records.moveToNext()) {
+                return null;
+            }
+            
+            Cursor cursor = records.getCursor();
+            
+            TimingDataBuilder builder = new TimingDataBuilder();
+            builder.setDataRecivedTime(cursor.getLong(captureTimestampColumnIndex));
+            builder.setTime(cursor.getLong(timeInDayColumnIndex));
+            builder.setLap(cursor.getInt(lapColumnIndex));
+            builder.setLapTime(getLongOrNull(cursor, lapTimeColumnIndex));
+            builder.setSplitIndex(cursor.getInt(splitIndexColumnIndex));
+            builder.setSplitTime(getLongOrNull(cursor, splitTimeColumnIndex));
+            builder.setBestLapTime(getLongOrNull(cursor, bestLapTimeColumnIndex));
+            builder.setTheoreticalBestLapTime(getLongOrNull(cursor, theoreticalBestLapTimeColumnIndex));
+            builder.setRollingBestLapTime(getLongOrNull(cursor, rollingBestLapTimeColumnIndex));
+            builder.setBestSplitTimes(Collections.<Long>emptyList());
+            
+            return new TimingEntry(cursor.getLong(synchTimestampColumnIndex), sessionId, builder.build());
+        }
+        
+        @Override
+        public void close() {
+            records.close();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider;
+
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.AccelData;
+import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.LapSummary;
+import net.tracknalysis.tracklogger.model.LocationData;
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingData;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+
+/**
+ * Maintains running statistics for the current lap and the current split as log entries are recorded.
+ * Each log entry is folded into the accumulators in constant time and the accumulators are flushed
+ * into {@link LapSummary}s when the timing entry that completes the split or lap arrives.  Log entries
+ * that arrive before the first timing entry are not part of any lap and are ignored.
+ * <p/>
+ * The corner speed of a lap or split is the lowest speed recorded while the magnitude of the lateral
+ * acceleration is at or above the corner threshold, that is, the apex speed of the slowest corner.
+ * Straights and braking zones, where the lateral acceleration is low, do not contribute.
+ * <p/>
+ * Instances are not thread safe.
+ *
+ * @author David Valeri
+ */
+public class LapStatisticsAggregator {
+
+    /**
+     * The default lateral acceleration, in m/s^2, at or above which the vehicle is considered to be
+     * cornering.  Roughly 0.3 g.
+     */
+    public static final float DEFAULT_CORNER_LATERAL_ACCEL = 3f;
+
+    private final Accumulator lapAccumulator;
+    private final Accumulator splitAccumulator;
+    private boolean started;
+    private int lapOffset;
+
+    public LapStatisticsAggregator() {
+        this(DEFAULT_CORNER_LATERAL_ACCEL);
+    }
+
+    /**
+     * @param cornerLateralAccel the lateral acceleration magnitude, in m/s^2, at or above which the
+     *            vehicle is considered to be cornering
+     */
+    public LapStatisticsAggregator(float cornerLateralAccel) {
+        if (cornerLateralAccel < 0 || Float.isNaN(cornerLateralAccel)) {
+            throw new IllegalArgumentException("cornerLateralAccel must be non-negative.");
+        }
+
+        lapAccumulator = new Accumulator(cornerLateralAccel);
+        splitAccumulator = new Accumulator(cornerLateralAccel);
+    }
+
+    /**
+     * Folds the log entry into the statistics for the current lap and split.
+     *
+     * @param logEntry the entry to aggregate
+     */
+    public void update(LogEntry logEntry) {
+        if (started) {
+            lapAccumulator.update(logEntry);
+            splitAccumulator.update(logEntry);
+        }
+    }
+
+    /**
+     * Completes the statistics for the split, and if applicable the lap, ended by the timing entry
+     * and adds them to {@code summaries}.  Statistics for the next split and lap begin accumulating
+     * immediately.
+     *
+     * @param timingEntry the timing entry marking the end of a split
+     * @param summaries the list to add completed summaries to, split summaries first
+     */
+    public void flush(TimingEntry timingEntry, List<LapSummary> summaries) {
+
+        TimingData timingData = timingEntry.getTimingData();
+        long synchTimestamp = timingEntry.getSynchTimestamp();
+
+        if (started) {
+            int lap = timingData.getLap() + lapOffset;
+
+            summaries.add(splitAccumulator.toSummary(timingEntry, lap, timingData.getSplitIndex(),
+                    timingData.getSplitTime()));
+
+            if (timingData.getLapTime() != null) {
+                summaries.add(lapAccumulator.toSummary(timingEntry, lap, null,
+                        timingData.getLapTime()));
+                lapAccumulator.reset(synchTimestamp);
+            }
+        } else {
+            started = true;
+            lapAccumulator.reset(synchTimestamp);
+        }
+
+        splitAccumulator.reset(synchTimestamp);
+    }
+
+    /**
+     * Discards all accumulated statistics.  The next timing entry will be treated as the start
+     * of the first lap.
+     */
+    public void reset() {
+        started = false;
+        lapOffset = 0;
+        lapAccumulator.reset(0);
+        splitAccumulator.reset(0);
+    }
+
+    /**
+     * Rebuilds the aggregator state for logging that resumes in an existing session.  Timing restarts
+     * from the first lap when logging resumes, so the accumulators are reset and the next timing entry is
+     * treated as the start of a lap.  Summaries produced after the resume are numbered after the lap of
+     * {@code lastSummary} so that they do not collide with the summaries already recorded for the session.
+     *
+     * @param lastSummary the most recently recorded summary for the session or {@code null} if the
+     *            session has no summaries
+     */
+    public void resume(LapSummary lastSummary) {
+        reset();
+
+        if (lastSummary != null) {
+            lapOffset = lastSummary.getLap();
+        }
+    }
+
+    private static final class Accumulator {
+
+        private final float cornerLateralAccel;
+
+        private long startSynchTimestamp;
+        private int count;
+
+        private int locationCount;
+        private float maxSpeed;
+        private float minSpeed;
+
+        private int cornerCount;
+        private float minCornerSpeed;
+
+        private int accelCount;
+        private float maxLateralAccel;
+        private float maxLongitudinalAccel;
+
+        private int ecuCount;
+        private int maxRpm;
+        private double throttlePositionSum;
+        private double minAirFuelRatio;
+        private double maxAirFuelRatio;
+
+        Accumulator(float cornerLateralAccel) {
+            this.cornerLateralAccel = cornerLateralAccel;
+        }
+
+        void reset(long startSynchTimestamp) {
+            this.startSynchTimestamp = startSynchTimestamp;
+            count = 0;
+            locationCount = 0;
+            cornerCount = 0;
+            accelCount = 0;
+            ecuCount = 0;
+            throttlePositionSum = 0;
+        }
+
+        void update(LogEntry logEntry) {
+            count++;
+
+            LocationData locationData = logEntry.getLocationData();
+            AccelData accelData = logEntry.getAccelData();
+
+            if (locationData != null) {
+                float speed = locationData.getSpeed();
+                if (locationCount++ == 0) {
+                    maxSpeed = minSpeed = speed;
+                } else {
+                    maxSpeed = Math.max(maxSpeed, speed);
+                    minSpeed = Math.min(minSpeed, speed);
+                }
+
+                if (accelData != null && Math.abs(accelData.getLateral()) >= cornerLateralAccel) {
+                    if (cornerCount++ == 0) {
+                        minCornerSpeed = speed;
+                    } else {
+                        minCornerSpeed = Math.min(minCornerSpeed, speed);
+                    }
+                }
+            }
+
+            if (accelData != null) {
+                float lateral = Math.abs(accelData.getLateral());
+                float longitudinal = Math.abs(accelData.getLongitudinal());
+                if (accelCount++ == 0) {
+                    maxLateralAccel = lateral;
+                    maxLongitudinalAccel = longitudinal;
+                } else {
+                    maxLateralAccel = Math.max(maxLateralAccel, lateral);
+                    maxLongitudinalAccel = Math.max(maxLongitudinalAccel, longitudinal);
+                }
+            }
+
+            EcuData ecuData = logEntry.getEcuData();
+            if (ecuData != null) {
+                double afr = ecuData.getAirFuelRatio();
+                if (ecuCount++ == 0) {
+                    maxRpm = ecuData.getRpm();
+                    minAirFuelRatio = maxAirFuelRatio = afr;
+                } else {
+                    maxRpm = Math.max(maxRpm, ecuData.getRpm());
+                    minAirFuelRatio = Math.min(minAirFuelRatio, afr);
+                    maxAirFuelRatio = Math.max(maxAirFuelRatio, afr);
+                }
+                throttlePositionSum += ecuData.getThrottlePosition();
+            }
+        }
+
+        LapSummary toSummary(TimingEntry timingEntry, int lap, Integer splitIndex, Long elapsedTime) {
+            LapSummary summary = new LapSummary();
+            summary.setSessionId(timingEntry.getSessionId());
+            summary.setLap(lap);
+            summary.setSplitIndex(splitIndex);
+            summary.setStartSynchTimestamp(startSynchTimestamp);
+            summary.setEndSynchTimestamp(timingEntry.getSynchTimestamp());
+            summary.setElapsedTime(elapsedTime);
+            summary.setLogEntryCount(count);
+
+            if (locationCount > 0) {
+                summary.setMaxSpeed(maxSpeed);
+                summary.setMinSpeed(minSpeed);
+            }
+
+            if (cornerCount > 0) {
+                summary.setMinCornerSpeed(minCornerSpeed);
+            }
+
+            if (accelCount > 0) {
+                summary.setMaxLateralAccel(maxLateralAccel);
+                summary.setMaxLongitudinalAccel(maxLongitudinalAccel);
+            }
+
+            if (ecuCount > 0) {
+                summary.setMaxRpm(maxRpm);
+                summary.setAverageThrottlePosition(throttlePositionSum / ecuCount);
+                summary.setMinAirFuelRatio(minAirFuelRatio);
+                summary.setMaxAirFuelRatio(maxAirFuelRatio);
+            }
+
+            return summary;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import net.tracknalysis.common.concurrent.GracefulShutdownThread;
 import net.tracknalysis.tracklogger.dataprovider.AbstractDataProviderCoordinator;
 import net.tracknalysis.tracklogger.model.AccelData;
 import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.LapSummary;
 import net.tracknalysis.tracklogger.model.LocationData;
 import net.tracknalysis.tracklogger.model.LogEntry;
 import net.tracknalysis.tracklogger.model.TimingData;
@@ -167,6 +168,12 @@ public abstract class TrackLoggerDataProviderCoordinator extends
                     currentSessionId = sessionId;
                     
                     openSession(sessionId);
+                    
+                    // Queued ahead of any data from this run so that the logging thread rebuilds
+                    // its lap statistics before it aggregates the first entry.
+                    if (!dataQueue.offer(new SessionResumed(getLastLapSummary(sessionId)))) {
+                        LOG.error("No space on the data queue.  Lap statistics will not resume.");
+                    }
                 }
                 
                 ready = true;
@@ -283,12 +290,56 @@ public abstract class TrackLoggerDataProviderCoordinator extends
      */
     protected abstract void openSession(int sessionId);
     
+    /**
+     * Returns the most recently stored lap or split summary for a session that is being "opened" for
+     * the addition of more data, used to resume the lap statistics where the session left off.  Called
+     * after {@link #openSession(int)}.  By default, summaries are not retrievable and this method
+     * returns {@code null}.
+     *
+     * @param sessionId the ID of the session being opened
+     */
+    protected LapSummary getLastLapSummary(int sessionId) {
+        return null;
+    }
+    
     /**
      * Store a log entry in the data store.
      *
      * @param logEntry the data to store
      */
     protected abstract void storeLogEntry(LogEntry logEntry);
+    
+    /**
+     * Store a batch of consecutive log entries in the data store.  Batches never span a timing
+     * entry, so entries reach the data store in the order in which they were logged.  By default,
+     * each entry is stored individually using {@link #storeLogEntry(LogEntry)}.  Sub-classes should
+     * override this method if the data store supports a more efficient bulk write.
+     *
+     * @param logEntries the data to store
+     */
+    protected void storeLogEntries(List<LogEntry> logEntries) {
+        for (int i = 0; i < logEntries.size(); i++) {
+            storeLogEntry(logEntries.get(i));
+        }
+    }
+
+    /**
+     * Writes any log entries buffered by {@link #storeLogEntries(List)} to the data store.  Called on the
+     * logging thread after the last batch has been stored when logging stops.  Sub-classes that buffer
+     * entries must also write them before storing a timing entry.  By default, entries are not buffered
+     * and this method does nothing.
+     */
+    protected void flushLogEntries() {
+    }
+    
+    /**
+     * "Closes" the session in the data store once all of its data has been stored.  Called on the logging
+     * thread after {@link #flushLogEntries()} when logging stops.  By default, this method does nothing.
+     *
+     * @param sessionId the ID of the session logged to
+     */
+    protected void closeSession(int sessionId) {
+    }
 
     /**
      * Store timing data in the data store.
@@ -297,6 +348,15 @@ public abstract class TrackLoggerDataProviderCoordinator extends
      */
     protected abstract void storeTimingEntry(TimingEntry timingEntry);
     
+    /**
+     * Store a lap or split summary in the data store.  Called after the timing entry that
+     * completes the lap or split has been stored.  By default, summaries are discarded.
+     *
+     * @param lapSummary the data to store
+     */
+    protected void storeLapSummary(LapSummary lapSummary) {
+    }
+    
     /**
      * Hook to allow sub-classes to do extra initialization before the main startup.
      */
@@ -319,6 +379,7 @@ public abstract class TrackLoggerDataProviderCoordinator extends
         
         private int logEntriesWritten = 0;
         private int timingEntriesWritten = 0;
+        private final LapStatisticsAggregator lapStatisticsAggregator = new LapStatisticsAggregator();
         
         public LogThread() {
             setName("TrackLoggerDataProviderCoordinator-LogThread-" + logThreadCounter.getAndIncrement());
@@ -330,6 +391,8 @@ public abstract class TrackLoggerDataProviderCoordinator extends
             try {
 
                 List<Object> logObjects = new ArrayList<Object>(20);
+                List<LapSummary> lapSummaries = new ArrayList<LapSummary>(2);
+                List<LogEntry> logEntryBatch = new ArrayList<LogEntry>(20);
                 long startTime;
                 int numRead;
     
@@ -346,18 +409,28 @@ public abstract class TrackLoggerDataProviderCoordinator extends
                         if (o instanceof LogEntry) {
                             LogEntry logEntry = (LogEntry) o;
                             
-                            storeLogEntry(logEntry);
-                            logEntriesWritten++;
+                            logEntryBatch.add(logEntry);
+                            lapStatisticsAggregator.update(logEntry);
                         } else if (o instanceof TimingEntry) {
                             TimingEntry timingEntry = (TimingEntry) o;
                             
+                            logEntriesWritten += storeLogEntryBatch(logEntryBatch);
                             storeTimingEntry(timingEntry);
                             timingEntriesWritten++;
+                            
+                            lapStatisticsAggregator.flush(timingEntry, lapSummaries);
+                            for (int j = 0; j < lapSummaries.size(); j++) {
+                                storeLapSummary(lapSummaries.get(j));
+                            }
+                            lapSummaries.clear();
+                        } else if (o instanceof SessionResumed) {
+                            lapStatisticsAggregator.resume(((SessionResumed) o).lastLapSummary);
                         } else {
                             LOG.warn("Error while logging data.  Unknown data type {}.", o.getClass());
                         }
                     }
                     
+                    logEntriesWritten += storeLogEntryBatch(logEntryBatch);
                     logObjects.clear();
     
                     if (numRead != 0 && LOG.isDebugEnabled()) {
@@ -370,6 +443,9 @@ public abstract class TrackLoggerDataProviderCoordinator extends
                     }
                 }
                 
+                flushLogEntries();
+                closeSession(currentSessionId);
+                
                 LOG.info("Wrote {} timing entries and {} log entries in total.",
                         timingEntriesWritten, logEntriesWritten);
                 
@@ -385,5 +461,31 @@ public abstract class TrackLoggerDataProviderCoordinator extends
                 }
             }
         }
+        
+        /**
+         * Stores and clears the batch, returning the number of entries stored.
+         */
+        private int storeLogEntryBatch(List<LogEntry> logEntryBatch) {
+            int size = logEntryBatch.size();
+            
+            if (size != 0) {
+                storeLogEntries(logEntryBatch);
+                logEntryBatch.clear();
+            }
+            
+            return size;
+        }
+    }
+    
+    /**
+     * Marker queued for the logging thread when logging resumes in an existing session.
+     */
+    private static final class SessionResumed {
+        
+        private final LapSummary lastLapSummary;
+        
+        SessionResumed(LapSummary lastLapSummary) {
+            this.lastLapSummary = lastLapSummary;
+        }
     }
 }
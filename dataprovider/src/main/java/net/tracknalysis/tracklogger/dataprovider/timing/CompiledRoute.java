@@ -0,0 +1,471 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider.timing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tracknalysis.location.Route;
+import net.tracknalysis.location.Waypoint;
+
+/**
+ * Pre-computed geometry for a {@link Route}.  Holds the waypoint coordinates projected onto a local
+ * planar frame (meters east/north of the first waypoint), the orientation of the gate at each waypoint
+ * and a uniform grid spatial index over the projected waypoints.  Instances are immutable and may be
+ * persisted using {@link #writeTo(DataOutput)} and restored using {@link #readFrom(DataInput)} so that
+ * the compilation work need only be performed once per route.
+ *
+ * @author David Valeri
+ */
+public final class CompiledRoute {
+
+    /**
+     * Mean radius of the Earth in meters.
+     */
+    public static final double EARTH_RADIUS = 6371008.8d;
+
+    /**
+     * The default edge length, in meters, of a cell in the spatial index.
+     */
+    public static final double DEFAULT_CELL_SIZE = 100d;
+
+    private static final int MAGIC = 0x54524352; // "TRCR"
+    private static final int FORMAT_VERSION = 1;
+
+    private final String name;
+    private final String[] waypointNames;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] x;
+    private final double[] y;
+    private final double[] gateHeadings;
+    private final double originLatitude;
+    private final double originLongitude;
+    private final double metersPerDegreeLatitude;
+    private final double metersPerDegreeLongitude;
+
+    private final double cellSize;
+    private final double gridMinX;
+    private final double gridMinY;
+    private final int gridColumns;
+    private final int gridRows;
+    private final int[] cellOffsets;
+    private final int[] cellWaypoints;
+
+    private CompiledRoute(String name, String[] waypointNames, double[] latitudes,
+            double[] longitudes, double cellSize) {
+
+        this.name = name;
+        this.waypointNames = waypointNames;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.cellSize = cellSize;
+
+        int count = latitudes.length;
+
+        originLatitude = latitudes[0];
+        originLongitude = longitudes[0];
+        metersPerDegreeLatitude = Math.toRadians(EARTH_RADIUS);
+        metersPerDegreeLongitude = metersPerDegreeLatitude
+                * Math.cos(Math.toRadians(originLatitude));
+
+        x = new double[count];
+        y = new double[count];
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            x[i] = projectX(longitudes[i]);
+            y[i] = projectY(latitudes[i]);
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        gateHeadings = new double[count];
+        for (int i = 0; i < count; i++) {
+            gateHeadings[i] = computeGateHeading(i);
+        }
+
+        gridMinX = minX;
+        gridMinY = minY;
+        gridColumns = (int) ((maxX - minX) / cellSize) + 1;
+        gridRows = (int) ((maxY - minY) / cellSize) + 1;
+
+        // Build the grid as a compressed cell -> waypoint list.
+        int cellCount = gridColumns * gridRows;
+        int[] waypointCells = new int[count];
+        cellOffsets = new int[cellCount + 1];
+
+        for (int i = 0; i < count; i++) {
+            waypointCells[i] = getCell(x[i], y[i]);
+            cellOffsets[waypointCells[i] + 1]++;
+        }
+
+        for (int i = 0; i < cellCount; i++) {
+            cellOffsets[i + 1] += cellOffsets[i];
+        }
+
+        cellWaypoints = new int[count];
+        int[] fill = new int[cellCount];
+        for (int i = 0; i < count; i++) {
+            int cell = waypointCells[i];
+            cellWaypoints[cellOffsets[cell] + fill[cell]++] = i;
+        }
+    }
+
+    private CompiledRoute(String name, String[] waypointNames, double[] latitudes,
+            double[] longitudes, double[] x, double[] y, double[] gateHeadings,
+            double metersPerDegreeLongitude, double cellSize, double gridMinX, double gridMinY,
+            int gridColumns, int gridRows, int[] cellOffsets, int[] cellWaypoints) {
+        this.name = name;
+        this.waypointNames = waypointNames;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.x = x;
+        this.y = y;
+        this.gateHeadings = gateHeadings;
+        this.originLatitude = latitudes[0];
+        this.originLongitude = longitudes[0];
+        this.metersPerDegreeLatitude = Math.toRadians(EARTH_RADIUS);
+        this.metersPerDegreeLongitude = metersPerDegreeLongitude;
+        this.cellSize = cellSize;
+        this.gridMinX = gridMinX;
+        this.gridMinY = gridMinY;
+        this.gridColumns = gridColumns;
+        this.gridRows = gridRows;
+        this.cellOffsets = cellOffsets;
+        this.cellWaypoints = cellWaypoints;
+    }
+
+    /**
+     * Compiles the route using the {@link #DEFAULT_CELL_SIZE default cell size}.
+     *
+     * @param route the route to compile
+     *
+     * @throws IllegalArgumentException if the route contains no waypoints
+     */
+    public static CompiledRoute compile(Route route) {
+        return compile(route, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Compiles the route.
+     *
+     * @param route the route to compile
+     * @param cellSize the edge length, in meters, of a cell in the spatial index
+     *
+     * @throws IllegalArgumentException if the route contains no waypoints or the cell size is not positive
+     */
+    public static CompiledRoute compile(Route route, double cellSize) {
+
+        List<Waypoint> waypoints = route.getWaypoints();
+
+        if (waypoints == null || waypoints.isEmpty()) {
+            throw new IllegalArgumentException("Route [" + route.getName() + "] contains no waypoints.");
+        }
+
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+
+        int count = waypoints.size();
+        String[] waypointNames = new String[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+
+        int i = 0;
+        for (Waypoint waypoint : waypoints) {
+            waypointNames[i] = waypoint.getName();
+            latitudes[i] = waypoint.getLatitude();
+            longitudes[i] = waypoint.getLongitude();
+            i++;
+        }
+
+        return new CompiledRoute(route.getName(), waypointNames, latitudes, longitudes, cellSize);
+    }
+
+    /**
+     * Restores a compiled route previously written with {@link #writeTo(DataOutput)}.  The projected
+     * coordinates, gate headings and spatial index are read as-is rather than recomputed.
+     *
+     * @param in the input to read from
+     *
+     * @throws IOException if there is an error reading from the input or the data is not a compiled route
+     */
+    public static CompiledRoute readFrom(DataInput in) throws IOException {
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Data is not a compiled route.");
+        }
+
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported compiled route format version [" + version + "].");
+        }
+
+        String name = in.readUTF();
+        int count = in.readInt();
+
+        if (count <= 0) {
+            throw new IOException("Invalid waypoint count [" + count + "].");
+        }
+
+        String[] waypointNames = new String[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        double[] x = new double[count];
+        double[] y = new double[count];
+        double[] gateHeadings = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            waypointNames[i] = in.readUTF();
+            latitudes[i] = in.readDouble();
+            longitudes[i] = in.readDouble();
+            x[i] = in.readDouble();
+            y[i] = in.readDouble();
+            gateHeadings[i] = in.readDouble();
+        }
+
+        double metersPerDegreeLongitude = in.readDouble();
+        double cellSize = in.readDouble();
+        double gridMinX = in.readDouble();
+        double gridMinY = in.readDouble();
+        int gridColumns = in.readInt();
+        int gridRows = in.readInt();
+
+        if (gridColumns <= 0 || gridRows <= 0) {
+            throw new IOException("Invalid spatial index dimensions [" + gridColumns + "x" + gridRows + "].");
+        }
+
+        int[] cellOffsets = new int[gridColumns * gridRows + 1];
+        for (int i = 0; i < cellOffsets.length; i++) {
+            cellOffsets[i] = in.readInt();
+        }
+
+        int[] cellWaypoints = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellWaypoints[i] = in.readInt();
+        }
+
+        return new CompiledRoute(name, waypointNames, latitudes, longitudes, x, y, gateHeadings,
+                metersPerDegreeLongitude, cellSize, gridMinX, gridMinY, gridColumns, gridRows,
+                cellOffsets, cellWaypoints);
+    }
+
+    /**
+     * Writes this compiled route, including its derived geometry and spatial index, to the output in a
+     * compact binary form.
+     *
+     * @param out the output to write to
+     *
+     * @throws IOException if there is an error writing to the output
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(name);
+        out.writeInt(latitudes.length);
+
+        for (int i = 0; i < latitudes.length; i++) {
+            out.writeUTF(waypointNames[i]);
+            out.writeDouble(latitudes[i]);
+            out.writeDouble(longitudes[i]);
+            out.writeDouble(x[i]);
+            out.writeDouble(y[i]);
+            out.writeDouble(gateHeadings[i]);
+        }
+
+        out.writeDouble(metersPerDegreeLongitude);
+        out.writeDouble(cellSize);
+        out.writeDouble(gridMinX);
+        out.writeDouble(gridMinY);
+        out.writeInt(gridColumns);
+        out.writeInt(gridRows);
+
+        for (int i = 0; i < cellOffsets.length; i++) {
+            out.writeInt(cellOffsets[i]);
+        }
+
+        for (int i = 0; i < cellWaypoints.length; i++) {
+            out.writeInt(cellWaypoints[i]);
+        }
+    }
+
+    /**
+     * Returns a new {@link Route} containing the waypoints of this compiled route.
+     */
+    public Route toRoute() {
+        List<Waypoint> waypoints = new ArrayList<Waypoint>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++) {
+            waypoints.add(new Waypoint(waypointNames[i], latitudes[i], longitudes[i]));
+        }
+
+        return new Route(name, waypoints);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWaypointCount() {
+        return latitudes.length;
+    }
+
+    public double getLatitude(int waypointIndex) {
+        return latitudes[waypointIndex];
+    }
+
+    public double getLongitude(int waypointIndex) {
+        return longitudes[waypointIndex];
+    }
+
+    /**
+     * Returns the projected easting, in meters, of the waypoint relative to the first waypoint.
+     */
+    public double getX(int waypointIndex) {
+        return x[waypointIndex];
+    }
+
+    /**
+     * Returns the projected northing, in meters, of the waypoint relative to the first waypoint.
+     */
+    public double getY(int waypointIndex) {
+        return y[waypointIndex];
+    }
+
+    /**
+     * Returns the direction of travel through the gate at the waypoint, in radians clockwise from north.
+     * The gate line itself is perpendicular to this heading.
+     */
+    public double getGateHeading(int waypointIndex) {
+        return gateHeadings[waypointIndex];
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Projects a longitude onto the local planar frame of this route.
+     *
+     * @return the easting in meters relative to the first waypoint
+     */
+    public double projectX(double longitude) {
+        return (longitude - originLongitude) * metersPerDegreeLongitude;
+    }
+
+    /**
+     * Projects a latitude onto the local planar frame of this route.
+     *
+     * @return the northing in meters relative to the first waypoint
+     */
+    public double projectY(double latitude) {
+        return (latitude - originLatitude) * metersPerDegreeLatitude;
+    }
+
+    /**
+     * Returns the index of the waypoint closest to the given position that is within {@code radius}
+     * meters of the position.  Only the cells of the spatial index that overlap the search radius are
+     * examined.
+     *
+     * @param latitude the latitude of the position
+     * @param longitude the longitude of the position
+     * @param radius the search radius in meters
+     *
+     * @return the index of the closest waypoint or -1 if no waypoint is within the radius
+     */
+    public int findNearestWaypoint(double latitude, double longitude, double radius) {
+
+        double px = projectX(longitude);
+        double py = projectY(latitude);
+
+        int minColumn = Math.max(0, (int) Math.floor((px - radius - gridMinX) / cellSize));
+        int maxColumn = Math.min(gridColumns - 1, (int) Math.floor((px + radius - gridMinX) / cellSize));
+        int minRow = Math.max(0, (int) Math.floor((py - radius - gridMinY) / cellSize));
+        int maxRow = Math.min(gridRows - 1, (int) Math.floor((py + radius - gridMinY) / cellSize));
+
+        int nearest = -1;
+        double nearestDistanceSq = radius * radius;
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int cell = row * gridColumns + column;
+                for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+                    int waypointIndex = cellWaypoints[i];
+                    double dx = x[waypointIndex] - px;
+                    double dy = y[waypointIndex] - py;
+                    double distanceSq = dx * dx + dy * dy;
+
+                    if (distanceSq <= nearestDistanceSq) {
+                        nearest = waypointIndex;
+                        nearestDistanceSq = distanceSq;
+                    }
+                }
+            }
+        }
+
+        return nearest;
+    }
+
+    private int getCell(double px, double py) {
+        int column = (int) ((px - gridMinX) / cellSize);
+        int row = (int) ((py - gridMinY) / cellSize);
+        return row * gridColumns + column;
+    }
+
+    /**
+     * Returns the heading of travel through the waypoint, taken as the bisector of the headings from the
+     * previous waypoint and to the next waypoint.  The route is treated as a closed circuit.
+     */
+    private double computeGateHeading(int waypointIndex) {
+        int count = x.length;
+
+        if (count == 1) {
+            return 0d;
+        }
+
+        int previous = (waypointIndex + count - 1) % count;
+        int next = (waypointIndex + 1) % count;
+
+        double inX = x[waypointIndex] - x[previous];
+        double inY = y[waypointIndex] - y[previous];
+        double outX = x[next] - x[waypointIndex];
+        double outY = y[next] - y[waypointIndex];
+
+        double inLength = Math.hypot(inX, inY);
+        double outLength = Math.hypot(outX, outY);
+
+        double headingX = (inLength == 0 ? 0 : inX / inLength) + (outLength == 0 ? 0 : outX / outLength);
+        double headingY = (inLength == 0 ? 0 : inY / inLength) + (outLength == 0 ? 0 : outY / outLength);
+
+        if (headingX == 0 && headingY == 0) {
+            headingX = outX;
+            headingY = outY;
+        }
+
+        double heading = Math.atan2(headingX, headingY);
+
+        return heading < 0 ? heading + 2 * Math.PI : heading;
+    }
+}
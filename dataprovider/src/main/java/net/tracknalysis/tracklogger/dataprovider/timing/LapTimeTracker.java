@@ -0,0 +1,202 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider.timing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incrementally tracks the best lap time, the best time for each split, the theoretical best lap
+ * time (the sum of the best split times) and the best lap time within a rolling window of the most
+ * recently completed laps.  All updates are constant time; the rolling best is maintained using a
+ * monotonic queue stored in primitive arrays.
+ * <p/>
+ * Instances are not thread safe.
+ *
+ * @author David Valeri
+ */
+public class LapTimeTracker {
+
+    /**
+     * The default number of laps in the rolling window.
+     */
+    public static final int DEFAULT_ROLLING_WINDOW_SIZE = 5;
+
+    private static final long NONE = -1;
+
+    private final long[] bestSplitTimes;
+    private int bestSplitTimesKnown;
+    private long bestSplitTimesSum;
+    private long bestLapTime = NONE;
+
+    private final int rollingWindowSize;
+    private final long[] windowLapTimes;
+    private final int[] windowLapNumbers;
+    private int windowHead;
+    private int windowSize;
+    private int lapsCompleted;
+
+    /**
+     * Creates a new tracker with the {@link #DEFAULT_ROLLING_WINDOW_SIZE default rolling window size}.
+     *
+     * @param splitCount the number of splits in a lap
+     */
+    public LapTimeTracker(int splitCount) {
+        this(splitCount, DEFAULT_ROLLING_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param splitCount the number of splits in a lap
+     * @param rollingWindowSize the number of most recently completed laps considered for the rolling best
+     *
+     * @throws IllegalArgumentException if either argument is not positive
+     */
+    public LapTimeTracker(int splitCount, int rollingWindowSize) {
+        if (splitCount <= 0) {
+            throw new IllegalArgumentException("Split count must be positive.");
+        }
+
+        if (rollingWindowSize <= 0) {
+            throw new IllegalArgumentException("Rolling window size must be positive.");
+        }
+
+        this.bestSplitTimes = new long[splitCount];
+        this.rollingWindowSize = rollingWindowSize;
+        this.windowLapTimes = new long[rollingWindowSize];
+        this.windowLapNumbers = new int[rollingWindowSize];
+
+        for (int i = 0; i < splitCount; i++) {
+            bestSplitTimes[i] = NONE;
+        }
+    }
+
+    /**
+     * Records the completion of a split.
+     *
+     * @param splitIndex the zero based index of the completed split
+     * @param splitTime the duration of the split in milliseconds
+     */
+    public void splitCompleted(int splitIndex, long splitTime) {
+        long currentBest = bestSplitTimes[splitIndex];
+
+        if (currentBest == NONE) {
+            bestSplitTimes[splitIndex] = splitTime;
+            bestSplitTimesKnown++;
+            bestSplitTimesSum += splitTime;
+        } else if (splitTime < currentBest) {
+            bestSplitTimes[splitIndex] = splitTime;
+            bestSplitTimesSum -= currentBest - splitTime;
+        }
+    }
+
+    /**
+     * Records the completion of a lap.
+     *
+     * @param lapTime the duration of the lap in milliseconds
+     */
+    public void lapCompleted(long lapTime) {
+        if (bestLapTime == NONE || lapTime < bestLapTime) {
+            bestLapTime = lapTime;
+        }
+
+        int lapNumber = lapsCompleted++;
+
+        // Drop laps that have fallen out of the window from the head.
+        while (windowSize > 0 && windowLapNumbers[windowHead] <= lapNumber - rollingWindowSize) {
+            windowHead = (windowHead + 1) % rollingWindowSize;
+            windowSize--;
+        }
+
+        // Drop laps that are no faster than the new lap from the tail as they can never again
+        // be the minimum within the window.
+        while (windowSize > 0 && windowLapTimes[index(windowSize - 1)] >= lapTime) {
+            windowSize--;
+        }
+
+        windowLapTimes[index(windowSize)] = lapTime;
+        windowLapNumbers[index(windowSize)] = lapNumber;
+        windowSize++;
+    }
+
+    public int getSplitCount() {
+        return bestSplitTimes.length;
+    }
+
+    public int getRollingWindowSize() {
+        return rollingWindowSize;
+    }
+
+    /**
+     * Returns the fastest lap time or {@code null} if no laps have been completed.
+     */
+    public Long getBestLapTime() {
+        return toLong(bestLapTime);
+    }
+
+    /**
+     * Returns the fastest time for the split or {@code null} if the split has not been completed.
+     */
+    public Long getBestSplitTime(int splitIndex) {
+        return toLong(bestSplitTimes[splitIndex]);
+    }
+
+    /**
+     * Returns a new list containing the fastest time for each split.  Elements are {@code null} for
+     * splits that have not been completed.
+     */
+    public List<Long> getBestSplitTimes() {
+        List<Long> times = new ArrayList<Long>(bestSplitTimes.length);
+        for (int i = 0; i < bestSplitTimes.length; i++) {
+            times.add(toLong(bestSplitTimes[i]));
+        }
+
+        return times;
+    }
+
+    /**
+     * Returns the sum of the fastest time for each split or {@code null} if any split has not yet
+     * been completed.
+     */
+    public Long getTheoreticalBestLapTime() {
+        if (bestSplitTimesKnown == bestSplitTimes.length) {
+            return bestSplitTimesSum;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the fastest lap time among the most recently completed laps, up to the size of the rolling
+     * window, or {@code null} if no laps have been completed.
+     */
+    public Long getRollingBestLapTime() {
+        if (windowSize == 0) {
+            return null;
+        } else {
+            return windowLapTimes[windowHead];
+        }
+    }
+
+    private int index(int offset) {
+        return (windowHead + offset) % rollingWindowSize;
+    }
+
+    private Long toLong(long value) {
+        return value == NONE ? null : Long.valueOf(value);
+    }
+}
@@ -15,8 +15,6 @@
  */
 package net.tracknalysis.tracklogger.dataprovider.timing;
 
-import java.util.Arrays;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,23 +41,34 @@ public class RouteManagerTimingDataProvider extends AbstractDataProvider<TimingD
     private volatile int lap = 0;
     private volatile long lastLapStartTime;
     private volatile long lastSplitStartTime;
-    private volatile Long bestLapTime;
-    private volatile Long[] bestSplitTimes;
+    private final int rollingWindowSize;
+    private volatile LapTimeTracker lapTimeTracker;
     
     private long initialLapStartDataReceivedTime;
     private long lastLapStartDataReceivedTime;
     private long lastSplitStartDataReceivedTime;
     
     public RouteManagerTimingDataProvider(RouteManager routeManager, Route segmentsRoute) {
+        this(routeManager, segmentsRoute, LapTimeTracker.DEFAULT_ROLLING_WINDOW_SIZE);
+    }
+    
+    /**
+     * @param routeManager the route manager to register the route with
+     * @param segmentsRoute the route containing the split markers
+     * @param rollingWindowSize the number of most recent laps considered for the rolling best lap time
+     */
+    public RouteManagerTimingDataProvider(RouteManager routeManager, Route segmentsRoute,
+            int rollingWindowSize) {
         super();
         this.routeManager = routeManager;
         this.route = segmentsRoute;
+        this.rollingWindowSize = rollingWindowSize;
     }
 
     @Override
     public void start() {
         routeManager.addRouteForSynchronousListeners(route, 15f, this);
-        bestSplitTimes = new Long[route.getWaypoints().size()];
+        lapTimeTracker = new LapTimeTracker(route.getWaypoints().size(), rollingWindowSize);
     }
 
     @Override
@@ -89,7 +98,7 @@ public class RouteManagerTimingDataProvider extends AbstractDataProvider<TimingD
             if (lap == 0 && waypointIndex == 0) {
                 // Beginning of first lap
                 builder.setLap(lap++);
-                builder.setSplitIndex(bestSplitTimes.length - 1);
+                builder.setSplitIndex(lapTimeTracker.getSplitCount() - 1);
                 lastLapStartTime = lastSplitStartTime = locationTime;
                 // All three are the same for the first timing event
                 initialLapStartDataReceivedTime = systemTime;
@@ -101,14 +110,12 @@ public class RouteManagerTimingDataProvider extends AbstractDataProvider<TimingD
                 
                 if (waypointIndex == 0) {
                     // End of a lap
-                    splitIndex = bestSplitTimes.length - 1;
+                    splitIndex = lapTimeTracker.getSplitCount() - 1;
                     
-                    if (bestLapTime == null || deltaLap < bestLapTime) {
-                        bestLapTime = deltaLap;
-                    }
+                    lapTimeTracker.lapCompleted(deltaLap);
                     
                     builder.setLapTime(deltaLap);
-                    builder.setBestLapTime(bestLapTime);
+                    builder.setBestLapTime(lapTimeTracker.getBestLapTime());
                     builder.setLap(lap++);
                     lastLapStartTime = locationTime;
                     lastLapStartDataReceivedTime = systemTime;
@@ -118,9 +125,7 @@ public class RouteManagerTimingDataProvider extends AbstractDataProvider<TimingD
                     builder.setLap(lap);
                 }
                 
-                if (bestSplitTimes[splitIndex] == null || deltaSplit < bestSplitTimes[splitIndex]) {
-                    bestSplitTimes[splitIndex] = deltaSplit;
-                }
+                lapTimeTracker.splitCompleted(splitIndex, deltaSplit);
                 
                 builder.setSplitIndex(splitIndex);
                 
@@ -130,7 +135,9 @@ public class RouteManagerTimingDataProvider extends AbstractDataProvider<TimingD
                 lastSplitStartDataReceivedTime = systemTime;
             }
             
-            builder.setBestSplitTimes(Arrays.asList(bestSplitTimes));
+            builder.setBestSplitTimes(lapTimeTracker.getBestSplitTimes());
+            builder.setTheoreticalBestLapTime(lapTimeTracker.getTheoreticalBestLapTime());
+            builder.setRollingBestLapTime(lapTimeTracker.getRollingBestLapTime());
             builder.setInitialLapStartDataReceivedTime(initialLapStartDataReceivedTime);
             builder.setLastLapStartDataReceivedTime(lastLapStartDataReceivedTime);
             builder.setLastSplitStartDataReceivedTime(lastSplitStartDataReceivedTime);
@@ -0,0 +1,253 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.LapSummary;
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.AccelData.AccelDataBuilder;
+import net.tracknalysis.tracklogger.model.EcuData.EcuDataBuilder;
+import net.tracknalysis.tracklogger.model.LocationData.LocationDataBuilder;
+import net.tracknalysis.tracklogger.model.TimingData.TimingDataBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LapStatisticsAggregatorTest {
+
+    private LapStatisticsAggregator aggregator;
+    private List<LapSummary> summaries;
+
+    @Before
+    public void setup() {
+        aggregator = new LapStatisticsAggregator();
+        summaries = new ArrayList<LapSummary>();
+    }
+
+    @Test
+    public void testLapAndSplitSummaries() {
+
+        // Before the first timing event, ignored
+        aggregator.update(createLogEntry(1, 100f, 2f, 2f, 9000, 100d, 20d));
+
+        aggregator.flush(createTimingEntry(2, 0, 1, null, null), summaries);
+        assertTrue(summaries.isEmpty());
+
+        aggregator.update(createLogEntry(3, 30f, -1.5f, 0.5f, 5000, 50d, 12d));
+        aggregator.update(createLogEntry(4, 40f, 0.5f, -0.8f, 6000, 100d, 13d));
+
+        aggregator.flush(createTimingEntry(5, 1, 0, null, 3l), summaries);
+        assertEquals(1, summaries.size());
+
+        LapSummary split = summaries.get(0);
+        assertEquals(1, split.getLap());
+        assertEquals(Integer.valueOf(0), split.getSplitIndex());
+        assertEquals(2, split.getStartSynchTimestamp());
+        assertEquals(5, split.getEndSynchTimestamp());
+        assertEquals(Long.valueOf(3), split.getElapsedTime());
+        assertEquals(2, split.getLogEntryCount());
+        assertEquals(Float.valueOf(40f), split.getMaxSpeed());
+        assertEquals(Float.valueOf(30f), split.getMinSpeed());
+        assertEquals(Float.valueOf(1.5f), split.getMaxLateralAccel());
+        assertEquals(Float.valueOf(0.8f), split.getMaxLongitudinalAccel());
+        assertEquals(Integer.valueOf(6000), split.getMaxRpm());
+        assertEquals(Double.valueOf(75d), split.getAverageThrottlePosition());
+        assertEquals(Double.valueOf(12d), split.getMinAirFuelRatio());
+        assertEquals(Double.valueOf(13d), split.getMaxAirFuelRatio());
+
+        summaries.clear();
+
+        aggregator.update(createLogEntry(6, 20f, 0.1f, 0.1f, 7000, 0d, 14d));
+
+        aggregator.flush(createTimingEntry(7, 1, 1, 5l, 2l), summaries);
+        assertEquals(2, summaries.size());
+
+        split = summaries.get(0);
+        assertEquals(1, split.getLap());
+        assertEquals(Integer.valueOf(1), split.getSplitIndex());
+        assertEquals(5, split.getStartSynchTimestamp());
+        assertEquals(1, split.getLogEntryCount());
+        assertEquals(Float.valueOf(20f), split.getMaxSpeed());
+
+        LapSummary lap = summaries.get(1);
+        assertEquals(1, lap.getLap());
+        assertNull(lap.getSplitIndex());
+        assertEquals(2, lap.getStartSynchTimestamp());
+        assertEquals(7, lap.getEndSynchTimestamp());
+        assertEquals(Long.valueOf(5), lap.getElapsedTime());
+        assertEquals(3, lap.getLogEntryCount());
+        assertEquals(Float.valueOf(40f), lap.getMaxSpeed());
+        assertEquals(Float.valueOf(20f), lap.getMinSpeed());
+        assertEquals(Integer.valueOf(7000), lap.getMaxRpm());
+        assertEquals(50d, lap.getAverageThrottlePosition(), 0.00001d);
+        assertEquals(Double.valueOf(12d), lap.getMinAirFuelRatio());
+        assertEquals(Double.valueOf(14d), lap.getMaxAirFuelRatio());
+    }
+
+    @Test
+    public void testNoEcuData() {
+        aggregator.flush(createTimingEntry(1, 0, 0, null, null), summaries);
+        aggregator.update(new LogEntry(2, 1, null, null, null));
+        aggregator.flush(createTimingEntry(3, 1, 0, 2l, 2l), summaries);
+
+        assertEquals(2, summaries.size());
+
+        LapSummary lap = summaries.get(1);
+        assertEquals(1, lap.getLogEntryCount());
+        assertNull(lap.getMaxSpeed());
+        assertNull(lap.getMaxLateralAccel());
+        assertNull(lap.getMaxRpm());
+        assertNull(lap.getAverageThrottlePosition());
+    }
+
+    @Test
+    public void testMinCornerSpeed() {
+        aggregator.flush(createTimingEntry(1, 0, 0, null, null), summaries);
+
+        // Braking on the straight, slowest but not cornering
+        aggregator.update(createLogEntry(2, 10f, 0.5f, 8f, 5000, 0d, 13d));
+        // Corner apexes
+        aggregator.update(createLogEntry(3, 25f, -4f, 0.5f, 5000, 50d, 13d));
+        aggregator.update(createLogEntry(4, 18f, 9f, 0.5f, 5000, 50d, 13d));
+        aggregator.update(createLogEntry(5, 30f, 3f, 0.5f, 5000, 50d, 13d));
+
+        aggregator.flush(createTimingEntry(6, 1, 0, 5l, 5l), summaries);
+
+        LapSummary lap = summaries.get(1);
+        assertNull(lap.getSplitIndex());
+        assertEquals(Float.valueOf(10f), lap.getMinSpeed());
+        assertEquals(Float.valueOf(18f), lap.getMinCornerSpeed());
+
+        summaries.clear();
+
+        // No cornering in the lap
+        aggregator.update(createLogEntry(7, 40f, 1f, 0.5f, 5000, 50d, 13d));
+        aggregator.flush(createTimingEntry(8, 2, 0, 2l, 2l), summaries);
+
+        assertEquals(Float.valueOf(40f), summaries.get(1).getMinSpeed());
+        assertNull(summaries.get(1).getMinCornerSpeed());
+    }
+
+    @Test
+    public void testCornerThreshold() {
+        aggregator = new LapStatisticsAggregator(10f);
+
+        aggregator.flush(createTimingEntry(1, 0, 0, null, null), summaries);
+        aggregator.update(createLogEntry(2, 18f, 9f, 0.5f, 5000, 50d, 13d));
+        aggregator.update(createLogEntry(3, 22f, -10f, 0.5f, 5000, 50d, 13d));
+        aggregator.flush(createTimingEntry(4, 1, 0, 3l, 3l), summaries);
+
+        assertEquals(Float.valueOf(22f), summaries.get(1).getMinCornerSpeed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCornerThreshold() {
+        new LapStatisticsAggregator(-1f);
+    }
+
+    @Test
+    public void testResume() {
+        aggregator.flush(createTimingEntry(1, 0, 0, null, null), summaries);
+        aggregator.update(createLogEntry(2, 30f, 4f, 0.5f, 5000, 50d, 13d));
+
+        // Logging stopped part way through the lap and resumed with timing starting over.
+        LapSummary lastSummary = new LapSummary();
+        lastSummary.setSessionId(1);
+        lastSummary.setLap(3);
+        lastSummary.setSplitIndex(0);
+
+        aggregator.resume(lastSummary);
+
+        // Before the first timing event after the resume, ignored
+        aggregator.update(createLogEntry(10, 100f, 4f, 0.5f, 5000, 50d, 13d));
+
+        aggregator.flush(createTimingEntry(11, 0, 0, null, null), summaries);
+        assertTrue(summaries.isEmpty());
+
+        aggregator.update(createLogEntry(12, 20f, 4f, 0.5f, 5000, 50d, 13d));
+        aggregator.flush(createTimingEntry(13, 1, 0, 2l, 2l), summaries);
+
+        assertEquals(2, summaries.size());
+
+        LapSummary lap = summaries.get(1);
+        assertEquals(4, lap.getLap());
+        assertNull(lap.getSplitIndex());
+        assertEquals(11, lap.getStartSynchTimestamp());
+        assertEquals(1, lap.getLogEntryCount());
+        assertEquals(Float.valueOf(20f), lap.getMaxSpeed());
+        assertEquals(4, summaries.get(0).getLap());
+
+        // A new session numbers laps from the start again.
+        summaries.clear();
+        aggregator.reset();
+        aggregator.flush(createTimingEntry(20, 0, 0, null, null), summaries);
+        aggregator.flush(createTimingEntry(21, 1, 0, 1l, 1l), summaries);
+
+        assertEquals(1, summaries.get(1).getLap());
+    }
+
+    @Test
+    public void testResumeWithoutSummaries() {
+        aggregator.resume(null);
+        aggregator.flush(createTimingEntry(1, 0, 0, null, null), summaries);
+        aggregator.flush(createTimingEntry(2, 1, 0, 1l, 1l), summaries);
+
+        assertEquals(1, summaries.get(1).getLap());
+    }
+
+    private LogEntry createLogEntry(long synchTimestamp, float speed, float lateral,
+            float longitudinal, int rpm, double throttle, double afr) {
+
+        LocationDataBuilder locationDataBuilder = new LocationDataBuilder();
+        locationDataBuilder.setTime(synchTimestamp);
+        locationDataBuilder.setSpeed(speed);
+
+        AccelDataBuilder accelDataBuilder = new AccelDataBuilder();
+        accelDataBuilder.setLateral(lateral);
+        accelDataBuilder.setLongitudinal(longitudinal);
+
+        EcuDataBuilder ecuDataBuilder = new EcuDataBuilder();
+        ecuDataBuilder.setRpm(rpm);
+        ecuDataBuilder.setThrottlePosition(throttle);
+        ecuDataBuilder.setAirFuelRatio(afr);
+
+        return new LogEntry(synchTimestamp, 1, accelDataBuilder.build(),
+                locationDataBuilder.build(), ecuDataBuilder.build());
+    }
+
+    private TimingEntry createTimingEntry(long synchTimestamp, int lap, int splitIndex,
+            Long lapTime, Long splitTime) {
+
+        TimingDataBuilder builder = new TimingDataBuilder();
+        builder.setTime(synchTimestamp);
+        builder.setLap(lap);
+        builder.setSplitIndex(splitIndex);
+        builder.setLapTime(lapTime);
+        builder.setSplitTime(splitTime);
+        builder.setBestSplitTimes(Arrays.asList(new Long[2]));
+
+        return new TimingEntry(synchTimestamp, 1, builder.build());
+    }
+}
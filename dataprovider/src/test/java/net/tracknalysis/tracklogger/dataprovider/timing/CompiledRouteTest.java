@@ -0,0 +1,123 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider.timing;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.tracknalysis.location.Route;
+import net.tracknalysis.location.Waypoint;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class CompiledRouteTest {
+
+    private static final Route ROUTE = new Route("My Route", Arrays.asList(
+            new Waypoint("1", 38.979896545410156d, -77.54102325439453d),
+            new Waypoint("2", 38.98295974731445d, -77.53973388671875d),
+            new Waypoint("3", 38.982906341552734d, -77.54007720947266d),
+            new Waypoint("4", 38.972618103027344d, -77.54145050048828d),
+            new Waypoint("5", 38.97257995605469d, -77.5412826538086d)));
+
+    @Test
+    public void testCompile() {
+        CompiledRoute compiledRoute = CompiledRoute.compile(ROUTE);
+
+        assertEquals("My Route", compiledRoute.getName());
+        assertEquals(5, compiledRoute.getWaypointCount());
+        assertEquals(0d, compiledRoute.getX(0), 0d);
+        assertEquals(0d, compiledRoute.getY(0), 0d);
+
+        // Waypoint 2 is roughly 340m north and 110m east of waypoint 1.
+        assertEquals(340d, compiledRoute.getY(1), 10d);
+        assertEquals(111d, compiledRoute.getX(1), 10d);
+
+        for (int i = 0; i < compiledRoute.getWaypointCount(); i++) {
+            assertTrue(compiledRoute.getGateHeading(i) >= 0);
+            assertTrue(compiledRoute.getGateHeading(i) < 2 * Math.PI);
+        }
+    }
+
+    @Test
+    public void testFindNearestWaypoint() {
+        CompiledRoute compiledRoute = CompiledRoute.compile(ROUTE, 25d);
+
+        for (int i = 0; i < compiledRoute.getWaypointCount(); i++) {
+            assertEquals(i, compiledRoute.findNearestWaypoint(
+                    compiledRoute.getLatitude(i), compiledRoute.getLongitude(i), 1d));
+        }
+
+        // Waypoints 4 and 5 are only a few meters apart.
+        assertEquals(4, compiledRoute.findNearestWaypoint(
+                38.97257995605469d, -77.54127d, 15d));
+
+        assertEquals(-1, compiledRoute.findNearestWaypoint(39d, -77d, 100d));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CompiledRoute compiledRoute = CompiledRoute.compile(ROUTE);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        compiledRoute.writeTo(new DataOutputStream(baos));
+
+        CompiledRoute restored = CompiledRoute.readFrom(
+                new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+        assertEquals(compiledRoute.getName(), restored.getName());
+        assertEquals(compiledRoute.getWaypointCount(), restored.getWaypointCount());
+        assertEquals(compiledRoute.getCellSize(), restored.getCellSize(), 0d);
+
+        for (int i = 0; i < compiledRoute.getWaypointCount(); i++) {
+            assertEquals(compiledRoute.getLatitude(i), restored.getLatitude(i), 0d);
+            assertEquals(compiledRoute.getLongitude(i), restored.getLongitude(i), 0d);
+            assertEquals(compiledRoute.getX(i), restored.getX(i), 0d);
+            assertEquals(compiledRoute.getY(i), restored.getY(i), 0d);
+            assertEquals(compiledRoute.getGateHeading(i), restored.getGateHeading(i), 0d);
+            assertEquals(i, restored.findNearestWaypoint(
+                    restored.getLatitude(i), restored.getLongitude(i), 1d));
+        }
+
+        Route route = restored.toRoute();
+        assertEquals(ROUTE.getName(), route.getName());
+        assertEquals(ROUTE.getWaypoints().size(), route.getWaypoints().size());
+        for (int i = 0; i < route.getWaypoints().size(); i++) {
+            assertEquals(ROUTE.getWaypoints().get(i).getName(), route.getWaypoints().get(i).getName());
+            assertEquals(ROUTE.getWaypoints().get(i).getLatitude(),
+                    route.getWaypoints().get(i).getLatitude(), 0d);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadFromInvalidData() throws IOException {
+        CompiledRoute.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[] {0, 1, 2, 3})));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileEmptyRoute() {
+        CompiledRoute.compile(new Route("Empty", Collections.<Waypoint>emptyList()));
+    }
+}
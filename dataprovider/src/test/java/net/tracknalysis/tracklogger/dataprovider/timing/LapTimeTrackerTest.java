@@ -0,0 +1,102 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.dataprovider.timing;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LapTimeTrackerTest {
+
+    @Test
+    public void testTheoreticalBest() {
+        LapTimeTracker tracker = new LapTimeTracker(3);
+
+        assertNull(tracker.getTheoreticalBestLapTime());
+        assertNull(tracker.getBestLapTime());
+
+        tracker.splitCompleted(0, 10);
+        tracker.splitCompleted(1, 20);
+        assertNull(tracker.getTheoreticalBestLapTime());
+
+        tracker.splitCompleted(2, 30);
+        tracker.lapCompleted(60);
+        assertEquals(Long.valueOf(60), tracker.getTheoreticalBestLapTime());
+        assertEquals(Long.valueOf(60), tracker.getBestLapTime());
+
+        tracker.splitCompleted(0, 12);
+        tracker.splitCompleted(1, 15);
+        tracker.splitCompleted(2, 31);
+        tracker.lapCompleted(58);
+        assertEquals(Long.valueOf(55), tracker.getTheoreticalBestLapTime());
+        assertEquals(Long.valueOf(58), tracker.getBestLapTime());
+        assertEquals(Arrays.asList(10l, 15l, 30l), tracker.getBestSplitTimes());
+    }
+
+    @Test
+    public void testRollingBest() {
+        LapTimeTracker tracker = new LapTimeTracker(1, 3);
+
+        assertNull(tracker.getRollingBestLapTime());
+
+        tracker.lapCompleted(50);
+        assertEquals(Long.valueOf(50), tracker.getRollingBestLapTime());
+        tracker.lapCompleted(60);
+        assertEquals(Long.valueOf(50), tracker.getRollingBestLapTime());
+        tracker.lapCompleted(70);
+        assertEquals(Long.valueOf(50), tracker.getRollingBestLapTime());
+        // 50 falls out of the window
+        tracker.lapCompleted(80);
+        assertEquals(Long.valueOf(60), tracker.getRollingBestLapTime());
+        tracker.lapCompleted(55);
+        assertEquals(Long.valueOf(55), tracker.getRollingBestLapTime());
+        tracker.lapCompleted(90);
+        tracker.lapCompleted(95);
+        assertEquals(Long.valueOf(55), tracker.getRollingBestLapTime());
+        tracker.lapCompleted(99);
+        assertEquals(Long.valueOf(90), tracker.getRollingBestLapTime());
+
+        assertEquals(Long.valueOf(50), tracker.getBestLapTime());
+    }
+
+    @Test
+    public void testRollingBestAgainstBruteForce() {
+        Random random = new Random(42);
+
+        for (int windowSize = 1; windowSize < 8; windowSize++) {
+            LapTimeTracker tracker = new LapTimeTracker(1, windowSize);
+            long[] lapTimes = new long[200];
+
+            for (int i = 0; i < lapTimes.length; i++) {
+                lapTimes[i] = 60000 + random.nextInt(1000);
+                tracker.lapCompleted(lapTimes[i]);
+
+                long expected = Long.MAX_VALUE;
+                for (int j = Math.max(0, i - windowSize + 1); j <= i; j++) {
+                    expected = Math.min(expected, lapTimes[j]);
+                }
+
+                assertEquals(Long.valueOf(expected), tracker.getRollingBestLapTime());
+            }
+        }
+    }
+}
@@ -17,14 +17,23 @@ package net.tracknalysis.tracklogger.export;
 
 import net.tracknalysis.common.notification.NoOpNotificationListener;
 import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.tracklogger.model.notification.ProgressThrottle;
 
 /**
+ * Base class for exporters.  Progress notifications are coalesced so that exporters may report progress
+ * for every record without flooding the notification listener.  A progress notification is sent only
+ * once the export has advanced by at least the {@link #setProgressStep(int) progress step} and the
+ * {@link #setProgressInterval(long) progress interval} has elapsed since the last progress notification.
+ * The first progress notification of each export and the notification of its completion are always sent.
+ *
  * @author David Valeri
  */
 public abstract class AbstractSessionExporter implements SessionExporter {
-
+    
     protected final NotificationListener<SessionExporterNotificationType> notificationStrategy;
     
+    private final ProgressThrottle progressThrottle = new ProgressThrottle();
+    
     public AbstractSessionExporter(NotificationListener<SessionExporterNotificationType> notificationStrategy) {
         if (notificationStrategy == null) {
             this.notificationStrategy = new NoOpNotificationListener<SessionExporterNotificationType>();
@@ -32,16 +41,64 @@ public abstract class AbstractSessionExporter implements SessionExporter {
             this.notificationStrategy = notificationStrategy;
         }
     }
+    
+    public final long getProgressInterval() {
+        return progressThrottle.getInterval();
+    }
+    
+    /**
+     * Sets the minimum time between progress notifications, {@link ProgressThrottle#DEFAULT_INTERVAL} by
+     * default.
+     *
+     * @param progressInterval the interval in milliseconds, 0 to disable the time based throttling
+     *
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public final void setProgressInterval(long progressInterval) {
+        progressThrottle.setInterval(progressInterval);
+    }
+    
+    public final int getProgressStep() {
+        return progressThrottle.getStep();
+    }
+    
+    /**
+     * Sets the minimum advance of the export between progress notifications,
+     * {@link ProgressThrottle#DEFAULT_STEP} by default.  Ignored when the total number of records is not
+     * known.
+     *
+     * @param progressStep the step in percent of the total records, 0 to disable the step based throttling
+     *
+     * @throws IllegalArgumentException if the step is not between 0 and 100
+     */
+    public final void setProgressStep(int progressStep) {
+        progressThrottle.setStep(progressStep);
+    }
 
     protected final NotificationListener<SessionExporterNotificationType> getNotificationStrategy() {
         return notificationStrategy;
     }
+    
+    /**
+     * Resets the throttling of progress notifications so that the next progress notification is sent.
+     * Called at the start of each export.
+     */
+    protected final void resetProgressNotification() {
+        progressThrottle.reset();
+    }
 
-    protected final void sendExportProgressNotification(int currentRecord,
-            int totalRecords) {
-                getNotificationStrategy().onNotification(
-                        SessionExporterNotificationType.EXPORT_PROGRESS,
-                        new ExportProgress(currentRecord, totalRecords));
-            }
-
+    /**
+     * Sends a progress notification if the export has advanced far enough since the last progress
+     * notification.  Safe to call from multiple threads.
+     *
+     * @param currentRecord the number of records exported
+     * @param totalRecords the estimated total number of records, or 0 if not known
+     */
+    protected final void sendExportProgressNotification(int currentRecord, int totalRecords) {
+        if (progressThrottle.isDue(currentRecord, totalRecords)) {
+            getNotificationStrategy().onNotification(
+                    SessionExporterNotificationType.EXPORT_PROGRESS,
+                    new ExportProgress(currentRecord, totalRecords));
+        }
+    }
 }
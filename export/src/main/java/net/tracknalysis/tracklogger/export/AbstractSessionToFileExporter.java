@@ -17,15 +17,28 @@ package net.tracknalysis.tracklogger.export;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.tracklogger.export.FileChannelOutputStream.ForcePolicy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,11 +50,48 @@ public abstract class AbstractSessionToFileExporter extends AbstractSessionExpor
     
     private static final Logger LOG = LoggerFactory.getLogger(AbstractSessionToFileExporter.class);
     
+    /**
+     * The size of the buffers used when writing the export file by default.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+    
+    /**
+     * The directory, relative to the export directory, in which the checkpoints of incremental exports are
+     * stored.
+     */
+    private static final String CHECKPOINT_DIR = ".checkpoints";
+    
+    /**
+     * The compression applied to the export file as it is written.
+     */
+    public static enum Compression {
+        /**
+         * The export file is written as is.
+         */
+        NONE,
+        /**
+         * The export file is written in the gzip format with a ".gz" suffix.
+         */
+        GZIP;
+    }
+    
     private DateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd-HH.mm.ss");
     
     private File exportFile;
     private OutputStream out;
+    private FileOutputStream fileOut;
     private File exportDir;
+    private ExecutorService executorService;
+    private Compression compression = Compression.NONE;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private ForcePolicy forcePolicy = ForcePolicy.NONE;
+    private ByteBuffer directBuffer;
+    private boolean incremental;
+    private ExportCache exportCache;
+    private String exportCacheKey;
+    private final AtomicInteger partitionRecordIndex = new AtomicInteger();
+    private volatile int partitionRecordCount;
 
     public AbstractSessionToFileExporter(
             File exportDir,
@@ -55,6 +105,126 @@ public abstract class AbstractSessionToFileExporter extends AbstractSessionExpor
         this.exportDir = exportDir;
     }
     
+    /**
+     * Sets the executor used to export the partitions of a session in parallel.  If {@code null}, the
+     * default, or if the implementation is not a {@link PartitionedSessionExporter}, the session is exported
+     * serially on the calling thread.  The executor is not shut down by this class.
+     *
+     * @see PartitionedSessionExporter#getPartitions(int, Integer, Integer)
+     */
+    public final void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+    
+    public final Compression getCompression() {
+        return compression;
+    }
+    
+    /**
+     * Sets the compression applied to the export file.  The export is compressed as it is written, so
+     * no uncompressed copy of the export is written to the file system.
+     *
+     * @throws IllegalArgumentException if the compression is {@code null}
+     */
+    public final void setCompression(Compression compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("Compression must not be null.");
+        }
+        
+        this.compression = compression;
+    }
+    
+    public final int getCompressionLevel() {
+        return compressionLevel;
+    }
+    
+    /**
+     * Sets the level used when compressing the export, from {@link Deflater#BEST_SPEED} to
+     * {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}, the default.
+     *
+     * @throws IllegalArgumentException if the level is not supported
+     */
+    public final void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Unsupported compression level " + compressionLevel + ".");
+        }
+        
+        this.compressionLevel = compressionLevel;
+    }
+    
+    public final int getBufferSize() {
+        return bufferSize;
+    }
+    
+    /**
+     * Sets the size, in bytes, of the buffers used when writing and compressing the export file.  Defaults
+     * to {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public final void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        
+        this.bufferSize = bufferSize;
+    }
+    
+    public final ForcePolicy getForcePolicy() {
+        return forcePolicy;
+    }
+    
+    /**
+     * Sets whether the export file is forced to the storage device when the export completes.  Defaults to
+     * {@link ForcePolicy#NONE}.
+     *
+     * @throws IllegalArgumentException if the policy is {@code null}
+     */
+    public final void setForcePolicy(ForcePolicy forcePolicy) {
+        if (forcePolicy == null) {
+            throw new IllegalArgumentException("Force policy must not be null.");
+        }
+        
+        this.forcePolicy = forcePolicy;
+    }
+    
+    public final boolean isIncremental() {
+        return incremental;
+    }
+    
+    /**
+     * Sets whether the export appends only the entries logged since the last incremental export of the same
+     * session and lap range to the existing export file.  The session is exported in full if the
+     * implementation is not an {@link IncrementalSessionExporter}, if there is no checkpoint from an earlier
+     * export, or if the export file has changed since the checkpoint was taken.  Defaults to {@code false}.
+     */
+    public final void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    
+    /**
+     * Sets the cache that completed exports are copied into and that repeated exports are served from.
+     * The key must change whenever the content of the session or any configuration of the exporter that
+     * affects the export changes, for instance by including the last modification date of the session and
+     * the export format.  The session ID, lap range, and compression settings are added to the key by this
+     * class.  When an export is served from the cache, the cached file is copied to the export file and the
+     * session is not read.
+     *
+     * @param exportCache the cache, or {@code null} to disable caching, the default
+     * @param exportCacheKey the key describing the session version and exporter configuration
+     *
+     * @throws IllegalArgumentException if a cache is provided without a key
+     */
+    public final void setExportCache(ExportCache exportCache, String exportCacheKey) {
+        if (exportCache != null && exportCacheKey == null) {
+            throw new IllegalArgumentException("Export cache key must not be null.");
+        }
+        
+        this.exportCache = exportCache;
+        this.exportCacheKey = exportCacheKey;
+    }
+    
     @Override
     public final void export(int sessionId) {
         runExport(sessionId, null, null);
@@ -84,8 +254,38 @@ public abstract class AbstractSessionToFileExporter extends AbstractSessionExpor
     protected abstract void export(OutputStream out, int sessionId,
             Integer startLap, Integer endLap) throws IOException;
     
+    /**
+     * Records the export of a record in a partition and sends a progress notification for the export as a
+     * whole.  Safe to call from any of the threads exporting partitions.
+     *
+     * @see PartitionedSessionExporter#exportPartition(OutputStream, int, ExportPartition)
+     */
+    protected final void sendPartitionProgressNotification() {
+        int currentRecord = partitionRecordIndex.incrementAndGet();
+        sendExportProgressNotification(currentRecord, Math.max(currentRecord, partitionRecordCount));
+    }
+    
     protected abstract Date getSessionStartTime();
     
+    /**
+     * Returns the channel of the export file for implementations that copy data directly into the file,
+     * such as with {@link FileChannel#transferFrom}, rather than writing to the stream passed to
+     * {@link #export(OutputStream, int, Integer, Integer)}.  Implementations must not write to both as
+     * data buffered in the stream is written after data written to the channel.  Only valid during the
+     * export and only if the export is not compressed.
+     */
+    protected final FileChannel getExportFileChannel() {
+        if (fileOut == null) {
+            throw new IllegalStateException("No export in progress.");
+        }
+        
+        if (compression != Compression.NONE) {
+            throw new IllegalStateException("The export file channel is not available for compressed exports.");
+        }
+        
+        return fileOut.getChannel();
+    }
+    
     /**
      * Returns the file extension to append to the default file name.
      */
@@ -101,16 +301,59 @@ public abstract class AbstractSessionToFileExporter extends AbstractSessionExpor
     }
     
     private void runExport(int sessionId, Integer startLap, Integer endLap) {
+        
+        File checkpointFile = null;
+        String cacheKey = null;
+        boolean exported = false;
+        
         try {
             LOG.debug("Starting export.");
             notificationStrategy.onNotification(SessionExporterNotificationType.EXPORT_STARTING);
             
+            resetProgressNotification();
             init(sessionId);
             
+            String fileName = getExportFileName(sessionId);
+            
+            if (compression == Compression.GZIP) {
+                fileName = fileName + ".gz";
+            }
+            
+            exportFile = new File(exportDir, fileName);
+            
+            if (exportCache != null) {
+                cacheKey = exportCacheKey + "|" + sessionId + "|" + startLap + "|" + endLap + "|" + compression
+                        + "|" + compressionLevel;
+                boolean cached = false;
+                
+                // The cached file is copied to the export file, rather than used in place, so that the
+                // export file cannot be evicted while it is being read.
+                try {
+                    cached = exportCache.copyTo(cacheKey, fileName, exportFile);
+                } catch (IOException e) {
+                    LOG.warn("Could not copy cached export to export file '" + exportFile.getAbsolutePath()
+                            + "'.  Exporting session.", e);
+                }
+                
+                if (cached) {
+                    LOG.debug("Served export of session {} from cache.", sessionId);
+                    notificationStrategy.onNotification(SessionExporterNotificationType.EXPORT_STARTED);
+                    notificationStrategy.onNotification(SessionExporterNotificationType.EXPORT_FINISHED);
+                    return;
+                }
+            }
+            
+            ExportCheckpoint checkpoint = null;
+            if (incremental && this instanceof IncrementalSessionExporter) {
+                checkpointFile = getCheckpointFile(startLap, endLap);
+                checkpoint = loadCheckpoint(checkpointFile, sessionId, startLap, endLap);
+            }
+            
             try {
-                createLogFile(sessionId, startLap, endLap);
+                createLogFile(checkpoint != null);
             } catch (IOException e) {
                 out = null;
+                fileOut = null;
                 exportFile = null;
                 throw e;
             }
@@ -118,8 +361,21 @@ public abstract class AbstractSessionToFileExporter extends AbstractSessionExpor
             LOG.debug("Started export.");
             notificationStrategy.onNotification(SessionExporterNotificationType.EXPORT_STARTED);
             
-            export(out, sessionId, startLap, endLap);
+            List<ExportPartition> partitions = null;
+            if (checkpoint == null && executorService != null && this instanceof PartitionedSessionExporter) {
+                partitions = ((PartitionedSessionExporter) this).getPartitions(sessionId, startLap, endLap);
+            }
+            
+            if (checkpoint != null) {
+                LOG.debug("Exporting session {} incrementally from {}.", sessionId, checkpoint);
+                ((IncrementalSessionExporter) this).exportIncrement(out, sessionId, checkpoint);
+            } else if (partitions == null || partitions.size() < 2) {
+                export(out, sessionId, startLap, endLap);
+            } else {
+                exportPartitions((PartitionedSessionExporter) this, sessionId, partitions);
+            }
             
+            exported = true;
         } catch (Exception e) {
             LOG.error("Export failed due to an exception.");
             getNotificationStrategy().onNotification(
@@ -130,27 +386,255 @@ public abstract class AbstractSessionToFileExporter extends AbstractSessionExpor
                     out.flush();
                     out.close();
                     
+                    if (exported && checkpointFile != null) {
+                        storeCheckpoint(checkpointFile, sessionId, startLap, endLap);
+                    }
+                    
+                    if (exported && cacheKey != null) {
+                        cacheExport(cacheKey);
+                    }
+                    
                     getNotificationStrategy().onNotification(
                             SessionExporter.SessionExporterNotificationType.EXPORT_FINISHED);
                 } catch (Exception e) {
                     notificationStrategy.onNotification(SessionExporterNotificationType.EXPORT_FAILED, e);
                 } finally {
                     out = null;
+                    fileOut = null;
+                }
+            }
+        }
+    }
+    
+    private void exportPartitions(final PartitionedSessionExporter exporter, final int sessionId,
+            List<ExportPartition> partitions) throws IOException {
+        
+        LOG.debug("Exporting session {} in {} partitions.", sessionId, partitions.size());
+        
+        int recordCount = 0;
+        for (ExportPartition partition : partitions) {
+            recordCount += partition.getRecordCount();
+        }
+        
+        partitionRecordIndex.set(0);
+        partitionRecordCount = recordCount;
+        
+        List<File> partitionFiles = new ArrayList<File>(partitions.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(partitions.size());
+        
+        try {
+            exporter.exportHeader(out, sessionId);
+            
+            for (final ExportPartition partition : partitions) {
+                final File partitionFile = File.createTempFile(exportFile.getName() + "-", ".part", exportDir);
+                partitionFiles.add(partitionFile);
+                
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        // The partition files are temporary, so there is no need to force them.
+                        OutputStream partitionOut = new FileChannelOutputStream(
+                                new FileOutputStream(partitionFile).getChannel(),
+                                ByteBuffer.allocate(bufferSize), ForcePolicy.NONE);
+                        try {
+                            exporter.exportPartition(partitionOut, sessionId, partition);
+                            partitionOut.flush();
+                        } finally {
+                            partitionOut.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            
+            byte[] buffer = new byte[bufferSize];
+            for (int i = 0; i < futures.size(); i++) {
+                awaitPartition(futures.get(i), partitions.get(i));
+                
+                File partitionFile = partitionFiles.get(i);
+                InputStream partitionIn = new FileInputStream(partitionFile);
+                try {
+                    int read;
+                    while ((read = partitionIn.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    partitionIn.close();
                 }
+                
+                if (!partitionFile.delete()) {
+                    LOG.warn("Could not delete partition file '{}'.", partitionFile.getAbsolutePath());
+                }
+            }
+            
+            exporter.exportFooter(out, sessionId);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            
+            for (File partitionFile : partitionFiles) {
+                if (partitionFile.exists() && !partitionFile.delete()) {
+                    LOG.warn("Could not delete partition file '{}'.", partitionFile.getAbsolutePath());
+                }
+            }
+        }
+    }
+    
+    private void awaitPartition(Future<?> future, ExportPartition partition) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            IOException ioe = new IOException("Interrupted while exporting " + partition + ".");
+            ioe.initCause(e);
+            throw ioe;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                IOException ioe = new IOException("Error exporting " + partition + ".");
+                ioe.initCause(cause);
+                throw ioe;
             }
         }
     }
     
-    private void createLogFile(int sessionId, Integer startLap, Integer endLap) throws FileNotFoundException {
-        String fileName = sessionId + "-" + dateFormat.format(getSessionStartTime());
+    /**
+     * Returns the name of the export file for the session, before any suffix added for compression.  Only
+     * valid after {@link #init(int)}.
+     */
+    final String getExportFileName(int sessionId) {
+        return sessionId + "-" + dateFormat.format(getSessionStartTime()) + "." + getFileExtension();
+    }
+    
+    /**
+     * Returns the file holding the checkpoint for exports of the lap range to the current export file.
+     */
+    private File getCheckpointFile(Integer startLap, Integer endLap) {
+        return new File(new File(exportDir, CHECKPOINT_DIR), exportFile.getName() + "-"
+                + (startLap == null ? "first" : startLap.toString()) + "-"
+                + (endLap == null ? "last" : endLap.toString()) + ".checkpoint");
+    }
+    
+    /**
+     * Returns the checkpoint to continue the export from, or {@code null} if the session must be exported
+     * in full.  The checkpoint file is removed as the export file is about to change.
+     */
+    private ExportCheckpoint loadCheckpoint(File checkpointFile, int sessionId, Integer startLap,
+            Integer endLap) {
+        
+        ExportCheckpoint checkpoint = null;
+        
+        try {
+            checkpoint = ExportCheckpoint.load(checkpointFile);
+        } catch (IOException e) {
+            LOG.warn("Could not read checkpoint file '" + checkpointFile.getAbsolutePath()
+                    + "'.  Exporting in full.", e);
+        }
+        
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            LOG.warn("Could not delete checkpoint file '{}'.", checkpointFile.getAbsolutePath());
+        }
+        
+        if (checkpoint != null
+                && (!checkpoint.isFor(sessionId, startLap, endLap) || !checkpoint.isCurrent(exportFile))) {
+            LOG.debug("Export file '{}' has changed since {}.  Exporting in full.",
+                    exportFile.getAbsolutePath(), checkpoint);
+            checkpoint = null;
+        }
+        
+        return checkpoint;
+    }
+    
+    /**
+     * Stores the checkpoint for the export that just completed.  Failure to store the checkpoint does not
+     * fail the export as the next export is simply done in full.
+     */
+    private void storeCheckpoint(File checkpointFile, int sessionId, Integer startLap, Integer endLap) {
         
-        fileName = fileName + "." + getFileExtension();
+        ExportCheckpoint checkpoint = ((IncrementalSessionExporter) this).getExportCheckpoint();
         
-        exportFile = new File(exportDir, fileName);
+        if (checkpoint == null) {
+            LOG.debug("No checkpoint for export of session {}.", sessionId);
+            return;
+        }
+        
+        checkpoint.setSessionId(sessionId);
+        checkpoint.setStartLap(startLap);
+        checkpoint.setEndLap(endLap);
+        checkpoint.setFileLength(exportFile.length());
+        checkpoint.setFileLastModified(exportFile.lastModified());
+        
+        try {
+            File checkpointDir = checkpointFile.getParentFile();
+            if (!checkpointDir.isDirectory() && !checkpointDir.mkdirs()) {
+                throw new IOException("Could not create checkpoint directory '"
+                        + checkpointDir.getAbsolutePath() + "'.");
+            }
+            
+            checkpoint.store(checkpointFile);
+            LOG.debug("Stored {} to '{}'.", checkpoint, checkpointFile.getAbsolutePath());
+        } catch (IOException e) {
+            LOG.warn("Could not write checkpoint file '" + checkpointFile.getAbsolutePath() + "'.", e);
+        }
+    }
+    
+    /**
+     * Copies the export file into the cache.  Failure to cache the export does not fail the export.
+     */
+    private void cacheExport(String cacheKey) {
+        try {
+            exportCache.put(cacheKey, exportFile);
+        } catch (IOException e) {
+            LOG.warn("Could not cache export file '" + exportFile.getAbsolutePath() + "'.", e);
+        }
+    }
+    
+    private void createLogFile(boolean append) throws IOException {
         
         LOG.debug("Creating output stream to export file '{}'.",
                 exportFile.getAbsolutePath());
         
-        out = new BufferedOutputStream(new FileOutputStream(exportFile));
+        // Incremental exports append to the existing file.  Compressed exports append a new gzip member,
+        // which readers of the gzip format decompress as the continuation of the earlier members.
+        fileOut = new FileOutputStream(exportFile, append);
+        
+        // The direct buffer is reused across exports as direct buffers are expensive to allocate.
+        if (directBuffer == null || directBuffer.capacity() != bufferSize) {
+            directBuffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        
+        OutputStream sink = new FileChannelOutputStream(fileOut.getChannel(), directBuffer, forcePolicy);
+        
+        switch (compression) {
+            case GZIP:
+                try {
+                    out = new BufferedOutputStream(
+                            new LeveledGzipOutputStream(sink, bufferSize, compressionLevel), bufferSize);
+                } catch (IOException e) {
+                    sink.close();
+                    throw e;
+                }
+                break;
+            default:
+                out = sink;
+        }
+    }
+    
+    /**
+     * A {@link GZIPOutputStream} that compresses at a configurable level.
+     */
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        
+        public LeveledGzipOutputStream(OutputStream out, int size, int level) throws IOException {
+            super(out, size);
+            def.setLevel(level);
+        }
     }
 }
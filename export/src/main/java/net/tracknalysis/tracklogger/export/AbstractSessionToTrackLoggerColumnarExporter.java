@@ -0,0 +1,63 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.tracknalysis.common.notification.NotificationListener;
+
+/**
+ * Exports to the TrackLogger columnar binary format.  See {@link ColumnarSessionWriter} for the layout of
+ * the file and {@link ColumnarSessionReader} for reading it.
+ *
+ * @author David Valeri
+ */
+public abstract class AbstractSessionToTrackLoggerColumnarExporter extends AbstractSessionToFileExporter {
+    
+    public AbstractSessionToTrackLoggerColumnarExporter(File exportDir,
+            NotificationListener<SessionExporterNotificationType> notificationStrategy) {
+        super(exportDir, notificationStrategy);
+    }
+    
+    @Override
+    public String getMimeType() {
+        return "application/octet-stream";
+    }
+    
+    @Override
+    protected final void export(OutputStream out, int sessionId, Integer startLap,
+            Integer endLap) throws IOException {
+        
+        ColumnarSessionWriter writer = new ColumnarSessionWriter(out, sessionId, getSessionStartTime());
+        
+        exportEntries(writer, sessionId, startLap, endLap);
+        
+        writer.finish();
+    }
+    
+    /**
+     * Writes the entries in the requested laps to the writer in the order in which they were recorded.
+     */
+    protected abstract void exportEntries(ColumnarSessionWriter writer, int sessionId,
+            Integer startLap, Integer endLap) throws IOException;
+    
+    @Override
+    protected String getFileExtension() {
+        return "tlc";
+    }
+}
@@ -18,13 +18,11 @@ package net.tracknalysis.tracklogger.export;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Date;
 
 import net.tracknalysis.common.notification.NotificationListener;
-import net.tracknalysis.common.util.TimeUtil;
 
 /**
  * @author David Valeri
@@ -34,12 +32,63 @@ public abstract class AbstractSessionToTrackLoggerCsvExporter extends
     
     protected static final String TRACKLOGGER_CSV_1_0_b = "TrackLogger CSV 1.0b";
     
-    private long lastSyncTimestamp = -1;
-    private long runningTime = 0;
+    /**
+     * The number of fraction digits written for each channel by default, which produces the
+     * {@link #TRACKLOGGER_CSV_1_0_b} output.
+     */
+    public static final int DEFAULT_PRECISION = 20;
+    
+    /**
+     * The floating point channels in the export.
+     */
+    public static enum Channel {
+        LONGITUDINAL_ACCEL,
+        LATERAL_ACCEL,
+        VERTICAL_ACCEL,
+        LATITUDE,
+        LONGITUDE,
+        ALTITUDE,
+        SPEED,
+        BEARING,
+        MAP,
+        MGP,
+        THROTTLE_POSITION,
+        AFR,
+        MAT,
+        CLT,
+        IGNITION_ADVANCE,
+        BATTERY_VOLTAGE;
+    }
+    
+    private final LogEntryRow boxedRow = new LogEntryRow();
+    private final int[] precisions = new int[Channel.values().length];
+    private TrackLoggerCsvEntryWriter entryWriter;
 
     public AbstractSessionToTrackLoggerCsvExporter(File exportDir,
             NotificationListener<SessionExporterNotificationType> notificationStrategy) {
         super(exportDir, notificationStrategy);
+        Arrays.fill(precisions, DEFAULT_PRECISION);
+    }
+    
+    public int getPrecision(Channel channel) {
+        return precisions[channel.ordinal()];
+    }
+    
+    /**
+     * Sets the number of fraction digits written for a channel.
+     *
+     * @param channel the channel
+     * @param precision the number of fraction digits, up to {@link DecimalFormatter#MAX_PRECISION}, or
+     * {@link DecimalFormatter#SHORTEST} to write the fewest digits that identify the recorded value
+     *
+     * @throws IllegalArgumentException if the precision is not supported
+     */
+    public void setPrecision(Channel channel, int precision) {
+        if (precision < DecimalFormatter.SHORTEST || precision > DecimalFormatter.MAX_PRECISION) {
+            throw new IllegalArgumentException("Unsupported precision " + precision + ".");
+        }
+        
+        precisions[channel.ordinal()] = precision;
     }
     
     @Override
@@ -51,16 +100,16 @@ public abstract class AbstractSessionToTrackLoggerCsvExporter extends
     protected final void export(OutputStream out, int sessionId, Integer startLap,
             Integer endLap) throws IOException {
         
-        Writer writer;
-        try {
-            writer = new OutputStreamWriter(out, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            writer = new OutputStreamWriter(out);
-        }
+        Writer writer = createWriter(out);
         
         writeHeader(writer, sessionId);
         
-        exportEntries(writer, sessionId, startLap, endLap);
+        try {
+            entryWriter = new TrackLoggerCsvEntryWriter(writer, precisions, 0);
+            exportEntries(writer, sessionId, startLap, endLap);
+        } finally {
+            entryWriter = null;
+        }
         
         writer.flush();
     }
@@ -70,6 +119,11 @@ public abstract class AbstractSessionToTrackLoggerCsvExporter extends
     
     protected abstract String getSplitMarkerSetName();
 
+    /**
+     * Writes an entry from boxed values, where {@code null} values are written as empty fields.
+     *
+     * @see #writeEntry(Writer, LogEntryRow)
+     */
     protected final void writeEntry(Writer writer,
             long logSynchTimestamp,
             Long accelCaptureTimestamp, Float longitudalAccel, Float lateralAccel, Float verticalAccel,
@@ -77,80 +131,133 @@ public abstract class AbstractSessionToTrackLoggerCsvExporter extends
             Long ecuCaptureTimestamp, Integer rpm, Double map, Double mgp, Double tp, Double afr, Double mat, Double clt, Double ignAdv, Double batV,
             Long timingCaptureTimestamp, int lap, int splitIndex) throws IOException {
         
-        if (lastSyncTimestamp == -1) {
-            lastSyncTimestamp = logSynchTimestamp;
-        }
+        LogEntryRow row = boxedRow;
+        row.clear();
+        row.setSynchTimestamp(logSynchTimestamp);
         
-        if (logSynchTimestamp < lastSyncTimestamp) {
-            // We rolled over days so we need to account for that in the maths.
-            runningTime += (TimeUtil.MS_IN_DAY + logSynchTimestamp) - lastSyncTimestamp;
-        } else {
-            runningTime += logSynchTimestamp - lastSyncTimestamp;
+        if (accelCaptureTimestamp != null) {
+            row.setAccelCaptureTimestamp(accelCaptureTimestamp);
+        }
+        if (longitudalAccel != null) {
+            row.setLongitudinalAccel(longitudalAccel);
+        }
+        if (lateralAccel != null) {
+            row.setLateralAccel(lateralAccel);
+        }
+        if (verticalAccel != null) {
+            row.setVerticalAccel(verticalAccel);
         }
         
-        lastSyncTimestamp = logSynchTimestamp;
+        if (locationCaptureTimestamp != null) {
+            row.setLocationCaptureTimestamp(locationCaptureTimestamp);
+        }
+        if (latitude != null) {
+            row.setLatitude(latitude);
+        }
+        if (longitude != null) {
+            row.setLongitude(longitude);
+        }
+        if (altitude != null) {
+            row.setAltitude(altitude);
+        }
+        if (speed != null) {
+            row.setSpeed(speed);
+        }
+        if (bearing != null) {
+            row.setBearing(bearing);
+        }
         
-        writer.write(String.valueOf(runningTime));
-        writer.write(",");
-        writer.write(String.valueOf(logSynchTimestamp));
-        writer.write(",");
-        writer.write(accelCaptureTimestamp == null ? "" : accelCaptureTimestamp.toString());
-        writer.write(",");
-        writer.write(longitudalAccel == null ? "" : formatFloat(longitudalAccel));
-        writer.write(",");
-        writer.write(lateralAccel == null ? "" : formatFloat(lateralAccel));
-        writer.write(",");
-        writer.write(verticalAccel == null ? "" : formatFloat(verticalAccel));
-        writer.write(",");
+        if (ecuCaptureTimestamp != null) {
+            row.setEcuCaptureTimestamp(ecuCaptureTimestamp);
+        }
+        if (rpm != null) {
+            row.setRpm(rpm);
+        }
+        if (map != null) {
+            row.setMap(map);
+        }
+        if (mgp != null) {
+            row.setMgp(mgp);
+        }
+        if (tp != null) {
+            row.setThrottlePosition(tp);
+        }
+        if (afr != null) {
+            row.setAfr(afr);
+        }
+        if (mat != null) {
+            row.setMat(mat);
+        }
+        if (clt != null) {
+            row.setClt(clt);
+        }
+        if (ignAdv != null) {
+            row.setIgnitionAdvance(ignAdv);
+        }
+        if (batV != null) {
+            row.setBatteryVoltage(batV);
+        }
         
-        writer.write(locationCaptureTimestamp == null ? "" : locationCaptureTimestamp.toString());
-        writer.write(",");
-        writer.write(latitude == null ? "" : formatDouble(latitude));
-        writer.write(",");
-        writer.write(longitude == null ? "" : formatDouble(longitude));
-        writer.write(",");
-        writer.write(altitude == null ? "" : formatDouble(altitude));
-        writer.write(",");
-        writer.write(speed == null ? "" : formatFloat(speed));
-        writer.write(",");
-        writer.write(bearing == null ? "" : formatFloat(bearing));
-        writer.write(",");
+        if (timingCaptureTimestamp != null) {
+            row.setTimingCaptureTimestamp(timingCaptureTimestamp);
+        }
+        row.setLap(lap);
+        row.setSplitIndex(splitIndex);
         
-        writer.write(ecuCaptureTimestamp == null ? "" : ecuCaptureTimestamp.toString());
-        writer.write(",");
-        writer.write(rpm == null ? "" : rpm.toString());
-        writer.write(",");
-        writer.write(map == null ? "" : formatDouble(map));
-        writer.write(",");
-        writer.write(mgp == null ? "" : formatDouble(mgp));
-        writer.write(",");
-        writer.write(tp == null ? "" : formatDouble(tp));
-        writer.write(",");
-        writer.write(afr == null ? "" : formatDouble(afr));
-        writer.write(",");
-        writer.write(mat == null ? "" : formatDouble(mat));
-        writer.write(",");
-        writer.write(clt == null ? "" : formatDouble(clt));
-        writer.write(",");
-        writer.write(ignAdv == null ? "" : formatDouble(ignAdv));
-        writer.write(",");
-        writer.write(batV == null ? "" : formatDouble(batV));
-        writer.write(",");
+        writeEntry(writer, row);
+    }
+    
+    /**
+     * Writes an entry.  Null fields in the row are written as empty fields.  The row is not retained and
+     * may be refilled for the next entry.
+     */
+    protected final void writeEntry(Writer writer, LogEntryRow row) throws IOException {
+        getEntryWriter(writer).writeEntry(row);
+    }
+    
+    /**
+     * Returns the entry writer for the serial export of entries to the writer.  The running time
+     * accumulates across all entries written to the same writer.
+     */
+    protected final TrackLoggerCsvEntryWriter getEntryWriter(Writer writer) {
+        if (entryWriter == null || entryWriter.getWriter() != writer) {
+            entryWriter = new TrackLoggerCsvEntryWriter(writer, precisions, 0);
+        }
         
-        writer.write(timingCaptureTimestamp.toString());
-        writer.write(",");
-        writer.write(Integer.toString(lap));
-        writer.write(",");
-        writer.write(Integer.toString(splitIndex));
-        writer.write("\r\n");
+        return entryWriter;
     }
     
-    private String formatFloat(Float value) {
-        return String.format("%.20f", value);
+    /**
+     * Writes the header of the export to the stream, for instance from
+     * {@link PartitionedSessionExporter#exportHeader(OutputStream, int)}.  The stream is flushed.
+     */
+    protected final void writeHeader(OutputStream out, int sessionId) throws IOException {
+        Writer writer = createWriter(out);
+        writeHeader(writer, sessionId);
+        writer.flush();
+    }
+    
+    /**
+     * Returns a new entry writer for the entries in a partition of a partitioned export, whose running time
+     * starts at the initial running time of the partition.  Callers must flush the writer of the entry
+     * writer once the entries are written.
+     *
+     * @see PartitionedSessionExporter#exportPartition(OutputStream, int, ExportPartition)
+     */
+    protected final TrackLoggerCsvEntryWriter createEntryWriter(OutputStream out, ExportPartition partition) {
+        return new TrackLoggerCsvEntryWriter(createWriter(out), precisions, partition.getInitialRunningTime());
     }
     
-    private String formatDouble(Double value) {
-        return String.format("%.20f", value);
+    /**
+     * Returns a new entry writer for the entries appended by an incremental export, whose running time
+     * continues from that of the last entry in the export that took the checkpoint.  The header is not
+     * repeated.  Callers must flush the writer of the entry writer once the entries are written.
+     *
+     * @see IncrementalSessionExporter#exportIncrement(OutputStream, int, ExportCheckpoint)
+     */
+    protected final TrackLoggerCsvEntryWriter createEntryWriter(OutputStream out, ExportCheckpoint checkpoint) {
+        return new TrackLoggerCsvEntryWriter(createWriter(out), precisions, checkpoint.getRunningTime(),
+                checkpoint.getLastSynchTimestamp());
     }
     
     private void writeHeader(Writer writer, int sessionId) throws IOException {
@@ -166,6 +273,10 @@ public abstract class AbstractSessionToTrackLoggerCsvExporter extends
                 + "lap_capture_timestamp,lap,split\r\n");
     }
 
+    private Writer createWriter(OutputStream out) {
+        return new Utf8Writer(out);
+    }
+
     @Override
     protected String getFileExtension() {
         return "csv";
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+/**
+ * The columns of the {@link ColumnarSessionWriter columnar session format}, in the order in which they are
+ * stored.  Each channel has a fixed type.  Channels backed by a nullable {@link LogEntryRow.Field} record
+ * which values are null.
+ *
+ * @author David Valeri
+ */
+public enum ColumnarChannel {
+    SYNCH_TIMESTAMP("synch_timestamp", Type.LONG, null),
+    ACCEL_CAPTURE_TIMESTAMP("accel_capture_timestamp", Type.LONG, LogEntryRow.Field.ACCEL_CAPTURE_TIMESTAMP),
+    LONGITUDINAL_ACCEL("longitudinal_accel", Type.FLOAT, LogEntryRow.Field.LONGITUDINAL_ACCEL),
+    LATERAL_ACCEL("lateral_accel", Type.FLOAT, LogEntryRow.Field.LATERAL_ACCEL),
+    VERTICAL_ACCEL("vertical_accel", Type.FLOAT, LogEntryRow.Field.VERTICAL_ACCEL),
+    LOCATION_CAPTURE_TIMESTAMP("location_capture_timestamp", Type.LONG,
+            LogEntryRow.Field.LOCATION_CAPTURE_TIMESTAMP),
+    LOCATION_TIME_IN_DAY("location_time_in_day", Type.LONG, LogEntryRow.Field.LOCATION_TIME_IN_DAY),
+    LATITUDE("latitude", Type.DOUBLE, LogEntryRow.Field.LATITUDE),
+    LONGITUDE("longitude", Type.DOUBLE, LogEntryRow.Field.LONGITUDE),
+    ALTITUDE("altitude", Type.DOUBLE, LogEntryRow.Field.ALTITUDE),
+    SPEED("speed", Type.FLOAT, LogEntryRow.Field.SPEED),
+    BEARING("bearing", Type.FLOAT, LogEntryRow.Field.BEARING),
+    ECU_CAPTURE_TIMESTAMP("ecu_capture_timestamp", Type.LONG, LogEntryRow.Field.ECU_CAPTURE_TIMESTAMP),
+    RPM("rpm", Type.INT, LogEntryRow.Field.RPM),
+    MAP("map", Type.DOUBLE, LogEntryRow.Field.MAP),
+    MGP("mgp", Type.DOUBLE, LogEntryRow.Field.MGP),
+    THROTTLE_POSITION("throttle_position", Type.DOUBLE, LogEntryRow.Field.THROTTLE_POSITION),
+    AFR("afr", Type.DOUBLE, LogEntryRow.Field.AFR),
+    MAT("mat", Type.DOUBLE, LogEntryRow.Field.MAT),
+    CLT("clt", Type.DOUBLE, LogEntryRow.Field.CLT),
+    IGNITION_ADVANCE("ignition_advance", Type.DOUBLE, LogEntryRow.Field.IGNITION_ADVANCE),
+    BATTERY_VOLTAGE("battery_voltage", Type.DOUBLE, LogEntryRow.Field.BATTERY_VOLTAGE),
+    TIMING_CAPTURE_TIMESTAMP("lap_capture_timestamp", Type.LONG, LogEntryRow.Field.TIMING_CAPTURE_TIMESTAMP),
+    LAP("lap", Type.INT, null),
+    SPLIT_INDEX("split", Type.INT, null);
+    
+    /**
+     * The storage types of the channels.
+     */
+    public static enum Type {
+        INT(4),
+        LONG(8),
+        FLOAT(4),
+        DOUBLE(8);
+        
+        private final int size;
+        
+        private Type(int size) {
+            this.size = size;
+        }
+        
+        /**
+         * Returns the number of bytes used to store a value.
+         */
+        public int getSize() {
+            return size;
+        }
+        
+        boolean isFloatingPoint() {
+            return this == FLOAT || this == DOUBLE;
+        }
+    }
+    
+    private final String columnName;
+    private final Type type;
+    private final LogEntryRow.Field field;
+    
+    private ColumnarChannel(String columnName, Type type, LogEntryRow.Field field) {
+        this.columnName = columnName;
+        this.type = type;
+        this.field = field;
+    }
+    
+    /**
+     * Returns the name of the channel, matching the column name in the CSV export.
+     */
+    public String getColumnName() {
+        return columnName;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * Returns {@code true} if the values of the channel may be null.
+     */
+    public boolean isNullable() {
+        return field != null;
+    }
+    
+    /**
+     * Returns the field of the row holding the channel, or {@code null} if the channel is never null.
+     */
+    LogEntryRow.Field getField() {
+        return field;
+    }
+}
@@ -0,0 +1,452 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+/**
+ * Reads a file written by {@link ColumnarSessionWriter}.  The file is memory mapped and only the header and
+ * footer are read when the file is opened; the values of a channel are read from the mapping on demand, so
+ * reading the columns of a single lap touches only the blocks of that lap.  A reader may be shared by
+ * multiple threads once opened; the columns obtained from it may not.
+ * <p/>
+ * Usage:
+ * <pre>
+ * ColumnarSessionReader reader = new ColumnarSessionReader(file);
+ * try {
+ *     ColumnarSessionReader.Column speed = reader.getColumn(3, ColumnarChannel.SPEED);
+ *     for (int i = 0; i &lt; speed.getRowCount(); i++) {
+ *         if (!speed.isNull(i)) {
+ *             float value = speed.getFloat(i);
+ *         }
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ *
+ * @author David Valeri
+ */
+public final class ColumnarSessionReader implements Closeable {
+    
+    private static final ColumnarChannel[] CHANNELS = ColumnarChannel.values();
+    
+    private ByteBuffer buffer;
+    private final int sessionId;
+    private final Date sessionStartTime;
+    private final Block[] blocks;
+    private final int[] laps;
+    private final int[] lapFirstBlocks;
+    private final int[] lapBlockCounts;
+    private final int[] lapRowCounts;
+    private final int rowCount;
+    
+    /**
+     * Opens and maps the file.
+     *
+     * @throws IOException if the file cannot be read or is not in the columnar format
+     */
+    public ColumnarSessionReader(File file) throws IOException {
+        
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File '" + file.getAbsolutePath() + "' is too large to map.");
+            }
+            
+            // The mapping remains valid after the file is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        
+        try {
+            if (buffer.limit() < 12 || buffer.getInt(buffer.limit() - 4) != ColumnarSessionWriter.MAGIC
+                    || buffer.getInt(0) != ColumnarSessionWriter.MAGIC) {
+                throw new IOException("File '" + file.getAbsolutePath() + "' is not a columnar session file.");
+            }
+            
+            DataInputStream in = new DataInputStream(new BufferInputStream(buffer, 4));
+            
+            short version = in.readShort();
+            if (version != ColumnarSessionWriter.VERSION) {
+                throw new IOException("Unsupported columnar session file version " + version + ".");
+            }
+            
+            sessionId = in.readInt();
+            sessionStartTime = new Date(in.readLong());
+            
+            int channelCount = in.readInt();
+            if (channelCount != CHANNELS.length) {
+                throw new IOException("Unsupported channel count " + channelCount + ".");
+            }
+            
+            for (ColumnarChannel channel : CHANNELS) {
+                String columnName = in.readUTF();
+                int type = in.readByte();
+                if (!channel.getColumnName().equals(columnName) || channel.getType().ordinal() != type) {
+                    throw new IOException("Unsupported channel '" + columnName + "' of type " + type + ".");
+                }
+            }
+            
+            long footerOffset = buffer.getLong(buffer.limit() - 12);
+            in = new DataInputStream(new BufferInputStream(buffer, (int) footerOffset));
+            
+            blocks = new Block[in.readInt()];
+            int totalRowCount = 0;
+            for (int i = 0; i < blocks.length; i++) {
+                Block block = new Block((int) in.readLong(), in.readInt(), in.readInt());
+                for (int j = 0; j < CHANNELS.length; j++) {
+                    block.nullCounts[j] = in.readInt();
+                    block.mins[j] = in.readLong();
+                    block.maxs[j] = in.readLong();
+                }
+                blocks[i] = block;
+                totalRowCount += block.rowCount;
+            }
+            rowCount = totalRowCount;
+            
+            int lapCount = in.readInt();
+            laps = new int[lapCount];
+            lapFirstBlocks = new int[lapCount];
+            lapBlockCounts = new int[lapCount];
+            lapRowCounts = new int[lapCount];
+            for (int i = 0; i < lapCount; i++) {
+                laps[i] = in.readInt();
+                lapFirstBlocks[i] = in.readInt();
+                lapBlockCounts[i] = in.readInt();
+                lapRowCounts[i] = in.readInt();
+            }
+        } catch (IndexOutOfBoundsException e) {
+            IOException ioe = new IOException("File '" + file.getAbsolutePath() + "' is truncated.");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+    
+    public int getSessionId() {
+        return sessionId;
+    }
+    
+    public Date getSessionStartTime() {
+        return new Date(sessionStartTime.getTime());
+    }
+    
+    /**
+     * Returns the number of rows in the file.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    /**
+     * Returns the laps in the file in the order in which they were written.
+     */
+    public int[] getLaps() {
+        return laps.clone();
+    }
+    
+    /**
+     * Returns the number of rows in the lap.
+     *
+     * @throws IllegalArgumentException if the lap is not in the file
+     */
+    public int getRowCount(int lap) {
+        return lapRowCounts[getLapIndex(lap)];
+    }
+    
+    public int getBlockCount() {
+        return blocks.length;
+    }
+    
+    public Block getBlock(int index) {
+        return blocks[index];
+    }
+    
+    /**
+     * Returns the values of a channel for the entire file.
+     */
+    public Column getColumn(ColumnarChannel channel) {
+        checkOpen();
+        return new Column(channel, 0, blocks.length, rowCount);
+    }
+    
+    /**
+     * Returns the values of a channel in a lap.
+     *
+     * @throws IllegalArgumentException if the lap is not in the file
+     */
+    public Column getColumn(int lap, ColumnarChannel channel) {
+        checkOpen();
+        int lapIndex = getLapIndex(lap);
+        return new Column(channel, lapFirstBlocks[lapIndex], lapBlockCounts[lapIndex], lapRowCounts[lapIndex]);
+    }
+    
+    /**
+     * Releases the mapping.  Columns obtained from this reader must not be used after it is closed.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+    
+    private int getLapIndex(int lap) {
+        for (int i = 0; i < laps.length; i++) {
+            if (laps[i] == lap) {
+                return i;
+            }
+        }
+        
+        throw new IllegalArgumentException("Lap " + lap + " is not in the file.");
+    }
+    
+    private void checkOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("Reader is closed.");
+        }
+    }
+    
+    /**
+     * Returns the offset of the null bitmap, or of the values if the channel is not nullable, of a channel
+     * within a block.
+     */
+    private static int getChannelOffset(Block block, ColumnarChannel channel) {
+        int offset = block.offset + 4;
+        for (int i = 0; i < channel.ordinal(); i++) {
+            offset += getChannelLength(block.rowCount, CHANNELS[i]);
+        }
+        
+        return offset;
+    }
+    
+    private static int getChannelLength(int rowCount, ColumnarChannel channel) {
+        int length = rowCount * channel.getType().getSize();
+        if (channel.isNullable()) {
+            length += (rowCount + 7) / 8;
+        }
+        
+        return length;
+    }
+    
+    /**
+     * The statistics for a block of rows from a single lap.
+     */
+    public static final class Block {
+        
+        private final int offset;
+        private final int rowCount;
+        private final int lap;
+        private final int[] nullCounts = new int[CHANNELS.length];
+        private final long[] mins = new long[CHANNELS.length];
+        private final long[] maxs = new long[CHANNELS.length];
+        
+        private Block(int offset, int rowCount, int lap) {
+            this.offset = offset;
+            this.rowCount = rowCount;
+            this.lap = lap;
+        }
+        
+        public int getRowCount() {
+            return rowCount;
+        }
+        
+        public int getLap() {
+            return lap;
+        }
+        
+        public int getNullCount(ColumnarChannel channel) {
+            return nullCounts[channel.ordinal()];
+        }
+        
+        /**
+         * Returns the minimum non-null value of the channel in the block, or 0 if all values are null.
+         */
+        public double getMin(ColumnarChannel channel) {
+            return toDouble(channel, mins[channel.ordinal()]);
+        }
+        
+        /**
+         * Returns the maximum non-null value of the channel in the block, or 0 if all values are null.
+         */
+        public double getMax(ColumnarChannel channel) {
+            return toDouble(channel, maxs[channel.ordinal()]);
+        }
+        
+        private static double toDouble(ColumnarChannel channel, long value) {
+            return channel.getType().isFloatingPoint() ? Double.longBitsToDouble(value) : value;
+        }
+    }
+    
+    /**
+     * The values of a channel across a run of blocks, read directly from the mapping.
+     */
+    public final class Column {
+        
+        private final ColumnarChannel channel;
+        private final int rowCount;
+        private final int[] blockRowStarts;
+        private final int[] nullOffsets;
+        private final int[] valueOffsets;
+        private int lastBlock;
+        
+        private Column(ColumnarChannel channel, int firstBlock, int blockCount, int rowCount) {
+            this.channel = channel;
+            this.rowCount = rowCount;
+            blockRowStarts = new int[blockCount];
+            nullOffsets = new int[blockCount];
+            valueOffsets = new int[blockCount];
+            
+            int rowStart = 0;
+            for (int i = 0; i < blockCount; i++) {
+                Block block = blocks[firstBlock + i];
+                int offset = getChannelOffset(block, channel);
+                
+                blockRowStarts[i] = rowStart;
+                if (channel.isNullable()) {
+                    nullOffsets[i] = offset;
+                    valueOffsets[i] = offset + (block.rowCount + 7) / 8;
+                } else {
+                    nullOffsets[i] = -1;
+                    valueOffsets[i] = offset;
+                }
+                
+                rowStart += block.rowCount;
+            }
+        }
+        
+        public ColumnarChannel getChannel() {
+            return channel;
+        }
+        
+        public int getRowCount() {
+            return rowCount;
+        }
+        
+        public boolean isNull(int row) {
+            int block = findBlock(row);
+            if (nullOffsets[block] == -1) {
+                return false;
+            }
+            
+            int blockRow = row - blockRowStarts[block];
+            return (buffer.get(nullOffsets[block] + (blockRow >> 3)) & (1 << (blockRow & 7))) != 0;
+        }
+        
+        /**
+         * @throws IllegalStateException if the channel is not of type {@link ColumnarChannel.Type#INT}
+         */
+        public int getInt(int row) {
+            checkType(ColumnarChannel.Type.INT);
+            return buffer.getInt(getValueOffset(row));
+        }
+        
+        /**
+         * @throws IllegalStateException if the channel is not of an integral type
+         */
+        public long getLong(int row) {
+            if (channel.getType() == ColumnarChannel.Type.INT) {
+                return getInt(row);
+            }
+            
+            checkType(ColumnarChannel.Type.LONG);
+            return buffer.getLong(getValueOffset(row));
+        }
+        
+        /**
+         * @throws IllegalStateException if the channel is not of type {@link ColumnarChannel.Type#FLOAT}
+         */
+        public float getFloat(int row) {
+            checkType(ColumnarChannel.Type.FLOAT);
+            return buffer.getFloat(getValueOffset(row));
+        }
+        
+        /**
+         * @throws IllegalStateException if the channel is not of a floating point type
+         */
+        public double getDouble(int row) {
+            if (channel.getType() == ColumnarChannel.Type.FLOAT) {
+                return getFloat(row);
+            }
+            
+            checkType(ColumnarChannel.Type.DOUBLE);
+            return buffer.getDouble(getValueOffset(row));
+        }
+        
+        private int getValueOffset(int row) {
+            int block = findBlock(row);
+            return valueOffsets[block] + (row - blockRowStarts[block]) * channel.getType().getSize();
+        }
+        
+        private int findBlock(int row) {
+            if (row < 0 || row >= rowCount) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount + ".");
+            }
+            
+            // Rows are typically read in order, so start with the block of the previous row.
+            int block = lastBlock;
+            if (row < blockRowStarts[block]) {
+                block = 0;
+            }
+            
+            while (block + 1 < blockRowStarts.length && row >= blockRowStarts[block + 1]) {
+                block++;
+            }
+            
+            lastBlock = block;
+            return block;
+        }
+        
+        private void checkType(ColumnarChannel.Type type) {
+            if (channel.getType() != type) {
+                throw new IllegalStateException("Channel " + channel + " is of type " + channel.getType() + ".");
+            }
+        }
+    }
+    
+    /**
+     * Reads the header and footer sequentially from the mapping without moving the position of the shared
+     * buffer.
+     */
+    private static final class BufferInputStream extends InputStream {
+        
+        private final ByteBuffer buffer;
+        private int position;
+        
+        public BufferInputStream(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+        
+        @Override
+        public int read() {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+            
+            return buffer.get(position++) & 0xFF;
+        }
+    }
+}
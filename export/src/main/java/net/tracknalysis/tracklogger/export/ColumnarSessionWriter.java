@@ -0,0 +1,414 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes the entries of a session in the TrackLogger columnar binary format, read by
+ * {@link ColumnarSessionReader}.  Rows are buffered into blocks of up to the block size; each block holds
+ * the rows of a single lap and stores the values of each {@link ColumnarChannel} contiguously.  The footer
+ * records the minimum, maximum, and null count of each channel in each block along with an index of the
+ * blocks in each lap, so readers can go straight to the columns of a lap.
+ * <p/>
+ * All values are big-endian.  The layout of the file is:
+ * <pre>
+ * header:  int magic, short version, int session ID, long session start time,
+ *          int channel count, {UTF column name, byte type ordinal} per channel
+ * block:   int row count, {null bitmap if nullable, values} per channel
+ * footer:  int block count, {long offset, int row count, int lap,
+ *              {int null count, long min, long max} per channel} per block,
+ *          int lap count, {int lap, int first block, int block count, int row count} per lap
+ * trailer: long footer offset, int magic
+ * </pre>
+ * Null bitmaps hold one bit per row, least significant bit first, set when the value is null.  Null values
+ * are stored as 0.  The minimum and maximum of integral channels are stored as longs and those of floating
+ * point channels as the bits of a double.  NaN values are not included in the statistics.
+ *
+ * @author David Valeri
+ */
+public final class ColumnarSessionWriter {
+    
+    static final int MAGIC = 0x544C4342;
+    static final short VERSION = 1;
+    
+    /**
+     * The maximum number of rows in a block by default.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    
+    private static final ColumnarChannel[] CHANNELS = ColumnarChannel.values();
+    
+    private final CountingOutputStream countingOut;
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final long[][] longValues = new long[CHANNELS.length][];
+    private final double[][] doubleValues = new double[CHANNELS.length][];
+    private final byte[][] nullBitmaps = new byte[CHANNELS.length][];
+    private final List<BlockInfo> blocks = new ArrayList<BlockInfo>();
+    private int rowCount;
+    private int blockLap;
+    private boolean finished;
+    
+    public ColumnarSessionWriter(OutputStream out, int sessionId, Date sessionStartTime) throws IOException {
+        this(out, sessionId, sessionStartTime, DEFAULT_BLOCK_SIZE);
+    }
+    
+    /**
+     * Writes the header to the stream.
+     *
+     * @param out the stream to write to
+     * @param sessionId the ID of the session
+     * @param sessionStartTime the start time of the session
+     * @param blockSize the maximum number of rows in a block
+     *
+     * @throws IllegalArgumentException if the block size is not positive
+     */
+    public ColumnarSessionWriter(OutputStream out, int sessionId, Date sessionStartTime, int blockSize)
+            throws IOException {
+        
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive.");
+        }
+        
+        this.countingOut = new CountingOutputStream(out);
+        this.out = new DataOutputStream(countingOut);
+        this.blockSize = blockSize;
+        
+        for (ColumnarChannel channel : CHANNELS) {
+            if (channel.getType().isFloatingPoint()) {
+                doubleValues[channel.ordinal()] = new double[blockSize];
+            } else {
+                longValues[channel.ordinal()] = new long[blockSize];
+            }
+            
+            if (channel.isNullable()) {
+                nullBitmaps[channel.ordinal()] = new byte[(blockSize + 7) / 8];
+            }
+        }
+        
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+        this.out.writeInt(sessionId);
+        this.out.writeLong(sessionStartTime.getTime());
+        this.out.writeInt(CHANNELS.length);
+        for (ColumnarChannel channel : CHANNELS) {
+            this.out.writeUTF(channel.getColumnName());
+            this.out.writeByte(channel.getType().ordinal());
+        }
+    }
+    
+    /**
+     * Adds a row.  Rows must be added in the order in which they were recorded.  The row is not retained and
+     * may be refilled for the next entry.
+     *
+     * @throws IllegalStateException if the writer has been finished
+     */
+    public void writeRow(LogEntryRow row) throws IOException {
+        
+        if (finished) {
+            throw new IllegalStateException("Writer is finished.");
+        }
+        
+        if (rowCount == blockSize || (rowCount > 0 && row.getLap() != blockLap)) {
+            writeBlock();
+        }
+        
+        if (rowCount == 0) {
+            blockLap = row.getLap();
+        }
+        
+        for (ColumnarChannel channel : CHANNELS) {
+            int index = channel.ordinal();
+            
+            if (channel.isNullable() && row.isNull(channel.getField())) {
+                nullBitmaps[index][rowCount >> 3] |= 1 << (rowCount & 7);
+                if (channel.getType().isFloatingPoint()) {
+                    doubleValues[index][rowCount] = 0;
+                } else {
+                    longValues[index][rowCount] = 0;
+                }
+            } else if (channel.getType().isFloatingPoint()) {
+                doubleValues[index][rowCount] = getDouble(row, channel);
+            } else {
+                longValues[index][rowCount] = getLong(row, channel);
+            }
+        }
+        
+        rowCount++;
+    }
+    
+    /**
+     * Writes any buffered rows, the footer, and the trailer, then flushes the stream.  The stream is not
+     * closed.
+     */
+    public void finish() throws IOException {
+        
+        if (finished) {
+            return;
+        }
+        
+        if (rowCount > 0) {
+            writeBlock();
+        }
+        
+        long footerOffset = countingOut.getCount();
+        
+        out.writeInt(blocks.size());
+        for (BlockInfo block : blocks) {
+            out.writeLong(block.offset);
+            out.writeInt(block.rowCount);
+            out.writeInt(block.lap);
+            for (int i = 0; i < CHANNELS.length; i++) {
+                out.writeInt(block.nullCounts[i]);
+                out.writeLong(block.mins[i]);
+                out.writeLong(block.maxs[i]);
+            }
+        }
+        
+        List<int[]> laps = new ArrayList<int[]>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BlockInfo block = blocks.get(i);
+            int[] lap = laps.isEmpty() ? null : laps.get(laps.size() - 1);
+            
+            if (lap == null || lap[0] != block.lap) {
+                laps.add(new int[] {block.lap, i, 1, block.rowCount});
+            } else {
+                lap[2]++;
+                lap[3] += block.rowCount;
+            }
+        }
+        
+        out.writeInt(laps.size());
+        for (int[] lap : laps) {
+            for (int value : lap) {
+                out.writeInt(value);
+            }
+        }
+        
+        out.writeLong(footerOffset);
+        out.writeInt(MAGIC);
+        out.flush();
+        
+        finished = true;
+    }
+    
+    private void writeBlock() throws IOException {
+        
+        BlockInfo block = new BlockInfo(countingOut.getCount(), rowCount, blockLap);
+        
+        out.writeInt(rowCount);
+        
+        for (ColumnarChannel channel : CHANNELS) {
+            int index = channel.ordinal();
+            byte[] nullBitmap = nullBitmaps[index];
+            
+            if (nullBitmap != null) {
+                out.write(nullBitmap, 0, (rowCount + 7) / 8);
+            }
+            
+            int nullCount = 0;
+            boolean statsSet = false;
+            
+            if (channel.getType().isFloatingPoint()) {
+                double[] values = doubleValues[index];
+                double min = 0;
+                double max = 0;
+                
+                for (int row = 0; row < rowCount; row++) {
+                    double value = values[row];
+                    
+                    if (channel.getType() == ColumnarChannel.Type.FLOAT) {
+                        out.writeFloat((float) value);
+                    } else {
+                        out.writeDouble(value);
+                    }
+                    
+                    if (nullBitmap != null && (nullBitmap[row >> 3] & (1 << (row & 7))) != 0) {
+                        nullCount++;
+                    } else if (!Double.isNaN(value)) {
+                        if (!statsSet) {
+                            min = value;
+                            max = value;
+                            statsSet = true;
+                        } else if (value < min) {
+                            min = value;
+                        } else if (value > max) {
+                            max = value;
+                        }
+                    }
+                }
+                
+                block.mins[index] = Double.doubleToLongBits(min);
+                block.maxs[index] = Double.doubleToLongBits(max);
+            } else {
+                long[] values = longValues[index];
+                long min = 0;
+                long max = 0;
+                
+                for (int row = 0; row < rowCount; row++) {
+                    long value = values[row];
+                    
+                    if (channel.getType() == ColumnarChannel.Type.INT) {
+                        out.writeInt((int) value);
+                    } else {
+                        out.writeLong(value);
+                    }
+                    
+                    if (nullBitmap != null && (nullBitmap[row >> 3] & (1 << (row & 7))) != 0) {
+                        nullCount++;
+                    } else if (!statsSet) {
+                        min = value;
+                        max = value;
+                        statsSet = true;
+                    } else if (value < min) {
+                        min = value;
+                    } else if (value > max) {
+                        max = value;
+                    }
+                }
+                
+                block.mins[index] = min;
+                block.maxs[index] = max;
+            }
+            
+            block.nullCounts[index] = nullCount;
+            
+            if (nullBitmap != null) {
+                Arrays.fill(nullBitmap, (byte) 0);
+            }
+        }
+        
+        blocks.add(block);
+        rowCount = 0;
+    }
+    
+    private static long getLong(LogEntryRow row, ColumnarChannel channel) {
+        switch (channel) {
+            case SYNCH_TIMESTAMP:
+                return row.getSynchTimestamp();
+            case ACCEL_CAPTURE_TIMESTAMP:
+                return row.getAccelCaptureTimestamp();
+            case LOCATION_CAPTURE_TIMESTAMP:
+                return row.getLocationCaptureTimestamp();
+            case LOCATION_TIME_IN_DAY:
+                return row.getLocationTimeInDay();
+            case ECU_CAPTURE_TIMESTAMP:
+                return row.getEcuCaptureTimestamp();
+            case RPM:
+                return row.getRpm();
+            case TIMING_CAPTURE_TIMESTAMP:
+                return row.getTimingCaptureTimestamp();
+            case LAP:
+                return row.getLap();
+            case SPLIT_INDEX:
+                return row.getSplitIndex();
+            default:
+                throw new IllegalArgumentException("Channel " + channel + " is not integral.");
+        }
+    }
+    
+    private static double getDouble(LogEntryRow row, ColumnarChannel channel) {
+        switch (channel) {
+            case LONGITUDINAL_ACCEL:
+                return row.getLongitudinalAccel();
+            case LATERAL_ACCEL:
+                return row.getLateralAccel();
+            case VERTICAL_ACCEL:
+                return row.getVerticalAccel();
+            case LATITUDE:
+                return row.getLatitude();
+            case LONGITUDE:
+                return row.getLongitude();
+            case ALTITUDE:
+                return row.getAltitude();
+            case SPEED:
+                return row.getSpeed();
+            case BEARING:
+                return row.getBearing();
+            case MAP:
+                return row.getMap();
+            case MGP:
+                return row.getMgp();
+            case THROTTLE_POSITION:
+                return row.getThrottlePosition();
+            case AFR:
+                return row.getAfr();
+            case MAT:
+                return row.getMat();
+            case CLT:
+                return row.getClt();
+            case IGNITION_ADVANCE:
+                return row.getIgnitionAdvance();
+            case BATTERY_VOLTAGE:
+                return row.getBatteryVoltage();
+            default:
+                throw new IllegalArgumentException("Channel " + channel + " is not floating point.");
+        }
+    }
+    
+    private static final class BlockInfo {
+        
+        private final long offset;
+        private final int rowCount;
+        private final int lap;
+        private final int[] nullCounts = new int[CHANNELS.length];
+        private final long[] mins = new long[CHANNELS.length];
+        private final long[] maxs = new long[CHANNELS.length];
+        
+        public BlockInfo(long offset, int rowCount, int lap) {
+            this.offset = offset;
+            this.rowCount = rowCount;
+            this.lap = lap;
+        }
+    }
+    
+    /**
+     * Tracks the number of bytes written so that block offsets are not limited by
+     * {@link DataOutputStream#size()}.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        
+        private long count;
+        
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * Formats numbers as plain decimal text into a reused buffer, avoiding the {@link java.util.Formatter}
+ * and intermediate strings that {@link String#format(String, Object...)} creates for every value.
+ * <p/>
+ * Fixed precision output is identical to {@code String.format(Locale.US, "%.<precision>f", value)}.
+ * As with the formatter, the shortest decimal that uniquely identifies the double is rounded half up to
+ * the requested number of fraction digits and padded with zeros, and a {@code float} is formatted as the
+ * double with the same value.  {@link #SHORTEST Shortest} output writes the fewest digits that parse
+ * back to the same {@code float} or {@code double}, always with at least one fraction digit.
+ * <p/>
+ * The shortest digits are generated with the Grisu3 algorithm using 64-bit integer arithmetic.  Grisu3
+ * detects the small fraction of values for which it cannot prove that its digits are the shortest and
+ * closest; those values, along with NaN, the infinities and fixed precision output for magnitudes of
+ * 2^53 and above, are formatted through the JDK instead.
+ * <p/>
+ * Instances are not thread-safe.
+ *
+ * @author David Valeri
+ */
+public final class DecimalFormatter {
+    
+    /**
+     * Precision that requests the shortest decimal that parses back to the same value.
+     */
+    public static final int SHORTEST = -1;
+    
+    /**
+     * The largest supported number of fraction digits.
+     */
+    public static final int MAX_PRECISION = 20;
+    
+    private static final long SIGN_MASK = 0x8000000000000000L;
+    private static final long EXPONENT_MASK = 0x7FF0000000000000L;
+    private static final long SIGNIFICAND_MASK = 0x000FFFFFFFFFFFFFL;
+    private static final long HIDDEN_BIT = 0x0010000000000000L;
+    private static final int EXPONENT_BIAS = 0x3FF + 52;
+    private static final int DENORMAL_EXPONENT = -EXPONENT_BIAS + 1;
+    
+    private static final int FLOAT_EXPONENT_MASK = 0x7F800000;
+    private static final int FLOAT_SIGNIFICAND_MASK = 0x007FFFFF;
+    private static final int FLOAT_HIDDEN_BIT = 0x00800000;
+    private static final int FLOAT_EXPONENT_BIAS = 0x7F + 23;
+    private static final int FLOAT_DENORMAL_EXPONENT = -FLOAT_EXPONENT_BIAS + 1;
+    
+    private static final long MASK_32 = 0xFFFFFFFFL;
+    
+    /**
+     * The JDK formats integral doubles at or above 2^53 from their exact integer value rather than from
+     * their shortest digits, so fixed precision output for them is left to the JDK.
+     */
+    private static final double EXACT_INTEGER_LIMIT = 9007199254740992d;
+    
+    /**
+     * The range of binary exponents for the scaled values in digit generation.
+     */
+    private static final int MINIMAL_TARGET_EXPONENT = -60;
+    
+    private static final double D_1_LOG2_10 = 0.30102999566398114;
+    private static final int CACHED_POWERS_OFFSET = 348;
+    private static final int DECIMAL_EXPONENT_DISTANCE = 8;
+    
+    /**
+     * Normalized 64-bit significands of 10^k for k from -348 to 340 in steps of 8, rounded to nearest.
+     */
+    private static final long[] CACHED_POWER_SIGNIFICANDS = {
+        0xfa8fd5a0081c0288L, 0xbaaee17fa23ebf76L, 0x8b16fb203055ac76L,
+        0xcf42894a5dce35eaL, 0x9a6bb0aa55653b2dL, 0xe61acf033d1a45dfL,
+        0xab70fe17c79ac6caL, 0xff77b1fcbebcdc4fL, 0xbe5691ef416bd60cL,
+        0x8dd01fad907ffc3cL, 0xd3515c2831559a83L, 0x9d71ac8fada6c9b5L,
+        0xea9c227723ee8bcbL, 0xaecc49914078536dL, 0x823c12795db6ce57L,
+        0xc21094364dfb5637L, 0x9096ea6f3848984fL, 0xd77485cb25823ac7L,
+        0xa086cfcd97bf97f4L, 0xef340a98172aace5L, 0xb23867fb2a35b28eL,
+        0x84c8d4dfd2c63f3bL, 0xc5dd44271ad3cdbaL, 0x936b9fcebb25c996L,
+        0xdbac6c247d62a584L, 0xa3ab66580d5fdaf6L, 0xf3e2f893dec3f126L,
+        0xb5b5ada8aaff80b8L, 0x87625f056c7c4a8bL, 0xc9bcff6034c13053L,
+        0x964e858c91ba2655L, 0xdff9772470297ebdL, 0xa6dfbd9fb8e5b88fL,
+        0xf8a95fcf88747d94L, 0xb94470938fa89bcfL, 0x8a08f0f8bf0f156bL,
+        0xcdb02555653131b6L, 0x993fe2c6d07b7facL, 0xe45c10c42a2b3b06L,
+        0xaa242499697392d3L, 0xfd87b5f28300ca0eL, 0xbce5086492111aebL,
+        0x8cbccc096f5088ccL, 0xd1b71758e219652cL, 0x9c40000000000000L,
+        0xe8d4a51000000000L, 0xad78ebc5ac620000L, 0x813f3978f8940984L,
+        0xc097ce7bc90715b3L, 0x8f7e32ce7bea5c70L, 0xd5d238a4abe98068L,
+        0x9f4f2726179a2245L, 0xed63a231d4c4fb27L, 0xb0de65388cc8ada8L,
+        0x83c7088e1aab65dbL, 0xc45d1df942711d9aL, 0x924d692ca61be758L,
+        0xda01ee641a708deaL, 0xa26da3999aef774aL, 0xf209787bb47d6b85L,
+        0xb454e4a179dd1877L, 0x865b86925b9bc5c2L, 0xc83553c5c8965d3dL,
+        0x952ab45cfa97a0b3L, 0xde469fbd99a05fe3L, 0xa59bc234db398c25L,
+        0xf6c69a72a3989f5cL, 0xb7dcbf5354e9beceL, 0x88fcf317f22241e2L,
+        0xcc20ce9bd35c78a5L, 0x98165af37b2153dfL, 0xe2a0b5dc971f303aL,
+        0xa8d9d1535ce3b396L, 0xfb9b7cd9a4a7443cL, 0xbb764c4ca7a44410L,
+        0x8bab8eefb6409c1aL, 0xd01fef10a657842cL, 0x9b10a4e5e9913129L,
+        0xe7109bfba19c0c9dL, 0xac2820d9623bf429L, 0x80444b5e7aa7cf85L,
+        0xbf21e44003acdd2dL, 0x8e679c2f5e44ff8fL, 0xd433179d9c8cb841L,
+        0x9e19db92b4e31ba9L, 0xeb96bf6ebadf77d9L, 0xaf87023b9bf0ee6bL
+    };
+    
+    /**
+     * Binary exponents of {@link #CACHED_POWER_SIGNIFICANDS}.
+     */
+    private static final int[] CACHED_POWER_BINARY_EXPONENTS = {
+        -1220, -1193, -1166, -1140, -1113, -1087, -1060, -1034, -1007, -980,
+        -954, -927, -901, -874, -847, -821, -794, -768, -741, -715,
+        -688, -661, -635, -608, -582, -555, -529, -502, -475, -449,
+        -422, -396, -369, -343, -316, -289, -263, -236, -210, -183,
+        -157, -130, -103, -77, -50, -24, 3, 30, 56, 83,
+        109, 136, 162, 189, 216, 242, 269, 295, 322, 348,
+        375, 402, 428, 455, 481, 508, 534, 561, 588, 614,
+        641, 667, 694, 720, 747, 774, 800, 827, 853, 880,
+        907, 933, 960, 986, 1013, 1039, 1066
+    };
+    
+    /**
+     * Large enough for a sign, "0.", the 323 leading zeros of the smallest denormal and 17 significant
+     * digits, which is longer than any fixed precision output of 309 integer digits and
+     * {@link #MAX_PRECISION} fraction digits.
+     */
+    private static final int BUFFER_SIZE = 1 + 2 + 323 + 17;
+    
+    private final char[] chars = new char[BUFFER_SIZE];
+    private final char[] digits = new char[18];
+    private int digitCount;
+    
+    /**
+     * The exponent such that the value is {@link #digits} times 10 to the exponent.
+     */
+    private int decimalExponent;
+    
+    /**
+     * Writes a double.
+     *
+     * @param writer the writer to write to
+     * @param value the value to write
+     * @param precision the number of fraction digits or {@link #SHORTEST}
+     *
+     * @throws IllegalArgumentException if the precision is not supported
+     * @throws IOException if there is an error writing
+     */
+    public void write(Writer writer, double value, int precision) throws IOException {
+        int length = format(value, false, precision);
+        
+        if (length < 0) {
+            writer.write(formatSlow(value, false, precision));
+        } else {
+            writer.write(chars, 0, length);
+        }
+    }
+    
+    /**
+     * Writes a float.  In {@link #SHORTEST} mode the digits are the fewest that identify the float
+     * rather than the double with the same value.
+     *
+     * @see #write(Writer, double, int)
+     */
+    public void write(Writer writer, float value, int precision) throws IOException {
+        int length = format(value, true, precision);
+        
+        if (length < 0) {
+            writer.write(formatSlow(value, true, precision));
+        } else {
+            writer.write(chars, 0, length);
+        }
+    }
+    
+    /**
+     * Writes a long in decimal.
+     *
+     * @param writer the writer to write to
+     * @param value the value to write
+     *
+     * @throws IOException if there is an error writing
+     */
+    public void write(Writer writer, long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writer.write(Long.toString(value));
+            return;
+        }
+        
+        int position = chars.length;
+        long remaining = value < 0 ? -value : value;
+        
+        do {
+            chars[--position] = (char) ('0' + (int) (remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+        
+        if (value < 0) {
+            chars[--position] = '-';
+        }
+        
+        writer.write(chars, position, chars.length - position);
+    }
+    
+    /**
+     * Returns the formatted double.  Intended for callers that need a {@link String} anyway; use
+     * {@link #write(Writer, double, int)} to avoid allocation.
+     *
+     * @see #write(Writer, double, int)
+     */
+    public String format(double value, int precision) {
+        int length = format(value, false, precision);
+        return length < 0 ? formatSlow(value, false, precision) : new String(chars, 0, length);
+    }
+    
+    /**
+     * Returns the formatted float.
+     *
+     * @see #write(Writer, float, int)
+     */
+    public String format(float value, int precision) {
+        int length = format(value, true, precision);
+        return length < 0 ? formatSlow(value, true, precision) : new String(chars, 0, length);
+    }
+    
+    /**
+     * Formats the value into {@link #chars}.
+     *
+     * @return the number of characters written or -1 if the value must be formatted by the JDK
+     */
+    private int format(double value, boolean singlePrecision, int precision) {
+        if (precision < SHORTEST || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Unsupported precision " + precision + ".");
+        }
+        
+        long bits = Double.doubleToRawLongBits(value);
+        
+        if ((bits & EXPONENT_MASK) == EXPONENT_MASK) {
+            // NaN or infinite
+            return -1;
+        }
+        
+        int position = 0;
+        if ((bits & SIGN_MASK) != 0) {
+            chars[position++] = '-';
+        }
+        
+        if (precision != SHORTEST && Math.abs(value) >= EXACT_INTEGER_LIMIT) {
+            return -1;
+        } else if (value == 0) {
+            digits[0] = '0';
+            digitCount = 1;
+            decimalExponent = 0;
+        } else if (!generateShortest(Math.abs(value), singlePrecision && precision == SHORTEST)) {
+            return -1;
+        }
+        
+        if (precision == SHORTEST) {
+            return writeShortest(position);
+        } else {
+            return writeFixed(position, precision);
+        }
+    }
+    
+    private int writeFixed(int position, int precision) {
+        int pointPosition = digitCount + decimalExponent;
+        int count = digitCount;
+        // The number of significant digits that lie within the requested precision.  Digits before
+        // the first fraction digit that is written are truncated rather than rounded, which only
+        // discards digits more than one place past the precision.
+        int keep = pointPosition + precision;
+        
+        if (keep >= 0 && keep < count) {
+            boolean roundUp = digits[keep] >= '5';
+            count = keep;
+            
+            if (roundUp) {
+                int i = keep - 1;
+                while (i >= 0 && digits[i] == '9') {
+                    i--;
+                }
+                
+                if (i < 0) {
+                    digits[0] = '1';
+                    count = 1;
+                    pointPosition++;
+                } else {
+                    digits[i]++;
+                    count = i + 1;
+                }
+            }
+        }
+        
+        if (pointPosition <= 0) {
+            chars[position++] = '0';
+        } else {
+            for (int i = 0; i < pointPosition; i++) {
+                chars[position++] = i < count ? digits[i] : '0';
+            }
+        }
+        
+        if (precision > 0) {
+            chars[position++] = '.';
+            
+            for (int i = pointPosition; i < pointPosition + precision; i++) {
+                chars[position++] = i >= 0 && i < count ? digits[i] : '0';
+            }
+        }
+        
+        return position;
+    }
+    
+    private int writeShortest(int position) {
+        int pointPosition = digitCount + decimalExponent;
+        
+        if (pointPosition <= 0) {
+            chars[position++] = '0';
+            chars[position++] = '.';
+            for (int i = pointPosition; i < 0; i++) {
+                chars[position++] = '0';
+            }
+            System.arraycopy(digits, 0, chars, position, digitCount);
+            position += digitCount;
+        } else if (pointPosition >= digitCount) {
+            System.arraycopy(digits, 0, chars, position, digitCount);
+            position += digitCount;
+            for (int i = digitCount; i < pointPosition; i++) {
+                chars[position++] = '0';
+            }
+            chars[position++] = '.';
+            chars[position++] = '0';
+        } else {
+            System.arraycopy(digits, 0, chars, position, pointPosition);
+            position += pointPosition;
+            chars[position++] = '.';
+            System.arraycopy(digits, pointPosition, chars, position, digitCount - pointPosition);
+            position += digitCount - pointPosition;
+        }
+        
+        return position;
+    }
+    
+    private static String formatSlow(double value, boolean singlePrecision, int precision) {
+        if (precision != SHORTEST) {
+            return String.format(Locale.US, "%." + precision + "f", value);
+        }
+        
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.toString(value);
+        }
+        
+        String plain = new BigDecimal(singlePrecision ? Float.toString((float) value) : Double.toString(value))
+                .stripTrailingZeros().toPlainString();
+        
+        return plain.indexOf('.') == -1 ? plain + ".0" : plain;
+    }
+    
+    /**
+     * Generates the shortest digits of a positive, finite value into {@link #digits} using Grisu3.
+     *
+     * @param value the value
+     * @param singlePrecision true if the digits should identify the value as a float
+     *
+     * @return false if the digits could not be proven to be the shortest and closest
+     */
+    private boolean generateShortest(double value, boolean singlePrecision) {
+        long f;
+        int e;
+        boolean lowerBoundaryIsCloser;
+        
+        if (singlePrecision) {
+            int bits = Float.floatToRawIntBits((float) value);
+            int biasedExponent = (bits & FLOAT_EXPONENT_MASK) >>> 23;
+            int significand = bits & FLOAT_SIGNIFICAND_MASK;
+            
+            if (biasedExponent != 0) {
+                f = significand | FLOAT_HIDDEN_BIT;
+                e = biasedExponent - FLOAT_EXPONENT_BIAS;
+            } else {
+                f = significand;
+                e = FLOAT_DENORMAL_EXPONENT;
+            }
+            
+            lowerBoundaryIsCloser = significand == 0 && biasedExponent > 1;
+        } else {
+            long bits = Double.doubleToRawLongBits(value);
+            int biasedExponent = (int) ((bits & EXPONENT_MASK) >>> 52);
+            long significand = bits & SIGNIFICAND_MASK;
+            
+            if (biasedExponent != 0) {
+                f = significand | HIDDEN_BIT;
+                e = biasedExponent - EXPONENT_BIAS;
+            } else {
+                f = significand;
+                e = DENORMAL_EXPONENT;
+            }
+            
+            lowerBoundaryIsCloser = significand == 0 && biasedExponent > 1;
+        }
+        
+        // The boundaries are the midpoints between the value and its neighbors.
+        long plusF = (f << 1) + 1;
+        int plusE = e - 1;
+        int shift = Long.numberOfLeadingZeros(plusF);
+        plusF <<= shift;
+        plusE -= shift;
+        
+        long minusF;
+        int minusE;
+        if (lowerBoundaryIsCloser) {
+            minusF = (f << 2) - 1;
+            minusE = e - 2;
+        } else {
+            minusF = (f << 1) - 1;
+            minusE = e - 1;
+        }
+        minusF <<= minusE - plusE;
+        
+        // Normalizing the value gives the same exponent as the upper boundary.
+        long wF = f << Long.numberOfLeadingZeros(f);
+        int wE = plusE;
+        
+        // Scale by a cached power of ten such that the binary exponent of the product lies in the target
+        // range.
+        int k = (int) Math.ceil((MINIMAL_TARGET_EXPONENT - (wE + 64) + 63) * D_1_LOG2_10);
+        int index = (CACHED_POWERS_OFFSET + k - 1) / DECIMAL_EXPONENT_DISTANCE + 1;
+        long cachedF = CACHED_POWER_SIGNIFICANDS[index];
+        int cachedDecimalExponent = index * DECIMAL_EXPONENT_DISTANCE - CACHED_POWERS_OFFSET;
+        int scaledE = wE + CACHED_POWER_BINARY_EXPONENTS[index] + 64;
+        
+        long scaledW = multiply(wF, cachedF);
+        long scaledMinus = multiply(minusF, cachedF);
+        long scaledPlus = multiply(plusF, cachedF);
+        
+        return generateDigits(scaledMinus, scaledW, scaledPlus, scaledE, cachedDecimalExponent);
+    }
+    
+    /**
+     * Generates the shortest digits within the scaled boundaries, which are widened by one unit to
+     * account for the imprecision of the scaling, and then verifies that the digits lie within the
+     * unwidened boundaries and are the closest to the scaled value.
+     */
+    private boolean generateDigits(long low, long w, long high, int e, int cachedDecimalExponent) {
+        long unit = 1;
+        long tooLow = low - unit;
+        long tooHigh = high + unit;
+        long unsafeInterval = tooHigh - tooLow;
+        
+        int oneShift = -e;
+        long one = 1L << oneShift;
+        long fractionMask = one - 1;
+        long integrals = tooHigh >>> oneShift;
+        long fractionals = tooHigh & fractionMask;
+        
+        long divisor = 1000000000L;
+        int kappa = 10;
+        while (kappa > 0 && integrals < divisor) {
+            divisor /= 10;
+            kappa--;
+        }
+        
+        int length = 0;
+        
+        while (kappa > 0) {
+            digits[length++] = (char) ('0' + (int) (integrals / divisor));
+            integrals %= divisor;
+            kappa--;
+            
+            long rest = (integrals << oneShift) + fractionals;
+            if (lessThan(rest, unsafeInterval)) {
+                digitCount = length;
+                decimalExponent = kappa - cachedDecimalExponent;
+                return roundWeed(tooHigh - w, unsafeInterval, rest, divisor << oneShift, unit);
+            }
+            
+            divisor /= 10;
+        }
+        
+        while (length < digits.length) {
+            fractionals *= 10;
+            unit *= 10;
+            unsafeInterval *= 10;
+            
+            digits[length++] = (char) ('0' + (int) (fractionals >>> oneShift));
+            fractionals &= fractionMask;
+            kappa--;
+            
+            if (lessThan(fractionals, unsafeInterval)) {
+                digitCount = length;
+                decimalExponent = kappa - cachedDecimalExponent;
+                return roundWeed((tooHigh - w) * unit, unsafeInterval, fractionals, one, unit);
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Moves the last digit towards the scaled value while the digits remain within the safe interval
+     * and verifies the result.
+     */
+    private boolean roundWeed(long distanceTooHighW, long unsafeInterval, long rest, long tenKappa,
+            long unit) {
+        
+        long smallDistance = distanceTooHighW - unit;
+        long bigDistance = distanceTooHighW + unit;
+        
+        while (lessThan(rest, smallDistance)
+                && !lessThan(unsafeInterval - rest, tenKappa)
+                && (lessThan(rest + tenKappa, smallDistance)
+                        || !lessThan(smallDistance - rest, rest + tenKappa - smallDistance))) {
+            digits[digitCount - 1]--;
+            rest += tenKappa;
+        }
+        
+        // If the digits could also be moved towards the value from the other end of the uncertainty,
+        // the closest representation cannot be determined.
+        if (lessThan(rest, bigDistance)
+                && !lessThan(unsafeInterval - rest, tenKappa)
+                && (lessThan(rest + tenKappa, bigDistance)
+                        || lessThan(rest + tenKappa - bigDistance, bigDistance - rest))) {
+            return false;
+        }
+        
+        return !lessThan(rest, 2 * unit) && !lessThan(unsafeInterval - 4 * unit, rest);
+    }
+    
+    /**
+     * Returns the upper 64 bits of the unsigned 128-bit product, rounded.
+     */
+    private static long multiply(long x, long y) {
+        long a = x >>> 32;
+        long b = x & MASK_32;
+        long c = y >>> 32;
+        long d = y & MASK_32;
+        long ac = a * c;
+        long bc = b * c;
+        long ad = a * d;
+        long bd = b * d;
+        long tmp = (bd >>> 32) + (ad & MASK_32) + (bc & MASK_32) + (1L << 31);
+        
+        return ac + (ad >>> 32) + (bc >>> 32) + (tmp >>> 32);
+    }
+    
+    /**
+     * Unsigned comparison.
+     */
+    private static boolean lessThan(long x, long y) {
+        return (x ^ Long.MIN_VALUE) < (y ^ Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of export files bounded by total size.  Entries are addressed by a hash of a key describing the
+ * export, such as the session, its version, the format, and the lap range, so that a repeated export of an
+ * unchanged session is served from the cache rather than exported again.  Each entry is a directory named
+ * by the hash holding a copy of the export file under its original name.  When the cache grows past its
+ * maximum size, the least recently used entries are removed.  Recency is tracked through the modification
+ * time of the entry directories, so it survives restarts.
+ * <p/>
+ * Instances are thread safe; however, instances sharing a cache directory are not coordinated.
+ *
+ * @author David Valeri
+ */
+public class ExportCache {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ExportCache.class);
+    
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    private final File cacheDir;
+    private final long maxSize;
+    
+    /**
+     * @param cacheDir the directory to hold the cache, which is created if necessary
+     * @param maxSize the maximum total size, in bytes, of the cached files
+     *
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public ExportCache(File cacheDir, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive.");
+        }
+        
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+    
+    public File getCacheDir() {
+        return cacheDir;
+    }
+    
+    public long getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Returns the cached file for the key and marks the entry as the most recently used.
+     *
+     * @param key the key describing the export
+     * @param fileName the name of the export file
+     *
+     * @return the cached file, or {@code null} if there is no entry for the key
+     */
+    public synchronized File get(String key, String fileName) {
+        File entryDir = getEntryDir(key);
+        File cachedFile = new File(entryDir, fileName);
+        
+        if (!cachedFile.isFile()) {
+            return null;
+        }
+        
+        if (!entryDir.setLastModified(System.currentTimeMillis())) {
+            LOG.debug("Could not update the last use of cache entry '{}'.", entryDir.getAbsolutePath());
+        }
+        
+        return cachedFile;
+    }
+    
+    /**
+     * Copies the cached file for the key to the target file and marks the entry as the most recently used.
+     * Unlike {@link #get(String, String)}, the copy is made while no other thread may evict the entry through
+     * this instance, and the target remains valid however the cache changes afterwards.
+     *
+     * @param key the key describing the export
+     * @param fileName the name of the export file
+     * @param target the file to copy the cached file to, which is replaced if it exists
+     *
+     * @return true if the cached file was copied, or false if there is no entry for the key
+     *
+     * @throws IOException if the cached file cannot be copied
+     */
+    public synchronized boolean copyTo(String key, String fileName, File target) throws IOException {
+        File cachedFile = get(key, fileName);
+        
+        if (cachedFile == null) {
+            return false;
+        }
+        
+        copy(cachedFile, target);
+        
+        return true;
+    }
+    
+    /**
+     * Copies the file into the cache under the key, replacing any existing entry, and evicts the least
+     * recently used entries if the cache has grown past its maximum size.  Files larger than the maximum
+     * size are not cached.
+     *
+     * @param key the key describing the export
+     * @param file the export file to cache
+     *
+     * @return the cached file, or {@code null} if the file is too large to cache
+     *
+     * @throws IOException if the file cannot be copied into the cache
+     */
+    public synchronized File put(String key, File file) throws IOException {
+        
+        if (file.length() > maxSize) {
+            LOG.debug("Not caching '{}' as it is larger than the cache.", file.getAbsolutePath());
+            return null;
+        }
+        
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Could not create cache directory '" + cacheDir.getAbsolutePath() + "'.");
+        }
+        
+        File entryDir = getEntryDir(key);
+        File tempDir = new File(cacheDir, entryDir.getName() + TEMP_SUFFIX);
+        
+        delete(tempDir);
+        
+        if (!tempDir.mkdir()) {
+            throw new IOException("Could not create cache entry '" + tempDir.getAbsolutePath() + "'.");
+        }
+        
+        try {
+            copy(file, new File(tempDir, file.getName()));
+            
+            // The entry is written under a temporary name so that a partially written entry is never
+            // returned from the cache.
+            delete(entryDir);
+            if (!tempDir.renameTo(entryDir)) {
+                throw new IOException("Could not create cache entry '" + entryDir.getAbsolutePath() + "'.");
+            }
+        } finally {
+            delete(tempDir);
+        }
+        
+        evict(entryDir);
+        
+        return new File(entryDir, file.getName());
+    }
+    
+    /**
+     * Returns the total size, in bytes, of the cached files.
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for (File entryDir : listEntryDirs()) {
+            size += getSize(entryDir);
+        }
+        
+        return size;
+    }
+    
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                delete(file);
+            }
+        }
+    }
+    
+    /**
+     * Removes the least recently used entries, other than the entry just written, until the cache fits
+     * within its maximum size.
+     */
+    private void evict(File retainedEntryDir) {
+        
+        List<File> entryDirs = listEntryDirs();
+        long size = 0;
+        
+        for (File entryDir : entryDirs) {
+            size += getSize(entryDir);
+        }
+        
+        if (size <= maxSize) {
+            return;
+        }
+        
+        Collections.sort(entryDirs, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsLastModified = lhs.lastModified();
+                long rhsLastModified = rhs.lastModified();
+                return lhsLastModified < rhsLastModified ? -1 : (lhsLastModified == rhsLastModified ? 0 : 1);
+            }
+        });
+        
+        for (File entryDir : entryDirs) {
+            if (size <= maxSize) {
+                break;
+            }
+            
+            if (entryDir.equals(retainedEntryDir)) {
+                continue;
+            }
+            
+            long entrySize = getSize(entryDir);
+            LOG.debug("Evicting cache entry '{}' of {} bytes.", entryDir.getAbsolutePath(), entrySize);
+            
+            if (delete(entryDir)) {
+                size -= entrySize;
+            }
+        }
+    }
+    
+    private List<File> listEntryDirs() {
+        List<File> entryDirs = new ArrayList<File>();
+        File[] files = cacheDir.listFiles();
+        
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && !file.getName().endsWith(TEMP_SUFFIX)) {
+                    entryDirs.add(file);
+                }
+            }
+        }
+        
+        return entryDirs;
+    }
+    
+    private File getEntryDir(String key) {
+        return new File(cacheDir, hash(key));
+    }
+    
+    private static long getSize(File entryDir) {
+        long size = 0;
+        File[] files = entryDir.listFiles();
+        
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        
+        return size;
+    }
+    
+    private static void copy(File source, File target) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(target);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                
+                while (position < size) {
+                    position += inChannel.transferTo(position, size - position, outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+    
+    private static boolean delete(File file) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    delete(child);
+                }
+            }
+        }
+        
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Could not delete '{}' from the export cache.", file.getAbsolutePath());
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns the hex encoded SHA-1 hash of the key.
+     */
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            char[] hex = new char[digest.length * 2];
+            
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+            }
+            
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported.", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * The position reached by an export of a session, from which a later export of the same session, format, and
+ * lap range appends only the entries logged since.  Records the size and modification time of the export
+ * file so that a file changed since the checkpoint, such as by an export of a different lap range, is
+ * exported in full instead.
+ * <p/>
+ * Checkpoints are stored as properties files.
+ *
+ * @author David Valeri
+ */
+public class ExportCheckpoint {
+    
+    private static final String COMMENT = "TrackLogger Export Checkpoint 1.0";
+    
+    private static final String SESSION_ID = "session_id";
+    private static final String START_LAP = "start_lap";
+    private static final String END_LAP = "end_lap";
+    private static final String FILE_LENGTH = "file_length";
+    private static final String FILE_LAST_MODIFIED = "file_last_modified";
+    private static final String LAST_LOG_ENTRY_ID = "last_log_entry_id";
+    private static final String LAST_TIMING_ENTRY_ID = "last_timing_entry_id";
+    private static final String RUNNING_TIME = "running_time";
+    private static final String LAST_SYNCH_TIMESTAMP = "last_synch_timestamp";
+    private static final String LAP = "lap";
+    private static final String SPLIT_INDEX = "split_index";
+    private static final String TIMING_EVENT_PENDING = "timing_event_pending";
+    private static final String TIMING_SYNCH_TIMESTAMP = "timing_synch_timestamp";
+    private static final String TIMING_CAPTURE_TIMESTAMP = "timing_capture_timestamp";
+    
+    private int sessionId;
+    private Integer startLap;
+    private Integer endLap;
+    private long fileLength;
+    private long fileLastModified;
+    private long lastLogEntryId;
+    private long lastTimingEntryId;
+    private long runningTime;
+    private long lastSynchTimestamp;
+    private LogTimingMergeJoin.State joinState;
+    
+    public int getSessionId() {
+        return sessionId;
+    }
+    
+    public void setSessionId(int sessionId) {
+        this.sessionId = sessionId;
+    }
+    
+    public Integer getStartLap() {
+        return startLap;
+    }
+    
+    public void setStartLap(Integer startLap) {
+        this.startLap = startLap;
+    }
+    
+    public Integer getEndLap() {
+        return endLap;
+    }
+    
+    public void setEndLap(Integer endLap) {
+        this.endLap = endLap;
+    }
+    
+    /**
+     * Returns the length of the export file when the checkpoint was taken.
+     */
+    public long getFileLength() {
+        return fileLength;
+    }
+    
+    public void setFileLength(long fileLength) {
+        this.fileLength = fileLength;
+    }
+    
+    /**
+     * Returns the modification time of the export file when the checkpoint was taken.
+     */
+    public long getFileLastModified() {
+        return fileLastModified;
+    }
+    
+    public void setFileLastModified(long fileLastModified) {
+        this.fileLastModified = fileLastModified;
+    }
+    
+    /**
+     * Returns the ID of the last log entry exported.
+     */
+    public long getLastLogEntryId() {
+        return lastLogEntryId;
+    }
+    
+    public void setLastLogEntryId(long lastLogEntryId) {
+        this.lastLogEntryId = lastLogEntryId;
+    }
+    
+    /**
+     * Returns the ID of the timing entry loaded in the join when the last log entry was exported.
+     */
+    public long getLastTimingEntryId() {
+        return lastTimingEntryId;
+    }
+    
+    public void setLastTimingEntryId(long lastTimingEntryId) {
+        this.lastTimingEntryId = lastTimingEntryId;
+    }
+    
+    /**
+     * Returns the running time of the last log entry exported.
+     */
+    public long getRunningTime() {
+        return runningTime;
+    }
+    
+    public void setRunningTime(long runningTime) {
+        this.runningTime = runningTime;
+    }
+    
+    /**
+     * Returns the synch timestamp of the last log entry exported.
+     */
+    public long getLastSynchTimestamp() {
+        return lastSynchTimestamp;
+    }
+    
+    public void setLastSynchTimestamp(long lastSynchTimestamp) {
+        this.lastSynchTimestamp = lastSynchTimestamp;
+    }
+    
+    /**
+     * Returns the state of the join of log and timing entries after the last log entry exported.
+     */
+    public LogTimingMergeJoin.State getJoinState() {
+        return joinState;
+    }
+    
+    public void setJoinState(LogTimingMergeJoin.State joinState) {
+        this.joinState = joinState;
+    }
+    
+    /**
+     * Returns true if the checkpoint was taken for the session and lap range.
+     */
+    public boolean isFor(int sessionId, Integer startLap, Integer endLap) {
+        return this.sessionId == sessionId
+                && (this.startLap == null ? startLap == null : this.startLap.equals(startLap))
+                && (this.endLap == null ? endLap == null : this.endLap.equals(endLap));
+    }
+    
+    /**
+     * Returns true if the file has not changed since the checkpoint was taken.
+     */
+    public boolean isCurrent(File exportFile) {
+        return exportFile.isFile() && exportFile.length() == fileLength
+                && exportFile.lastModified() == fileLastModified;
+    }
+    
+    /**
+     * Writes the checkpoint to the file.  The checkpoint is written to a temporary file that then replaces
+     * the file so that a partially written checkpoint is never read.
+     */
+    public void store(File file) throws IOException {
+        
+        if (joinState == null) {
+            throw new IllegalStateException("The join state is required.");
+        }
+        
+        Properties properties = new Properties();
+        properties.setProperty(SESSION_ID, Integer.toString(sessionId));
+        properties.setProperty(START_LAP, startLap == null ? "" : startLap.toString());
+        properties.setProperty(END_LAP, endLap == null ? "" : endLap.toString());
+        properties.setProperty(FILE_LENGTH, Long.toString(fileLength));
+        properties.setProperty(FILE_LAST_MODIFIED, Long.toString(fileLastModified));
+        properties.setProperty(LAST_LOG_ENTRY_ID, Long.toString(lastLogEntryId));
+        properties.setProperty(LAST_TIMING_ENTRY_ID, Long.toString(lastTimingEntryId));
+        properties.setProperty(RUNNING_TIME, Long.toString(runningTime));
+        properties.setProperty(LAST_SYNCH_TIMESTAMP, Long.toString(lastSynchTimestamp));
+        properties.setProperty(LAP, Integer.toString(joinState.getLap()));
+        properties.setProperty(SPLIT_INDEX, Integer.toString(joinState.getSplitIndex()));
+        properties.setProperty(TIMING_EVENT_PENDING, Boolean.toString(joinState.isTimingEventPending()));
+        properties.setProperty(TIMING_SYNCH_TIMESTAMP, Long.toString(joinState.getTimingSynchTimestamp()));
+        properties.setProperty(TIMING_CAPTURE_TIMESTAMP, Long.toString(joinState.getTimingCaptureTimestamp()));
+        
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            properties.store(out, COMMENT);
+        } finally {
+            out.close();
+        }
+        
+        if (!tempFile.renameTo(file)) {
+            // Not all file systems replace the target of a rename.
+            file.delete();
+            
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Could not write checkpoint file '" + file.getAbsolutePath() + "'.");
+            }
+        }
+    }
+    
+    /**
+     * Reads a checkpoint from the file.
+     *
+     * @return the checkpoint, or {@code null} if the file does not exist
+     *
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static ExportCheckpoint load(File file) throws IOException {
+        
+        if (!file.isFile()) {
+            return null;
+        }
+        
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        
+        try {
+            ExportCheckpoint checkpoint = new ExportCheckpoint();
+            checkpoint.setSessionId(Integer.parseInt(getRequired(properties, SESSION_ID)));
+            checkpoint.setStartLap(getInteger(properties, START_LAP));
+            checkpoint.setEndLap(getInteger(properties, END_LAP));
+            checkpoint.setFileLength(Long.parseLong(getRequired(properties, FILE_LENGTH)));
+            checkpoint.setFileLastModified(Long.parseLong(getRequired(properties, FILE_LAST_MODIFIED)));
+            checkpoint.setLastLogEntryId(Long.parseLong(getRequired(properties, LAST_LOG_ENTRY_ID)));
+            checkpoint.setLastTimingEntryId(Long.parseLong(getRequired(properties, LAST_TIMING_ENTRY_ID)));
+            checkpoint.setRunningTime(Long.parseLong(getRequired(properties, RUNNING_TIME)));
+            checkpoint.setLastSynchTimestamp(Long.parseLong(getRequired(properties, LAST_SYNCH_TIMESTAMP)));
+            checkpoint.setJoinState(new LogTimingMergeJoin.State(
+                    Integer.parseInt(getRequired(properties, LAP)),
+                    Integer.parseInt(getRequired(properties, SPLIT_INDEX)),
+                    Boolean.parseBoolean(getRequired(properties, TIMING_EVENT_PENDING)),
+                    Long.parseLong(getRequired(properties, TIMING_SYNCH_TIMESTAMP)),
+                    Long.parseLong(getRequired(properties, TIMING_CAPTURE_TIMESTAMP))));
+            
+            return checkpoint;
+        } catch (NumberFormatException e) {
+            IOException ioe = new IOException("Invalid checkpoint file '" + file.getAbsolutePath() + "'.");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "ExportCheckpoint [sessionId=" + sessionId + ", startLap=" + startLap + ", endLap=" + endLap
+                + ", fileLength=" + fileLength + ", fileLastModified=" + fileLastModified
+                + ", lastLogEntryId=" + lastLogEntryId + ", lastTimingEntryId=" + lastTimingEntryId
+                + ", runningTime=" + runningTime + ", lastSynchTimestamp=" + lastSynchTimestamp
+                + ", joinState=" + joinState + "]";
+    }
+    
+    private static String getRequired(Properties properties, String key) throws IOException {
+        String value = properties.getProperty(key);
+        
+        if (value == null) {
+            throw new IOException("Missing checkpoint property '" + key + "'.");
+        }
+        
+        return value;
+    }
+    
+    private static Integer getInteger(Properties properties, String key) throws IOException {
+        String value = getRequired(properties, key);
+        return value.length() == 0 ? null : Integer.valueOf(value);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+/**
+ * A contiguous range of laps exported independently of the other ranges in a partitioned export.  The
+ * partitions of an export are concatenated in order, so the range of each partition must begin where
+ * the range of the previous partition ends.
+ *
+ * @author David Valeri
+ */
+public final class ExportPartition {
+    
+    private final Integer startLap;
+    private final Integer endLap;
+    private final long initialRunningTime;
+    private final int recordCount;
+    
+    /**
+     * @param startLap the first lap in the partition, or {@code null} to start at the beginning of the
+     * session
+     * @param endLap the last lap in the partition, or {@code null} to end at the end of the session
+     * @param initialRunningTime the running time, in milliseconds, of the first entry in the partition
+     * measured from the first entry in the export
+     * @param recordCount the estimated number of records in the partition, or 0 if unknown
+     */
+    public ExportPartition(Integer startLap, Integer endLap, long initialRunningTime, int recordCount) {
+        this.startLap = startLap;
+        this.endLap = endLap;
+        this.initialRunningTime = initialRunningTime;
+        this.recordCount = recordCount;
+    }
+    
+    public Integer getStartLap() {
+        return startLap;
+    }
+    
+    public Integer getEndLap() {
+        return endLap;
+    }
+    
+    public long getInitialRunningTime() {
+        return initialRunningTime;
+    }
+    
+    public int getRecordCount() {
+        return recordCount;
+    }
+    
+    @Override
+    public String toString() {
+        return "ExportPartition [startLap=" + startLap + ", endLap=" + endLap + ", initialRunningTime="
+                + initialRunningTime + ", recordCount=" + recordCount + "]";
+    }
+}
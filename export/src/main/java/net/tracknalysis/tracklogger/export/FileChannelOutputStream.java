@@ -0,0 +1,162 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An output stream that buffers into a reusable, typically direct, {@link ByteBuffer} and writes the buffer
+ * to a {@link FileChannel} when it fills.  Avoids the intermediate copies of a {@link java.io.FileOutputStream}
+ * wrapped in a {@link java.io.BufferedOutputStream}.  Closing the stream flushes the buffer, forces the
+ * written data to the storage device according to the {@link ForcePolicy}, and closes the channel.
+ * <p/>
+ * Instances are not thread safe.
+ *
+ * @author David Valeri
+ */
+public final class FileChannelOutputStream extends OutputStream {
+    
+    /**
+     * Controls whether written data is forced to the storage device when the stream is closed.
+     */
+    public static enum ForcePolicy {
+        /**
+         * Leave the data to be written by the operating system.
+         */
+        NONE,
+        /**
+         * Force the content of the file.
+         */
+        DATA,
+        /**
+         * Force the content of the file and its metadata.
+         */
+        DATA_AND_METADATA;
+    }
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ForcePolicy forcePolicy;
+    private boolean closed;
+    
+    /**
+     * @param channel the channel to write to
+     * @param buffer the buffer to use, which is cleared before use and may be reused once the stream is closed
+     * @param forcePolicy the policy to apply when the stream is closed
+     */
+    public FileChannelOutputStream(FileChannel channel, ByteBuffer buffer, ForcePolicy forcePolicy) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.forcePolicy = forcePolicy;
+        buffer.clear();
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        
+        buffer.put((byte) b);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        ensureOpen();
+        
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            
+            int count = Math.min(len, buffer.remaining());
+            buffer.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+    
+    /**
+     * Writes the buffered data to the channel.  Does not force the data to the storage device.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        
+        if (closed) {
+            return;
+        }
+        
+        closed = true;
+        
+        try {
+            drain();
+            
+            switch (forcePolicy) {
+                case DATA:
+                    channel.force(false);
+                    break;
+                case DATA_AND_METADATA:
+                    channel.force(true);
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Returns the buffer of the stream for writers that encode directly into it, such as
+     * {@link Utf8Writer}.  Data put into the buffer is written to the channel when the buffer is drained.
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+    
+    /**
+     * Writes the buffered data to the channel, leaving the buffer empty.
+     */
+    void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+}
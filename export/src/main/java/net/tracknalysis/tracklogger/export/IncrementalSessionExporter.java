@@ -0,0 +1,48 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Implemented by {@link AbstractSessionToFileExporter}s that can append the entries logged since an
+ * earlier export to the export file when
+ * {@link AbstractSessionToFileExporter#setIncremental(boolean) incremental} exports are enabled.  The
+ * methods are called by the exporter during an export and must not be called directly.
+ *
+ * @author David Valeri
+ */
+public interface IncrementalSessionExporter extends SessionToFileExporter {
+    
+    /**
+     * Writes the entries logged since the checkpoint to the output stream, which appends to the export
+     * file written by the export that took the checkpoint.  Implementations should flush but not close the
+     * stream.
+     *
+     * @param out a buffered stream for writing the exported data
+     * @param sessionId the ID of the session being exported
+     * @param checkpoint the checkpoint taken at the end of the previous export
+     */
+    void exportIncrement(OutputStream out, int sessionId, ExportCheckpoint checkpoint) throws IOException;
+    
+    /**
+     * Returns the position reached by the export that just completed, whether incremental or in full, or
+     * {@code null} if no entries were exported.  The session, lap range, and export file properties of the
+     * checkpoint are set by the exporter.
+     */
+    ExportCheckpoint getExportCheckpoint();
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+/**
+ * A reusable, mutable row of exported log entry data held in primitive fields.  Exporters fill a single
+ * instance for each entry and pass it to a format writer, so no wrapper objects are created per row.
+ * Whether each {@link Field nullable field} holds a value is tracked in a bit mask; getters return the
+ * last value set for a field regardless of whether the field is null, so callers must check
+ * {@link #isNull(Field)} first.
+ * <p/>
+ * Instances are not thread-safe.
+ *
+ * @author David Valeri
+ */
+public final class LogEntryRow {
+    
+    /**
+     * The fields of a row that may be null.
+     */
+    public static enum Field {
+        ACCEL_CAPTURE_TIMESTAMP,
+        LONGITUDINAL_ACCEL,
+        LATERAL_ACCEL,
+        VERTICAL_ACCEL,
+        LOCATION_CAPTURE_TIMESTAMP,
+        LOCATION_TIME_IN_DAY,
+        LATITUDE,
+        LONGITUDE,
+        ALTITUDE,
+        SPEED,
+        BEARING,
+        ECU_CAPTURE_TIMESTAMP,
+        RPM,
+        MAP,
+        MGP,
+        THROTTLE_POSITION,
+        AFR,
+        MAT,
+        CLT,
+        IGNITION_ADVANCE,
+        BATTERY_VOLTAGE,
+        TIMING_CAPTURE_TIMESTAMP;
+        
+        private final int mask = 1 << ordinal();
+    }
+    
+    private static final int ALL_NULL = (1 << Field.values().length) - 1;
+    
+    private int nullMask = ALL_NULL;
+    
+    private long synchTimestamp;
+    
+    private long accelCaptureTimestamp;
+    private float longitudinalAccel;
+    private float lateralAccel;
+    private float verticalAccel;
+    
+    private long locationCaptureTimestamp;
+    private long locationTimeInDay;
+    private double latitude;
+    private double longitude;
+    private double altitude;
+    private float speed;
+    private float bearing;
+    
+    private long ecuCaptureTimestamp;
+    private int rpm;
+    private double map;
+    private double mgp;
+    private double throttlePosition;
+    private double afr;
+    private double mat;
+    private double clt;
+    private double ignitionAdvance;
+    private double batteryVoltage;
+    
+    private long timingCaptureTimestamp;
+    private int lap;
+    private int splitIndex;
+    
+    /**
+     * Marks every nullable field as null.
+     */
+    public void clear() {
+        nullMask = ALL_NULL;
+    }
+    
+    public boolean isNull(Field field) {
+        return (nullMask & field.mask) != 0;
+    }
+    
+    public void setNull(Field field) {
+        nullMask |= field.mask;
+    }
+    
+    private void setNotNull(Field field) {
+        nullMask &= ~field.mask;
+    }
+    
+    public long getSynchTimestamp() {
+        return synchTimestamp;
+    }
+    
+    public void setSynchTimestamp(long synchTimestamp) {
+        this.synchTimestamp = synchTimestamp;
+    }
+    
+    public long getAccelCaptureTimestamp() {
+        return accelCaptureTimestamp;
+    }
+    
+    public void setAccelCaptureTimestamp(long accelCaptureTimestamp) {
+        this.accelCaptureTimestamp = accelCaptureTimestamp;
+        setNotNull(Field.ACCEL_CAPTURE_TIMESTAMP);
+    }
+    
+    public float getLongitudinalAccel() {
+        return longitudinalAccel;
+    }
+    
+    public void setLongitudinalAccel(float longitudinalAccel) {
+        this.longitudinalAccel = longitudinalAccel;
+        setNotNull(Field.LONGITUDINAL_ACCEL);
+    }
+    
+    public float getLateralAccel() {
+        return lateralAccel;
+    }
+    
+    public void setLateralAccel(float lateralAccel) {
+        this.lateralAccel = lateralAccel;
+        setNotNull(Field.LATERAL_ACCEL);
+    }
+    
+    public float getVerticalAccel() {
+        return verticalAccel;
+    }
+    
+    public void setVerticalAccel(float verticalAccel) {
+        this.verticalAccel = verticalAccel;
+        setNotNull(Field.VERTICAL_ACCEL);
+    }
+    
+    public long getLocationCaptureTimestamp() {
+        return locationCaptureTimestamp;
+    }
+    
+    public void setLocationCaptureTimestamp(long locationCaptureTimestamp) {
+        this.locationCaptureTimestamp = locationCaptureTimestamp;
+        setNotNull(Field.LOCATION_CAPTURE_TIMESTAMP);
+    }
+    
+    public long getLocationTimeInDay() {
+        return locationTimeInDay;
+    }
+    
+    public void setLocationTimeInDay(long locationTimeInDay) {
+        this.locationTimeInDay = locationTimeInDay;
+        setNotNull(Field.LOCATION_TIME_IN_DAY);
+    }
+    
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+        setNotNull(Field.LATITUDE);
+    }
+    
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+        setNotNull(Field.LONGITUDE);
+    }
+    
+    public double getAltitude() {
+        return altitude;
+    }
+    
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+        setNotNull(Field.ALTITUDE);
+    }
+    
+    public float getSpeed() {
+        return speed;
+    }
+    
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        setNotNull(Field.SPEED);
+    }
+    
+    public float getBearing() {
+        return bearing;
+    }
+    
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        setNotNull(Field.BEARING);
+    }
+    
+    public long getEcuCaptureTimestamp() {
+        return ecuCaptureTimestamp;
+    }
+    
+    public void setEcuCaptureTimestamp(long ecuCaptureTimestamp) {
+        this.ecuCaptureTimestamp = ecuCaptureTimestamp;
+        setNotNull(Field.ECU_CAPTURE_TIMESTAMP);
+    }
+    
+    public int getRpm() {
+        return rpm;
+    }
+    
+    public void setRpm(int rpm) {
+        this.rpm = rpm;
+        setNotNull(Field.RPM);
+    }
+    
+    public double getMap() {
+        return map;
+    }
+    
+    public void setMap(double map) {
+        this.map = map;
+        setNotNull(Field.MAP);
+    }
+    
+    public double getMgp() {
+        return mgp;
+    }
+    
+    public void setMgp(double mgp) {
+        this.mgp = mgp;
+        setNotNull(Field.MGP);
+    }
+    
+    public double getThrottlePosition() {
+        return throttlePosition;
+    }
+    
+    public void setThrottlePosition(double throttlePosition) {
+        this.throttlePosition = throttlePosition;
+        setNotNull(Field.THROTTLE_POSITION);
+    }
+    
+    public double getAfr() {
+        return afr;
+    }
+    
+    public void setAfr(double afr) {
+        this.afr = afr;
+        setNotNull(Field.AFR);
+    }
+    
+    public double getMat() {
+        return mat;
+    }
+    
+    public void setMat(double mat) {
+        this.mat = mat;
+        setNotNull(Field.MAT);
+    }
+    
+    public double getClt() {
+        return clt;
+    }
+    
+    public void setClt(double clt) {
+        this.clt = clt;
+        setNotNull(Field.CLT);
+    }
+    
+    public double getIgnitionAdvance() {
+        return ignitionAdvance;
+    }
+    
+    public void setIgnitionAdvance(double ignitionAdvance) {
+        this.ignitionAdvance = ignitionAdvance;
+        setNotNull(Field.IGNITION_ADVANCE);
+    }
+    
+    public double getBatteryVoltage() {
+        return batteryVoltage;
+    }
+    
+    public void setBatteryVoltage(double batteryVoltage) {
+        this.batteryVoltage = batteryVoltage;
+        setNotNull(Field.BATTERY_VOLTAGE);
+    }
+    
+    public long getTimingCaptureTimestamp() {
+        return timingCaptureTimestamp;
+    }
+    
+    public void setTimingCaptureTimestamp(long timingCaptureTimestamp) {
+        this.timingCaptureTimestamp = timingCaptureTimestamp;
+        setNotNull(Field.TIMING_CAPTURE_TIMESTAMP);
+    }
+    
+    public int getLap() {
+        return lap;
+    }
+    
+    public void setLap(int lap) {
+        this.lap = lap;
+    }
+    
+    public int getSplitIndex() {
+        return splitIndex;
+    }
+    
+    public void setSplitIndex(int splitIndex) {
+        this.splitIndex = splitIndex;
+    }
+}
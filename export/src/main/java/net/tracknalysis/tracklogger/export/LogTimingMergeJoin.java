@@ -0,0 +1,369 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Joins the log entries of a session with its timing entries on their synch timestamps, tagging each log
+ * entry with the lap and split that it belongs to.  Both sources are read once, in order, and only the
+ * current timing entry is retained, so sessions of any length are joined in constant memory.
+ * <p/>
+ * The timing entries in the database are logged on the completion of a lap/split; however, they also
+ * represent the instant at which the next lap/split is beginning.  The join numbers the entries by the
+ * later arrangement, so the log entry whose synch timestamp matches that of a timing entry is the first
+ * entry of the lap/split that the timing entry starts.  For instance, the first timing entry starts lap 1
+ * rather than being the last time in lap 0.  Log entries recorded before the first timing entry do not
+ * belong to any lap and are skipped.
+ * <p/>
+ * The state of the join after an entry may be saved with {@link #getState()} and the join resumed from that
+ * entry later, such as when the session has gained entries since it was last exported.
+ * <p/>
+ * Usage:
+ * <pre>
+ * LogTimingMergeJoin join = new LogTimingMergeJoin(logRecords, timingRecords, splitMarkerCount, null, null);
+ * try {
+ *     while (join.next()) {
+ *         // The log source is positioned on the entry in lap join.getLap() and split join.getSplitIndex().
+ *     }
+ * } finally {
+ *     join.close();
+ * }
+ * </pre>
+ *
+ * @author David Valeri
+ */
+public class LogTimingMergeJoin implements Closeable {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(LogTimingMergeJoin.class);
+    
+    private final RecordSource logRecords;
+    private final TimingRecordSource timingRecords;
+    private final int splitMarkerCount;
+    private final Integer startLap;
+    private final Integer endLap;
+    
+    private boolean started;
+    private boolean done;
+    private boolean timingEventPending;
+    private long logRecordCount;
+    private long timingSynchTimestamp;
+    private long timingCaptureTimestamp;
+    private int lap;
+    private int splitIndex;
+    
+    // The state after the entry most recently returned.
+    private boolean returned;
+    private int returnedLap;
+    private int returnedSplitIndex;
+    private boolean returnedTimingEventPending;
+    private long returnedTimingSynchTimestamp;
+    private long returnedTimingCaptureTimestamp;
+    
+    /**
+     * @param logRecords the log entries of the session
+     * @param timingRecords the timing entries of the session
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     * @param startLap the first lap to return entries for, or {@code null} to start with the first lap
+     * @param endLap the last lap to return entries for, or {@code null} to continue to the end of the log
+     * entries
+     */
+    public LogTimingMergeJoin(RecordSource logRecords, TimingRecordSource timingRecords,
+            int splitMarkerCount, Integer startLap, Integer endLap) {
+        this.logRecords = logRecords;
+        this.timingRecords = timingRecords;
+        this.splitMarkerCount = splitMarkerCount;
+        this.startLap = startLap;
+        this.endLap = endLap;
+    }
+    
+    /**
+     * Returns a join that resumes after the entry that the state was saved on.  The log source must be
+     * positioned before the first log entry following that entry and the timing source before the first
+     * timing entry following the timing entry loaded when the state was saved.
+     *
+     * @param logRecords the log entries of the session following the saved entry
+     * @param timingRecords the timing entries of the session following the saved timing entry
+     * @param splitMarkerCount the number of split markers in the split marker set used by the session
+     * @param endLap the last lap to return entries for, or {@code null} to continue to the end of the log
+     * entries
+     * @param state the state saved from {@link #getState()}
+     */
+    public static LogTimingMergeJoin resume(RecordSource logRecords, TimingRecordSource timingRecords,
+            int splitMarkerCount, Integer endLap, State state) {
+        
+        LogTimingMergeJoin join = new LogTimingMergeJoin(logRecords, timingRecords, splitMarkerCount, null, endLap);
+        join.started = true;
+        join.lap = state.getLap();
+        join.splitIndex = state.getSplitIndex();
+        join.timingEventPending = state.isTimingEventPending();
+        join.timingSynchTimestamp = state.getTimingSynchTimestamp();
+        join.timingCaptureTimestamp = state.getTimingCaptureTimestamp();
+        join.saveReturnedState();
+        
+        if (join.timingSynchTimestamp == Long.MAX_VALUE) {
+            // The timing entries ran out before the saved entry, so look for timing entries logged since.
+            join.timingEventPending = true;
+        }
+        
+        return join;
+    }
+    
+    /**
+     * Moves the log source to the next log entry in the requested laps.
+     *
+     * @return {@code true} if the log source is positioned on an entry in the requested laps, {@code false}
+     * if there are no more entries in the requested laps
+     *
+     * @throws IllegalStateException if there are no timing entries, no log entries, or no log entry whose
+     * synch timestamp matches that of the first timing entry
+     */
+    public boolean next() throws IOException {
+        
+        if (done) {
+            return false;
+        }
+        
+        if (!started) {
+            start();
+        } else if (!moveToNextLogRecord()) {
+            done = true;
+            return false;
+        }
+        
+        do {
+            long logSynchTimestamp = logRecords.getSynchTimestamp();
+            
+            // This entry follows a split/segment or lap event so we are now waiting for the next event
+            if (timingEventPending) {
+                timingEventPending = false;
+                
+                if (timingRecords.moveToNext()) {
+                    loadTimingRecord();
+                } else {
+                    // We are already sitting on the right values for the remainder of the log data
+                    // so just move the timing synch out of the way so we will never match it again.
+                    timingSynchTimestamp = Long.MAX_VALUE;
+                }
+            }
+            
+            if (logSynchTimestamp == timingSynchTimestamp) {
+                timingEventPending = true;
+                splitIndex++;
+                if (splitIndex == splitMarkerCount) {
+                    splitIndex = 0;
+                    lap++;
+                }
+            }
+            
+            if (endLap != null && lap > endLap) {
+                LOG.trace("Passed end lap {}.", endLap);
+                done = true;
+                return false;
+            }
+            
+            if (startLap == null || lap >= startLap) {
+                saveReturnedState();
+                return true;
+            }
+            
+            LOG.trace("Skipping entry for lap {} and split index {}.", lap, splitIndex);
+        } while (moveToNextLogRecord());
+        
+        done = true;
+        return false;
+    }
+    
+    /**
+     * Returns the lap of the current log entry.
+     */
+    public int getLap() {
+        return lap;
+    }
+    
+    /**
+     * Returns the split index of the current log entry.
+     */
+    public int getSplitIndex() {
+        return splitIndex;
+    }
+    
+    /**
+     * Returns the capture timestamp of the timing entry matched by the current log entry or, for the other
+     * entries in a split, of the timing entry that ends the split.  Entries after the last timing entry
+     * have the capture timestamp of the last timing entry.
+     */
+    public long getTimingCaptureTimestamp() {
+        return timingCaptureTimestamp;
+    }
+    
+    /**
+     * Returns the state of the join after the entry most recently returned, from which the join may be
+     * resumed.
+     *
+     * @throws IllegalStateException if no entry has been returned
+     */
+    public State getState() {
+        if (!returned) {
+            throw new IllegalStateException("No entry has been returned.");
+        }
+        
+        return new State(returnedLap, returnedSplitIndex, returnedTimingEventPending,
+                returnedTimingSynchTimestamp, returnedTimingCaptureTimestamp);
+    }
+    
+    /**
+     * Returns the number of log entries read from the log source so far, including those skipped.
+     */
+    public long getLogRecordCount() {
+        return logRecordCount;
+    }
+    
+    /**
+     * Closes both sources.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            logRecords.close();
+        } finally {
+            timingRecords.close();
+        }
+    }
+    
+    private void start() throws IOException {
+        
+        started = true;
+        
+        // There is nothing in the timing data so we give up
+        if (!timingRecords.moveToNext()) {
+            LOG.error("No timing entries found.");
+            throw new IllegalStateException("No timing entries found for session.");
+        }
+        
+        loadTimingRecord();
+        
+        LOG.debug("Looking for timing to log entry synch...");
+        boolean synchFound = false;
+        while (moveToNextLogRecord()) {
+            if (logRecords.getSynchTimestamp() == timingSynchTimestamp) {
+                synchFound = true;
+                break;
+            }
+        }
+        
+        // There is nothing in the log data so we give up
+        if (logRecordCount == 0) {
+            LOG.error("No log entries found.");
+            throw new IllegalStateException("No log entries found for session.");
+        }
+        
+        // We never found a synch between the two data sets
+        if (!synchFound) {
+            LOG.error("No synchronization between log and timing entries found for laps {} to {}.",
+                    startLap, endLap);
+            throw new IllegalStateException(
+                    "No synchronization between log and timing entries found for session.");
+        }
+        
+        LOG.debug("Found synchronization between log and timing entries at log entry {}.", logRecordCount);
+    }
+    
+    private boolean moveToNextLogRecord() throws IOException {
+        if (logRecords.moveToNext()) {
+            logRecordCount++;
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    private void saveReturnedState() {
+        returned = true;
+        returnedLap = lap;
+        returnedSplitIndex = splitIndex;
+        returnedTimingEventPending = timingEventPending;
+        returnedTimingSynchTimestamp = timingSynchTimestamp;
+        returnedTimingCaptureTimestamp = timingCaptureTimestamp;
+    }
+    
+    private void loadTimingRecord() {
+        timingSynchTimestamp = timingRecords.getSynchTimestamp();
+        timingCaptureTimestamp = timingRecords.getCaptureTimestamp();
+        lap = timingRecords.getLap();
+        splitIndex = timingRecords.getSplitIndex();
+    }
+    
+    /**
+     * The state of a join after an entry, from which the join may be resumed.
+     */
+    public static final class State {
+        
+        private final int lap;
+        private final int splitIndex;
+        private final boolean timingEventPending;
+        private final long timingSynchTimestamp;
+        private final long timingCaptureTimestamp;
+        
+        /**
+         * @param lap the lap of the entry
+         * @param splitIndex the split index of the entry
+         * @param timingEventPending if the entry matched the loaded timing entry
+         * @param timingSynchTimestamp the synch timestamp of the loaded timing entry, or
+         * {@link Long#MAX_VALUE} if the timing entries were exhausted
+         * @param timingCaptureTimestamp the capture timestamp of the entry
+         */
+        public State(int lap, int splitIndex, boolean timingEventPending, long timingSynchTimestamp,
+                long timingCaptureTimestamp) {
+            this.lap = lap;
+            this.splitIndex = splitIndex;
+            this.timingEventPending = timingEventPending;
+            this.timingSynchTimestamp = timingSynchTimestamp;
+            this.timingCaptureTimestamp = timingCaptureTimestamp;
+        }
+        
+        public int getLap() {
+            return lap;
+        }
+        
+        public int getSplitIndex() {
+            return splitIndex;
+        }
+        
+        public boolean isTimingEventPending() {
+            return timingEventPending;
+        }
+        
+        public long getTimingSynchTimestamp() {
+            return timingSynchTimestamp;
+        }
+        
+        public long getTimingCaptureTimestamp() {
+            return timingCaptureTimestamp;
+        }
+        
+        @Override
+        public String toString() {
+            return "State [lap=" + lap + ", splitIndex=" + splitIndex + ", timingEventPending="
+                    + timingEventPending + ", timingSynchTimestamp=" + timingSynchTimestamp
+                    + ", timingCaptureTimestamp=" + timingCaptureTimestamp + "]";
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Implemented by {@link AbstractSessionToFileExporter}s that can export the laps of a session in
+ * partitions that are written in parallel on the executor set through
+ * {@link AbstractSessionToFileExporter#setExecutorService(java.util.concurrent.ExecutorService)}.  The
+ * methods are called by the exporter during an export and must not be called directly.
+ *
+ * @author David Valeri
+ */
+public interface PartitionedSessionExporter extends SessionToFileExporter {
+    
+    /**
+     * Returns the partitions of the requested lap range that may be exported in parallel, in export order,
+     * or a list of fewer than two partitions if the session must be exported serially.  Only called if an
+     * executor is configured.
+     *
+     * @param sessionId the ID of the session being exported
+     * @param startLap the first lap to export, or {@code null} to start at the beginning of the session
+     * @param endLap the last lap to export, or {@code null} to end at the end of the session
+     */
+    List<ExportPartition> getPartitions(int sessionId, Integer startLap, Integer endLap);
+    
+    /**
+     * Writes the output that precedes the first partition.  Called on the thread performing the export.
+     *
+     * @param out a buffered stream for writing the exported data
+     * @param sessionId the ID of the session being exported
+     */
+    void exportHeader(OutputStream out, int sessionId) throws IOException;
+    
+    /**
+     * Writes the output for a single partition.  Called concurrently on the threads of the configured
+     * executor, each with a stream of its own that is concatenated with those of the other partitions in
+     * order once all preceding partitions are complete.  Implementations must not depend on state shared
+     * with other partitions and should report progress through
+     * {@link AbstractSessionToFileExporter#sendPartitionProgressNotification()}.  Implementations should
+     * flush but not close the stream.
+     *
+     * @param out a buffered stream for writing the data in the partition
+     * @param sessionId the ID of the session being exported
+     * @param partition the partition to export
+     */
+    void exportPartition(OutputStream out, int sessionId, ExportPartition partition) throws IOException;
+    
+    /**
+     * Writes the output that follows the last partition.  Called on the thread performing the export.
+     *
+     * @param out a buffered stream for writing the exported data
+     * @param sessionId the ID of the session being exported
+     */
+    void exportFooter(OutputStream out, int sessionId) throws IOException;
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A forward-only stream of the records of a session, such as its log or timing entries, in the order in
+ * which they were recorded.  Positioned before the first record until {@link #moveToNext()} is called.
+ * Implementations adapt the storage behind an export, such as a cursor or a session file, so that the
+ * export logic does not depend on where the records come from.
+ *
+ * @author David Valeri
+ */
+public interface RecordSource extends Closeable {
+    
+    /**
+     * Moves to the next record.
+     *
+     * @return {@code true} if positioned on a record, {@code false} if there are no more records
+     */
+    boolean moveToNext() throws IOException;
+    
+    /**
+     * Returns the synch timestamp of the current record.
+     */
+    long getSynchTimestamp();
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.tracknalysis.common.notification.NotificationListener;
+
+/**
+ * Exports a session to a single zip file holding the exports of several other file exporters, such as
+ * the CSV and SQL exports, along with a manifest describing them.  Each entry is compressed as the
+ * exporter that produces it writes to the bundle, so the bundle is written in a single pass without
+ * intermediate files.  The bundle is compressed at the {@link #setCompressionLevel(int) compression level}
+ * of this exporter.
+ * <p/>
+ * The manifest, {@link #MANIFEST_ENTRY_NAME}, is the first entry in the bundle and holds a line of the
+ * form {@code key=value} for each of the following keys.
+ * <ul>
+ *   <li>format - {@link #TRACKLOGGER_BUNDLE_1_0}</li>
+ *   <li>session_id - the ID of the exported session</li>
+ *   <li>start_lap - the first exported lap, or empty if exported from the start of the session</li>
+ *   <li>end_lap - the last exported lap, or empty if exported to the end of the session</li>
+ *   <li>export_time - the time at which the export started</li>
+ *   <li>entry.&lt;n&gt;.name, entry.&lt;n&gt;.mime_type - the name and MIME type of each of the other
+ *   entries, numbered from 0 in the order in which they appear in the bundle</li>
+ * </ul>
+ * Exporters that copy directly into the export file channel cannot be bundled.
+ *
+ * @author David Valeri
+ */
+public class SessionToZipBundleExporter extends AbstractSessionToFileExporter {
+    
+    public static final String TRACKLOGGER_BUNDLE_1_0 = "TrackLogger Bundle 1.0";
+    
+    public static final String MANIFEST_ENTRY_NAME = "manifest.txt";
+    
+    private final List<AbstractSessionToFileExporter> exporters;
+    
+    /**
+     * @param exportDir the directory to write the bundle to
+     * @param notificationStrategy the listener for notifications about the export, typically the same
+     * listener used by the bundled exporters
+     * @param exporters the exporters whose exports are bundled, in the order in which they are written
+     *
+     * @throws IllegalArgumentException if no exporters are provided
+     */
+    public SessionToZipBundleExporter(File exportDir,
+            NotificationListener<SessionExporterNotificationType> notificationStrategy,
+            List<? extends AbstractSessionToFileExporter> exporters) {
+        super(exportDir, notificationStrategy);
+        
+        if (exporters == null || exporters.isEmpty()) {
+            throw new IllegalArgumentException("At least one exporter is required.");
+        }
+        
+        this.exporters = Collections.unmodifiableList(
+                new ArrayList<AbstractSessionToFileExporter>(exporters));
+    }
+    
+    @Override
+    public String getMimeType() {
+        return "application/zip";
+    }
+    
+    @Override
+    protected void init(int sessionId) {
+        for (AbstractSessionToFileExporter exporter : exporters) {
+            exporter.resetProgressNotification();
+            exporter.init(sessionId);
+        }
+    }
+    
+    @Override
+    protected void export(OutputStream out, int sessionId, Integer startLap,
+            Integer endLap) throws IOException {
+        
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        zipOut.setLevel(getCompressionLevel());
+        
+        zipOut.putNextEntry(new ZipEntry(MANIFEST_ENTRY_NAME));
+        Writer writer = new Utf8Writer(zipOut);
+        writeManifest(writer, sessionId, startLap, endLap);
+        writer.flush();
+        zipOut.closeEntry();
+        
+        for (AbstractSessionToFileExporter exporter : exporters) {
+            zipOut.putNextEntry(new ZipEntry(exporter.getExportFileName(sessionId)));
+            
+            // The exporters flush but do not close the stream that they are given.
+            OutputStream entryOut = new BufferedOutputStream(zipOut, getBufferSize());
+            exporter.export(entryOut, sessionId, startLap, endLap);
+            entryOut.flush();
+            
+            zipOut.closeEntry();
+        }
+        
+        // Closing the export file is handled by the super class.
+        zipOut.finish();
+    }
+    
+    @Override
+    protected Date getSessionStartTime() {
+        return exporters.get(0).getSessionStartTime();
+    }
+    
+    @Override
+    protected String getFileExtension() {
+        return "zip";
+    }
+    
+    private void writeManifest(Writer writer, int sessionId, Integer startLap, Integer endLap)
+            throws IOException {
+        writer.write("format=" + TRACKLOGGER_BUNDLE_1_0 + "\r\n");
+        writer.write("session_id=" + sessionId + "\r\n");
+        writer.write("start_lap=" + (startLap == null ? "" : startLap) + "\r\n");
+        writer.write("end_lap=" + (endLap == null ? "" : endLap) + "\r\n");
+        writer.write("export_time=" + new Date() + "\r\n");
+        
+        for (int i = 0; i < exporters.size(); i++) {
+            AbstractSessionToFileExporter exporter = exporters.get(i);
+            writer.write("entry." + i + ".name=" + exporter.getExportFileName(sessionId) + "\r\n");
+            writer.write("entry." + i + ".mime_type=" + exporter.getMimeType() + "\r\n");
+        }
+    }
+}
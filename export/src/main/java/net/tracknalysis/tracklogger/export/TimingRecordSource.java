@@ -0,0 +1,40 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+/**
+ * A {@link RecordSource} of timing entries.  Each timing entry marks the completion of the lap and split
+ * that it records and the start of the split that follows.
+ *
+ * @author David Valeri
+ */
+public interface TimingRecordSource extends RecordSource {
+    
+    /**
+     * Returns the lap recorded by the current timing entry.
+     */
+    int getLap();
+    
+    /**
+     * Returns the split index recorded by the current timing entry.
+     */
+    int getSplitIndex();
+    
+    /**
+     * Returns the capture timestamp of the current timing entry.
+     */
+    long getCaptureTimestamp();
+}
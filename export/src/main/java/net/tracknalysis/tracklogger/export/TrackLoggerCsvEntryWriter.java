@@ -0,0 +1,168 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import net.tracknalysis.common.util.TimeUtil;
+import net.tracknalysis.tracklogger.export.AbstractSessionToTrackLoggerCsvExporter.Channel;
+
+/**
+ * Writes the entry rows of a {@link AbstractSessionToTrackLoggerCsvExporter#TRACKLOGGER_CSV_1_0_b} export
+ * to a single writer.  The running time column accumulates across the rows written, starting from the
+ * initial running time, so a writer is used for a single contiguous run of rows.  Instances are not thread
+ * safe; each partition of a partitioned export uses its own writer.
+ *
+ * @author David Valeri
+ */
+public final class TrackLoggerCsvEntryWriter {
+    
+    private final Writer writer;
+    private final int[] precisions;
+    private final DecimalFormatter decimalFormatter = new DecimalFormatter();
+    private long lastSyncTimestamp = -1;
+    private long runningTime;
+    
+    /**
+     * @param writer the writer to write rows to
+     * @param precisions the number of fraction digits to write for each channel, indexed by ordinal
+     * @param initialRunningTime the running time of the first row written
+     */
+    TrackLoggerCsvEntryWriter(Writer writer, int[] precisions, long initialRunningTime) {
+        this.writer = writer;
+        this.precisions = precisions.clone();
+        this.runningTime = initialRunningTime;
+    }
+    
+    /**
+     * Creates a writer that continues a run of rows written by another writer, such as in an earlier
+     * export.
+     *
+     * @param writer the writer to write rows to
+     * @param precisions the number of fraction digits to write for each channel, indexed by ordinal
+     * @param runningTime the running time of the last row in the run
+     * @param lastSynchTimestamp the synch timestamp of the last row in the run
+     */
+    TrackLoggerCsvEntryWriter(Writer writer, int[] precisions, long runningTime, long lastSynchTimestamp) {
+        this(writer, precisions, runningTime);
+        this.lastSyncTimestamp = lastSynchTimestamp;
+    }
+    
+    public Writer getWriter() {
+        return writer;
+    }
+    
+    /**
+     * Returns the running time of the last row written.
+     */
+    public long getRunningTime() {
+        return runningTime;
+    }
+    
+    /**
+     * Returns the synch timestamp of the last row written, or -1 if no rows have been written.
+     */
+    public long getLastSynchTimestamp() {
+        return lastSyncTimestamp;
+    }
+    
+    /**
+     * Writes an entry.  Null fields in the row are written as empty fields.  The row is not retained and
+     * may be refilled for the next entry.
+     */
+    public void writeEntry(LogEntryRow row) throws IOException {
+        
+        long logSynchTimestamp = row.getSynchTimestamp();
+        
+        if (lastSyncTimestamp == -1) {
+            lastSyncTimestamp = logSynchTimestamp;
+        }
+        
+        if (logSynchTimestamp < lastSyncTimestamp) {
+            // We rolled over days so we need to account for that in the maths.
+            runningTime += (TimeUtil.MS_IN_DAY + logSynchTimestamp) - lastSyncTimestamp;
+        } else {
+            runningTime += logSynchTimestamp - lastSyncTimestamp;
+        }
+        
+        lastSyncTimestamp = logSynchTimestamp;
+        
+        writeValue(runningTime);
+        writeValue(logSynchTimestamp);
+        writeLong(row, LogEntryRow.Field.ACCEL_CAPTURE_TIMESTAMP, row.getAccelCaptureTimestamp());
+        writeFloat(row, LogEntryRow.Field.LONGITUDINAL_ACCEL, Channel.LONGITUDINAL_ACCEL,
+                row.getLongitudinalAccel());
+        writeFloat(row, LogEntryRow.Field.LATERAL_ACCEL, Channel.LATERAL_ACCEL, row.getLateralAccel());
+        writeFloat(row, LogEntryRow.Field.VERTICAL_ACCEL, Channel.VERTICAL_ACCEL,
+                row.getVerticalAccel());
+        
+        writeLong(row, LogEntryRow.Field.LOCATION_CAPTURE_TIMESTAMP, row.getLocationCaptureTimestamp());
+        writeDouble(row, LogEntryRow.Field.LATITUDE, Channel.LATITUDE, row.getLatitude());
+        writeDouble(row, LogEntryRow.Field.LONGITUDE, Channel.LONGITUDE, row.getLongitude());
+        writeDouble(row, LogEntryRow.Field.ALTITUDE, Channel.ALTITUDE, row.getAltitude());
+        writeFloat(row, LogEntryRow.Field.SPEED, Channel.SPEED, row.getSpeed());
+        writeFloat(row, LogEntryRow.Field.BEARING, Channel.BEARING, row.getBearing());
+        
+        writeLong(row, LogEntryRow.Field.ECU_CAPTURE_TIMESTAMP, row.getEcuCaptureTimestamp());
+        writeLong(row, LogEntryRow.Field.RPM, row.getRpm());
+        writeDouble(row, LogEntryRow.Field.MAP, Channel.MAP, row.getMap());
+        writeDouble(row, LogEntryRow.Field.MGP, Channel.MGP, row.getMgp());
+        writeDouble(row, LogEntryRow.Field.THROTTLE_POSITION, Channel.THROTTLE_POSITION,
+                row.getThrottlePosition());
+        writeDouble(row, LogEntryRow.Field.AFR, Channel.AFR, row.getAfr());
+        writeDouble(row, LogEntryRow.Field.MAT, Channel.MAT, row.getMat());
+        writeDouble(row, LogEntryRow.Field.CLT, Channel.CLT, row.getClt());
+        writeDouble(row, LogEntryRow.Field.IGNITION_ADVANCE, Channel.IGNITION_ADVANCE,
+                row.getIgnitionAdvance());
+        writeDouble(row, LogEntryRow.Field.BATTERY_VOLTAGE, Channel.BATTERY_VOLTAGE,
+                row.getBatteryVoltage());
+        
+        writeLong(row, LogEntryRow.Field.TIMING_CAPTURE_TIMESTAMP, row.getTimingCaptureTimestamp());
+        writeValue(row.getLap());
+        decimalFormatter.write(writer, row.getSplitIndex());
+        writer.write("\r\n");
+    }
+    
+    private void writeValue(long value) throws IOException {
+        decimalFormatter.write(writer, value);
+        writer.write(',');
+    }
+    
+    private void writeLong(LogEntryRow row, LogEntryRow.Field field, long value)
+            throws IOException {
+        if (!row.isNull(field)) {
+            decimalFormatter.write(writer, value);
+        }
+        writer.write(',');
+    }
+    
+    private void writeFloat(LogEntryRow row, LogEntryRow.Field field, Channel channel,
+            float value) throws IOException {
+        if (!row.isNull(field)) {
+            decimalFormatter.write(writer, value, precisions[channel.ordinal()]);
+        }
+        writer.write(',');
+    }
+    
+    private void writeDouble(LogEntryRow row, LogEntryRow.Field field, Channel channel,
+            double value) throws IOException {
+        if (!row.isNull(field)) {
+            decimalFormatter.write(writer, value, precisions[channel.ordinal()]);
+        }
+        writer.write(',');
+    }
+}
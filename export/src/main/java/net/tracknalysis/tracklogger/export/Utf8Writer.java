@@ -0,0 +1,210 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Writer} that encodes characters as UTF-8 with a fast path for ASCII, which covers everything
+ * written by the exporters except user provided names.  Characters are encoded directly into a reusable byte
+ * buffer rather than through a {@link java.nio.charset.CharsetEncoder}, and the buffer is written to the
+ * stream when it fills.  When writing to a {@link FileChannelOutputStream}, characters are encoded directly
+ * into the buffer of the stream, avoiding a copy between buffers.  Unpaired surrogates are written as
+ * {@code '?'}.
+ * <p/>
+ * Instances are not thread safe.
+ *
+ * @author David Valeri
+ */
+public final class Utf8Writer extends Writer {
+    
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private final OutputStream out;
+    private final FileChannelOutputStream channelOut;
+    private final ByteBuffer buffer;
+    private char highSurrogate;
+    
+    public Utf8Writer(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * @param out the stream to write the encoded characters to
+     * @param bufferSize the size of the buffer, in bytes, which is not used if the buffer of a
+     * {@link FileChannelOutputStream} is used instead
+     *
+     * @throws IllegalArgumentException if the buffer cannot hold an encoded character
+     */
+    public Utf8Writer(OutputStream out, int bufferSize) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("Buffer size must be at least 4.");
+        }
+        
+        this.out = out;
+        
+        if (out instanceof FileChannelOutputStream
+                && ((FileChannelOutputStream) out).getBuffer().capacity() >= 4) {
+            channelOut = (FileChannelOutputStream) out;
+            buffer = channelOut.getBuffer();
+        } else {
+            channelOut = null;
+            buffer = ByteBuffer.allocate(bufferSize);
+        }
+    }
+    
+    @Override
+    public void write(int c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        
+        if (c < 0x80 && highSurrogate == 0) {
+            buffer.put((byte) c);
+        } else {
+            encode((char) c);
+        }
+    }
+    
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = cbuf[i];
+            
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            
+            if (c < 0x80 && highSurrogate == 0) {
+                buffer.put((byte) c);
+            } else {
+                encode(c);
+            }
+        }
+    }
+    
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        
+        if (off < 0 || len < 0 || len > str.length() - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = str.charAt(i);
+            
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            
+            if (c < 0x80 && highSurrogate == 0) {
+                buffer.put((byte) c);
+            } else {
+                encode(c);
+            }
+        }
+    }
+    
+    /**
+     * Writes the buffered bytes to the stream and flushes the stream.  A high surrogate waiting for its pair
+     * remains buffered.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+    
+    /**
+     * Flushes the writer and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            
+            buffer.put((byte) '?');
+        }
+        
+        flush();
+        out.close();
+    }
+    
+    private void encode(char c) throws IOException {
+        
+        if (buffer.remaining() < 4) {
+            drain();
+        }
+        
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return;
+            }
+            
+            buffer.put((byte) '?');
+            
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+        }
+        
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+    
+    private void drain() throws IOException {
+        if (channelOut != null) {
+            channelOut.drain();
+        } else if (buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.tracklogger.export.SessionExporter.ExportProgress;
+import net.tracknalysis.tracklogger.export.SessionExporter.SessionExporterNotificationType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class AbstractSessionExporterTest {
+    
+    private List<ExportProgress> progress;
+    private AbstractSessionExporterHarness exporter;
+    
+    @Before
+    public void setup() {
+        progress = new ArrayList<ExportProgress>();
+        exporter = new AbstractSessionExporterHarness(new NotificationListener<SessionExporterNotificationType>() {
+            @Override
+            public void onNotification(SessionExporterNotificationType notificationType) {
+            }
+            
+            @Override
+            public void onNotification(SessionExporterNotificationType notificationType, Object body) {
+                if (notificationType == SessionExporterNotificationType.EXPORT_PROGRESS) {
+                    progress.add((ExportProgress) body);
+                }
+            }
+        });
+    }
+    
+    @Test
+    public void testProgressStep() {
+        exporter.setProgressInterval(0);
+        exporter.setProgressStep(10);
+        
+        for (int i = 1; i <= 1000; i++) {
+            exporter.sendExportProgressNotification(i, 1000);
+        }
+        
+        assertEquals(11, progress.size());
+        assertEquals(1, progress.get(0).getCurrentRecordIndex());
+        assertEquals(100, progress.get(1).getCurrentRecordIndex());
+        assertEquals(1000, progress.get(10).getCurrentRecordIndex());
+        assertEquals(1000, progress.get(10).getTotalRecords());
+    }
+    
+    @Test
+    public void testProgressInterval() {
+        exporter.setProgressInterval(60000);
+        exporter.setProgressStep(0);
+        
+        for (int i = 1; i <= 1000; i++) {
+            exporter.sendExportProgressNotification(i, 1000);
+        }
+        
+        // The first notification and the notification of completion.
+        assertEquals(2, progress.size());
+        assertEquals(1000, progress.get(1).getCurrentRecordIndex());
+        
+        exporter.resetProgressNotification();
+        exporter.sendExportProgressNotification(1, 1000);
+        assertEquals(3, progress.size());
+    }
+    
+    @Test
+    public void testProgressUnknownTotal() {
+        exporter.setProgressInterval(0);
+        
+        for (int i = 1; i <= 10; i++) {
+            exporter.sendExportProgressNotification(i, 0);
+        }
+        
+        assertEquals(10, progress.size());
+    }
+    
+    @Test
+    public void testUnthrottled() {
+        exporter.setProgressInterval(0);
+        exporter.setProgressStep(0);
+        
+        for (int i = 1; i <= 10; i++) {
+            exporter.sendExportProgressNotification(i, 1000);
+        }
+        
+        assertEquals(10, progress.size());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProgressInterval() {
+        exporter.setProgressInterval(-1);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProgressStep() {
+        exporter.setProgressStep(101);
+    }
+    
+    private static class AbstractSessionExporterHarness extends AbstractSessionExporter {
+        
+        public AbstractSessionExporterHarness(
+                NotificationListener<SessionExporterNotificationType> notificationStrategy) {
+            super(notificationStrategy);
+        }
+        
+        @Override
+        public void export(int sessionId) {
+        }
+        
+        @Override
+        public void export(int sessionId, Integer startLap, Integer endLap) {
+        }
+        
+        @Override
+        public String getMimeType() {
+            return "text/plain";
+        }
+    }
+}
@@ -20,9 +20,16 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 
 import net.tracknalysis.common.notification.NoOpNotificationListener;
 import net.tracknalysis.common.util.TimeUtil;
@@ -70,7 +77,242 @@ public class AbstractSessionToTrackLoggerCsvExporterTest {
                 lines.get(8));
     }
     
-    private final class AbstractSessionToTrackLoggerCsvExporterHarness extends AbstractSessionToTrackLoggerCsvExporter {
+    @Test
+    public void testExportWithPrecision() throws Exception {
+        exporter.setPrecision(AbstractSessionToTrackLoggerCsvExporter.Channel.LONGITUDINAL_ACCEL,
+                DecimalFormatter.SHORTEST);
+        exporter.setPrecision(AbstractSessionToTrackLoggerCsvExporter.Channel.LATITUDE, 6);
+        exporter.setPrecision(AbstractSessionToTrackLoggerCsvExporter.Channel.BATTERY_VOLTAGE, 1);
+        exporter.export(1);
+        
+        List<String> lines = IOUtils.readLines(new FileInputStream(new File("target", "1-1969.12.31-19.00.00.csv")));
+        assertEquals(9, lines.size());
+        
+        assertEquals(
+                "0,1,2,3.0,4.00000000000000000000,5.00000000000000000000,6,7.000000,8.00000000000000000000,9.00000000000000000000,10.00000000000000000000,11.00000000000000000000,12,13,14.00000000000000000000,24.00000000000000000000,15.00000000000000000000,16.00000000000000000000,17.00000000000000000000,18.00000000000000000000,19.00000000000000000000,20.0,21,22,23",
+                lines.get(6));
+    }
+    
+    @Test
+    public void testExportRows() throws Exception {
+        exporter = new AbstractSessionToTrackLoggerCsvExporterHarness(new File("target")) {
+            @Override
+            protected void exportEntries(Writer writer, int sessionId,
+                    Integer startLap, Integer endLap) throws IOException {
+                
+                LogEntryRow row = new LogEntryRow();
+                row.setSynchTimestamp(1);
+                row.setAccelCaptureTimestamp(2);
+                row.setLongitudinalAccel(3f);
+                row.setLateralAccel(4f);
+                row.setVerticalAccel(5f);
+                row.setEcuCaptureTimestamp(12);
+                row.setRpm(13);
+                row.setMap(14d);
+                row.setBatteryVoltage(20d);
+                row.setTimingCaptureTimestamp(21);
+                row.setLap(22);
+                row.setSplitIndex(23);
+                writeEntry(writer, row);
+                
+                // The same row is reused for the next entry.
+                row.clear();
+                row.setSynchTimestamp(2);
+                row.setLocationCaptureTimestamp(6);
+                row.setLatitude(7d);
+                row.setLongitude(8d);
+                row.setAltitude(9d);
+                row.setSpeed(10f);
+                row.setBearing(11f);
+                row.setTimingCaptureTimestamp(21);
+                writeEntry(writer, row);
+            }
+        };
+        exporter.export(1);
+        
+        List<String> lines = IOUtils.readLines(new FileInputStream(new File("target", "1-1969.12.31-19.00.00.csv")));
+        assertEquals(8, lines.size());
+        
+        assertEquals(
+                "0,1,2,3.00000000000000000000,4.00000000000000000000,5.00000000000000000000,,,,,,,12,13,14.00000000000000000000,,,,,,,20.00000000000000000000,21,22,23",
+                lines.get(6));
+        assertEquals(
+                "1,2,,,,,6,7.00000000000000000000,8.00000000000000000000,9.00000000000000000000,10.00000000000000000000,11.00000000000000000000,,,,,,,,,,,21,22,23",
+                lines.get(7));
+    }
+    
+    @Test
+    public void testExportGzip() throws Exception {
+        exporter.export(1);
+        List<String> lines = IOUtils.readLines(new FileInputStream(new File("target", "1-1969.12.31-19.00.00.csv")));
+        
+        exporter.setCompression(AbstractSessionToFileExporter.Compression.GZIP);
+        exporter.setCompressionLevel(Deflater.BEST_SPEED);
+        exporter.setBufferSize(16);
+        exporter.export(1);
+        
+        File exportFile = new File("target", "1-1969.12.31-19.00.00.csv.gz");
+        assertEquals(exportFile.getAbsolutePath(), exporter.getExportFileAbsolutePath());
+        List<String> gzipLines = IOUtils.readLines(new GZIPInputStream(new FileInputStream(exportFile)));
+        
+        assertEquals(lines.size(), gzipLines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (i != 2) {
+                assertEquals(lines.get(i), gzipLines.get(i));
+            }
+        }
+    }
+    
+    @Test
+    public void testExportCached() throws Exception {
+        ExportCache cache = new ExportCache(new File("target", "AbstractSessionToTrackLoggerCsvExporterTest-cache"),
+                1024 * 1024);
+        cache.clear();
+        
+        exporter.setExportCache(cache, "csv1|1");
+        exporter.export(1);
+        File exportFile = new File("target", "1-1969.12.31-19.00.00.csv");
+        assertEquals(exportFile.getAbsolutePath(), exporter.getExportFileAbsolutePath());
+        String content = IOUtils.toString(new FileInputStream(exportFile));
+        
+        // Served from the cache without reading the session.
+        final int[] exportCount = new int[1];
+        exporter = new AbstractSessionToTrackLoggerCsvExporterHarness(new File("target")) {
+            @Override
+            protected void exportEntries(Writer writer, int sessionId,
+                    Integer startLap, Integer endLap) throws IOException {
+                exportCount[0]++;
+                super.exportEntries(writer, sessionId, startLap, endLap);
+            }
+        };
+        exporter.setExportCache(cache, "csv1|1");
+        exporter.export(1);
+        assertEquals(0, exportCount[0]);
+        assertEquals(exportFile.getAbsolutePath(), exporter.getExportFileAbsolutePath());
+        assertEquals(content, IOUtils.toString(new FileInputStream(exportFile)));
+        
+        // The export file does not depend on the cache entry.
+        cache.clear();
+        assertEquals(content, IOUtils.toString(new FileInputStream(exportFile)));
+        
+        // A new version of the session is exported again.
+        exporter.setExportCache(cache, "csv1|2");
+        exporter.export(1);
+        assertEquals(1, exportCount[0]);
+        assertEquals(exportFile.getAbsolutePath(), exporter.getExportFileAbsolutePath());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedCompressionLevel() {
+        exporter.setCompressionLevel(Deflater.BEST_COMPRESSION + 1);
+    }
+    
+    @Test
+    public void testExportPartitioned() throws Exception {
+        exporter = new PartitionedExporterHarness(new File("target"));
+        exporter.export(1, 2, 8);
+        List<String> serialLines = IOUtils.readLines(
+                new FileInputStream(new File("target", "1-1969.12.31-19.00.00.csv")));
+        
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            exporter.setExecutorService(executorService);
+            exporter.export(1, 2, 8);
+        } finally {
+            executorService.shutdown();
+        }
+        List<String> partitionedLines = IOUtils.readLines(
+                new FileInputStream(new File("target", "1-1969.12.31-19.00.00.csv")));
+        
+        assertEquals(6 + 7 * 3, serialLines.size());
+        assertEquals(serialLines.size(), partitionedLines.size());
+        
+        for (int i = 0; i < serialLines.size(); i++) {
+            if (i != 2) {
+                assertEquals(serialLines.get(i), partitionedLines.get(i));
+            }
+        }
+        
+        // The running time carries across the day rollover in lap 5, which starts the second partition.
+        assertTrue(partitionedLines.get(6).startsWith("0,20000,"));
+        assertTrue(partitionedLines.get(15).startsWith("86379000,86399000,"));
+        assertTrue(partitionedLines.get(16).startsWith("86380000,0,"));
+        assertTrue(partitionedLines.get(26).startsWith("86413000,33000,"));
+        
+        File[] partitionFiles = new File("target").listFiles();
+        for (File file : partitionFiles) {
+            assertFalse(file.getName().endsWith(".part"));
+        }
+    }
+    
+    @Test
+    public void testExportIncremental() throws Exception {
+        File exportFile = new File("target", "1-1969.12.31-19.00.00.csv");
+        new File("target/.checkpoints", "1-1969.12.31-19.00.00.csv-first-last.checkpoint").delete();
+        
+        IncrementalExporterHarness fullExporter = new IncrementalExporterHarness(new File("target"));
+        fullExporter.loggedLaps = 9;
+        fullExporter.export(1);
+        List<String> fullLines = IOUtils.readLines(new FileInputStream(exportFile));
+        
+        IncrementalExporterHarness incrementalExporter = new IncrementalExporterHarness(new File("target"));
+        incrementalExporter.setIncremental(true);
+        incrementalExporter.loggedLaps = 3;
+        incrementalExporter.export(1);
+        assertEquals(6 + 3 * 3, IOUtils.readLines(new FileInputStream(exportFile)).size());
+        
+        incrementalExporter.loggedLaps = 9;
+        incrementalExporter.export(1);
+        assertEquals(6 * 3, incrementalExporter.lastExportedEntries);
+        List<String> incrementalLines = IOUtils.readLines(new FileInputStream(exportFile));
+        
+        assertEquals(fullLines.size(), incrementalLines.size());
+        for (int i = 0; i < fullLines.size(); i++) {
+            if (i != 2) {
+                assertEquals(fullLines.get(i), incrementalLines.get(i));
+            }
+        }
+        
+        // Nothing new to export.
+        incrementalExporter.export(1);
+        assertEquals(0, incrementalExporter.lastExportedEntries);
+        assertEquals(fullLines.size(), IOUtils.readLines(new FileInputStream(exportFile)).size());
+        
+        // The file changes underneath the checkpoint, so the next export is done in full.
+        fullExporter.loggedLaps = 2;
+        fullExporter.export(1);
+        incrementalExporter.export(1);
+        assertEquals(9 * 3, incrementalExporter.lastExportedEntries);
+        assertEquals(fullLines.size(), IOUtils.readLines(new FileInputStream(exportFile)).size());
+    }
+    
+    @Test
+    public void testExportIncrementalGzip() throws Exception {
+        File exportFile = new File("target", "1-1969.12.31-19.00.00.csv.gz");
+        new File("target/.checkpoints", "1-1969.12.31-19.00.00.csv.gz-2-8.checkpoint").delete();
+        
+        IncrementalExporterHarness incrementalExporter = new IncrementalExporterHarness(new File("target"));
+        incrementalExporter.setCompression(AbstractSessionToFileExporter.Compression.GZIP);
+        incrementalExporter.setIncremental(true);
+        incrementalExporter.loggedLaps = 4;
+        incrementalExporter.export(1, 2, 8);
+        incrementalExporter.loggedLaps = 9;
+        incrementalExporter.export(1, 2, 8);
+        
+        // Each increment is a gzip member, which are read as one stream.
+        List<String> lines = IOUtils.readLines(new GZIPInputStream(new FileInputStream(exportFile)));
+        assertEquals(6 + 7 * 3, lines.size());
+        assertTrue(lines.get(6).startsWith("0,20000,"));
+        assertTrue(lines.get(26).startsWith("86413000,33000,"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedPrecision() {
+        exporter.setPrecision(AbstractSessionToTrackLoggerCsvExporter.Channel.SPEED,
+                DecimalFormatter.MAX_PRECISION + 1);
+    }
+    
+    private class AbstractSessionToTrackLoggerCsvExporterHarness extends AbstractSessionToTrackLoggerCsvExporter {
 
         public AbstractSessionToTrackLoggerCsvExporterHarness(File exportDir) {
             super(exportDir, new NoOpNotificationListener<SessionExporterNotificationType>());
@@ -95,4 +337,169 @@ public class AbstractSessionToTrackLoggerCsvExporterTest {
             return startTime;
         }
     }
+    
+    /**
+     * Exports laps 1 through 9 of three entries each with the synch timestamps of lap 5 rolling over into
+     * the next day.  Partitions the requested laps into groups of two laps.
+     */
+    private class PartitionedExporterHarness extends AbstractSessionToTrackLoggerCsvExporterHarness
+            implements PartitionedSessionExporter {
+        
+        public PartitionedExporterHarness(File exportDir) {
+            super(exportDir);
+        }
+        
+        @Override
+        public List<ExportPartition> getPartitions(int sessionId, Integer startLap, Integer endLap) {
+            List<ExportPartition> partitions = new ArrayList<ExportPartition>();
+            long runningTime = 0;
+            for (int lap = startLap; lap <= endLap; lap += 2) {
+                partitions.add(new ExportPartition(lap, Math.min(lap + 1, endLap), runningTime, 6));
+                runningTime += elapsed(lapStart(lap), lapStart(lap + 2));
+            }
+            return partitions;
+        }
+        
+        @Override
+        protected void exportEntries(Writer writer, int sessionId,
+                Integer startLap, Integer endLap) throws IOException {
+            writeLaps(getEntryWriter(writer), startLap, endLap);
+        }
+        
+        @Override
+        public void exportHeader(OutputStream out, int sessionId) throws IOException {
+            writeHeader(out, sessionId);
+        }
+        
+        @Override
+        public void exportPartition(OutputStream out, int sessionId, ExportPartition partition)
+                throws IOException {
+            TrackLoggerCsvEntryWriter entryWriter = createEntryWriter(out, partition);
+            writeLaps(entryWriter, partition.getStartLap(), partition.getEndLap());
+            entryWriter.getWriter().flush();
+        }
+        
+        @Override
+        public void exportFooter(OutputStream out, int sessionId) {
+        }
+        
+        private void writeLaps(TrackLoggerCsvEntryWriter entryWriter, int startLap, int endLap)
+                throws IOException {
+            LogEntryRow row = new LogEntryRow();
+            for (int lap = startLap; lap <= endLap; lap++) {
+                for (long synchTimestamp : lapEntries(lap)) {
+                    row.clear();
+                    row.setSynchTimestamp(synchTimestamp);
+                    row.setSpeed(lap * 10f);
+                    row.setLap(lap);
+                    row.setSplitIndex(0);
+                    entryWriter.writeEntry(row);
+                }
+            }
+        }
+        
+        protected long[] lapEntries(int lap) {
+            long start = lapStart(lap);
+            long[] entries = new long[3];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = (start + i * 1000) % TimeUtil.MS_IN_DAY;
+            }
+            
+            return entries;
+        }
+        
+        private long lapStart(int lap) {
+            if (lap < 5) {
+                return lap * 10000;
+            } else if (lap == 5) {
+                return TimeUtil.MS_IN_DAY - 1000;
+            } else {
+                return (lap - 5) * 10000 + 1000;
+            }
+        }
+        
+        private long elapsed(long from, long to) {
+            return to < from ? TimeUtil.MS_IN_DAY + to - from : to - from;
+        }
+    }
+    
+    /**
+     * Exports the laps logged so far, taking a checkpoint after the last entry.  The log entry IDs are the
+     * positions of the entries in the session.
+     */
+    private class IncrementalExporterHarness extends PartitionedExporterHarness
+            implements IncrementalSessionExporter {
+        
+        private int loggedLaps;
+        private int lastExportedEntries;
+        private ExportCheckpoint checkpoint;
+        
+        public IncrementalExporterHarness(File exportDir) {
+            super(exportDir);
+        }
+        
+        @Override
+        public List<ExportPartition> getPartitions(int sessionId, Integer startLap, Integer endLap) {
+            return Collections.emptyList();
+        }
+        
+        @Override
+        protected void exportEntries(Writer writer, int sessionId,
+                Integer startLap, Integer endLap) throws IOException {
+            writeEntries(getEntryWriter(writer), startLap, endLap, 0);
+        }
+        
+        @Override
+        public void exportIncrement(OutputStream out, int sessionId, ExportCheckpoint checkpoint)
+                throws IOException {
+            TrackLoggerCsvEntryWriter entryWriter = createEntryWriter(out, checkpoint);
+            writeEntries(entryWriter, checkpoint.getStartLap(), checkpoint.getEndLap(),
+                    checkpoint.getLastLogEntryId());
+            entryWriter.getWriter().flush();
+        }
+        
+        @Override
+        public ExportCheckpoint getExportCheckpoint() {
+            return checkpoint;
+        }
+        
+        private void writeEntries(TrackLoggerCsvEntryWriter entryWriter, Integer startLap, Integer endLap,
+                long afterId) throws IOException {
+            
+            LogEntryRow row = new LogEntryRow();
+            long id = 0;
+            long lastId = afterId;
+            int lastLap = 0;
+            lastExportedEntries = 0;
+            
+            for (int lap = 1; lap <= loggedLaps; lap++) {
+                for (long synchTimestamp : lapEntries(lap)) {
+                    id++;
+                    
+                    if (id <= afterId || (startLap != null && lap < startLap) || (endLap != null && lap > endLap)) {
+                        continue;
+                    }
+                    
+                    row.clear();
+                    row.setSynchTimestamp(synchTimestamp);
+                    row.setSpeed(lap * 10f);
+                    row.setLap(lap);
+                    row.setSplitIndex(0);
+                    entryWriter.writeEntry(row);
+                    lastId = id;
+                    lastLap = lap;
+                    lastExportedEntries++;
+                }
+            }
+            
+            checkpoint = null;
+            if (lastId > 0) {
+                checkpoint = new ExportCheckpoint();
+                checkpoint.setLastLogEntryId(lastId);
+                checkpoint.setRunningTime(entryWriter.getRunningTime());
+                checkpoint.setLastSynchTimestamp(entryWriter.getLastSynchTimestamp());
+                checkpoint.setJoinState(new LogTimingMergeJoin.State(lastLap, 0, false, Long.MAX_VALUE, 0));
+            }
+        }
+    }
 }
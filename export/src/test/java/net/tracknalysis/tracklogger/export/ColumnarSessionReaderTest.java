@@ -0,0 +1,224 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.tracknalysis.common.notification.NoOpNotificationListener;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class ColumnarSessionReaderTest {
+    
+    @Test
+    public void testExport() throws Exception {
+        AbstractSessionToTrackLoggerColumnarExporter exporter = new AbstractSessionToTrackLoggerColumnarExporter(
+                new File("target"), new NoOpNotificationListener<SessionExporter.SessionExporterNotificationType>()) {
+            
+            @Override
+            protected void exportEntries(ColumnarSessionWriter writer, int sessionId,
+                    Integer startLap, Integer endLap) throws IOException {
+                writeLaps(writer);
+            }
+            
+            @Override
+            protected Date getSessionStartTime() {
+                return new Date(1000);
+            }
+        };
+        exporter.export(4);
+        
+        File file = new File("target", "4-1969.12.31-19.00.01.tlc");
+        assertEquals(file.getAbsolutePath(), exporter.getExportFileAbsolutePath());
+        
+        ColumnarSessionReader reader = new ColumnarSessionReader(file);
+        try {
+            assertEquals(4, reader.getSessionId());
+            assertEquals(new Date(1000), reader.getSessionStartTime());
+            assertEquals(5004, reader.getRowCount());
+            assertTrue(Arrays.equals(new int[] {1, 2, 3}, reader.getLaps()));
+            // Lap 2 spans two blocks of the default size.
+            assertEquals(4, reader.getBlockCount());
+            assertEquals(3, reader.getRowCount(1));
+            assertEquals(5000, reader.getRowCount(2));
+            assertEquals(1, reader.getRowCount(3));
+            
+            assertLaps(reader);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testBlocks() throws Exception {
+        File file = new File("target", "blocks.tlc");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            ColumnarSessionWriter writer = new ColumnarSessionWriter(out, 5, new Date(0), 2);
+            writeLaps(writer);
+            writer.finish();
+        } finally {
+            out.close();
+        }
+        
+        ColumnarSessionReader reader = new ColumnarSessionReader(file);
+        try {
+            assertEquals(2 + 2500 + 1, reader.getBlockCount());
+            assertLaps(reader);
+            
+            ColumnarSessionReader.Block block = reader.getBlock(0);
+            assertEquals(1, block.getLap());
+            assertEquals(2, block.getRowCount());
+            assertEquals(0, block.getMin(ColumnarChannel.SYNCH_TIMESTAMP), 0);
+            assertEquals(1, block.getMax(ColumnarChannel.SYNCH_TIMESTAMP), 0);
+            assertEquals(1, block.getNullCount(ColumnarChannel.SPEED));
+            assertEquals(1.5, block.getMin(ColumnarChannel.SPEED), 0);
+            assertEquals(1.5, block.getMax(ColumnarChannel.SPEED), 0);
+            assertEquals(2, block.getNullCount(ColumnarChannel.RPM));
+            assertEquals(-0.5, block.getMin(ColumnarChannel.LATITUDE), 0);
+            assertEquals(0, block.getMax(ColumnarChannel.LATITUDE), 0);
+            
+            block = reader.getBlock(1);
+            assertEquals(1, block.getLap());
+            assertEquals(1, block.getRowCount());
+            
+            block = reader.getBlock(2);
+            assertEquals(2, block.getLap());
+            assertEquals(3000, block.getMin(ColumnarChannel.RPM), 0);
+            assertEquals(3001, block.getMax(ColumnarChannel.RPM), 0);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingLap() throws Exception {
+        File file = new File("target", "empty.tlc");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            new ColumnarSessionWriter(out, 5, new Date(0)).finish();
+        } finally {
+            out.close();
+        }
+        
+        ColumnarSessionReader reader = new ColumnarSessionReader(file);
+        try {
+            assertEquals(0, reader.getRowCount());
+            assertEquals(0, reader.getColumn(ColumnarChannel.SPEED).getRowCount());
+            reader.getColumn(1, ColumnarChannel.SPEED);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void testNotColumnar() throws Exception {
+        File file = new File("target", "not-columnar.tlc");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write("running_time,synch_timestamp\r\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        
+        new ColumnarSessionReader(file);
+    }
+    
+    /**
+     * Writes lap 1 with 3 rows, lap 2 with 5000 rows, and lap 3 with 1 row.
+     */
+    private void writeLaps(ColumnarSessionWriter writer) throws IOException {
+        LogEntryRow row = new LogEntryRow();
+        int[] lapRows = {3, 5000, 1};
+        long synchTimestamp = 0;
+        
+        for (int lap = 1; lap <= lapRows.length; lap++) {
+            for (int i = 0; i < lapRows[lap - 1]; i++) {
+                row.clear();
+                row.setSynchTimestamp(synchTimestamp++);
+                row.setLap(lap);
+                row.setSplitIndex(i % 3);
+                row.setLatitude(-i / 2d);
+                if (i % 2 == 1) {
+                    row.setSpeed(i + 0.5f);
+                }
+                if (lap > 1) {
+                    row.setRpm(3000 + i);
+                }
+                row.setTimingCaptureTimestamp(100 + lap);
+                writer.writeRow(row);
+            }
+        }
+    }
+    
+    private void assertLaps(ColumnarSessionReader reader) {
+        ColumnarSessionReader.Column synchTimestamps = reader.getColumn(ColumnarChannel.SYNCH_TIMESTAMP);
+        assertEquals(5004, synchTimestamps.getRowCount());
+        for (int i = 0; i < synchTimestamps.getRowCount(); i++) {
+            assertFalse(synchTimestamps.isNull(i));
+            assertEquals(i, synchTimestamps.getLong(i));
+        }
+        
+        ColumnarSessionReader.Column speed = reader.getColumn(2, ColumnarChannel.SPEED);
+        ColumnarSessionReader.Column rpm = reader.getColumn(2, ColumnarChannel.RPM);
+        ColumnarSessionReader.Column latitude = reader.getColumn(2, ColumnarChannel.LATITUDE);
+        ColumnarSessionReader.Column split = reader.getColumn(2, ColumnarChannel.SPLIT_INDEX);
+        ColumnarSessionReader.Column accelTimestamp = reader.getColumn(2, ColumnarChannel.ACCEL_CAPTURE_TIMESTAMP);
+        assertEquals(5000, speed.getRowCount());
+        
+        for (int i = 0; i < 5000; i++) {
+            if (i % 2 == 1) {
+                assertFalse(speed.isNull(i));
+                assertEquals(i + 0.5f, speed.getFloat(i), 0);
+                assertEquals(i + 0.5d, speed.getDouble(i), 0);
+            } else {
+                assertTrue(speed.isNull(i));
+            }
+            
+            assertEquals(3000 + i, rpm.getInt(i));
+            assertEquals(-i / 2d, latitude.getDouble(i), 0);
+            assertEquals(i % 3, split.getInt(i));
+            assertTrue(accelTimestamp.isNull(i));
+        }
+        
+        // Random access in reverse.
+        assertEquals(3000, rpm.getLong(0));
+        assertEquals(7999, rpm.getLong(4999));
+        assertEquals(3000, rpm.getLong(0));
+        
+        ColumnarSessionReader.Column lap = reader.getColumn(3, ColumnarChannel.LAP);
+        assertEquals(1, lap.getRowCount());
+        assertEquals(3, lap.getInt(0));
+        assertEquals(103, reader.getColumn(3, ColumnarChannel.TIMING_CAPTURE_TIMESTAMP).getLong(0));
+        
+        try {
+            speed.getInt(0);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class DecimalFormatterTest {
+    
+    private final DecimalFormatter formatter = new DecimalFormatter();
+    
+    @Test
+    public void testFixedMatchesFormatter() {
+        double[] values = new double[] {0d, -0d, 0.5d, 1.5d, 2.5d, 0.125d, 2.675d, 9.995d, 0.1d, 1d / 3,
+                99.99999999999999d, 1e-20d, 5e-21d, 4.9e-21d, 123456.789d, 1e15d, 9007199254740993d, 1e23d,
+                Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        
+        for (double value : values) {
+            for (int precision = 0; precision <= DecimalFormatter.MAX_PRECISION; precision++) {
+                assertFixed(value, precision);
+                assertFixed(-value, precision);
+            }
+        }
+    }
+    
+    @Test
+    public void testFixedMatchesFormatterRandom() {
+        Random random = new Random(42);
+        
+        for (int i = 0; i < 200000; i++) {
+            double value;
+            switch (i % 4) {
+                case 0:
+                    value = Double.longBitsToDouble(random.nextLong());
+                    break;
+                case 1:
+                    value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+                    break;
+                case 2:
+                    value = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 6));
+                    break;
+                default:
+                    value = Math.round(random.nextDouble() * 100000) / Math.pow(10, random.nextInt(8));
+                    break;
+            }
+            
+            assertFixed(value, 20);
+            assertFixed(value, random.nextInt(DecimalFormatter.MAX_PRECISION + 1));
+        }
+    }
+    
+    @Test
+    public void testFloatFixedMatchesFormatter() {
+        Random random = new Random(42);
+        
+        for (int i = 0; i < 100000; i++) {
+            float value = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 6));
+            assertEquals(String.format(Locale.US, "%.20f", value), formatter.format(value, 20));
+        }
+    }
+    
+    @Test
+    public void testShortest() {
+        assertEquals("0.1", formatter.format(0.1d, DecimalFormatter.SHORTEST));
+        assertEquals("0.1", formatter.format(0.1f, DecimalFormatter.SHORTEST));
+        assertEquals("0.10000000149011612", formatter.format((double) 0.1f, DecimalFormatter.SHORTEST));
+        assertEquals("100.0", formatter.format(100d, DecimalFormatter.SHORTEST));
+        assertEquals("-12.25", formatter.format(-12.25f, DecimalFormatter.SHORTEST));
+        assertEquals("0.00001", formatter.format(1e-5d, DecimalFormatter.SHORTEST));
+        assertEquals("-0.0", formatter.format(-0d, DecimalFormatter.SHORTEST));
+        assertEquals("NaN", formatter.format(Double.NaN, DecimalFormatter.SHORTEST));
+        
+        Random random = new Random(42);
+        
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            
+            String formatted = formatter.format(value, DecimalFormatter.SHORTEST);
+            assertEquals(formatted, value, Double.parseDouble(formatted), 0d);
+            
+            float floatValue = Float.intBitsToFloat(random.nextInt());
+            if (Float.isNaN(floatValue) || Float.isInfinite(floatValue)) {
+                continue;
+            }
+            
+            formatted = formatter.format(floatValue, DecimalFormatter.SHORTEST);
+            assertEquals(formatted, floatValue, Float.parseFloat(formatted), 0f);
+        }
+    }
+    
+    @Test
+    public void testWrite() throws Exception {
+        StringWriter writer = new StringWriter();
+        
+        formatter.write(writer, 0L);
+        writer.write(',');
+        formatter.write(writer, -1234567890123L);
+        writer.write(',');
+        formatter.write(writer, Long.MAX_VALUE);
+        writer.write(',');
+        formatter.write(writer, Long.MIN_VALUE);
+        writer.write(',');
+        formatter.write(writer, 3f, 2);
+        writer.write(',');
+        formatter.write(writer, 0.25d, DecimalFormatter.SHORTEST);
+        
+        assertEquals("0,-1234567890123," + Long.MAX_VALUE + "," + Long.MIN_VALUE + ",3.00,0.25",
+                writer.toString());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedPrecision() {
+        formatter.format(1d, DecimalFormatter.MAX_PRECISION + 1);
+    }
+    
+    private void assertFixed(double value, int precision) {
+        assertEquals(String.format(Locale.US, "%." + precision + "f", value), formatter.format(value, precision));
+    }
+}
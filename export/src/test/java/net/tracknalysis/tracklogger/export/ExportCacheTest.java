@@ -0,0 +1,121 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class ExportCacheTest {
+    
+    private File cacheDir;
+    private ExportCache cache;
+    
+    @Before
+    public void setup() {
+        cacheDir = new File("target", "ExportCacheTest");
+        cache = new ExportCache(cacheDir, 10);
+        cache.clear();
+    }
+    
+    @Test
+    public void testPutAndGet() throws IOException {
+        File file = createFile("1.csv", "abcd");
+        
+        assertNull(cache.get("a", "1.csv"));
+        
+        File cachedFile = cache.put("a", file);
+        assertEquals(cachedFile, cache.get("a", "1.csv"));
+        assertEquals("abcd", FileUtils.readFileToString(cachedFile));
+        assertNull(cache.get("b", "1.csv"));
+        assertNull(cache.get("a", "2.csv"));
+        assertEquals(4, cache.getSize());
+        
+        // Replaces the existing entry.
+        FileUtils.writeStringToFile(file, "efg");
+        cache.put("a", file);
+        assertEquals("efg", FileUtils.readFileToString(cache.get("a", "1.csv")));
+        assertEquals(3, cache.getSize());
+        
+        cache.clear();
+        assertNull(cache.get("a", "1.csv"));
+        assertEquals(0, cache.getSize());
+    }
+    
+    @Test
+    public void testCopyTo() throws IOException {
+        File target = new File(new File("target", "ExportCacheTest-files"), "copy.csv");
+        FileUtils.writeStringToFile(target, "old content");
+        
+        assertFalse(cache.copyTo("a", "1.csv", target));
+        assertEquals("old content", FileUtils.readFileToString(target));
+        
+        cache.put("a", createFile("1.csv", "abcd"));
+        assertTrue(cache.copyTo("a", "1.csv", target));
+        assertEquals("abcd", FileUtils.readFileToString(target));
+        
+        cache.clear();
+        assertEquals("abcd", FileUtils.readFileToString(target));
+    }
+    
+    @Test
+    public void testEviction() throws IOException {
+        File aEntryDir = cache.put("a", createFile("a.csv", "aaaa")).getParentFile();
+        File bEntryDir = cache.put("b", createFile("b.csv", "bbbb")).getParentFile();
+        aEntryDir.setLastModified(1000000000000l);
+        bEntryDir.setLastModified(1000000001000l);
+        
+        // Using a makes b the least recently used.
+        assertNotNull(cache.get("a", "a.csv"));
+        
+        cache.put("c", createFile("c.csv", "cccc"));
+        assertNotNull(cache.get("a", "a.csv"));
+        assertNull(cache.get("b", "b.csv"));
+        assertNotNull(cache.get("c", "c.csv"));
+        assertEquals(8, cache.getSize());
+    }
+    
+    @Test
+    public void testPutTooLarge() throws IOException {
+        assertNull(cache.put("a", createFile("a.csv", "01234567890")));
+        assertNull(cache.get("a", "a.csv"));
+        assertEquals(0, cache.getSize());
+    }
+    
+    @Test
+    public void testHash() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", ExportCache.hash("abc"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() {
+        new ExportCache(cacheDir, 0);
+    }
+    
+    private File createFile(String name, String content) throws IOException {
+        File file = new File(new File("target", "ExportCacheTest-files"), name);
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class ExportCheckpointTest {
+    
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        File file = new File("target", "ExportCheckpointTest.checkpoint");
+        
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        checkpoint.setSessionId(3);
+        checkpoint.setEndLap(7);
+        checkpoint.setFileLength(12345);
+        checkpoint.setFileLastModified(1350000000000l);
+        checkpoint.setLastLogEntryId(99);
+        checkpoint.setLastTimingEntryId(12);
+        checkpoint.setRunningTime(86400001);
+        checkpoint.setLastSynchTimestamp(1);
+        checkpoint.setJoinState(new LogTimingMergeJoin.State(6, 1, true, Long.MAX_VALUE, 4321));
+        checkpoint.store(file);
+        
+        ExportCheckpoint loaded = ExportCheckpoint.load(file);
+        assertEquals(checkpoint.toString(), loaded.toString());
+        assertTrue(loaded.isFor(3, null, 7));
+        assertFalse(loaded.isFor(3, 1, 7));
+        assertFalse(loaded.isFor(3, null, null));
+        assertFalse(loaded.isFor(4, null, 7));
+        assertFalse(new File("target", "ExportCheckpointTest.checkpoint.tmp").exists());
+    }
+    
+    @Test
+    public void testLoadMissing() throws IOException {
+        assertNull(ExportCheckpoint.load(new File("target", "missing.checkpoint")));
+    }
+    
+    @Test(expected = IOException.class)
+    public void testLoadInvalid() throws IOException {
+        File file = new File("target", "ExportCheckpointTest-invalid.checkpoint");
+        FileUtils.writeStringToFile(file, "session_id=x\n");
+        ExportCheckpoint.load(file);
+    }
+    
+    @Test
+    public void testIsCurrent() throws IOException {
+        File file = new File("target", "ExportCheckpointTest.csv");
+        FileUtils.writeStringToFile(file, "abc");
+        
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        checkpoint.setFileLength(file.length());
+        checkpoint.setFileLastModified(file.lastModified());
+        assertTrue(checkpoint.isCurrent(file));
+        
+        checkpoint.setFileLength(file.length() - 1);
+        assertFalse(checkpoint.isCurrent(file));
+        assertFalse(checkpoint.isCurrent(new File("target", "missing.csv")));
+    }
+}
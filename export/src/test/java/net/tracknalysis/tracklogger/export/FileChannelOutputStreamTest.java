@@ -0,0 +1,111 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import net.tracknalysis.tracklogger.export.FileChannelOutputStream.ForcePolicy;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class FileChannelOutputStreamTest {
+    
+    private File file;
+    
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("FileChannelOutputStreamTest", ".bin");
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+    
+    @Test
+    public void testWrite() throws IOException {
+        for (ForcePolicy forcePolicy : ForcePolicy.values()) {
+            assertWrite(ByteBuffer.allocateDirect(64), forcePolicy);
+            assertWrite(ByteBuffer.allocate(1), forcePolicy);
+        }
+    }
+    
+    @Test
+    public void testBufferReuse() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        buffer.put((byte) 1);
+        
+        assertWrite(buffer, ForcePolicy.NONE);
+        assertWrite(buffer, ForcePolicy.NONE);
+    }
+    
+    @Test
+    public void testWriteAfterClose() throws IOException {
+        FileChannelOutputStream out = new FileChannelOutputStream(
+                new FileOutputStream(file).getChannel(), ByteBuffer.allocate(16), ForcePolicy.NONE);
+        out.close();
+        out.close();
+        
+        try {
+            out.write(1);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+    
+    private void assertWrite(ByteBuffer buffer, ForcePolicy forcePolicy) throws IOException {
+        Random random = new Random(42);
+        byte[] expected = new byte[10000];
+        random.nextBytes(expected);
+        
+        FileChannelOutputStream out = new FileChannelOutputStream(
+                new FileOutputStream(file).getChannel(), buffer, forcePolicy);
+        
+        try {
+            int offset = 0;
+            while (offset < expected.length) {
+                if (random.nextInt(4) == 0) {
+                    out.write(expected[offset++]);
+                } else {
+                    int length = Math.min(expected.length - offset, random.nextInt(100));
+                    out.write(expected, offset, length);
+                    offset += length;
+                }
+                
+                if (random.nextInt(50) == 0) {
+                    out.flush();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        
+        assertArrayEquals(expected, FileUtils.readFileToByteArray(file));
+    }
+}
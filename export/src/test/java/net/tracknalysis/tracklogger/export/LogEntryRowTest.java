@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LogEntryRowTest {
+    
+    @Test
+    public void testNullMask() {
+        LogEntryRow row = new LogEntryRow();
+        
+        for (LogEntryRow.Field field : LogEntryRow.Field.values()) {
+            assertTrue(row.isNull(field));
+        }
+        
+        row.setLatitude(1d);
+        row.setRpm(0);
+        row.setTimingCaptureTimestamp(5);
+        
+        for (LogEntryRow.Field field : LogEntryRow.Field.values()) {
+            assertEquals(field.toString(), field != LogEntryRow.Field.LATITUDE
+                    && field != LogEntryRow.Field.RPM
+                    && field != LogEntryRow.Field.TIMING_CAPTURE_TIMESTAMP, row.isNull(field));
+        }
+        
+        row.setNull(LogEntryRow.Field.RPM);
+        assertTrue(row.isNull(LogEntryRow.Field.RPM));
+        assertFalse(row.isNull(LogEntryRow.Field.LATITUDE));
+        assertEquals(1d, row.getLatitude(), 0d);
+        
+        row.clear();
+        
+        for (LogEntryRow.Field field : LogEntryRow.Field.values()) {
+            assertTrue(row.isNull(field));
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.tracknalysis.common.util.TimeUtil;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LogTimingMergeJoinTest {
+    
+    private static final long[] LOG_SYNCH_TIMESTAMPS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+    private static final long[][] TIMING_ENTRIES = {
+        // synch timestamp, lap, split index, capture timestamp
+        {3, 0, 1, 103},
+        {6, 1, 0, 106},
+        {9, 1, 1, 109}};
+    
+    @Test
+    public void testJoin() throws Exception {
+        LogTimingMergeJoin join = createJoin(null, null);
+        
+        assertEntry(join, 3, 1, 0, 103);
+        assertEquals(3, join.getLogRecordCount());
+        assertEntry(join, 4, 1, 0, 106);
+        assertEntry(join, 5, 1, 0, 106);
+        assertEntry(join, 6, 1, 1, 106);
+        assertEntry(join, 7, 1, 1, 109);
+        assertEntry(join, 8, 1, 1, 109);
+        assertEntry(join, 9, 2, 0, 109);
+        assertEntry(join, 10, 2, 0, 109);
+        assertEntry(join, 11, 2, 0, 109);
+        assertEntry(join, 12, 2, 0, 109);
+        assertFalse(join.next());
+        assertFalse(join.next());
+        assertEquals(12, join.getLogRecordCount());
+    }
+    
+    @Test
+    public void testJoinStartLap() throws Exception {
+        LogTimingMergeJoin join = createJoin(2, null);
+        
+        assertEntry(join, 9, 2, 0, 109);
+        assertEntry(join, 10, 2, 0, 109);
+        assertEntry(join, 11, 2, 0, 109);
+        assertEntry(join, 12, 2, 0, 109);
+        assertFalse(join.next());
+    }
+    
+    @Test
+    public void testJoinEndLap() throws Exception {
+        LogTimingMergeJoin join = createJoin(null, 1);
+        
+        for (long synchTimestamp = 3; synchTimestamp <= 8; synchTimestamp++) {
+            assertTrue(join.next());
+            assertEquals(synchTimestamp, join.getLogRecordCount());
+            assertEquals(1, join.getLap());
+        }
+        
+        assertFalse(join.next());
+        // The join stops at the first entry past the end lap.
+        assertEquals(9, join.getLogRecordCount());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testNoTimingEntries() throws Exception {
+        new LogTimingMergeJoin(new ArrayLogRecordSource(LOG_SYNCH_TIMESTAMPS),
+                new ArrayTimingRecordSource(new long[0][]), 2, null, null).next();
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testNoLogEntries() throws Exception {
+        new LogTimingMergeJoin(new ArrayLogRecordSource(new long[0]),
+                new ArrayTimingRecordSource(TIMING_ENTRIES), 2, null, null).next();
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testNoSynch() throws Exception {
+        new LogTimingMergeJoin(new ArrayLogRecordSource(new long[] {1, 2}),
+                new ArrayTimingRecordSource(TIMING_ENTRIES), 2, null, null).next();
+    }
+    
+    @Test
+    public void testClose() throws Exception {
+        ArrayLogRecordSource logRecords = new ArrayLogRecordSource(LOG_SYNCH_TIMESTAMPS);
+        ArrayTimingRecordSource timingRecords = new ArrayTimingRecordSource(TIMING_ENTRIES);
+        new LogTimingMergeJoin(logRecords, timingRecords, 2, null, null).close();
+        
+        assertTrue(logRecords.closed);
+        assertTrue(timingRecords.closed);
+    }
+    
+    /**
+     * Joins each prefix of the session as it would have been logged at the time, then resumes the join
+     * with the remainder of the session and checks that the resumed entries match those of a join of the
+     * whole session.
+     */
+    @Test
+    public void testResume() throws Exception {
+        List<long[]> expected = joinAll(new ArrayLogRecordSource(LOG_SYNCH_TIMESTAMPS),
+                new ArrayTimingRecordSource(TIMING_ENTRIES), null);
+        
+        for (int logged = 3; logged <= LOG_SYNCH_TIMESTAMPS.length; logged++) {
+            int timingLogged = 0;
+            while (timingLogged < TIMING_ENTRIES.length && TIMING_ENTRIES[timingLogged][0] <= logged) {
+                timingLogged++;
+            }
+            
+            ArrayLogRecordSource logRecords = new ArrayLogRecordSource(
+                    Arrays.copyOf(LOG_SYNCH_TIMESTAMPS, logged));
+            ArrayTimingRecordSource timingRecords = new ArrayTimingRecordSource(
+                    Arrays.copyOf(TIMING_ENTRIES, timingLogged));
+            LogTimingMergeJoin join = new LogTimingMergeJoin(logRecords, timingRecords, 2, null, null);
+            
+            int loadedTimingEntries = 0;
+            while (join.next()) {
+                loadedTimingEntries = Math.min(timingRecords.index + 1, timingLogged);
+            }
+            
+            LogTimingMergeJoin.State state = join.getState();
+            
+            List<long[]> resumed = joinAll(
+                    new ArrayLogRecordSource(Arrays.copyOfRange(
+                            LOG_SYNCH_TIMESTAMPS, logged, LOG_SYNCH_TIMESTAMPS.length)),
+                    new ArrayTimingRecordSource(Arrays.copyOfRange(
+                            TIMING_ENTRIES, loadedTimingEntries, TIMING_ENTRIES.length)),
+                    state);
+            
+            assertEquals(expected.size() - (logged - 2), resumed.size());
+            for (int i = 0; i < resumed.size(); i++) {
+                assertEquals("Resumed after " + logged + " entries.",
+                        Arrays.toString(expected.get(logged - 2 + i)), Arrays.toString(resumed.get(i)));
+            }
+        }
+    }
+    
+    @Test
+    public void testResumeEndLap() throws Exception {
+        LogTimingMergeJoin join = createJoin(null, 1);
+        while (join.next()) {
+        }
+        
+        // The state is that of the last entry returned rather than the entry past the end lap.
+        LogTimingMergeJoin.State state = join.getState();
+        assertEquals(1, state.getLap());
+        assertEquals(1, state.getSplitIndex());
+        assertEquals(109, state.getTimingCaptureTimestamp());
+        
+        LogTimingMergeJoin resumed = LogTimingMergeJoin.resume(
+                new ArrayLogRecordSource(new long[] {9, 10}), new ArrayTimingRecordSource(new long[0][]), 2,
+                1, state);
+        assertFalse(resumed.next());
+        assertEquals(1, resumed.getState().getLap());
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testStateBeforeEntry() throws Exception {
+        createJoin(null, null).getState();
+    }
+    
+    /**
+     * Joins a synthetic session of a million log entries with a timing entry every 100 log entries and
+     * synch timestamps that roll over into the next day.
+     */
+    @Test
+    public void testJoinLargeSession() throws Exception {
+        final int logEntryCount = 1000000;
+        final int timingInterval = 100;
+        final int firstTimingEntry = 50;
+        final int splitMarkerCount = 4;
+        final long firstSynchTimestamp = TimeUtil.MS_IN_DAY - 60 * 60 * 1000;
+        
+        RecordSource logRecords = new RecordSource() {
+            private int index = -1;
+            
+            @Override
+            public boolean moveToNext() {
+                return ++index < logEntryCount;
+            }
+            
+            @Override
+            public long getSynchTimestamp() {
+                return synchTimestamp(index);
+            }
+            
+            @Override
+            public void close() {
+            }
+            
+            private long synchTimestamp(int index) {
+                return (firstSynchTimestamp + index * 10L) % TimeUtil.MS_IN_DAY;
+            }
+        };
+        
+        TimingRecordSource timingRecords = new TimingRecordSource() {
+            private int index = -1;
+            
+            @Override
+            public boolean moveToNext() {
+                return firstTimingEntry + ++index * timingInterval < logEntryCount;
+            }
+            
+            @Override
+            public long getSynchTimestamp() {
+                return (firstSynchTimestamp + (firstTimingEntry + index * timingInterval) * 10L)
+                        % TimeUtil.MS_IN_DAY;
+            }
+            
+            @Override
+            public int getLap() {
+                // Each timing entry records the completion of the previous split.
+                return index == 0 ? 0 : 1 + (index - 1) / splitMarkerCount;
+            }
+            
+            @Override
+            public int getSplitIndex() {
+                return index == 0 ? splitMarkerCount - 1 : (index - 1) % splitMarkerCount;
+            }
+            
+            @Override
+            public long getCaptureTimestamp() {
+                return index;
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+        
+        LogTimingMergeJoin join = new LogTimingMergeJoin(logRecords, timingRecords, splitMarkerCount,
+                null, null);
+        
+        int entryCount = 0;
+        while (join.next()) {
+            int split = entryCount / timingInterval;
+            assertEquals(1 + split / splitMarkerCount, join.getLap());
+            assertEquals(split % splitMarkerCount, join.getSplitIndex());
+            entryCount++;
+        }
+        
+        assertEquals(logEntryCount - firstTimingEntry, entryCount);
+        assertEquals(logEntryCount, join.getLogRecordCount());
+    }
+    
+    /**
+     * Returns the synch timestamp, lap, split index, and timing capture timestamp of each entry returned by
+     * a join of the sources, resumed from the state if not {@code null}.
+     */
+    private List<long[]> joinAll(ArrayLogRecordSource logRecords, ArrayTimingRecordSource timingRecords,
+            LogTimingMergeJoin.State state) throws IOException {
+        
+        LogTimingMergeJoin join;
+        if (state == null) {
+            join = new LogTimingMergeJoin(logRecords, timingRecords, 2, null, null);
+        } else {
+            join = LogTimingMergeJoin.resume(logRecords, timingRecords, 2, null, state);
+        }
+        
+        List<long[]> entries = new ArrayList<long[]>();
+        while (join.next()) {
+            entries.add(new long[] {logRecords.getSynchTimestamp(), join.getLap(), join.getSplitIndex(),
+                    join.getTimingCaptureTimestamp()});
+        }
+        
+        return entries;
+    }
+    
+    private LogTimingMergeJoin createJoin(Integer startLap, Integer endLap) {
+        return new LogTimingMergeJoin(new ArrayLogRecordSource(LOG_SYNCH_TIMESTAMPS),
+                new ArrayTimingRecordSource(TIMING_ENTRIES), 2, startLap, endLap);
+    }
+    
+    private void assertEntry(LogTimingMergeJoin join, long logRecordCount, int lap, int splitIndex,
+            long timingCaptureTimestamp) throws IOException {
+        assertTrue(join.next());
+        assertEquals(logRecordCount, join.getLogRecordCount());
+        assertEquals(lap, join.getLap());
+        assertEquals(splitIndex, join.getSplitIndex());
+        assertEquals(timingCaptureTimestamp, join.getTimingCaptureTimestamp());
+    }
+    
+    private static class ArrayLogRecordSource implements RecordSource {
+        
+        private final long[] synchTimestamps;
+        private int index = -1;
+        private boolean closed;
+        
+        public ArrayLogRecordSource(long[] synchTimestamps) {
+            this.synchTimestamps = synchTimestamps;
+        }
+        
+        @Override
+        public boolean moveToNext() {
+            return ++index < synchTimestamps.length;
+        }
+        
+        @Override
+        public long getSynchTimestamp() {
+            return synchTimestamps[index];
+        }
+        
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+    
+    private static class ArrayTimingRecordSource implements TimingRecordSource {
+        
+        private final long[][] entries;
+        private int index = -1;
+        private boolean closed;
+        
+        public ArrayTimingRecordSource(long[][] entries) {
+            this.entries = entries;
+        }
+        
+        @Override
+        public boolean moveToNext() {
+            return ++index < entries.length;
+        }
+        
+        @Override
+        public long getSynchTimestamp() {
+            return entries[index][0];
+        }
+        
+        @Override
+        public int getLap() {
+            return (int) entries[index][1];
+        }
+        
+        @Override
+        public int getSplitIndex() {
+            return (int) entries[index][2];
+        }
+        
+        @Override
+        public long getCaptureTimestamp() {
+            return entries[index][3];
+        }
+        
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
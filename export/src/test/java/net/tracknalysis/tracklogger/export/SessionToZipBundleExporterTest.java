@@ -0,0 +1,118 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import net.tracknalysis.common.notification.NoOpNotificationListener;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class SessionToZipBundleExporterTest {
+    
+    @Test
+    public void testExport() throws Exception {
+        SessionToZipBundleExporter exporter = new SessionToZipBundleExporter(new File("target"), null,
+                Arrays.asList(new TextExporterHarness("csv", "a,b\r\n"), new TextExporterHarness("sql", "SELECT 1;")));
+        exporter.export(2, 3, null);
+        
+        File exportFile = new File("target", "2-1969.12.31-19.00.00.zip");
+        assertEquals(exportFile.getAbsolutePath(), exporter.getExportFileAbsolutePath());
+        
+        ZipInputStream zipIn = new ZipInputStream(new FileInputStream(exportFile));
+        try {
+            ZipEntry entry = zipIn.getNextEntry();
+            assertEquals(SessionToZipBundleExporter.MANIFEST_ENTRY_NAME, entry.getName());
+            List<String> manifest = IOUtils.readLines(zipIn, "UTF-8");
+            assertEquals(9, manifest.size());
+            assertEquals("format=TrackLogger Bundle 1.0", manifest.get(0));
+            assertEquals("session_id=2", manifest.get(1));
+            assertEquals("start_lap=3", manifest.get(2));
+            assertEquals("end_lap=", manifest.get(3));
+            assertTrue(manifest.get(4).startsWith("export_time="));
+            assertEquals("entry.0.name=2-1969.12.31-19.00.00.csv", manifest.get(5));
+            assertEquals("entry.0.mime_type=text/csv", manifest.get(6));
+            assertEquals("entry.1.name=2-1969.12.31-19.00.00.sql", manifest.get(7));
+            assertEquals("entry.1.mime_type=text/sql", manifest.get(8));
+            
+            entry = zipIn.getNextEntry();
+            assertEquals("2-1969.12.31-19.00.00.csv", entry.getName());
+            assertEquals("a,b\r\n", IOUtils.toString(zipIn, "UTF-8"));
+            
+            entry = zipIn.getNextEntry();
+            assertEquals("2-1969.12.31-19.00.00.sql", entry.getName());
+            assertEquals("SELECT 1;", IOUtils.toString(zipIn, "UTF-8"));
+            
+            assertNull(zipIn.getNextEntry());
+        } finally {
+            zipIn.close();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoExporters() {
+        new SessionToZipBundleExporter(new File("target"), null,
+                Arrays.<AbstractSessionToFileExporter>asList());
+    }
+    
+    private static class TextExporterHarness extends AbstractSessionToFileExporter {
+        
+        private final String extension;
+        private final String content;
+        
+        public TextExporterHarness(String extension, String content) {
+            super(new File("target"), new NoOpNotificationListener<SessionExporterNotificationType>());
+            this.extension = extension;
+            this.content = content;
+        }
+        
+        @Override
+        public String getMimeType() {
+            return "text/" + extension;
+        }
+        
+        @Override
+        protected void export(OutputStream out, int sessionId, Integer startLap,
+                Integer endLap) throws IOException {
+            out.write(content.getBytes("UTF-8"));
+            out.flush();
+        }
+        
+        @Override
+        protected Date getSessionStartTime() {
+            return new Date(0);
+        }
+        
+        @Override
+        protected String getFileExtension() {
+            return extension;
+        }
+    }
+}
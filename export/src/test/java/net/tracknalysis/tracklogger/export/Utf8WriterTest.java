@@ -0,0 +1,152 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.export;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import net.tracknalysis.tracklogger.export.FileChannelOutputStream.ForcePolicy;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class Utf8WriterTest {
+    
+    @Test
+    public void testAscii() throws IOException {
+        assertEncoded("running_time,synch_timestamp\r\n0.000,1234567890,-12.5,,\r\n", 8192);
+    }
+    
+    @Test
+    public void testNonAscii() throws IOException {
+        assertEncoded("Lime Rock \u00e9\u00df \u20ac \u6728 \ud83c\udfc1 end", 8192);
+        assertEncoded("\u00e9\u20ac\ud83c\udfc1\u00e9\u20ac\ud83c\udfc1\u00e9\u20ac", 4);
+    }
+    
+    @Test
+    public void testUnpairedSurrogates() throws IOException {
+        assertEquals("a?b?c?", encode("a\ud83cb\udfc1c\ud83c", 8192));
+        assertEquals("??", encode("\udfc1\ud83c", 8192));
+    }
+    
+    @Test
+    public void testSurrogatePairSplitAcrossWrites() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utf8Writer writer = new Utf8Writer(bytes, 4);
+        writer.write("abc\ud83c");
+        writer.flush();
+        writer.write('\udfc1');
+        writer.write("d");
+        writer.close();
+        
+        assertArrayEquals("abc\ud83c\udfc1d".getBytes("UTF-8"), bytes.toByteArray());
+    }
+    
+    @Test
+    public void testRandom() throws IOException {
+        Random random = new Random(42);
+        
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(200);
+            
+            for (int j = 0; j < length; j++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        builder.append((char) (0x20 + random.nextInt(0x5F)));
+                        break;
+                    case 1:
+                        builder.append((char) (0x80 + random.nextInt(0x780)));
+                        break;
+                    case 2:
+                        builder.append((char) (0x800 + random.nextInt(0xD000)));
+                        break;
+                    default:
+                        builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                }
+            }
+            
+            assertEncoded(builder.toString(), 4 + random.nextInt(64));
+        }
+    }
+    
+    @Test
+    public void testFileChannelOutputStream() throws IOException {
+        String value = "Lime Rock \u00e9\u00df \u20ac \u6728 \ud83c\udfc1 end";
+        File file = File.createTempFile("Utf8WriterTest", ".txt");
+        
+        try {
+            for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocateDirect(4), ByteBuffer.allocate(64)}) {
+                FileChannelOutputStream out = new FileChannelOutputStream(
+                        new FileOutputStream(file).getChannel(), buffer, ForcePolicy.NONE);
+                Utf8Writer writer = new Utf8Writer(out, 4);
+                writer.write(value);
+                // Bytes written to the stream directly follow the characters already written.
+                out.write('|');
+                writer.write(value);
+                writer.close();
+                
+                assertArrayEquals((value + "|" + value).getBytes("UTF-8"), FileUtils.readFileToByteArray(file));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferTooSmall() {
+        new Utf8Writer(new ByteArrayOutputStream(), 3);
+    }
+    
+    private void assertEncoded(String value, int bufferSize) throws IOException {
+        assertEquals(value, encode(value, bufferSize));
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utf8Writer writer = new Utf8Writer(bytes, bufferSize);
+        writer.write(value.toCharArray());
+        writer.close();
+        
+        assertArrayEquals(value.getBytes("UTF-8"), bytes.toByteArray());
+    }
+    
+    private String encode(String value, int bufferSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utf8Writer writer = new Utf8Writer(bytes, bufferSize);
+        
+        for (int i = 0; i < value.length(); i++) {
+            if (i % 7 == 0) {
+                writer.write(value.charAt(i));
+            } else {
+                int end = Math.min(value.length(), i + 5);
+                writer.write(value, i, end - i);
+                i = end - 1;
+            }
+        }
+        
+        writer.close();
+        
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+}
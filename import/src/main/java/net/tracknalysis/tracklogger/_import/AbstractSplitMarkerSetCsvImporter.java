@@ -41,6 +41,7 @@ public abstract class AbstractSplitMarkerSetCsvImporter extends AbstractSplitMar
     @Override
     public final void doImport() {
         getNotificationStrategy().onNotification(SplitMarkerSetImporterNotificationType.IMPORT_STARTING);
+        resetProgressNotification();
         
         InputStream is = null;
         int counter = 0;
@@ -68,8 +69,7 @@ public abstract class AbstractSplitMarkerSetCsvImporter extends AbstractSplitMar
                 
                 try {
                     createSplitMarker(tokens[0].trim(), Double.valueOf(tokens[1]), Double.valueOf(tokens[2]));
-                    getNotificationStrategy().onNotification(SplitMarkerSetImporterNotificationType.IMPORT_PROGRESS,
-                            new ImportProgress(counter++, null));
+                    sendImportProgressNotification(counter++, null);
                 } catch (NumberFormatException e) {
                     LOG.error(
                             "Number format error parsing latitude and longitude data from import row ["
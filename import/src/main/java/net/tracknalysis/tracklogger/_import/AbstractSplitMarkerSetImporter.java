@@ -17,14 +17,23 @@ package net.tracknalysis.tracklogger._import;
 
 import net.tracknalysis.common.notification.NoOpNotificationListener;
 import net.tracknalysis.common.notification.NotificationListener;
+import net.tracknalysis.tracklogger.model.notification.ProgressThrottle;
 
 /**
+ * Base class for importers.  Progress notifications are coalesced so that importers may report progress
+ * for every record without flooding the notification listener.  A progress notification is sent only
+ * once the import has advanced by at least the {@link #setProgressStep(int) progress step} and the
+ * {@link #setProgressInterval(long) progress interval} has elapsed since the last progress notification.
+ * The first progress notification of each import and the notification of its completion are always sent.
+ *
  * @author David Valeri
  */
 public abstract class AbstractSplitMarkerSetImporter implements SplitMarkerSetImporter {
-
+    
     protected final NotificationListener<SplitMarkerSetImporterNotificationType> notificationStrategy;
     
+    private final ProgressThrottle progressThrottle = new ProgressThrottle();
+    
     protected AbstractSplitMarkerSetImporter(
             NotificationListener<SplitMarkerSetImporterNotificationType> notificationStrategy) {
         if (notificationStrategy == null) {
@@ -34,7 +43,62 @@ public abstract class AbstractSplitMarkerSetImporter implements SplitMarkerSetIm
         }
     }
     
+    public final long getProgressInterval() {
+        return progressThrottle.getInterval();
+    }
+    
+    /**
+     * Sets the minimum time between progress notifications, {@link ProgressThrottle#DEFAULT_INTERVAL} by
+     * default.
+     *
+     * @param progressInterval the interval in milliseconds, 0 to disable the time based throttling
+     *
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public final void setProgressInterval(long progressInterval) {
+        progressThrottle.setInterval(progressInterval);
+    }
+    
+    public final int getProgressStep() {
+        return progressThrottle.getStep();
+    }
+    
+    /**
+     * Sets the minimum advance of the import between progress notifications,
+     * {@link ProgressThrottle#DEFAULT_STEP} by default.  Ignored when the total number of records is not
+     * known.
+     *
+     * @param progressStep the step in percent of the total records, 0 to disable the step based throttling
+     *
+     * @throws IllegalArgumentException if the step is not between 0 and 100
+     */
+    public final void setProgressStep(int progressStep) {
+        progressThrottle.setStep(progressStep);
+    }
+    
     protected final NotificationListener<SplitMarkerSetImporterNotificationType> getNotificationStrategy() {
         return notificationStrategy;
     }
+    
+    /**
+     * Resets the throttling of progress notifications so that the next progress notification is sent.
+     * Called at the start of each import.
+     */
+    protected final void resetProgressNotification() {
+        progressThrottle.reset();
+    }
+    
+    /**
+     * Sends a progress notification if the import has advanced far enough since the last progress
+     * notification.  Safe to call from multiple threads.
+     *
+     * @param currentRecord the index of the current record imported
+     * @param totalRecords the total number of records to import, or {@code null} if not known
+     */
+    protected final void sendImportProgressNotification(int currentRecord, Integer totalRecords) {
+        if (progressThrottle.isDue(currentRecord, totalRecords == null ? 0 : totalRecords)) {
+            getNotificationStrategy().onNotification(SplitMarkerSetImporterNotificationType.IMPORT_PROGRESS,
+                    new ImportProgress(currentRecord, totalRecords));
+        }
+    }
 }
@@ -54,6 +54,7 @@ public class AbstractSplitMarkerSetCsvImporterTest {
                 notificationStrategy,
                 AbstractSplitMarkerSetCsvImporterTest.class
                         .getResourceAsStream("csv-splitmarker-valid.csv"));
+        harness.setProgressInterval(0);
         
         Capture<ImportProgress> progressCapture = new Capture<SplitMarkerSetImporter.ImportProgress>(CaptureType.ALL);
         
@@ -106,6 +107,39 @@ public class AbstractSplitMarkerSetCsvImporterTest {
         assertEquals(70.1234567890, splitMarkers.get(3).getLongitude(), 0);
     }
     
+    @Test
+    public void testValidFileProgressThrottled() {
+        
+        SplitMarkerSetCsvImporterTestHarness harness = new SplitMarkerSetCsvImporterTestHarness(
+                notificationStrategy,
+                AbstractSplitMarkerSetCsvImporterTest.class
+                        .getResourceAsStream("csv-splitmarker-valid.csv"));
+        harness.setProgressInterval(60000);
+        
+        Capture<ImportProgress> progressCapture = new Capture<SplitMarkerSetImporter.ImportProgress>(CaptureType.ALL);
+        
+        notificationStrategy.onNotification(SplitMarkerSetImporterNotificationType.IMPORT_STARTING);
+        expectLastCall();
+        notificationStrategy.onNotification(SplitMarkerSetImporterNotificationType.IMPORT_STARTED);
+        expectLastCall();
+        notificationStrategy.onNotification(
+                eq(SplitMarkerSetImporterNotificationType.IMPORT_PROGRESS),
+                capture(progressCapture));
+        expectLastCall();
+        notificationStrategy.onNotification(eq(SplitMarkerSetImporterNotificationType.IMPORT_FINISHED), eq(0));
+        expectLastCall();
+        
+        replay(notificationStrategy);
+        
+        harness.doImport();
+        
+        verify(notificationStrategy);
+        
+        assertEquals(1, progressCapture.getValues().size());
+        assertEquals(0, progressCapture.getValue().getCurrentRecord());
+        assertEquals(4, harness.getSplitMarkers().size());
+    }
+    
     @Test
     public void testExtraTokensFile() {
         SplitMarkerSetCsvImporterTestHarness harness = new SplitMarkerSetCsvImporterTestHarness(
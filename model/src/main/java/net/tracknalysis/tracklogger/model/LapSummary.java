@@ -0,0 +1,198 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model;
+
+/**
+ * Aggregate statistics for a single lap or a single split within a lap.  Values derived from
+ * data that was not present in any of the aggregated log entries, such as ECU data when the ECU is
+ * disabled, are {@code null}.
+ *
+ * @author David Valeri
+ */
+public final class LapSummary {
+
+    private int sessionId;
+    private int lap;
+    private Integer splitIndex;
+    private long startSynchTimestamp;
+    private long endSynchTimestamp;
+    private Long elapsedTime;
+    private int logEntryCount;
+    private Float maxSpeed;
+    private Float minSpeed;
+    private Float minCornerSpeed;
+    private Float maxLateralAccel;
+    private Float maxLongitudinalAccel;
+    private Integer maxRpm;
+    private Double averageThrottlePosition;
+    private Double minAirFuelRatio;
+    private Double maxAirFuelRatio;
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(int sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Returns the lap number, consistent with {@link TimingData#getLap()}.  Laps recorded after logging
+     * resumes in an existing session are numbered after the laps recorded before it.
+     */
+    public int getLap() {
+        return lap;
+    }
+
+    public void setLap(int lap) {
+        this.lap = lap;
+    }
+
+    /**
+     * Returns the zero based index of the split summarized by this instance or {@code null} if this
+     * instance summarizes the entire lap.
+     */
+    public Integer getSplitIndex() {
+        return splitIndex;
+    }
+
+    public void setSplitIndex(Integer splitIndex) {
+        this.splitIndex = splitIndex;
+    }
+
+    /**
+     * Returns the synch timestamp of the timing entry that started the lap or split.
+     */
+    public long getStartSynchTimestamp() {
+        return startSynchTimestamp;
+    }
+
+    public void setStartSynchTimestamp(long startSynchTimestamp) {
+        this.startSynchTimestamp = startSynchTimestamp;
+    }
+
+    /**
+     * Returns the synch timestamp of the timing entry that ended the lap or split.
+     */
+    public long getEndSynchTimestamp() {
+        return endSynchTimestamp;
+    }
+
+    public void setEndSynchTimestamp(long endSynchTimestamp) {
+        this.endSynchTimestamp = endSynchTimestamp;
+    }
+
+    /**
+     * Returns the lap or split time, in milliseconds, as reported by the timing data.
+     */
+    public Long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public void setElapsedTime(Long elapsedTime) {
+        this.elapsedTime = elapsedTime;
+    }
+
+    public int getLogEntryCount() {
+        return logEntryCount;
+    }
+
+    public void setLogEntryCount(int logEntryCount) {
+        this.logEntryCount = logEntryCount;
+    }
+
+    public Float getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public void setMaxSpeed(Float maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    public Float getMinSpeed() {
+        return minSpeed;
+    }
+
+    public void setMinSpeed(Float minSpeed) {
+        this.minSpeed = minSpeed;
+    }
+
+    /**
+     * Returns the lowest speed recorded while cornering, the apex speed of the slowest corner, or
+     * {@code null} if no cornering was recorded.
+     */
+    public Float getMinCornerSpeed() {
+        return minCornerSpeed;
+    }
+
+    public void setMinCornerSpeed(Float minCornerSpeed) {
+        this.minCornerSpeed = minCornerSpeed;
+    }
+
+    /**
+     * Returns the peak magnitude of the lateral acceleration.
+     */
+    public Float getMaxLateralAccel() {
+        return maxLateralAccel;
+    }
+
+    public void setMaxLateralAccel(Float maxLateralAccel) {
+        this.maxLateralAccel = maxLateralAccel;
+    }
+
+    /**
+     * Returns the peak magnitude of the longitudinal acceleration.
+     */
+    public Float getMaxLongitudinalAccel() {
+        return maxLongitudinalAccel;
+    }
+
+    public void setMaxLongitudinalAccel(Float maxLongitudinalAccel) {
+        this.maxLongitudinalAccel = maxLongitudinalAccel;
+    }
+
+    public Integer getMaxRpm() {
+        return maxRpm;
+    }
+
+    public void setMaxRpm(Integer maxRpm) {
+        this.maxRpm = maxRpm;
+    }
+
+    public Double getAverageThrottlePosition() {
+        return averageThrottlePosition;
+    }
+
+    public void setAverageThrottlePosition(Double averageThrottlePosition) {
+        this.averageThrottlePosition = averageThrottlePosition;
+    }
+
+    public Double getMinAirFuelRatio() {
+        return minAirFuelRatio;
+    }
+
+    public void setMinAirFuelRatio(Double minAirFuelRatio) {
+        this.minAirFuelRatio = minAirFuelRatio;
+    }
+
+    public Double getMaxAirFuelRatio() {
+        return maxAirFuelRatio;
+    }
+
+    public void setMaxAirFuelRatio(Double maxAirFuelRatio) {
+        this.maxAirFuelRatio = maxAirFuelRatio;
+    }
+}
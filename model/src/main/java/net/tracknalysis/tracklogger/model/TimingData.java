@@ -31,6 +31,8 @@ public class TimingData extends AbstractData {
     private Long splitTime;
     private Long bestLapTime;
     private List<Long> bestSplitTimes;
+    private Long theoreticalBestLapTime;
+    private Long rollingBestLapTime;
     private long initialLapStartDataReceivedTime;
     private long lastLapStartDataReceivedTime;
     private long lastSplitStartDataReceivedTime;
@@ -120,6 +122,30 @@ public class TimingData extends AbstractData {
         this.bestSplitTimes = Collections.unmodifiableList(new ArrayList<Long>(bestSplitTimes));
     }
     
+    /**
+     * Returns the sum, in milliseconds, of the fastest completion time for each
+     * segment in the session or {@code null} if any segment has not yet been completed.
+     */
+    public Long getTheoreticalBestLapTime() {
+        return theoreticalBestLapTime;
+    }
+
+    protected void setTheoreticalBestLapTime(Long theoreticalBestLapTime) {
+        this.theoreticalBestLapTime = theoreticalBestLapTime;
+    }
+
+    /**
+     * Returns the duration, in milliseconds of the fastest lap among the most recently
+     * completed laps in the session or {@code null} if no laps have been completed.
+     */
+    public Long getRollingBestLapTime() {
+        return rollingBestLapTime;
+    }
+
+    protected void setRollingBestLapTime(Long rollingBestLapTime) {
+        this.rollingBestLapTime = rollingBestLapTime;
+    }
+    
     /**
      * Gets the time at which the first lap start was received from the source in milliseconds
      * since midnight January 1, 1970 UTC.
@@ -166,6 +192,8 @@ public class TimingData extends AbstractData {
         private Long splitTime;
         private Long bestLapTime;
         private List<Long> bestSplitTimes;
+        private Long theoreticalBestLapTime;
+        private Long rollingBestLapTime;
         private long initialLapStartDataReceivedTime;
         private long lastLapStartDataReceivedTime;
         private long lastSplitStartDataReceivedTime;
@@ -221,6 +249,22 @@ public class TimingData extends AbstractData {
             this.bestSplitTimes = bestSplitTimes;
         }
         
+        public Long getTheoreticalBestLapTime() {
+            return theoreticalBestLapTime;
+        }
+        
+        public void setTheoreticalBestLapTime(Long theoreticalBestLapTime) {
+            this.theoreticalBestLapTime = theoreticalBestLapTime;
+        }
+        
+        public Long getRollingBestLapTime() {
+            return rollingBestLapTime;
+        }
+        
+        public void setRollingBestLapTime(Long rollingBestLapTime) {
+            this.rollingBestLapTime = rollingBestLapTime;
+        }
+        
         public long getInitialLapStartDataReceivedTime() {
             return initialLapStartDataReceivedTime;
         }
@@ -252,6 +296,8 @@ public class TimingData extends AbstractData {
             newData.setSplitTime(getSplitTime());
             newData.setBestLapTime(getBestLapTime());
             newData.setBestSplitTimes(getBestSplitTimes());
+            newData.setTheoreticalBestLapTime(getTheoreticalBestLapTime());
+            newData.setRollingBestLapTime(getRollingBestLapTime());
             newData.setInitialLapStartDataReceivedTime(getInitialLapStartDataReceivedTime());
             newData.setLastLapStartDataReceivedTime(getLastLapStartDataReceivedTime());
             newData.setLastSplitStartDataReceivedTime(getLastSplitStartDataReceivedTime());
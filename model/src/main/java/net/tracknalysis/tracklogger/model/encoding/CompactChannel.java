@@ -0,0 +1,154 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.encoding;
+
+/**
+ * The fixed-point representations used to store log entry channels compactly as integers.  Coordinates
+ * are stored as integer microdegrees and the remaining channels as integers scaled to a fixed number of
+ * decimal places, chosen such that typical values fit in a 16-bit short.  Values decode to the nearest
+ * multiple of the {@link #getResolution() resolution} of the channel, which is at least as fine as the
+ * precision at which the channel is displayed.
+ * <p/>
+ * Encoding saturates at the range of the channel's integer type.  {@link Double#NaN} encodes as 0.
+ *
+ * @author David Valeri
+ */
+public enum CompactChannel {
+    
+    /**
+     * Degrees as int microdegrees, about 11cm at the equator.
+     */
+    LATITUDE(1e6d, Integer.MIN_VALUE, Integer.MAX_VALUE),
+    
+    /**
+     * Degrees as int microdegrees, about 11cm at the equator.
+     */
+    LONGITUDE(1e6d, Integer.MIN_VALUE, Integer.MAX_VALUE),
+    
+    /**
+     * Meters as int decimeters.
+     */
+    ALTITUDE(1e1d, Integer.MIN_VALUE, Integer.MAX_VALUE),
+    
+    /**
+     * Meters per second as short hundredths.
+     */
+    SPEED(1e2d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Degrees as short tenths.
+     */
+    BEARING(1e1d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    LONGITUDINAL_ACCEL(1e3d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    LATERAL_ACCEL(1e3d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    VERTICAL_ACCEL(1e3d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * KPa as short tenths.
+     */
+    MANIFOLD_ABSOLUTE_PRESSURE(1e1d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * KPa as short tenths.
+     */
+    MANIFOLD_GAUGE_PRESSURE(1e1d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Percent as short hundredths.
+     */
+    THROTTLE_POSITION(1e2d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Air fuel ratio as short thousandths.
+     */
+    AIR_FUEL_RATIO(1e3d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Degrees as short tenths.
+     */
+    MANIFOLD_AIR_TEMPERATURE(1e1d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Degrees as short tenths.
+     */
+    COOLANT_TEMPERATURE(1e1d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Degrees as short tenths.
+     */
+    IGNITION_ADVANCE(1e1d, Short.MIN_VALUE, Short.MAX_VALUE),
+    
+    /**
+     * Volts as short hundredths.
+     */
+    BATTERY_VOLTAGE(1e2d, Short.MIN_VALUE, Short.MAX_VALUE);
+    
+    private final double scale;
+    private final long minValue;
+    private final long maxValue;
+    
+    private CompactChannel(double scale, long minValue, long maxValue) {
+        this.scale = scale;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+    
+    /**
+     * Returns the fixed-point representation of {@code value}, saturated to the range of the channel.
+     */
+    public long encode(double value) {
+        long encoded = Math.round(value * scale);
+        
+        if (encoded < minValue) {
+            return minValue;
+        } else if (encoded > maxValue) {
+            return maxValue;
+        } else {
+            return encoded;
+        }
+    }
+    
+    /**
+     * Returns the value represented by the fixed-point {@code encoded} value.
+     */
+    public double decode(long encoded) {
+        return encoded / scale;
+    }
+    
+    /**
+     * Returns the smallest difference between two encoded values of the channel.
+     */
+    public double getResolution() {
+        return 1 / scale;
+    }
+    
+    /**
+     * Returns the largest value that encodes without saturating.
+     */
+    public double getMaxValue() {
+        return decode(maxValue);
+    }
+    
+    /**
+     * Returns the smallest value that encodes without saturating.
+     */
+    public double getMinValue() {
+        return decode(minValue);
+    }
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.encoding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.AccelData;
+import net.tracknalysis.tracklogger.model.AccelData.AccelDataBuilder;
+import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.EcuData.EcuDataBuilder;
+import net.tracknalysis.tracklogger.model.LocationData;
+import net.tracknalysis.tracklogger.model.LocationData.LocationDataBuilder;
+import net.tracknalysis.tracklogger.model.LogEntry;
+
+/**
+ * Encodes runs of consecutive {@link LogEntry log entries} from a session into compact chunks and back.
+ * <p/>
+ * Each chunk starts with a format version byte and the number of entries.  Each entry is a byte of
+ * flags indicating which of the accelerometer, location and ECU data are present, followed by the
+ * values of the present data as variable length, zigzag encoded integers.  Timestamps and channel values
+ * are stored as the difference from the value in the previous entry of the chunk, so slowly changing
+ * values take a byte or two.  Capture timestamps are stored as offsets from the entry's synch timestamp.
+ * <p/>
+ * Floating point channels are stored in fixed-point, so decoded values are rounded to the resolution
+ * of the channel: 1e-7 degrees for coordinates (about 1cm), 0.01 for altitude, speed and bearing and 0.001
+ * for acceleration and ECU values other than RPM.  Non-finite values are not representable and are
+ * stored as 0.
+ * <p/>
+ * Chunks are independent of one another.  Instances reuse an internal buffer and are not thread safe.
+ *
+ * @author David Valeri
+ */
+public class LogEntryChunkCodec {
+    
+    /**
+     * The version of the chunk format written by this codec.
+     */
+    public static final int FORMAT_VERSION = 1;
+    
+    static final double COORDINATE_SCALE = 1e7d;
+    static final double LOCATION_SCALE = 1e2d;
+    static final double ACCEL_SCALE = 1e3d;
+    static final double ECU_SCALE = 1e3d;
+    
+    private static final int FLAG_ACCEL = 0x01;
+    private static final int FLAG_LOCATION = 0x02;
+    private static final int FLAG_ECU = 0x04;
+    
+    /**
+     * An upper bound on the encoded size of one entry: the flags plus one value per channel.
+     */
+    private static final int MAX_ENTRY_SIZE = 1 + Channel.COUNT * VarInts.MAX_VAR_LONG_SIZE;
+    
+    /**
+     * The channels encoded as differences from the previous entry.
+     */
+    private static final class Channel {
+        static final int SYNCH_TIMESTAMP = 0;
+        static final int LONGITUDINAL_ACCEL = 1;
+        static final int LATERAL_ACCEL = 2;
+        static final int VERTICAL_ACCEL = 3;
+        static final int LOCATION_TIME = 4;
+        static final int LATITUDE = 5;
+        static final int LONGITUDE = 6;
+        static final int ALTITUDE = 7;
+        static final int SPEED = 8;
+        static final int BEARING = 9;
+        static final int RPM = 10;
+        static final int MAP = 11;
+        static final int MGP = 12;
+        static final int THROTTLE_POSITION = 13;
+        static final int AFR = 14;
+        static final int MAT = 15;
+        static final int CLT = 16;
+        static final int IGNITION_ADVANCE = 17;
+        static final int BATTERY_VOLTAGE = 18;
+        
+        /**
+         * The number of delta encoded channels plus the three capture timestamp offsets.
+         */
+        static final int COUNT = 22;
+    }
+    
+    private byte[] buffer = new byte[1024];
+    private int offset;
+    private final long[] previous = new long[Channel.COUNT];
+    
+    /**
+     * Encodes the entries into a new chunk.
+     *
+     * @param logEntries the entries to encode in the order in which they were logged
+     *
+     * @return the encoded chunk
+     */
+    public byte[] encode(List<LogEntry> logEntries) {
+        
+        offset = 0;
+        clearPrevious();
+        
+        ensureCapacity(1 + VarInts.MAX_VAR_LONG_SIZE);
+        buffer[offset++] = FORMAT_VERSION;
+        offset = VarInts.writeVarLong(logEntries.size(), buffer, offset);
+        
+        for (int i = 0; i < logEntries.size(); i++) {
+            LogEntry logEntry = logEntries.get(i);
+            AccelData accelData = logEntry.getAccelData();
+            LocationData locationData = logEntry.getLocationData();
+            EcuData ecuData = logEntry.getEcuData();
+            long synchTimestamp = logEntry.getSynchTimestamp();
+            
+            ensureCapacity(MAX_ENTRY_SIZE);
+            
+            buffer[offset++] = (byte) ((accelData == null ? 0 : FLAG_ACCEL)
+                    | (locationData == null ? 0 : FLAG_LOCATION)
+                    | (ecuData == null ? 0 : FLAG_ECU));
+            
+            writeDelta(Channel.SYNCH_TIMESTAMP, synchTimestamp);
+            
+            if (accelData != null) {
+                writeSigned(accelData.getDataRecivedTime() - synchTimestamp);
+                writeDelta(Channel.LONGITUDINAL_ACCEL, toFixed(accelData.getLongitudinal(), ACCEL_SCALE));
+                writeDelta(Channel.LATERAL_ACCEL, toFixed(accelData.getLateral(), ACCEL_SCALE));
+                writeDelta(Channel.VERTICAL_ACCEL, toFixed(accelData.getVertical(), ACCEL_SCALE));
+            }
+            
+            if (locationData != null) {
+                writeSigned(locationData.getDataRecivedTime() - synchTimestamp);
+                writeDelta(Channel.LOCATION_TIME, locationData.getTime());
+                writeDelta(Channel.LATITUDE, toFixed(locationData.getLatitude(), COORDINATE_SCALE));
+                writeDelta(Channel.LONGITUDE, toFixed(locationData.getLongitude(), COORDINATE_SCALE));
+                writeDelta(Channel.ALTITUDE, toFixed(locationData.getAltitude(), LOCATION_SCALE));
+                writeDelta(Channel.SPEED, toFixed(locationData.getSpeed(), LOCATION_SCALE));
+                writeDelta(Channel.BEARING, toFixed(locationData.getBearing(), LOCATION_SCALE));
+            }
+            
+            if (ecuData != null) {
+                writeSigned(ecuData.getDataRecivedTime() - synchTimestamp);
+                writeDelta(Channel.RPM, ecuData.getRpm());
+                writeDelta(Channel.MAP, toFixed(ecuData.getManifoldAbsolutePressure(), ECU_SCALE));
+                writeDelta(Channel.MGP, toFixed(ecuData.getManifoldGaugePressure(), ECU_SCALE));
+                writeDelta(Channel.THROTTLE_POSITION, toFixed(ecuData.getThrottlePosition(), ECU_SCALE));
+                writeDelta(Channel.AFR, toFixed(ecuData.getAirFuelRatio(), ECU_SCALE));
+                writeDelta(Channel.MAT, toFixed(ecuData.getManifoldAirTemperature(), ECU_SCALE));
+                writeDelta(Channel.CLT, toFixed(ecuData.getCoolantTemperature(), ECU_SCALE));
+                writeDelta(Channel.IGNITION_ADVANCE, toFixed(ecuData.getIgnitionAdvance(), ECU_SCALE));
+                writeDelta(Channel.BATTERY_VOLTAGE, toFixed(ecuData.getBatteryVoltage(), ECU_SCALE));
+            }
+        }
+        
+        byte[] chunk = new byte[offset];
+        System.arraycopy(buffer, 0, chunk, 0, offset);
+        
+        return chunk;
+    }
+    
+    /**
+     * Decodes a chunk into a new list of entries.
+     *
+     * @param chunk the encoded chunk
+     * @param sessionId the ID of the session that the entries belong to
+     *
+     * @throws IllegalArgumentException if the chunk is malformed or of an unsupported version
+     */
+    public List<LogEntry> decode(byte[] chunk, int sessionId) {
+        List<LogEntry> logEntries = new ArrayList<LogEntry>(getEntryCount(chunk));
+        decode(chunk, sessionId, logEntries);
+        return logEntries;
+    }
+    
+    /**
+     * Decodes a chunk, appending the entries to {@code logEntries}.
+     *
+     * @param chunk the encoded chunk
+     * @param sessionId the ID of the session that the entries belong to
+     * @param logEntries the list to add the decoded entries to
+     *
+     * @return the number of entries decoded
+     *
+     * @throws IllegalArgumentException if the chunk is malformed or of an unsupported version
+     */
+    public int decode(byte[] chunk, int sessionId, List<LogEntry> logEntries) {
+        
+        int count = getEntryCount(chunk);
+        
+        clearPrevious();
+        
+        try {
+            for (int i = 0; i < count; i++) {
+                int flags = chunk[offset++];
+                long synchTimestamp = readDelta(chunk, Channel.SYNCH_TIMESTAMP);
+                AccelData accelData = null;
+                LocationData locationData = null;
+                EcuData ecuData = null;
+                
+                if ((flags & FLAG_ACCEL) != 0) {
+                    AccelDataBuilder builder = new AccelDataBuilder();
+                    builder.setDataRecivedTime(synchTimestamp + readSigned(chunk));
+                    builder.setLongitudinal((float) fromFixed(
+                            readDelta(chunk, Channel.LONGITUDINAL_ACCEL), ACCEL_SCALE));
+                    builder.setLateral((float) fromFixed(
+                            readDelta(chunk, Channel.LATERAL_ACCEL), ACCEL_SCALE));
+                    builder.setVertical((float) fromFixed(
+                            readDelta(chunk, Channel.VERTICAL_ACCEL), ACCEL_SCALE));
+                    accelData = builder.build();
+                }
+                
+                if ((flags & FLAG_LOCATION) != 0) {
+                    LocationDataBuilder builder = new LocationDataBuilder();
+                    builder.setDataRecivedTime(synchTimestamp + readSigned(chunk));
+                    builder.setTime(readDelta(chunk, Channel.LOCATION_TIME));
+                    builder.setLatitude(fromFixed(readDelta(chunk, Channel.LATITUDE), COORDINATE_SCALE));
+                    builder.setLongitude(fromFixed(readDelta(chunk, Channel.LONGITUDE), COORDINATE_SCALE));
+                    builder.setAltitude(fromFixed(readDelta(chunk, Channel.ALTITUDE), LOCATION_SCALE));
+                    builder.setSpeed((float) fromFixed(readDelta(chunk, Channel.SPEED), LOCATION_SCALE));
+                    builder.setBearing((float) fromFixed(readDelta(chunk, Channel.BEARING), LOCATION_SCALE));
+                    locationData = builder.build();
+                }
+                
+                if ((flags & FLAG_ECU) != 0) {
+                    EcuDataBuilder builder = new EcuDataBuilder();
+                    builder.setDataRecivedTime(synchTimestamp + readSigned(chunk));
+                    builder.setRpm((int) readDelta(chunk, Channel.RPM));
+                    builder.setManifoldAbsolutePressure(fromFixed(readDelta(chunk, Channel.MAP), ECU_SCALE));
+                    builder.setManifoldGaugePressure(fromFixed(readDelta(chunk, Channel.MGP), ECU_SCALE));
+                    builder.setThrottlePosition(
+                            fromFixed(readDelta(chunk, Channel.THROTTLE_POSITION), ECU_SCALE));
+                    builder.setAirFuelRatio(fromFixed(readDelta(chunk, Channel.AFR), ECU_SCALE));
+                    builder.setManifoldAirTemperature(fromFixed(readDelta(chunk, Channel.MAT), ECU_SCALE));
+                    builder.setCoolantTemperature(fromFixed(readDelta(chunk, Channel.CLT), ECU_SCALE));
+                    builder.setIgnitionAdvance(
+                            fromFixed(readDelta(chunk, Channel.IGNITION_ADVANCE), ECU_SCALE));
+                    builder.setBatteryVoltage(
+                            fromFixed(readDelta(chunk, Channel.BATTERY_VOLTAGE), ECU_SCALE));
+                    ecuData = builder.build();
+                }
+                
+                logEntries.add(new LogEntry(synchTimestamp, sessionId, accelData, locationData, ecuData));
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Chunk ended before all " + count
+                    + " entries were decoded.", e);
+        }
+        
+        if (offset != chunk.length) {
+            throw new IllegalArgumentException("Found " + (chunk.length - offset)
+                    + " unexpected trailing bytes in chunk.");
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Returns the number of entries in the chunk.  Leaves the read position after the chunk header.
+     *
+     * @throws IllegalArgumentException if the chunk is of an unsupported version
+     */
+    public int getEntryCount(byte[] chunk) {
+        if (chunk.length == 0 || chunk[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported chunk format version "
+                    + (chunk.length == 0 ? "<empty>" : chunk[0]) + ".");
+        }
+        
+        long count = VarInts.readVarLong(chunk, 1);
+        offset = 1 + VarInts.varLongSize(count);
+        
+        return (int) count;
+    }
+    
+    private void clearPrevious() {
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = 0;
+        }
+    }
+    
+    private void ensureCapacity(int additional) {
+        if (offset + additional > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2, offset + additional)];
+            System.arraycopy(buffer, 0, newBuffer, 0, offset);
+            buffer = newBuffer;
+        }
+    }
+    
+    private void writeSigned(long value) {
+        offset = VarInts.writeSignedVarLong(value, buffer, offset);
+    }
+    
+    private void writeDelta(int channel, long value) {
+        offset = VarInts.writeSignedVarLong(value - previous[channel], buffer, offset);
+        previous[channel] = value;
+    }
+    
+    private long readSigned(byte[] chunk) {
+        long value = VarInts.readVarLong(chunk, offset);
+        offset += VarInts.varLongSize(value);
+        return VarInts.decodeZigZag(value);
+    }
+    
+    private long readDelta(byte[] chunk, int channel) {
+        long value = previous[channel] + readSigned(chunk);
+        previous[channel] = value;
+        return value;
+    }
+    
+    static long toFixed(double value, double scale) {
+        return Math.round(value * scale);
+    }
+    
+    static double fromFixed(long value, double scale) {
+        return value / scale;
+    }
+}
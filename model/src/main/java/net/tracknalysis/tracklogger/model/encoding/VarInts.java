@@ -0,0 +1,118 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.encoding;
+
+/**
+ * Utility methods for variable length integer encoding.  Values are written seven bits at a time, least
+ * significant group first, with the high bit of each byte set if more bytes follow.  Signed values are
+ * zigzag encoded first so that values of small magnitude encode to few bytes regardless of sign.
+ *
+ * @author David Valeri
+ */
+public final class VarInts {
+    
+    /**
+     * The maximum number of bytes in an encoded 64 bit value.
+     */
+    public static final int MAX_VAR_LONG_SIZE = 10;
+    
+    private VarInts() {
+    }
+    
+    /**
+     * Maps a signed value to an unsigned value such that values of small magnitude map to small
+     * values: 0 to 0, -1 to 1, 1 to 2, -2 to 3 and so on.
+     */
+    public static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    /**
+     * Reverses {@link #encodeZigZag(long)}.
+     */
+    public static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Writes {@code value}, treated as unsigned, into {@code buffer}.
+     *
+     * @return the offset in {@code buffer} following the written bytes
+     *
+     * @throws ArrayIndexOutOfBoundsException if the buffer is too small
+     */
+    public static int writeVarLong(long value, byte[] buffer, int offset) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        
+        buffer[offset++] = (byte) value;
+        
+        return offset;
+    }
+    
+    /**
+     * Writes {@code value} zigzag encoded into {@code buffer}.
+     *
+     * @return the offset in {@code buffer} following the written bytes
+     *
+     * @throws ArrayIndexOutOfBoundsException if the buffer is too small
+     */
+    public static int writeSignedVarLong(long value, byte[] buffer, int offset) {
+        return writeVarLong(encodeZigZag(value), buffer, offset);
+    }
+    
+    /**
+     * Reads an unsigned value from {@code buffer}.  The number of bytes read is given by
+     * {@link #varLongSize(long)} of the returned value.
+     *
+     * @throws IllegalArgumentException if the encoded value is longer than {@link #MAX_VAR_LONG_SIZE}
+     * @throws ArrayIndexOutOfBoundsException if the buffer ends before the value does
+     */
+    public static long readVarLong(byte[] buffer, int offset) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        
+        do {
+            if (shift >= 64) {
+                throw new IllegalArgumentException("Malformed variable length value at offset "
+                        + offset + ".");
+            }
+            
+            b = buffer[offset++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        
+        return value;
+    }
+    
+    /**
+     * Returns the number of bytes used to encode {@code value}, treated as unsigned.
+     */
+    public static int varLongSize(long value) {
+        int size = 1;
+        
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        
+        return size;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.notification;
+
+/**
+ * Coalesces progress notifications so that long running operations may report progress for every record
+ * without flooding the notification listener.  A progress notification is due only once the operation has
+ * advanced by at least the {@link #setStep(int) step} and the {@link #setInterval(long) interval} has
+ * elapsed since the last progress notification.  The first progress notification after a
+ * {@link #reset() reset} and the first that reaches the total number of records are always due.
+ * <p/>
+ * Instances are thread safe.
+ *
+ * @author David Valeri
+ */
+public final class ProgressThrottle {
+    
+    /**
+     * The default minimum time in milliseconds between progress notifications.
+     */
+    public static final long DEFAULT_INTERVAL = 250;
+    
+    /**
+     * The default minimum advance in percent of the total records between progress notifications.
+     */
+    public static final int DEFAULT_STEP = 1;
+    
+    private volatile long interval = DEFAULT_INTERVAL;
+    private volatile int step = DEFAULT_STEP;
+    private int lastPercent = -1;
+    private long lastTime;
+    private boolean completed;
+    
+    public long getInterval() {
+        return interval;
+    }
+    
+    /**
+     * Sets the minimum time between progress notifications.
+     *
+     * @param interval the interval in milliseconds, 0 to disable the time based throttling
+     *
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public void setInterval(long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative.");
+        }
+        
+        this.interval = interval;
+    }
+    
+    public int getStep() {
+        return step;
+    }
+    
+    /**
+     * Sets the minimum advance between progress notifications.  Ignored when the total number of records
+     * is not known.
+     *
+     * @param step the step in percent of the total records, 0 to disable the step based throttling
+     *
+     * @throws IllegalArgumentException if the step is not between 0 and 100
+     */
+    public void setStep(int step) {
+        if (step < 0 || step > 100) {
+            throw new IllegalArgumentException("Progress step must be between 0 and 100.");
+        }
+        
+        this.step = step;
+    }
+    
+    /**
+     * Resets the throttle so that the next progress notification is due.  Called at the start of each
+     * operation.
+     */
+    public synchronized void reset() {
+        lastPercent = -1;
+        completed = false;
+    }
+    
+    /**
+     * Returns true if a progress notification for the record is due and records it as sent.
+     *
+     * @param currentRecord the number of records processed
+     * @param totalRecords the total number of records, or 0 if not known
+     */
+    public synchronized boolean isDue(int currentRecord, int totalRecords) {
+        boolean totalKnown = totalRecords > 0;
+        int percent = totalKnown ? (int) (Math.min(currentRecord, totalRecords) * 100L / totalRecords) : 0;
+        long now = System.nanoTime();
+        
+        if (totalKnown && currentRecord >= totalRecords) {
+            // The notification of completion is never dropped, otherwise the operation could appear to stop
+            // short of the total.
+            if (completed) {
+                return false;
+            }
+            
+            completed = true;
+        } else if (lastPercent >= 0) {
+            if (totalKnown && percent - lastPercent < step) {
+                return false;
+            }
+            
+            if (now - lastTime < interval * 1000000L) {
+                return false;
+            }
+        }
+        
+        lastTime = now;
+        lastPercent = percent;
+        return true;
+    }
+}
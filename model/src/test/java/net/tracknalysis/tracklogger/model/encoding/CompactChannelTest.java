@@ -0,0 +1,65 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.encoding;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class CompactChannelTest {
+    
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(11);
+        
+        for (CompactChannel channel : CompactChannel.values()) {
+            double range = Math.min(channel.getMaxValue(), 180d);
+            
+            for (int i = 0; i < 1000; i++) {
+                double value = (random.nextDouble() * 2 - 1) * range;
+                double decoded = channel.decode(channel.encode(value));
+                
+                assertEquals(channel.name(), value, decoded, channel.getResolution() / 2 + 1e-9);
+                // Decoding an already rounded value is exact.
+                assertEquals(channel.name(), decoded, channel.decode(channel.encode(decoded)), 0d);
+            }
+        }
+    }
+    
+    @Test
+    public void testSaturation() {
+        assertEquals(Short.MAX_VALUE, CompactChannel.SPEED.encode(1000d));
+        assertEquals(Short.MIN_VALUE, CompactChannel.LATERAL_ACCEL.encode(-1000d));
+        assertEquals(Integer.MAX_VALUE, CompactChannel.LATITUDE.encode(Double.POSITIVE_INFINITY));
+        assertEquals(0, CompactChannel.THROTTLE_POSITION.encode(Double.NaN));
+    }
+    
+    @Test
+    public void testTypicalRangesFitInShort() {
+        assertTrue(CompactChannel.SPEED.getMaxValue() > 300);
+        assertTrue(CompactChannel.BEARING.getMaxValue() >= 360);
+        assertTrue(CompactChannel.MANIFOLD_ABSOLUTE_PRESSURE.getMaxValue() > 400);
+        assertTrue(CompactChannel.THROTTLE_POSITION.getMaxValue() >= 100);
+        assertTrue(CompactChannel.AIR_FUEL_RATIO.getMaxValue() > 25);
+        assertTrue(CompactChannel.COOLANT_TEMPERATURE.getMaxValue() > 150);
+        assertEquals(-180d, CompactChannel.LONGITUDE.decode(CompactChannel.LONGITUDE.encode(-180d)), 0d);
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.encoding;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.tracknalysis.tracklogger.model.AccelData;
+import net.tracknalysis.tracklogger.model.AccelData.AccelDataBuilder;
+import net.tracknalysis.tracklogger.model.EcuData;
+import net.tracknalysis.tracklogger.model.EcuData.EcuDataBuilder;
+import net.tracknalysis.tracklogger.model.LocationData;
+import net.tracknalysis.tracklogger.model.LocationData.LocationDataBuilder;
+import net.tracknalysis.tracklogger.model.LogEntry;
+
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class LogEntryChunkCodecTest {
+    
+    @Test
+    public void testVarInts() {
+        byte[] buffer = new byte[VarInts.MAX_VAR_LONG_SIZE];
+        long[] values = {0, 1, -1, 63, -64, 64, 127, 128, 300, -300, Integer.MAX_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE};
+        
+        for (long value : values) {
+            int end = VarInts.writeSignedVarLong(value, buffer, 0);
+            long encoded = VarInts.readVarLong(buffer, 0);
+            assertEquals(end, VarInts.varLongSize(encoded));
+            assertEquals(value, VarInts.decodeZigZag(encoded));
+        }
+        
+        assertEquals(1, VarInts.varLongSize(VarInts.encodeZigZag(-64)));
+        assertEquals(VarInts.MAX_VAR_LONG_SIZE, VarInts.varLongSize(-1));
+    }
+    
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(7);
+        List<LogEntry> logEntries = new ArrayList<LogEntry>();
+        long synchTimestamp = 86399000;
+        
+        for (int i = 0; i < 200; i++) {
+            synchTimestamp += 90 + random.nextInt(20);
+            
+            AccelDataBuilder accelBuilder = new AccelDataBuilder();
+            accelBuilder.setDataRecivedTime(synchTimestamp - random.nextInt(50));
+            accelBuilder.setLongitudinal(random.nextFloat() * 2 - 1);
+            accelBuilder.setLateral(random.nextFloat() * 2 - 1);
+            accelBuilder.setVertical(random.nextFloat() + 9);
+            
+            LocationDataBuilder locationBuilder = new LocationDataBuilder();
+            locationBuilder.setDataRecivedTime(synchTimestamp);
+            locationBuilder.setTime(synchTimestamp % 86400000);
+            locationBuilder.setLatitude(38.1234567 + i * 1e-5);
+            locationBuilder.setLongitude(-77.7654321 - i * 1e-5);
+            locationBuilder.setAltitude(123.45 + random.nextInt(100) / 100d);
+            locationBuilder.setSpeed(30 + random.nextInt(1000) / 100f);
+            locationBuilder.setBearing(random.nextInt(36000) / 100f);
+            
+            EcuData ecuData = null;
+            if (i % 3 != 0) {
+                EcuDataBuilder ecuBuilder = new EcuDataBuilder();
+                ecuBuilder.setDataRecivedTime(synchTimestamp + random.nextInt(20));
+                ecuBuilder.setRpm(3000 + random.nextInt(4000));
+                ecuBuilder.setManifoldAbsolutePressure(random.nextInt(200000) / 1000d);
+                ecuBuilder.setManifoldGaugePressure(-random.nextInt(100000) / 1000d);
+                ecuBuilder.setThrottlePosition(random.nextInt(100000) / 1000d);
+                ecuBuilder.setAirFuelRatio(12 + random.nextInt(4000) / 1000d);
+                ecuBuilder.setManifoldAirTemperature(40.5);
+                ecuBuilder.setCoolantTemperature(90.25);
+                ecuBuilder.setIgnitionAdvance(random.nextInt(30000) / 1000d);
+                ecuBuilder.setBatteryVoltage(13.8);
+                ecuData = ecuBuilder.build();
+            }
+            
+            logEntries.add(new LogEntry(synchTimestamp, 3, accelBuilder.build(),
+                    i == 10 ? null : locationBuilder.build(), ecuData));
+        }
+        
+        LogEntryChunkCodec codec = new LogEntryChunkCodec();
+        byte[] chunk = codec.encode(logEntries);
+        
+        assertEquals(logEntries.size(), codec.getEntryCount(chunk));
+        
+        List<LogEntry> decoded = codec.decode(chunk, 3);
+        assertEquals(logEntries.size(), decoded.size());
+        
+        for (int i = 0; i < logEntries.size(); i++) {
+            assertLogEntry(logEntries.get(i), decoded.get(i));
+        }
+        
+        // The codec is reusable and chunks are independent of one another.
+        byte[] partialChunk = codec.encode(logEntries.subList(50, 60));
+        List<LogEntry> partial = codec.decode(partialChunk, 3);
+        assertEquals(10, partial.size());
+        assertLogEntry(logEntries.get(50), partial.get(0));
+        assertLogEntry(logEntries.get(59), partial.get(9));
+    }
+    
+    @Test
+    public void testEmptyChunk() {
+        LogEntryChunkCodec codec = new LogEntryChunkCodec();
+        byte[] chunk = codec.encode(Collections.<LogEntry>emptyList());
+        
+        assertEquals(2, chunk.length);
+        assertTrue(codec.decode(chunk, 1).isEmpty());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedChunk() {
+        LogEntryChunkCodec codec = new LogEntryChunkCodec();
+        List<LogEntry> logEntries = new ArrayList<LogEntry>();
+        logEntries.add(new LogEntry(1000, 1, null, null, null));
+        logEntries.add(new LogEntry(2000, 1, null, null, null));
+        
+        byte[] chunk = codec.encode(logEntries);
+        byte[] truncated = new byte[chunk.length - 1];
+        System.arraycopy(chunk, 0, truncated, 0, truncated.length);
+        
+        codec.decode(truncated, 1);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedVersion() {
+        new LogEntryChunkCodec().decode(new byte[] {99, 0}, 1);
+    }
+    
+    private void assertLogEntry(LogEntry expected, LogEntry actual) {
+        assertEquals(expected.getSynchTimestamp(), actual.getSynchTimestamp());
+        assertEquals(expected.getSessionId(), actual.getSessionId());
+        
+        AccelData expectedAccel = expected.getAccelData();
+        AccelData actualAccel = actual.getAccelData();
+        assertEquals(expectedAccel.getDataRecivedTime(), actualAccel.getDataRecivedTime());
+        assertEquals(expectedAccel.getLongitudinal(), actualAccel.getLongitudinal(), 0.0005f);
+        assertEquals(expectedAccel.getLateral(), actualAccel.getLateral(), 0.0005f);
+        assertEquals(expectedAccel.getVertical(), actualAccel.getVertical(), 0.0005f);
+        
+        LocationData expectedLocation = expected.getLocationData();
+        LocationData actualLocation = actual.getLocationData();
+        if (expectedLocation == null) {
+            assertNull(actualLocation);
+        } else {
+            assertEquals(expectedLocation.getDataRecivedTime(), actualLocation.getDataRecivedTime());
+            assertEquals(expectedLocation.getTime(), actualLocation.getTime());
+            assertEquals(expectedLocation.getLatitude(), actualLocation.getLatitude(), 0.5e-7);
+            assertEquals(expectedLocation.getLongitude(), actualLocation.getLongitude(), 0.5e-7);
+            assertEquals(expectedLocation.getAltitude(), actualLocation.getAltitude(), 1e-9);
+            assertEquals(expectedLocation.getSpeed(), actualLocation.getSpeed(), 1e-5f);
+            assertEquals(expectedLocation.getBearing(), actualLocation.getBearing(), 1e-4f);
+        }
+        
+        EcuData expectedEcu = expected.getEcuData();
+        EcuData actualEcu = actual.getEcuData();
+        if (expectedEcu == null) {
+            assertNull(actualEcu);
+        } else {
+            assertEquals(expectedEcu.getDataRecivedTime(), actualEcu.getDataRecivedTime());
+            assertEquals(expectedEcu.getRpm(), actualEcu.getRpm());
+            assertEquals(expectedEcu.getManifoldAbsolutePressure(), actualEcu.getManifoldAbsolutePressure(), 1e-9);
+            assertEquals(expectedEcu.getManifoldGaugePressure(), actualEcu.getManifoldGaugePressure(), 1e-9);
+            assertEquals(expectedEcu.getThrottlePosition(), actualEcu.getThrottlePosition(), 1e-9);
+            assertEquals(expectedEcu.getAirFuelRatio(), actualEcu.getAirFuelRatio(), 1e-9);
+            assertEquals(expectedEcu.getManifoldAirTemperature(), actualEcu.getManifoldAirTemperature(), 1e-9);
+            assertEquals(expectedEcu.getCoolantTemperature(), actualEcu.getCoolantTemperature(), 1e-9);
+            assertEquals(expectedEcu.getIgnitionAdvance(), actualEcu.getIgnitionAdvance(), 1e-9);
+            assertEquals(expectedEcu.getBatteryVoltage(), actualEcu.getBatteryVoltage(), 1e-9);
+        }
+    }
+}
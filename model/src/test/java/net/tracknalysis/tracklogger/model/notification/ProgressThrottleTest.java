@@ -0,0 +1,97 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.model.notification;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class ProgressThrottleTest {
+    
+    private ProgressThrottle throttle;
+    
+    @Before
+    public void setup() {
+        throttle = new ProgressThrottle();
+    }
+    
+    @Test
+    public void testStep() {
+        throttle.setInterval(0);
+        throttle.setStep(10);
+        
+        assertEquals(11, countDue(1, 1000, 1000));
+    }
+    
+    @Test
+    public void testCompletionAlwaysDue() {
+        throttle.setInterval(60000);
+        throttle.setStep(0);
+        
+        assertTrue(throttle.isDue(1, 1000));
+        assertEquals(0, countDue(2, 999, 1000));
+        assertTrue(throttle.isDue(1000, 1000));
+        
+        // Completion is only reported once, even if the estimated total is exceeded.
+        assertFalse(throttle.isDue(1000, 1000));
+        assertFalse(throttle.isDue(1001, 1001));
+    }
+    
+    @Test
+    public void testReset() {
+        throttle.setInterval(60000);
+        
+        assertTrue(throttle.isDue(1, 10));
+        assertFalse(throttle.isDue(5, 10));
+        assertTrue(throttle.isDue(10, 10));
+        
+        throttle.reset();
+        assertTrue(throttle.isDue(1, 10));
+        assertTrue(throttle.isDue(10, 10));
+    }
+    
+    @Test
+    public void testUnknownTotal() {
+        throttle.setInterval(0);
+        
+        assertEquals(10, countDue(1, 10, 0));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        throttle.setInterval(-1);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidStep() {
+        throttle.setStep(101);
+    }
+    
+    private int countDue(int first, int last, int totalRecords) {
+        int due = 0;
+        for (int i = first; i <= last; i++) {
+            if (throttle.isDue(i, totalRecords)) {
+                due++;
+            }
+        }
+        
+        return due;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streams entries read from a {@link SessionStore}.  Readers hold a bounded number of entries in memory
+ * regardless of the number of entries read and are not thread safe.
+ *
+ * @param <T> the type of entry read
+ *
+ * @author David Valeri
+ */
+public interface EntryReader<T> extends Closeable {
+    
+    /**
+     * Returns the next entry or {@code null} if there are no more entries.
+     *
+     * @throws IOException if there is an error reading from the store
+     */
+    T next() throws IOException;
+}
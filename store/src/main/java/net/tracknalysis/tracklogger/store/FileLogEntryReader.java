@@ -0,0 +1,154 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
+import net.tracknalysis.tracklogger.store.FileSessionStore.LapStart;
+
+/**
+ * Reads the log entries of a session in a {@link FileSessionStore} one chunk at a time, starting and
+ * ending at the positions given by the lap index.
+ *
+ * @author David Valeri
+ */
+final class FileLogEntryReader implements EntryReader<LogEntry> {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(FileLogEntryReader.class);
+    
+    private final int sessionId;
+    private final DataInputStream in;
+    private final long endChunkOffset;
+    private final int endIndex;
+    private final LogEntryChunkCodec codec = new LogEntryChunkCodec();
+    private final List<LogEntry> entries = new ArrayList<LogEntry>();
+    
+    private long chunkOffset;
+    private long nextChunkOffset;
+    private int index;
+    private int skip;
+    private boolean done;
+    
+    /**
+     * @param logFile the log file of the session
+     * @param sessionId the ID of the session
+     * @param start the start of the first lap to read, or {@code null} to start at the first entry
+     * @param end the start of the lap after the last lap to read, or {@code null} to read to the end
+     */
+    FileLogEntryReader(File logFile, int sessionId, LapStart start, LapStart end) throws IOException {
+        this.sessionId = sessionId;
+        
+        if (start != null) {
+            nextChunkOffset = start.logChunkOffset;
+            skip = start.logIndex;
+        }
+        
+        if (end != null) {
+            endChunkOffset = end.logChunkOffset;
+            endIndex = end.logIndex;
+        } else {
+            endChunkOffset = -1;
+            endIndex = 0;
+        }
+        
+        if (logFile.isFile()) {
+            FileInputStream fileIn = new FileInputStream(logFile);
+            try {
+                fileIn.getChannel().position(nextChunkOffset);
+            } catch (IOException e) {
+                fileIn.close();
+                throw e;
+            }
+            
+            in = new DataInputStream(new BufferedInputStream(fileIn, FileSessionStore.BUFFER_SIZE));
+        } else {
+            in = null;
+            done = true;
+        }
+    }
+    
+    @Override
+    public LogEntry next() throws IOException {
+        while (!done && index >= entries.size()) {
+            readChunk();
+        }
+        
+        if (!done && endChunkOffset >= 0
+                && (chunkOffset > endChunkOffset || (chunkOffset == endChunkOffset && index >= endIndex))) {
+            done = true;
+        }
+        
+        if (done) {
+            return null;
+        }
+        
+        return entries.get(index++);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        done = true;
+        entries.clear();
+        
+        if (in != null) {
+            in.close();
+        }
+    }
+    
+    private void readChunk() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            done = true;
+            return;
+        }
+        
+        if (length < 0) {
+            throw new IOException("Invalid chunk length [" + length + "] at offset [" + nextChunkOffset
+                    + "] for session " + sessionId + ".");
+        }
+        
+        byte[] data = new byte[length];
+        try {
+            in.readFully(data);
+        } catch (EOFException e) {
+            LOG.warn("Ignoring incomplete chunk at offset [{}] for session {}.", nextChunkOffset, sessionId);
+            done = true;
+            return;
+        }
+        
+        entries.clear();
+        codec.decode(data, sessionId, entries);
+        
+        chunkOffset = nextChunkOffset;
+        nextChunkOffset += 4 + length;
+        index = skip;
+        skip = 0;
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingData;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
+import net.tracknalysis.tracklogger.store.FileSessionStore.LapStart;
+
+/**
+ * Appends to the files of a session in a {@link FileSessionStore}.  Log entries are buffered until a full
+ * chunk is available, so flushing frequently results in small, less compact chunks.
+ * <p/>
+ * Lap starts are matched as in {@code LapIndexMaintainer} on Android; the lap start timing entry and its
+ * log entry may be appended in either order.
+ *
+ * @author David Valeri
+ */
+final class FileSessionAppender implements SessionAppender {
+    
+    private final FileSessionStore store;
+    private final int sessionId;
+    private final int chunkSize;
+    private final LogEntryChunkCodec codec = new LogEntryChunkCodec();
+    private final List<LogEntry> chunk;
+    
+    private DataOutputStream logOut;
+    private DataOutputStream timingOut;
+    private DataOutputStream lapOut;
+    
+    /**
+     * The offset in the log file at which the buffered chunk will be written.
+     */
+    private long logOffset;
+    private long timingOffset;
+    
+    private boolean hasLastLogEntry;
+    private long lastLogChunkOffset;
+    private int lastLogIndex;
+    private long lastSynchTimestamp;
+    
+    private boolean hasPendingLap;
+    private int pendingLap;
+    private long pendingSynchTimestamp;
+    private long pendingTimingOffset;
+    
+    private boolean closed;
+    
+    FileSessionAppender(FileSessionStore store, int sessionId, File sessionDirectory, int chunkSize)
+            throws IOException {
+        
+        this.store = store;
+        this.sessionId = sessionId;
+        this.chunkSize = chunkSize;
+        this.chunk = new ArrayList<LogEntry>(chunkSize);
+        
+        File logFile = new File(sessionDirectory, FileSessionStore.LOG_FILE_NAME);
+        File timingFile = new File(sessionDirectory, FileSessionStore.TIMING_FILE_NAME);
+        
+        logOffset = logFile.length();
+        timingOffset = timingFile.length();
+        
+        try {
+            logOut = open(logFile);
+            timingOut = open(timingFile);
+            lapOut = open(new File(sessionDirectory, FileSessionStore.LAP_FILE_NAME));
+        } catch (IOException e) {
+            closeStreams();
+            throw e;
+        }
+    }
+    
+    @Override
+    public int getSessionId() {
+        return sessionId;
+    }
+    
+    @Override
+    public void appendLogEntries(List<LogEntry> logEntries) throws IOException {
+        checkOpen();
+        
+        for (int i = 0; i < logEntries.size(); i++) {
+            LogEntry logEntry = logEntries.get(i);
+            long synchTimestamp = logEntry.getSynchTimestamp();
+            int index = chunk.size();
+            
+            if (hasPendingLap && pendingSynchTimestamp == synchTimestamp) {
+                // The timing entry was appended first
+                FileSessionStore.writeLapStart(lapOut,
+                        new LapStart(pendingLap, logOffset, index, pendingTimingOffset));
+                hasPendingLap = false;
+            }
+            
+            hasLastLogEntry = true;
+            lastLogChunkOffset = logOffset;
+            lastLogIndex = index;
+            lastSynchTimestamp = synchTimestamp;
+            
+            chunk.add(logEntry);
+            
+            if (chunk.size() == chunkSize) {
+                writeChunk();
+            }
+        }
+    }
+    
+    @Override
+    public void appendTimingEntries(List<TimingEntry> timingEntries) throws IOException {
+        checkOpen();
+        
+        for (int i = 0; i < timingEntries.size(); i++) {
+            TimingEntry timingEntry = timingEntries.get(i);
+            TimingData timingData = timingEntry.getTimingData();
+            long offset = timingOffset;
+            
+            timingOffset += FileSessionStore.writeTimingEntry(timingOut, timingEntry);
+            
+            if (timingData.getLap() != 0 && timingData.getLapTime() == null) {
+                // A split within the current lap
+                continue;
+            }
+            
+            // The entry ends lap "lap" and starts the next one.  The first entry, lap 0, starts lap 1.
+            int newLap = timingData.getLap() + 1;
+            long synchTimestamp = timingEntry.getSynchTimestamp();
+            
+            if (hasLastLogEntry && lastSynchTimestamp == synchTimestamp) {
+                // The log entry was appended first
+                FileSessionStore.writeLapStart(lapOut,
+                        new LapStart(newLap, lastLogChunkOffset, lastLogIndex, offset));
+            } else {
+                hasPendingLap = true;
+                pendingLap = newLap;
+                pendingSynchTimestamp = synchTimestamp;
+                pendingTimingOffset = offset;
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The lap index is flushed last so that it never refers to entries that readers cannot see.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        
+        if (!chunk.isEmpty()) {
+            writeChunk();
+        }
+        
+        logOut.flush();
+        timingOut.flush();
+        lapOut.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        
+        try {
+            flush();
+        } finally {
+            closed = true;
+            try {
+                closeStreams();
+            } finally {
+                store.appenderClosed(sessionId);
+            }
+        }
+    }
+    
+    private void writeChunk() throws IOException {
+        byte[] data = codec.encode(chunk);
+        
+        logOut.writeInt(data.length);
+        logOut.write(data);
+        
+        logOffset += 4 + data.length;
+        chunk.clear();
+    }
+    
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The appender for session " + sessionId + " is closed.");
+        }
+    }
+    
+    private void closeStreams() throws IOException {
+        IOException error = null;
+        
+        for (DataOutputStream out : new DataOutputStream[] {logOut, timingOut, lapOut}) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+        
+        if (error != null) {
+            throw error;
+        }
+    }
+    
+    private static DataOutputStream open(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true),
+                FileSessionStore.BUFFER_SIZE));
+    }
+}
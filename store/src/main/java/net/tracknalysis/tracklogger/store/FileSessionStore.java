@@ -0,0 +1,482 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingData;
+import net.tracknalysis.tracklogger.model.TimingData.TimingDataBuilder;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.model.encoding.LogEntryChunkCodec;
+
+/**
+ * A {@link SessionStore} keeping each session in its own directory of append-only files.
+ * <ul>
+ * <li>{@code session} - the format version, start date and split marker set ID of the session</li>
+ * <li>{@code log} - the log entries as a sequence of length-prefixed chunks encoded by
+ *     {@link LogEntryChunkCodec}</li>
+ * <li>{@code timing} - the timing entries as a sequence of records</li>
+ * <li>{@code laps} - fixed length records giving the positions in the log and timing files at which
+ *     each lap starts</li>
+ * </ul>
+ * Appending only ever writes to the end of the files and reading a range of laps seeks directly to the
+ * chunk containing the start of the first lap, so neither depends on the length of the session.  Log
+ * entries are rounded to the resolution of the chunk encoding.
+ * <p/>
+ * The lap tracked while waiting for the log entry matching a lap start timing entry is not persisted.
+ * If an appender is closed between the two, the lap is not indexed.  An incomplete record at the end of
+ * a file, left by an unclean shutdown, ends reading of that file.  Reading a range of laps that starts or ends
+ * with a lap that is not indexed throws an {@link IllegalArgumentException} rather than reading an open
+ * range.
+ * <p/>
+ * Instances are thread safe, but each appender and reader may only be used by one thread at a time.
+ *
+ * @author David Valeri
+ */
+public class FileSessionStore implements SessionStore {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(FileSessionStore.class);
+    
+    /**
+     * The default number of log entries in each chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    
+    static final int FORMAT_VERSION = 1;
+    
+    static final String SESSION_FILE_NAME = "session";
+    static final String LOG_FILE_NAME = "log";
+    static final String TIMING_FILE_NAME = "timing";
+    static final String LAP_FILE_NAME = "laps";
+    
+    static final int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * The size of a record in the lap file; the lap, log chunk offset, index of the entry in the chunk and
+     * timing file offset.
+     */
+    static final int LAP_RECORD_SIZE = 4 + 8 + 4 + 8;
+    
+    private static final int FLAG_LAP_TIME = 1;
+    private static final int FLAG_SPLIT_TIME = 1 << 1;
+    private static final int FLAG_BEST_LAP_TIME = 1 << 2;
+    private static final int FLAG_THEORETICAL_BEST_LAP_TIME = 1 << 3;
+    private static final int FLAG_ROLLING_BEST_LAP_TIME = 1 << 4;
+    
+    private final File directory;
+    private final int chunkSize;
+    private final Map<Integer, FileSessionAppender> appenders = new HashMap<Integer, FileSessionAppender>();
+    private int nextSessionId;
+    private boolean closed;
+    
+    public FileSessionStore(File directory) throws IOException {
+        this(directory, DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * @param directory the directory to keep the sessions in, created if it does not exist
+     * @param chunkSize the number of log entries in each chunk
+     *
+     * @throws IllegalArgumentException if the chunk size is not positive
+     * @throws IOException if the directory cannot be created
+     */
+    public FileSessionStore(File directory, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create store directory [" + directory + "].");
+        }
+        
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        
+        int maxSessionId = 0;
+        File[] files = directory.listFiles();
+        
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    try {
+                        maxSessionId = Math.max(maxSessionId, Integer.parseInt(file.getName()));
+                    } catch (NumberFormatException e) {
+                        LOG.debug("Ignoring unexpected directory [{}] in store.", file);
+                    }
+                }
+            }
+        }
+        
+        nextSessionId = maxSessionId + 1;
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    @Override
+    public synchronized int createSession(Date startDate, int splitMarkerSetId) throws IOException {
+        checkOpen();
+        
+        int sessionId = nextSessionId++;
+        File sessionDirectory = getSessionDirectory(sessionId);
+        
+        if (!sessionDirectory.mkdir()) {
+            throw new IOException("Could not create session directory [" + sessionDirectory + "].");
+        }
+        
+        // Written last as the presence of the file marks the session as complete.
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(sessionDirectory, SESSION_FILE_NAME))));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(startDate.getTime());
+            out.writeInt(splitMarkerSetId);
+        } finally {
+            out.close();
+        }
+        
+        LOG.debug("Created session with ID {} in [{}].", sessionId, sessionDirectory);
+        
+        return sessionId;
+    }
+    
+    @Override
+    public synchronized SessionAppender openSession(int sessionId) throws IOException {
+        checkOpen();
+        File sessionDirectory = checkSession(sessionId);
+        
+        if (appenders.containsKey(sessionId)) {
+            throw new IllegalStateException("An appender is already open for session " + sessionId + ".");
+        }
+        
+        FileSessionAppender appender = new FileSessionAppender(this, sessionId, sessionDirectory, chunkSize);
+        appenders.put(sessionId, appender);
+        
+        return appender;
+    }
+    
+    @Override
+    public EntryReader<LogEntry> readLogEntries(int sessionId, Integer startLap, Integer endLap)
+            throws IOException {
+        
+        File sessionDirectory;
+        synchronized (this) {
+            checkOpen();
+            sessionDirectory = checkSession(sessionId);
+        }
+        
+        Map<Integer, LapStart> lapStarts = readLapStarts(sessionDirectory);
+        
+        return new FileLogEntryReader(new File(sessionDirectory, LOG_FILE_NAME), sessionId,
+                getRangeStart(lapStarts, sessionId, startLap), getRangeEnd(lapStarts, sessionId, endLap));
+    }
+    
+    @Override
+    public EntryReader<TimingEntry> readTimingEntries(int sessionId, Integer startLap, Integer endLap)
+            throws IOException {
+        
+        File sessionDirectory;
+        synchronized (this) {
+            checkOpen();
+            sessionDirectory = checkSession(sessionId);
+        }
+        
+        Map<Integer, LapStart> lapStarts = readLapStarts(sessionDirectory);
+        
+        return new FileTimingEntryReader(new File(sessionDirectory, TIMING_FILE_NAME), sessionId,
+                getRangeStart(lapStarts, sessionId, startLap), getRangeEnd(lapStarts, sessionId, endLap));
+    }
+    
+    @Override
+    public synchronized boolean deleteSession(int sessionId) throws IOException {
+        checkOpen();
+        
+        if (appenders.containsKey(sessionId)) {
+            throw new IllegalStateException("An appender is open for session " + sessionId + ".");
+        }
+        
+        File sessionDirectory = getSessionDirectory(sessionId);
+        
+        if (!sessionDirectory.isDirectory()) {
+            return false;
+        }
+        
+        // The session file goes first so a partially deleted session is no longer considered a session.
+        delete(new File(sessionDirectory, SESSION_FILE_NAME));
+        delete(new File(sessionDirectory, LAP_FILE_NAME));
+        delete(new File(sessionDirectory, TIMING_FILE_NAME));
+        delete(new File(sessionDirectory, LOG_FILE_NAME));
+        delete(sessionDirectory);
+        
+        LOG.debug("Deleted session with ID {}.", sessionId);
+        
+        return true;
+    }
+    
+    /**
+     * Closes any open appenders.
+     */
+    @Override
+    public void close() throws IOException {
+        FileSessionAppender[] openAppenders;
+        
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            
+            closed = true;
+            openAppenders = appenders.values().toArray(new FileSessionAppender[appenders.size()]);
+        }
+        
+        IOException error = null;
+        for (FileSessionAppender appender : openAppenders) {
+            try {
+                appender.close();
+            } catch (IOException e) {
+                LOG.error("Error closing appender for session " + appender.getSessionId() + ".", e);
+                error = e;
+            }
+        }
+        
+        if (error != null) {
+            throw error;
+        }
+    }
+    
+    synchronized void appenderClosed(int sessionId) {
+        appenders.remove(sessionId);
+    }
+    
+    private File getSessionDirectory(int sessionId) {
+        return new File(directory, Integer.toString(sessionId));
+    }
+    
+    private File checkSession(int sessionId) {
+        File sessionDirectory = getSessionDirectory(sessionId);
+        
+        if (!new File(sessionDirectory, SESSION_FILE_NAME).isFile()) {
+            throw new IllegalArgumentException("No session with ID " + sessionId + ".");
+        }
+        
+        return sessionDirectory;
+    }
+    
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The store is closed.");
+        }
+    }
+    
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete [" + file + "].");
+        }
+    }
+    
+    /**
+     * Reads the lap index of a session.  If lap numbering restarted within the session, the latest lap
+     * with a given number wins.
+     */
+    /**
+     * Returns the start of the first lap in a range, or {@code null} if the range starts at the start of
+     * the session.
+     *
+     * @throws IllegalArgumentException if the lap is not in the session
+     */
+    private static LapStart getRangeStart(Map<Integer, LapStart> lapStarts, int sessionId, Integer startLap) {
+        if (startLap == null) {
+            return null;
+        }
+        
+        checkLap(lapStarts, sessionId, startLap);
+        return lapStarts.get(startLap);
+    }
+    
+    /**
+     * Returns the start of the lap after the last lap in a range, or {@code null} if the range ends at the
+     * end of the session.
+     *
+     * @throws IllegalArgumentException if the lap is not in the session
+     */
+    private static LapStart getRangeEnd(Map<Integer, LapStart> lapStarts, int sessionId, Integer endLap) {
+        if (endLap == null) {
+            return null;
+        }
+        
+        checkLap(lapStarts, sessionId, endLap);
+        return lapStarts.get(endLap + 1);
+    }
+    
+    private static void checkLap(Map<Integer, LapStart> lapStarts, int sessionId, int lap) {
+        if (!lapStarts.containsKey(lap)) {
+            throw new IllegalArgumentException("Session " + sessionId + " has no lap " + lap + ".");
+        }
+    }
+    
+    private static Map<Integer, LapStart> readLapStarts(File sessionDirectory) throws IOException {
+        Map<Integer, LapStart> lapStarts = new HashMap<Integer, LapStart>();
+        File lapFile = new File(sessionDirectory, LAP_FILE_NAME);
+        
+        if (!lapFile.isFile()) {
+            return lapStarts;
+        }
+        
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(lapFile)));
+        try {
+            long count = lapFile.length() / LAP_RECORD_SIZE;
+            for (long i = 0; i < count; i++) {
+                LapStart lapStart = new LapStart(in.readInt(), in.readLong(), in.readInt(), in.readLong());
+                lapStarts.put(lapStart.lap, lapStart);
+            }
+        } finally {
+            in.close();
+        }
+        
+        return lapStarts;
+    }
+    
+    static void writeLapStart(DataOutputStream out, LapStart lapStart) throws IOException {
+        out.writeInt(lapStart.lap);
+        out.writeLong(lapStart.logChunkOffset);
+        out.writeInt(lapStart.logIndex);
+        out.writeLong(lapStart.timingOffset);
+    }
+    
+    /**
+     * Writes a timing entry record.
+     *
+     * @return the number of bytes written
+     */
+    static int writeTimingEntry(DataOutputStream out, TimingEntry timingEntry) throws IOException {
+        TimingData timingData = timingEntry.getTimingData();
+        Long lapTime = timingData.getLapTime();
+        Long splitTime = timingData.getSplitTime();
+        Long bestLapTime = timingData.getBestLapTime();
+        Long theoreticalBestLapTime = timingData.getTheoreticalBestLapTime();
+        Long rollingBestLapTime = timingData.getRollingBestLapTime();
+        
+        out.writeLong(timingEntry.getSynchTimestamp());
+        out.writeLong(timingData.getDataRecivedTime());
+        out.writeLong(timingData.getTime());
+        out.writeInt(timingData.getLap());
+        out.writeInt(timingData.getSplitIndex());
+        out.writeByte((lapTime == null ? 0 : FLAG_LAP_TIME)
+                | (splitTime == null ? 0 : FLAG_SPLIT_TIME)
+                | (bestLapTime == null ? 0 : FLAG_BEST_LAP_TIME)
+                | (theoreticalBestLapTime == null ? 0 : FLAG_THEORETICAL_BEST_LAP_TIME)
+                | (rollingBestLapTime == null ? 0 : FLAG_ROLLING_BEST_LAP_TIME));
+        
+        writeOptionalLong(out, lapTime);
+        writeOptionalLong(out, splitTime);
+        writeOptionalLong(out, bestLapTime);
+        writeOptionalLong(out, theoreticalBestLapTime);
+        writeOptionalLong(out, rollingBestLapTime);
+        
+        return getTimingEntrySize(timingEntry);
+    }
+    
+    /**
+     * Returns the size of the record for a timing entry.
+     */
+    static int getTimingEntrySize(TimingEntry timingEntry) {
+        TimingData timingData = timingEntry.getTimingData();
+        
+        return 8 + 8 + 8 + 4 + 4 + 1
+                + (timingData.getLapTime() == null ? 0 : 8)
+                + (timingData.getSplitTime() == null ? 0 : 8)
+                + (timingData.getBestLapTime() == null ? 0 : 8)
+                + (timingData.getTheoreticalBestLapTime() == null ? 0 : 8)
+                + (timingData.getRollingBestLapTime() == null ? 0 : 8);
+    }
+    
+    /**
+     * Reads a timing entry record.  Best split times are not stored, as in the database, and are read
+     * back as an empty list.
+     *
+     * @return the entry or {@code null} if the end of the stream is reached before the record starts
+     *
+     * @throws EOFException if the end of the stream is reached within the record
+     */
+    static TimingEntry readTimingEntry(DataInputStream in, int sessionId) throws IOException {
+        long synchTimestamp;
+        try {
+            synchTimestamp = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        
+        TimingDataBuilder builder = new TimingDataBuilder();
+        builder.setDataRecivedTime(in.readLong());
+        builder.setTime(in.readLong());
+        builder.setLap(in.readInt());
+        builder.setSplitIndex(in.readInt());
+        
+        int flags = in.readUnsignedByte();
+        builder.setLapTime(readOptionalLong(in, flags, FLAG_LAP_TIME));
+        builder.setSplitTime(readOptionalLong(in, flags, FLAG_SPLIT_TIME));
+        builder.setBestLapTime(readOptionalLong(in, flags, FLAG_BEST_LAP_TIME));
+        builder.setTheoreticalBestLapTime(readOptionalLong(in, flags, FLAG_THEORETICAL_BEST_LAP_TIME));
+        builder.setRollingBestLapTime(readOptionalLong(in, flags, FLAG_ROLLING_BEST_LAP_TIME));
+        builder.setBestSplitTimes(Collections.<Long>emptyList());
+        
+        return new TimingEntry(synchTimestamp, sessionId, builder.build());
+    }
+    
+    private static void writeOptionalLong(DataOutputStream out, Long value) throws IOException {
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+    
+    private static Long readOptionalLong(DataInputStream in, int flags, int flag) throws IOException {
+        return (flags & flag) == 0 ? null : in.readLong();
+    }
+    
+    /**
+     * The positions at which a lap starts in the log and timing files.
+     */
+    static final class LapStart {
+        final int lap;
+        final long logChunkOffset;
+        final int logIndex;
+        final long timingOffset;
+        
+        LapStart(int lap, long logChunkOffset, int logIndex, long timingOffset) {
+            this.lap = lap;
+            this.logChunkOffset = logChunkOffset;
+            this.logIndex = logIndex;
+            this.timingOffset = timingOffset;
+        }
+    }
+}
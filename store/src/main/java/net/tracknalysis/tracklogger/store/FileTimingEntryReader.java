@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.tracknalysis.tracklogger.model.TimingEntry;
+import net.tracknalysis.tracklogger.store.FileSessionStore.LapStart;
+
+/**
+ * Reads the timing entries of a session in a {@link FileSessionStore}, starting and ending at the
+ * positions given by the lap index.
+ *
+ * @author David Valeri
+ */
+final class FileTimingEntryReader implements EntryReader<TimingEntry> {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(FileTimingEntryReader.class);
+    
+    private final int sessionId;
+    private final DataInputStream in;
+    private final long endOffset;
+    private long offset;
+    private boolean done;
+    
+    /**
+     * @param timingFile the timing file of the session
+     * @param sessionId the ID of the session
+     * @param start the start of the first lap to read, or {@code null} to start at the first entry
+     * @param end the start of the lap after the last lap to read, or {@code null} to read to the end
+     */
+    FileTimingEntryReader(File timingFile, int sessionId, LapStart start, LapStart end) throws IOException {
+        this.sessionId = sessionId;
+        this.offset = start == null ? 0 : start.timingOffset;
+        this.endOffset = end == null ? -1 : end.timingOffset;
+        
+        if (timingFile.isFile()) {
+            FileInputStream fileIn = new FileInputStream(timingFile);
+            try {
+                fileIn.getChannel().position(offset);
+            } catch (IOException e) {
+                fileIn.close();
+                throw e;
+            }
+            
+            in = new DataInputStream(new BufferedInputStream(fileIn, FileSessionStore.BUFFER_SIZE));
+        } else {
+            in = null;
+            done = true;
+        }
+    }
+    
+    @Override
+    public TimingEntry next() throws IOException {
+        if (done || (endOffset >= 0 && offset >= endOffset)) {
+            done = true;
+            return null;
+        }
+        
+        TimingEntry timingEntry;
+        try {
+            timingEntry = FileSessionStore.readTimingEntry(in, sessionId);
+        } catch (EOFException e) {
+            LOG.warn("Ignoring incomplete timing entry at offset [{}] for session {}.", offset, sessionId);
+            timingEntry = null;
+        }
+        
+        if (timingEntry == null) {
+            done = true;
+            return null;
+        }
+        
+        offset += FileSessionStore.getTimingEntrySize(timingEntry);
+        return timingEntry;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        done = true;
+        
+        if (in != null) {
+            in.close();
+        }
+    }
+}
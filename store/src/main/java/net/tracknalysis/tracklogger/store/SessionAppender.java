@@ -0,0 +1,66 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+
+/**
+ * Appends entries to a session in a {@link SessionStore}.  Implementations may buffer appended entries
+ * until they are flushed or the appender is closed.  Appenders are not thread safe.
+ *
+ * @author David Valeri
+ */
+public interface SessionAppender extends Closeable {
+    
+    /**
+     * Returns the ID of the session that entries are appended to.
+     */
+    int getSessionId();
+    
+    /**
+     * Appends a batch of log entries.  The session ID of the entries is ignored.
+     *
+     * @throws IOException if there is an error writing to the store
+     */
+    void appendLogEntries(List<LogEntry> logEntries) throws IOException;
+    
+    /**
+     * Appends a batch of timing entries.  The session ID of the entries is ignored.
+     *
+     * @throws IOException if there is an error writing to the store
+     */
+    void appendTimingEntries(List<TimingEntry> timingEntries) throws IOException;
+    
+    /**
+     * Writes any buffered entries to the store, making them visible to readers.
+     *
+     * @throws IOException if there is an error writing to the store
+     */
+    void flush() throws IOException;
+    
+    /**
+     * Flushes any buffered entries and releases the session.
+     *
+     * @throws IOException if there is an error writing to the store
+     */
+    @Override
+    void close() throws IOException;
+}
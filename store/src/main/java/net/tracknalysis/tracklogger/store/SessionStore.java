@@ -0,0 +1,108 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Date;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+
+/**
+ * Persistent storage for the log and timing entries of sessions, independent of the platform that the
+ * entries are stored on.
+ * <p/>
+ * Laps are numbered as in the session exports.  A lap starts with the timing entry that marks the start
+ * of the first lap or the end of the previous lap, identified by a lap of 0 or a lap time, and with the
+ * log entry sharing that timing entry's synch timestamp.  Stores index the laps as entries are appended
+ * so that a range of laps can be read without reading the entries before it.  A lap that is not indexed
+ * leaves the corresponding end of a range open, so readers that need exact lap boundaries must still
+ * number the entries they read.
+ *
+ * @author David Valeri
+ */
+public interface SessionStore extends Closeable {
+    
+    /**
+     * Creates a new, empty session.
+     *
+     * @param startDate the date at which the session started
+     * @param splitMarkerSetId the ID of the split marker set used to time the session
+     *
+     * @return the ID of the new session
+     *
+     * @throws IOException if there is an error writing to the store
+     */
+    int createSession(Date startDate, int splitMarkerSetId) throws IOException;
+    
+    /**
+     * Opens a session for appending entries.  Only one appender may be open for a session at a time.
+     *
+     * @param sessionId the ID of the session
+     *
+     * @return an appender for the session that must be closed by the caller
+     *
+     * @throws IllegalArgumentException if the session does not exist
+     * @throws IllegalStateException if an appender is already open for the session
+     * @throws IOException if there is an error opening the session
+     */
+    SessionAppender openSession(int sessionId) throws IOException;
+    
+    /**
+     * Reads the log entries of a range of laps in the order in which they were appended.  Only entries
+     * that have been {@link SessionAppender#flush() flushed} are guaranteed to be read.
+     *
+     * @param sessionId the ID of the session
+     * @param startLap the first lap to read, or {@code null} to read from the start of the session
+     * @param endLap the last lap to read, or {@code null} to read to the end of the session
+     *
+     * @return a reader for the entries that must be closed by the caller
+     *
+     * @throws IllegalArgumentException if the session does not exist
+     * @throws IOException if there is an error opening the session
+     */
+    EntryReader<LogEntry> readLogEntries(int sessionId, Integer startLap, Integer endLap) throws IOException;
+    
+    /**
+     * Reads the timing entries of a range of laps in the order in which they were appended, starting
+     * with the timing entry that starts {@code startLap} and ending before the timing entry that starts
+     * the lap after {@code endLap}.
+     *
+     * @param sessionId the ID of the session
+     * @param startLap the first lap to read, or {@code null} to read from the start of the session
+     * @param endLap the last lap to read, or {@code null} to read to the end of the session
+     *
+     * @return a reader for the entries that must be closed by the caller
+     *
+     * @throws IllegalArgumentException if the session does not exist
+     * @throws IOException if there is an error opening the session
+     */
+    EntryReader<TimingEntry> readTimingEntries(int sessionId, Integer startLap, Integer endLap)
+            throws IOException;
+    
+    /**
+     * Deletes a session and all of its entries.
+     *
+     * @param sessionId the ID of the session
+     *
+     * @return false if the session does not exist
+     *
+     * @throws IllegalStateException if an appender is open for the session
+     * @throws IOException if there is an error deleting the session
+     */
+    boolean deleteSession(int sessionId) throws IOException;
+}
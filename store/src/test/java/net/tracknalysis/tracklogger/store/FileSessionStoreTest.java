@@ -0,0 +1,303 @@
+/**
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tracknalysis.tracklogger.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import net.tracknalysis.tracklogger.model.LogEntry;
+import net.tracknalysis.tracklogger.model.TimingData;
+import net.tracknalysis.tracklogger.model.TimingData.TimingDataBuilder;
+import net.tracknalysis.tracklogger.model.TimingEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author David Valeri
+ */
+public class FileSessionStoreTest {
+    
+    private File directory;
+    private FileSessionStore store;
+    
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("session-store", "");
+        assertTrue(directory.delete());
+        store = new FileSessionStore(directory, 4);
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+        delete(directory);
+    }
+    
+    @Test
+    public void testLapRanges() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        SessionAppender appender = store.openSession(sessionId);
+        appendSession(appender, 0, 35000);
+        appender.close();
+        
+        assertLogEntries(sessionId, 1, 1, 1000, 9000);
+        assertLogEntries(sessionId, 2, 2, 10000, 29000);
+        assertLogEntries(sessionId, 3, 3, 30000, 35000);
+        assertLogEntries(sessionId, 2, null, 10000, 35000);
+        assertLogEntries(sessionId, null, 1, 0, 9000);
+        assertLogEntries(sessionId, null, null, 0, 35000);
+        
+        assertTimingEntries(sessionId, 2, 2, 10000, 20000);
+        assertTimingEntries(sessionId, 1, null, 1000, 5000, 10000, 20000, 30000);
+        assertTimingEntries(sessionId, null, 1, 1000, 5000);
+    }
+    
+    @Test
+    public void testUnknownStartLap() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        SessionAppender appender = store.openSession(sessionId);
+        appendSession(appender, 0, 35000);
+        appender.close();
+        
+        try {
+            store.readLogEntries(sessionId, 4, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        
+        try {
+            store.readTimingEntries(sessionId, 4, 4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testUnknownEndLap() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        SessionAppender appender = store.openSession(sessionId);
+        appendSession(appender, 0, 35000);
+        appender.close();
+        
+        try {
+            store.readLogEntries(sessionId, 2, 4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        
+        try {
+            store.readTimingEntries(sessionId, null, 4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testReopen() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        SessionAppender appender = store.openSession(sessionId);
+        appendSession(appender, 0, 15000);
+        appender.close();
+        store.close();
+        
+        store = new FileSessionStore(directory, 4);
+        appender = store.openSession(sessionId);
+        appendSession(appender, 16000, 35000);
+        appender.close();
+        
+        assertLogEntries(sessionId, 2, 2, 10000, 29000);
+        assertLogEntries(sessionId, 3, null, 30000, 35000);
+        assertTimingEntries(sessionId, 2, 2, 10000, 20000);
+        
+        assertEquals(sessionId + 1, store.createSession(new Date(), 1));
+    }
+    
+    @Test
+    public void testTimingEntryFields() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        
+        TimingDataBuilder builder = new TimingDataBuilder();
+        builder.setDataRecivedTime(123456789L);
+        builder.setTime(4000);
+        builder.setLap(3);
+        builder.setSplitIndex(1);
+        builder.setLapTime(61000L);
+        builder.setBestLapTime(60000L);
+        builder.setRollingBestLapTime(60500L);
+        builder.setBestSplitTimes(Arrays.asList(new Long[2]));
+        
+        SessionAppender appender = store.openSession(sessionId);
+        appender.appendTimingEntries(Collections.singletonList(new TimingEntry(4000, 99, builder.build())));
+        appender.close();
+        
+        EntryReader<TimingEntry> reader = store.readTimingEntries(sessionId, null, null);
+        TimingEntry timingEntry = reader.next();
+        assertNull(reader.next());
+        reader.close();
+        
+        TimingData timingData = timingEntry.getTimingData();
+        assertEquals(4000, timingEntry.getSynchTimestamp());
+        assertEquals(sessionId, timingEntry.getSessionId());
+        assertEquals(123456789L, timingData.getDataRecivedTime());
+        assertEquals(4000, timingData.getTime());
+        assertEquals(3, timingData.getLap());
+        assertEquals(1, timingData.getSplitIndex());
+        assertEquals(Long.valueOf(61000), timingData.getLapTime());
+        assertNull(timingData.getSplitTime());
+        assertEquals(Long.valueOf(60000), timingData.getBestLapTime());
+        assertNull(timingData.getTheoreticalBestLapTime());
+        assertEquals(Long.valueOf(60500), timingData.getRollingBestLapTime());
+        assertTrue(timingData.getBestSplitTimes().isEmpty());
+    }
+    
+    @Test
+    public void testFlush() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        SessionAppender appender = store.openSession(sessionId);
+        appender.appendLogEntries(Arrays.asList(new LogEntry(0, sessionId, null, null, null),
+                new LogEntry(1000, sessionId, null, null, null)));
+        
+        // Less than a chunk is buffered until flushed
+        assertLogEntries(sessionId, null, null, 0, -1000);
+        appender.flush();
+        assertLogEntries(sessionId, null, null, 0, 1000);
+        appender.close();
+    }
+    
+    @Test
+    public void testDelete() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        SessionAppender appender = store.openSession(sessionId);
+        appendSession(appender, 0, 5000);
+        
+        try {
+            store.deleteSession(sessionId);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        
+        appender.close();
+        
+        assertTrue(store.deleteSession(sessionId));
+        assertFalse(store.deleteSession(sessionId));
+        
+        try {
+            store.readLogEntries(sessionId, null, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testSingleAppender() throws Exception {
+        int sessionId = store.createSession(new Date(), 1);
+        store.openSession(sessionId);
+        store.openSession(sessionId);
+    }
+    
+    /**
+     * Appends a log entry every second in [start, end] along with the timing entries for two laps with
+     * two splits each, matching the numbering in {@code SessionLapEntrySourceTest}.  The timing entry at
+     * 10000 is appended before its log entry and the rest after.
+     */
+    private void appendSession(SessionAppender appender, long start, long end) throws IOException {
+        for (long time = start; time <= end; time += 1000) {
+            if (time == 10000) {
+                appender.appendTimingEntries(Collections.singletonList(
+                        createTimingEntry(10000, 1, 1, 9000L)));
+            }
+            
+            appender.appendLogEntries(Collections.singletonList(new LogEntry(time, 1, null, null, null)));
+            
+            if (time == 1000) {
+                appender.appendTimingEntries(Collections.singletonList(createTimingEntry(1000, 0, 1, null)));
+            } else if (time == 5000) {
+                appender.appendTimingEntries(Collections.singletonList(createTimingEntry(5000, 1, 0, null)));
+            } else if (time == 20000) {
+                appender.appendTimingEntries(Collections.singletonList(createTimingEntry(20000, 2, 0, null)));
+            } else if (time == 30000) {
+                appender.appendTimingEntries(Collections.singletonList(
+                        createTimingEntry(30000, 2, 1, 20000L)));
+            }
+        }
+    }
+    
+    private void assertLogEntries(int sessionId, Integer startLap, Integer endLap,
+            long firstTimestamp, long lastTimestamp) throws IOException {
+        
+        EntryReader<LogEntry> reader = store.readLogEntries(sessionId, startLap, endLap);
+        
+        long expected = firstTimestamp;
+        LogEntry logEntry;
+        while ((logEntry = reader.next()) != null) {
+            assertEquals(expected, logEntry.getSynchTimestamp());
+            assertEquals(sessionId, logEntry.getSessionId());
+            expected += 1000;
+        }
+        
+        assertEquals(lastTimestamp + 1000, expected);
+        assertNull(reader.next());
+        reader.close();
+    }
+    
+    private void assertTimingEntries(int sessionId, Integer startLap, Integer endLap, long... timestamps)
+            throws IOException {
+        
+        EntryReader<TimingEntry> reader = store.readTimingEntries(sessionId, startLap, endLap);
+        
+        for (long timestamp : timestamps) {
+            assertEquals(timestamp, reader.next().getSynchTimestamp());
+        }
+        
+        assertNull(reader.next());
+        reader.close();
+    }
+    
+    private TimingEntry createTimingEntry(long time, int lap, int splitIndex, Long lapTime) {
+        TimingDataBuilder builder = new TimingDataBuilder();
+        builder.setTime(time);
+        builder.setLap(lap);
+        builder.setSplitIndex(splitIndex);
+        builder.setLapTime(lapTime);
+        builder.setBestSplitTimes(Arrays.asList(new Long[2]));
+        
+        return new TimingEntry(time, 1, builder.build());
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        
+        file.delete();
+    }
+}